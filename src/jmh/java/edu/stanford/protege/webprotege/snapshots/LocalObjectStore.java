@@ -0,0 +1,101 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for an S3 compatible object store.  It implements just enough of the S3 API
+ * for the MinIO client to check for a bucket and to upload objects, in one request or in parts.
+ * Uploaded content is read and thrown away, so that the benchmarks measure the client side of the
+ * upload (hashing, signing and copying) rather than the storage.
+ */
+final class LocalObjectStore implements AutoCloseable {
+
+    private static final String S3_NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+
+    private final HttpServer server;
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private LocalObjectStore(HttpServer server) {
+        this.server = server;
+    }
+
+    static LocalObjectStore start() throws IOException {
+        var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        var store = new LocalObjectStore(server);
+        server.createContext("/", store::handle);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            var thread = new Thread(r, "local-object-store");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        return store;
+    }
+
+    String getEndpoint() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var method = exchange.getRequestMethod();
+            var query = exchange.getRequestURI().getRawQuery();
+            var path = exchange.getRequestURI().getPath();
+            var key = path.substring(path.indexOf('/', 1) + 1);
+            bytesReceived.addAndGet(drain(exchange.getRequestBody()));
+            if(query != null && query.contains("uploads")) {
+                respondXml(exchange, "InitiateMultipartUploadResult",
+                           "<Bucket>" + CreateSnapshotTask.BUCKET_NAME + "</Bucket><Key>" + key + "</Key><UploadId>" + UUID.randomUUID() + "</UploadId>");
+            }
+            else if("POST".equals(method) && query != null && query.contains("uploadId")) {
+                respondXml(exchange, "CompleteMultipartUploadResult",
+                           "<Location>" + path + "</Location><Bucket>" + CreateSnapshotTask.BUCKET_NAME + "</Bucket><Key>" + key + "</Key><ETag>\"" + UUID.randomUUID() + "\"</ETag>");
+            }
+            else if("PUT".equals(method) || "HEAD".equals(method)) {
+                exchange.getResponseHeaders().add("ETag", "\"" + UUID.randomUUID() + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            }
+            else {
+                exchange.sendResponseHeaders(501, -1);
+            }
+        }
+    }
+
+    private static void respondXml(HttpExchange exchange, String element, String content) throws IOException {
+        var body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><" + element + " xmlns=\"" + S3_NAMESPACE + "\">"
+                + content + "</" + element + ">").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static long drain(InputStream inputStream) throws IOException {
+        var buffer = new byte[64 * 1024];
+        long count = 0;
+        int read;
+        while((read = inputStream.read(buffer)) != -1) {
+            count += read;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,31 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the axioms and megabytes that a serialization benchmark processes.  JMH reports these as rates
+ * (axioms/s and MB/s) next to the primary result.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class SerializationCounters {
+
+    public long axioms;
+
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        axioms = 0;
+        megabytes = 0;
+    }
+
+    void record(long axioms, long bytes) {
+        this.axioms += axioms;
+        this.megabytes += bytes / (1024.0 * 1024.0);
+    }
+}
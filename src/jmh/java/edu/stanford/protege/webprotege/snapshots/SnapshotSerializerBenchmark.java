@@ -0,0 +1,143 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.google.common.io.CountingOutputStream;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures {@link SnapshotSerializer#writeProject(OutputStream)} for synthetic projects, across
+ * document formats, archive codecs, compression levels and numbers of ontologies.  The snapshot is
+ * written to a null stream, so that only rendering and packaging are measured.  The score is the
+ * number of snapshots per second, and the axioms and megabytes written are reported per second.
+ * <p>
+ * Run with the benchmarks profile (see the README).  Individual parameters can be narrowed with
+ * JMH's {@code -p} option, e.g. {@code -p format=TURTLE -p codec=ZIP_STORED}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class SnapshotSerializerBenchmark {
+
+    @Param({"RDF_XML", "TURTLE", "OWL_XML", "MANCHESTER_SYNTAX", "FUNCTIONAL_SYNTAX"})
+    public DocumentFormat format;
+
+    @Param({"ZIP", "ZIP_STORED", "TAR_GZ"})
+    public SnapshotArchiveCodec codec;
+
+    @Param({"1", "6"})
+    public int compressionLevel;
+
+    @Param({"1", "8"})
+    public int ontologyCount;
+
+    @Param({"20000"})
+    public int axiomsPerOntology;
+
+    @Param({"HIERARCHY", "ANNOTATED", "MIXED"})
+    public SyntheticOntologies.AxiomMix axiomMix;
+
+    private OWLOntologyManager manager;
+
+    private long axiomCount;
+
+    private RevisionManager revisionManager;
+
+    private ForkJoinPool renderPool;
+
+    private Path scratchDirectory;
+
+    private SnapshotScratchSpace scratchSpace;
+
+    private OntologyCheckpointStore checkpointStore;
+
+    private final SnapshotMetrics metrics = new SnapshotMetrics(new SimpleMeterRegistry());
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        SyntheticOntologies.quietLogging();
+        manager = SyntheticOntologies.createProject(ontologyCount, axiomsPerOntology, axiomMix);
+        axiomCount = SyntheticOntologies.getAxiomCount(manager);
+        revisionManager = mock(RevisionManager.class);
+        when(revisionManager.getOntologyManagerForRevision(any())).thenReturn(manager);
+        renderPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        scratchDirectory = Files.createTempDirectory("snapshot-benchmark");
+        scratchSpace = new SnapshotScratchSpace(scratchDirectory, Long.MAX_VALUE, Duration.ofMinutes(1));
+        scratchSpace.initialize();
+        // The head revision is built straight from the revision manager, so storage is never used
+        var minioClient = MinioClient.builder().endpoint("http://localhost:9000").credentials("benchmark", "benchmark").build();
+        var deltaExporter = new DeltaExporter(minioClient, new SnapshotExistenceCache(Duration.ZERO, Duration.ZERO, 0), scratchSpace, false, false, 0);
+        checkpointStore = new OntologyCheckpointStore(minioClient, new SnapshotBucket(minioClient), scratchSpace, deltaExporter, false, 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        renderPool.shutdownNow();
+        checkpointStore.shutdown();
+        try(var files = Files.list(scratchDirectory)) {
+            for(var file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(scratchDirectory);
+    }
+
+    @Benchmark
+    public long writeProject(SerializationCounters counters) {
+        var serializer = new SnapshotSerializer(ProjectId.generate(),
+                                                "Benchmark Project",
+                                                RevisionNumber.getHeadRevisionNumber(),
+                                                format,
+                                                revisionManager,
+                                                CompletableFuture.completedFuture(List.of()),
+                                                renderPool,
+                                                Runnable::run,
+                                                scratchSpace,
+                                                16 * 1024 * 1024,
+                                                codec,
+                                                compressionLevel,
+                                                true,
+                                                checkpointStore,
+                                                CancellationToken.create(),
+                                                new SnapshotProgress(),
+                                                metrics);
+        var out = new CountingOutputStream(OutputStream.nullOutputStream());
+        serializer.writeProject(out);
+        counters.record(axiomCount, out.getCount());
+        return out.getCount();
+    }
+}
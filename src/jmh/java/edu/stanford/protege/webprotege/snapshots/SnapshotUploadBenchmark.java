@@ -0,0 +1,118 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.minio.MinioClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SnapshotUploader} against a {@link LocalObjectStore}, in each upload mode.  The
+ * uploaded content is random, so that it is the same size as a compressed snapshot.  The score is
+ * the number of uploads per second, and the upload rate is reported in MB/s.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class SnapshotUploadBenchmark {
+
+    @Param({"TEMP_FILE", "STREAMING"})
+    public SnapshotUploadMode mode;
+
+    @Param({"8", "64"})
+    public int sizeInMegabytes;
+
+    private final byte[] chunk = new byte[64 * 1024];
+
+    private LocalObjectStore objectStore;
+
+    private Path scratchDirectory;
+
+    private SnapshotUploader uploader;
+
+    private final SnapshotLocation location = new SnapshotLocation(ProjectId.generate(),
+                                                                   RevisionNumber.getRevisionNumber(1),
+                                                                   DocumentFormat.TURTLE);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticOntologies.quietLogging();
+        new Random(42).nextBytes(chunk);
+        objectStore = LocalObjectStore.start();
+        scratchDirectory = Files.createTempDirectory("snapshot-upload-benchmark");
+        var scratchSpace = new SnapshotScratchSpace(scratchDirectory, Long.MAX_VALUE, Duration.ofMinutes(1));
+        scratchSpace.initialize();
+        var minioClient = MinioClient.builder()
+                                     .endpoint(objectStore.getEndpoint())
+                                     .region("us-east-1")
+                                     .credentials("benchmark", "benchmark")
+                                     .build();
+        var properties = new SnapshotUploadProperties();
+        properties.setMode(mode);
+        properties.setPartSize(DataSize.ofMegabytes(16));
+        properties.setPipeBufferSize(DataSize.ofMegabytes(4));
+        uploader = new SnapshotUploader(minioClient, new SnapshotBucket(minioClient), scratchSpace, properties, new SnapshotMetrics(new SimpleMeterRegistry()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        uploader.shutdown();
+        objectStore.close();
+        Files.deleteIfExists(scratchDirectory);
+    }
+
+    /**
+     * Counts the megabytes that are uploaded, which JMH reports as MB/s
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class UploadCounters {
+
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Benchmark
+    public long upload(UploadCounters counters) throws Exception {
+        var size = uploader.upload(location, SnapshotArchiveCodec.ZIP, Map.of(), CancellationToken.create(), new SnapshotProgress(), outputStream -> {
+            var remaining = (long) sizeInMegabytes * 1024 * 1024;
+            while(remaining > 0) {
+                var length = (int) Math.min(chunk.length, remaining);
+                outputStream.write(chunk, 0, length);
+                remaining -= length;
+            }
+        }).size();
+        counters.megabytes += size / (1024.0 * 1024.0);
+        return size;
+    }
+}
@@ -0,0 +1,144 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates projects of synthetic ontologies for the benchmarks.  The ontologies are generated from
+ * a fixed seed, so every run of a benchmark sees the same ontologies.
+ */
+public final class SyntheticOntologies {
+
+    /**
+     * The kinds of axioms that make up the generated ontologies
+     */
+    public enum AxiomMix {
+
+        /**
+         * A class hierarchy, i.e. SubClassOf axioms between named classes
+         */
+        HIERARCHY,
+
+        /**
+         * A class hierarchy where most axioms are labels and comments, which is typical of
+         * biomedical terminologies
+         */
+        ANNOTATED,
+
+        /**
+         * Class hierarchy, existential restrictions, annotations and individuals with class and
+         * property assertions
+         */
+        MIXED
+    }
+
+    private static final String BASE = "http://example.org/webprotege/benchmark/";
+
+    private SyntheticOntologies() {
+    }
+
+    /**
+     * Creates a manager that contains the specified number of ontologies
+     * @param ontologyCount The number of ontologies
+     * @param axiomsPerOntology The (approximate) number of logical and annotation axioms in each ontology
+     * @param axiomMix The kinds of axioms in the ontologies
+     */
+    static OWLOntologyManager createProject(int ontologyCount,
+                                            int axiomsPerOntology,
+                                            AxiomMix axiomMix) throws OWLOntologyCreationException {
+        var manager = OWLManager.createConcurrentOWLOntologyManager();
+        var dataFactory = manager.getOWLDataFactory();
+        var random = new Random(ontologyCount * 31L + axiomsPerOntology);
+        for(int i = 0; i < ontologyCount; i++) {
+            var ontologyIri = IRI.create(BASE + "ontology-" + i);
+            var ontology = manager.createOntology(ontologyIri);
+            var axioms = createAxioms(dataFactory, ontologyIri + "#", axiomsPerOntology, axiomMix, random);
+            var changes = new ArrayList<OWLOntologyChange>(axioms.size());
+            axioms.forEach(axiom -> changes.add(new AddAxiom(ontology, axiom)));
+            manager.applyChanges(changes);
+        }
+        return manager;
+    }
+
+    /**
+     * Turns off the INFO logging of the snapshot classes, which would otherwise be written for
+     * every benchmark invocation
+     */
+    static void quietLogging() {
+        if(LoggerFactory.getLogger("edu.stanford.protege") instanceof ch.qos.logback.classic.Logger logger) {
+            logger.setLevel(ch.qos.logback.classic.Level.WARN);
+        }
+    }
+
+    /**
+     * Gets the number of axioms in all of the ontologies in a manager
+     */
+    static long getAxiomCount(OWLOntologyManager manager) {
+        return manager.getOntologies().stream().mapToLong(ontology -> ontology.getAxiomCount()).sum();
+    }
+
+    private static List<OWLAxiom> createAxioms(OWLDataFactory dataFactory,
+                                               String namespace,
+                                               int axiomCount,
+                                               AxiomMix axiomMix,
+                                               Random random) {
+        var axioms = new ArrayList<OWLAxiom>(axiomCount);
+        var classes = new ArrayList<OWLClass>();
+        var hasPart = dataFactory.getOWLObjectProperty(IRI.create(namespace + "has_part"));
+        var hasValue = dataFactory.getOWLDataProperty(IRI.create(namespace + "has_value"));
+        while(axioms.size() < axiomCount) {
+            var cls = dataFactory.getOWLClass(IRI.create(namespace + "C" + classes.size()));
+            axioms.add(dataFactory.getOWLDeclarationAxiom(cls));
+            if(!classes.isEmpty()) {
+                var parent = classes.get(random.nextInt(classes.size()));
+                axioms.add(dataFactory.getOWLSubClassOfAxiom(cls, parent));
+            }
+            if(axiomMix != AxiomMix.HIERARCHY) {
+                axioms.add(dataFactory.getOWLAnnotationAssertionAxiom(dataFactory.getRDFSLabel(),
+                                                                      cls.getIRI(),
+                                                                      dataFactory.getOWLLiteral("Class " + classes.size(), "en")));
+            }
+            if(axiomMix == AxiomMix.ANNOTATED) {
+                axioms.add(dataFactory.getOWLAnnotationAssertionAxiom(dataFactory.getRDFSComment(),
+                                                                      cls.getIRI(),
+                                                                      dataFactory.getOWLLiteral(randomText(random), "en")));
+            }
+            if(axiomMix == AxiomMix.MIXED && !classes.isEmpty()) {
+                var filler = classes.get(random.nextInt(classes.size()));
+                axioms.add(dataFactory.getOWLSubClassOfAxiom(cls, dataFactory.getOWLObjectSomeValuesFrom(hasPart, filler)));
+                var individual = dataFactory.getOWLNamedIndividual(IRI.create(namespace + "i" + classes.size()));
+                axioms.add(dataFactory.getOWLClassAssertionAxiom(cls, individual));
+                axioms.add(dataFactory.getOWLDataPropertyAssertionAxiom(hasValue, individual, random.nextInt(1000)));
+            }
+            classes.add(cls);
+        }
+        return axioms;
+    }
+
+    private static String randomText(Random random) {
+        var text = new StringBuilder();
+        var words = 8 + random.nextInt(16);
+        for(int i = 0; i < words; i++) {
+            if(i > 0) {
+                text.append(' ');
+            }
+            var length = 3 + random.nextInt(8);
+            for(int j = 0; j < length; j++) {
+                text.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return text.toString();
+    }
+}
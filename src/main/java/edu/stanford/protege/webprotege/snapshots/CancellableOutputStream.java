@@ -0,0 +1,39 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * An output stream that fails as soon as a {@link CancellationToken} is cancelled, so that
+ * rendering an ontology stops part way through rather than running to completion
+ */
+final class CancellableOutputStream extends FilterOutputStream {
+
+    private final CancellationToken cancellation;
+
+    CancellableOutputStream(@Nonnull OutputStream out, @Nonnull CancellationToken cancellation) {
+        super(checkNotNull(out));
+        this.cancellation = checkNotNull(cancellation);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        cancellation.throwIfCancelled();
+        out.write(b);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        cancellation.throwIfCancelled();
+        out.write(b, off, len);
+    }
+
+    @Override
+    public void close() {
+        // The wrapped stream is owned by the caller
+    }
+}
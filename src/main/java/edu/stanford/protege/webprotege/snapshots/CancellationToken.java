@@ -0,0 +1,179 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Signals that the work for a snapshot should stop, either because nobody is waiting for the
+ * snapshot any more or because its deadline has passed.
+ * <p>
+ * Long-running work checks the token at convenient points with {@link #throwIfCancelled()}.
+ * Work that blocks (e.g. an upload) registers a listener with {@link #onCancel(Runnable)} that
+ * unblocks it.
+ * <p>
+ * Whoever creates a token calls {@link #complete()} once the work has finished, which stops its
+ * deadline and drops its listeners so that nothing the work captured stays reachable.
+ */
+public final class CancellationToken {
+
+    private static final Logger logger = LoggerFactory.getLogger(CancellationToken.class);
+
+    /**
+     * Runs the deadlines of all tokens.  Cancelled deadlines are removed straight away.
+     */
+    private static final ScheduledThreadPoolExecutor deadlineExecutor = createDeadlineExecutor();
+
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    private volatile String reason = null;
+
+    private volatile ScheduledFuture<?> deadline = null;
+
+    private boolean completed = false;
+
+    /**
+     * Creates a token that is only cancelled when {@link #cancel(String)} is called
+     */
+    @Nonnull
+    public static CancellationToken create() {
+        return new CancellationToken();
+    }
+
+    /**
+     * Creates a token that is cancelled automatically once the specified time has passed
+     */
+    @Nonnull
+    public static CancellationToken withDeadline(@Nonnull Duration timeout) {
+        checkNotNull(timeout);
+        var token = new CancellationToken();
+        token.deadline = deadlineExecutor.schedule(() -> token.cancel("The snapshot did not complete within " + timeout.toSeconds() + " seconds"),
+                                                   timeout.toMillis(), TimeUnit.MILLISECONDS);
+        return token;
+    }
+
+    private static ScheduledThreadPoolExecutor createDeadlineExecutor() {
+        var executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            var thread = new Thread(runnable, "snapshot-deadlines");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    private CancellationToken() {
+    }
+
+    /**
+     * Cancels this token and runs its listeners.  Only the first call has any effect.
+     * @param reason The reason for cancelling
+     */
+    public void cancel(@Nonnull String reason) {
+        List<Runnable> toRun;
+        synchronized (listeners) {
+            if(this.reason != null || completed) {
+                return;
+            }
+            this.reason = checkNotNull(reason);
+            toRun = List.copyOf(listeners);
+            listeners.clear();
+        }
+        cancelDeadline();
+        toRun.forEach(CancellationToken::runListener);
+    }
+
+    /**
+     * Marks the work for this token as finished.  The deadline is stopped and the listeners are
+     * dropped without being run, and later calls to {@link #cancel(String)} have no effect.
+     */
+    public void complete() {
+        synchronized (listeners) {
+            completed = true;
+            listeners.clear();
+        }
+        cancelDeadline();
+    }
+
+    private void cancelDeadline() {
+        var deadline = this.deadline;
+        if(deadline != null) {
+            deadline.cancel(false);
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    /**
+     * Gets the reason that this token was cancelled, or null if it has not been cancelled
+     */
+    @Nullable
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @throws SnapshotCancelledException if this token has been cancelled
+     */
+    public void throwIfCancelled() {
+        var reason = this.reason;
+        if(reason != null) {
+            throw new SnapshotCancelledException(reason);
+        }
+    }
+
+    /**
+     * Registers a listener that is run when this token is cancelled.  If the token has already
+     * been cancelled then the listener is run straight away.
+     * @return A registration that removes the listener when it is closed
+     */
+    @Nonnull
+    public Registration onCancel(@Nonnull Runnable listener) {
+        checkNotNull(listener);
+        synchronized (listeners) {
+            if(completed) {
+                return () -> {};
+            }
+            if(reason == null) {
+                listeners.add(listener);
+                return () -> {
+                    synchronized (listeners) {
+                        listeners.remove(listener);
+                    }
+                };
+            }
+        }
+        runListener(listener);
+        return () -> {};
+    }
+
+    private static void runListener(Runnable listener) {
+        try {
+            listener.run();
+        } catch (RuntimeException e) {
+            logger.warn("Error running cancellation listener", e);
+        }
+    }
+
+    /**
+     * A registered cancellation listener
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+}
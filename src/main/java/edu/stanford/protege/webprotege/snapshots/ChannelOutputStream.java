@@ -0,0 +1,87 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes to a file channel through a pooled direct buffer.  This is the only buffer between the
+ * writer and the file, so streams that are written to it do not need buffering of their own.
+ * Closing the stream closes the channel and returns the buffer to the pool.
+ */
+final class ChannelOutputStream extends OutputStream {
+
+    @Nonnull
+    private final FileChannel channel;
+
+    @Nonnull
+    private final SnapshotBufferPool bufferPool;
+
+    private ByteBuffer buffer;
+
+    ChannelOutputStream(@Nonnull FileChannel channel, @Nonnull SnapshotBufferPool bufferPool) {
+        this.channel = checkNotNull(channel);
+        this.bufferPool = checkNotNull(bufferPool);
+        this.buffer = bufferPool.acquireSinkBuffer();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if(!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if(!buffer.hasRemaining()) {
+                drain();
+            }
+            var n = Math.min(len, buffer.remaining());
+            buffer.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(buffer == null) {
+            return;
+        }
+        try (channel) {
+            drain();
+        } finally {
+            bufferPool.releaseSinkBuffer(buffer);
+            buffer = null;
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void ensureOpen() throws IOException {
+        if(buffer == null) {
+            throw new IOException("Stream is closed");
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.common.UserId;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.project.PrefixDeclaration;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.Timer;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Creates snapshots of one revision of a project in several formats.  The revision history is
+ * loaded and the revision is built once, and every format is written from the same ontologies.
+ * <p>
+ * Each format is stored at its own {@link SnapshotLocation}.  Formats that are already stored are
+ * not written again, and formats that are already being written by another request are waited
+ * for.  The first format is written on the worker that runs this task.  The other formats are
+ * written at the same time when the {@link HeapAdmissionController} has heap available straight
+ * away, and after the first format otherwise.  Formats that another replica of the service is
+ * creating are waited for after the other formats have been written.
+ */
+class CreateMultiFormatSnapshotTask implements Supplier<Map<DocumentFormat, SnapshotStorageCoordinates>> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CreateMultiFormatSnapshotTask.class);
+
+    @Nonnull
+    private final CreateSnapshotTaskFactory createSnapshotTaskFactory;
+
+    @Nonnull
+    private final RevisionManagerCache revisionManagerCache;
+
+    @Nonnull
+    private final PrefixDeclarationsCache prefixDeclarationsCache;
+
+    @Nonnull
+    private final InFlightSnapshotRegistry inFlightSnapshotRegistry;
+
+    @Nonnull
+    private final HeapAdmissionController heapAdmissionController;
+
+    @Nonnull
+    private final SnapshotLeaseCoordinator leaseCoordinator;
+
+    @Nonnull
+    private final Executor formatExecutor;
+
+    @Nonnull
+    private final ExecutionContext executionContext;
+
+    @Nonnull
+    private final ProjectId projectId;
+
+    @Nonnull
+    private final UserId userId;
+
+    @Nonnull
+    private final String projectDisplayName;
+
+    @Nonnull
+    private final RevisionNumber revisionNumber;
+
+    @Nonnull
+    private final List<DocumentFormat> formats;
+
+    @Nonnull
+    private final CancellationToken cancellation;
+
+    @Nonnull
+    private final SnapshotMetrics metrics;
+
+    public CreateMultiFormatSnapshotTask(@Nonnull CreateSnapshotTaskFactory createSnapshotTaskFactory,
+                                         @Nonnull RevisionManagerCache revisionManagerCache,
+                                         @Nonnull PrefixDeclarationsCache prefixDeclarationsCache,
+                                         @Nonnull InFlightSnapshotRegistry inFlightSnapshotRegistry,
+                                         @Nonnull HeapAdmissionController heapAdmissionController,
+                                         @Nonnull SnapshotLeaseCoordinator leaseCoordinator,
+                                         @Nonnull Executor formatExecutor,
+                                         @Nonnull ExecutionContext executionContext,
+                                         @Nonnull ProjectId projectId,
+                                         @Nonnull UserId userId,
+                                         @Nonnull String projectDisplayName,
+                                         @Nonnull RevisionNumber revisionNumber,
+                                         @Nonnull List<DocumentFormat> formats,
+                                         @Nonnull CancellationToken cancellation,
+                                         @Nonnull SnapshotMetrics metrics) {
+        checkArgument(!formats.isEmpty(), "At least one format is required");
+        this.createSnapshotTaskFactory = checkNotNull(createSnapshotTaskFactory);
+        this.revisionManagerCache = checkNotNull(revisionManagerCache);
+        this.prefixDeclarationsCache = checkNotNull(prefixDeclarationsCache);
+        this.inFlightSnapshotRegistry = checkNotNull(inFlightSnapshotRegistry);
+        this.heapAdmissionController = checkNotNull(heapAdmissionController);
+        this.leaseCoordinator = checkNotNull(leaseCoordinator);
+        this.formatExecutor = checkNotNull(formatExecutor);
+        this.executionContext = checkNotNull(executionContext);
+        this.projectId = checkNotNull(projectId);
+        this.userId = checkNotNull(userId);
+        this.projectDisplayName = checkNotNull(projectDisplayName);
+        this.revisionNumber = checkNotNull(revisionNumber);
+        this.formats = List.copyOf(formats);
+        this.cancellation = checkNotNull(cancellation);
+        this.metrics = checkNotNull(metrics);
+    }
+
+    @Override
+    public Map<DocumentFormat, SnapshotStorageCoordinates> get() {
+        cancellation.throwIfCancelled();
+        logger.info("{} {} Processing snapshot request for formats {}", projectId, userId, formats);
+        var results = new LinkedHashMap<DocumentFormat, CompletableFuture<SnapshotStorageCoordinates>>();
+        var missingFormats = new ArrayList<DocumentFormat>();
+        for(var format : formats) {
+            var existingCoordinates = createTask(format, revisionNumber, cancellation, new SnapshotProgress()).getSnapshotCoordinates();
+            if(!revisionNumber.isHead()) {
+                metrics.recordExistingSnapshotLookup(existingCoordinates.isPresent());
+            }
+            if(existingCoordinates.isPresent()) {
+                results.put(format, CompletableFuture.completedFuture(existingCoordinates.get()));
+            }
+            else {
+                missingFormats.add(format);
+            }
+        }
+        if(!missingFormats.isEmpty()) {
+            createSnapshots(missingFormats, results);
+        }
+        var snapshots = new LinkedHashMap<DocumentFormat, SnapshotStorageCoordinates>();
+        try {
+            results.forEach((format, result) -> snapshots.put(format, result.join()));
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+        return snapshots;
+    }
+
+    private void createSnapshots(List<DocumentFormat> missingFormats,
+                                 Map<DocumentFormat, CompletableFuture<SnapshotStorageCoordinates>> results) {
+        logger.info("{} {} Creating project snapshots for formats {}", projectId, userId, missingFormats);
+        var totalSample = metrics.start();
+        // Fetch the prefixes while the revision history is being loaded
+        var prefixDeclarations = prefixDeclarationsCache.getPrefixDeclarations(projectId, executionContext);
+        var loadSample = metrics.start();
+        var revisionManager = revisionManagerCache.getRevisionManager(projectId, revisionNumber);
+        metrics.stop(loadSample, SnapshotMetrics.Phase.LOAD_REVISIONS, missingFormats.get(0));
+        cancellation.throwIfCancelled();
+        var resolvedRevisionNumber = createTask(missingFormats.get(0), revisionNumber, cancellation, new SnapshotProgress())
+                .resolveRevisionNumber(revisionManager);
+        // Formats that are already being written by other requests are waited for
+        var exports = new ArrayList<FormatExport>();
+        for(var format : missingFormats) {
+            var location = new SnapshotLocation(projectId, resolvedRevisionNumber, format);
+            var progress = new SnapshotProgress();
+            results.put(format, inFlightSnapshotRegistry.attachOrStart(location, cancellation, progress, exportCancellation -> {
+                var export = new FormatExport(location,
+                                              createTask(format, resolvedRevisionNumber, exportCancellation, progress),
+                                              new CompletableFuture<>());
+                exports.add(export);
+                return export.result();
+            }));
+        }
+        // Formats that another replica is creating have normally been stored by the time this
+        // task has written its own formats.  The heap is waited for before the formats are
+        // claimed, so that other replicas are not kept waiting on the leases while this replica
+        // waits for heap.
+        var claims = new ArrayList<SnapshotLeaseCoordinator.Claim>();
+        var claimedExports = new ArrayList<FormatExport>();
+        var deferredExports = new ArrayList<FormatExport>();
+        try (var admission = heapAdmissionController.admit(projectId, revisionManager, resolvedRevisionNumber, cancellation)) {
+            for(var export : exports) {
+                var claim = leaseCoordinator.tryClaim(export.location());
+                if(claim.isEmpty()) {
+                    deferredExports.add(export);
+                    continue;
+                }
+                var heldClaim = claim.get();
+                claims.add(heldClaim);
+                // Another replica may have stored the format just before it was claimed
+                var storedCoordinates = heldClaim.isLeased()
+                        ? export.task().findSnapshotStoredBeforeClaim(export.location())
+                        : Optional.<SnapshotStorageCoordinates>empty();
+                if(storedCoordinates.isPresent()) {
+                    claims.remove(heldClaim);
+                    heldClaim.close();
+                    export.result().complete(storedCoordinates.get());
+                }
+                else {
+                    claimedExports.add(export);
+                }
+            }
+            if(!claimedExports.isEmpty()) {
+                writeFormats(claimedExports, revisionManager, resolvedRevisionNumber, prefixDeclarations, totalSample);
+            }
+        } catch (RuntimeException e) {
+            // The heap was not admitted in time, or the task was cancelled while it waited
+            exports.forEach(export -> export.result().completeExceptionally(e));
+            return;
+        } finally {
+            claims.forEach(SnapshotLeaseCoordinator.Claim::close);
+        }
+        deferredExports.forEach(FormatExport::createSeparately);
+    }
+
+    private void writeFormats(List<FormatExport> exports,
+                              RevisionManager revisionManager,
+                              RevisionNumber resolvedRevisionNumber,
+                              CompletableFuture<List<PrefixDeclaration>> prefixDeclarations,
+                              Timer.Sample totalSample) {
+        // The caller holds the admission for building the revision until every format has been written
+        try {
+            var first = exports.get(0);
+            var serializers = exports.stream()
+                                     .map(export -> export.task().createSerializer(revisionManager, resolvedRevisionNumber, prefixDeclarations))
+                                     .toList();
+            var manager = serializers.get(0).buildRevision();
+            var concurrentWrites = new ArrayList<CompletableFuture<Void>>();
+            var sequentialWrites = new ArrayList<Runnable>();
+            sequentialWrites.add(() -> first.write(serializers.get(0), manager, revisionManager, resolvedRevisionNumber, totalSample));
+            for(int i = 1; i < exports.size(); i++) {
+                var export = exports.get(i);
+                var serializer = serializers.get(i);
+                Runnable write = () -> export.write(serializer, manager, revisionManager, resolvedRevisionNumber, totalSample);
+                var additionalAdmission = heapAdmissionController.tryAdmitAdditionalFormat(projectId);
+                if(additionalAdmission.isPresent()) {
+                    concurrentWrites.add(CompletableFuture.runAsync(() -> {
+                        try (var formatAdmission = additionalAdmission.get()) {
+                            write.run();
+                        }
+                    }, formatExecutor));
+                }
+                else {
+                    sequentialWrites.add(write);
+                }
+            }
+            sequentialWrites.forEach(Runnable::run);
+            // The ontologies must not be released while they are being written
+            CompletableFuture.allOf(concurrentWrites.toArray(CompletableFuture[]::new)).exceptionally(t -> null).join();
+        } catch (RuntimeException e) {
+            exports.forEach(export -> export.result().completeExceptionally(e));
+        }
+    }
+
+    private CreateSnapshotTask createTask(DocumentFormat format,
+                                          RevisionNumber revisionNumber,
+                                          CancellationToken cancellation,
+                                          SnapshotProgress progress) {
+        return createSnapshotTaskFactory.create(executionContext, projectId, userId, projectDisplayName,
+                                                revisionNumber, format, cancellation, progress);
+    }
+
+    /**
+     * A format that this task writes
+     */
+    private record FormatExport(@Nonnull SnapshotLocation location,
+                                @Nonnull CreateSnapshotTask task,
+                                @Nonnull CompletableFuture<SnapshotStorageCoordinates> result) {
+
+        private void write(SnapshotSerializer serializer,
+                           OWLOntologyManager manager,
+                           RevisionManager revisionManager,
+                           RevisionNumber resolvedRevisionNumber,
+                           Timer.Sample totalSample) {
+            try {
+                result.complete(task.storeSnapshot(serializer, manager, revisionManager, resolvedRevisionNumber, location, totalSample));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        /**
+         * Creates the snapshot on its own, waiting for the replica that has claimed it
+         */
+        private void createSeparately() {
+            try {
+                result.complete(task.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+    }
+}
@@ -10,10 +10,9 @@ import edu.stanford.protege.webprotege.ipc.WebProtegeHandler;
 import reactor.core.publisher.Mono;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Set;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
 
 /**
  * Matthew Horridge
@@ -27,15 +26,15 @@ public class CreateSnapshotCommandHandler implements AuthorizedCommandHandler<Cr
 
 
     @Nonnull
-    private final CreateSnapshotTaskFactory createSnapshotTaskFactory;
+    private final SnapshotRequestSubmitter snapshotRequestSubmitter;
 
     @Nonnull
-    private final ExecutorService executorService;
+    private final Duration taskDeadline;
 
-    public CreateSnapshotCommandHandler(@Nonnull CreateSnapshotTaskFactory createSnapshotTaskFactory,
-                                        @Nonnull ExecutorService executorService) {
-        this.createSnapshotTaskFactory = createSnapshotTaskFactory;
-        this.executorService = executorService;
+    public CreateSnapshotCommandHandler(@Nonnull SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                        @Nonnull SnapshotSchedulerProperties schedulerProperties) {
+        this.snapshotRequestSubmitter = snapshotRequestSubmitter;
+        this.taskDeadline = schedulerProperties.getTaskDeadline();
     }
 
     @Nonnull
@@ -64,14 +63,18 @@ public class CreateSnapshotCommandHandler implements AuthorizedCommandHandler<Cr
     @Override
     public Mono<CreateSnapshotResponse> handleRequest(CreateSnapshotRequest request,
                                                       ExecutionContext executionContext) {
-        var future = new CompletableFuture<SnapshotStorageCoordinates>();
-        var task = createSnapshotTaskFactory.create(executionContext, request.projectId(),
-                                                                  executionContext.userId(),
-                                                                  request.fileName(),
-                                                                  request.revisionNumber(),
-                                                                  request.documentFormat());
-        var response = future.completeAsync(task, executorService)
-                .thenApply(CreateSnapshotResponse::new);
-        return Mono.fromFuture(response);
+        // The work stops when the caller goes away or the deadline passes, whichever comes first
+        var cancellation = CancellationToken.withDeadline(taskDeadline);
+        var response = snapshotRequestSubmitter.submit(request.projectId(),
+                                                       request.revisionNumber(),
+                                                       request.documentFormat(),
+                                                       request.fileName(),
+                                                       executionContext,
+                                                       cancellation,
+                                                       new SnapshotProgress())
+                .thenApply(CreateSnapshotResponse::new)
+                .whenComplete((snapshot, error) -> cancellation.complete());
+        return Mono.fromFuture(response)
+                   .doOnCancel(() -> cancellation.cancel("The snapshot request was cancelled"));
     }
 }
@@ -5,24 +5,26 @@ package edu.stanford.protege.webprotege.snapshots;
 import edu.stanford.protege.webprotege.common.DocumentFormat;
 import edu.stanford.protege.webprotege.common.ProjectId;
 import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.project.PrefixDeclaration;
 import edu.stanford.protege.webprotege.revision.RevisionManager;
-import edu.stanford.protege.webprotege.revision.RevisionManagerFactory;
 import edu.stanford.protege.webprotege.revision.RevisionNumber;
 import edu.stanford.protege.webprotege.common.UserId;
 import io.minio.*;
+import io.micrometer.core.instrument.Timer;
 import io.minio.errors.*;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.Supplier;
 
 /**
@@ -37,7 +39,7 @@ class CreateSnapshotTask implements Supplier<SnapshotStorageCoordinates> {
     public static final String BUCKET_NAME = "webprotege-snapshots";
 
     @Nonnull
-    private final RevisionManagerFactory revisionManagerFactory;
+    private final RevisionManagerCache revisionManagerCache;
 
     @Nonnull
     private final ProjectId projectId;
@@ -61,8 +63,41 @@ class CreateSnapshotTask implements Supplier<SnapshotStorageCoordinates> {
 
     private MinioClient minioClient;
 
+    @Nonnull
+    private final SnapshotUploader snapshotUploader;
+
+    @Nonnull
+    private final PrefixDeclarationsCache prefixDeclarationsCache;
+
+    @Nonnull
+    private final DeltaExporter deltaExporter;
+
+    @Nonnull
+    private final HeapAdmissionController heapAdmissionController;
+
+    @Nonnull
+    private final SnapshotAccessRecorder snapshotAccessRecorder;
+
+    @Nonnull
+    private final SnapshotExistenceCache snapshotExistenceCache;
+
+    @Nonnull
+    private final SnapshotArchiveIndexStore archiveIndexStore;
+
+    @Nonnull
+    private final SnapshotLeaseCoordinator leaseCoordinator;
 
-    public CreateSnapshotTask(@Nonnull RevisionManagerFactory revisionManagerFactory,
+    @Nonnull
+    private final CancellationToken cancellation;
+
+    @Nonnull
+    private final SnapshotProgress progress;
+
+    @Nonnull
+    private final SnapshotMetrics metrics;
+
+
+    public CreateSnapshotTask(@Nonnull RevisionManagerCache revisionManagerCache,
                               @Nonnull ProjectId projectId,
                               @Nonnull UserId userId,
                               @Nonnull String projectDisplayName,
@@ -70,8 +105,19 @@ class CreateSnapshotTask implements Supplier<SnapshotStorageCoordinates> {
                               @Nonnull DocumentFormat format,
                               @Nonnull SnapshotSerializerFactory snapshotSerializerFactory,
                               @Nonnull ExecutionContext executionContext,
-                              @Nonnull MinioClient minioClient) {
-        this.revisionManagerFactory = revisionManagerFactory;
+                              @Nonnull MinioClient minioClient,
+                              @Nonnull SnapshotUploader snapshotUploader,
+                              @Nonnull PrefixDeclarationsCache prefixDeclarationsCache,
+                              @Nonnull DeltaExporter deltaExporter,
+                              @Nonnull HeapAdmissionController heapAdmissionController,
+                              @Nonnull SnapshotAccessRecorder snapshotAccessRecorder,
+                              @Nonnull SnapshotExistenceCache snapshotExistenceCache,
+                              @Nonnull SnapshotArchiveIndexStore archiveIndexStore,
+                              @Nonnull SnapshotLeaseCoordinator leaseCoordinator,
+                              @Nonnull CancellationToken cancellation,
+                              @Nonnull SnapshotProgress progress,
+                              @Nonnull SnapshotMetrics metrics) {
+        this.revisionManagerCache = revisionManagerCache;
         this.projectId = projectId;
         this.userId = userId;
         this.projectDisplayName = projectDisplayName;
@@ -80,13 +126,28 @@ class CreateSnapshotTask implements Supplier<SnapshotStorageCoordinates> {
         this.snapshotSerializerFactory = snapshotSerializerFactory;
         this.executionContext = executionContext;
         this.minioClient = minioClient;
+        this.snapshotUploader = snapshotUploader;
+        this.prefixDeclarationsCache = prefixDeclarationsCache;
+        this.deltaExporter = deltaExporter;
+        this.heapAdmissionController = heapAdmissionController;
+        this.snapshotAccessRecorder = snapshotAccessRecorder;
+        this.snapshotExistenceCache = snapshotExistenceCache;
+        this.archiveIndexStore = archiveIndexStore;
+        this.leaseCoordinator = leaseCoordinator;
+        this.cancellation = cancellation;
+        this.progress = progress;
+        this.metrics = metrics;
     }
 
     @Override
     public SnapshotStorageCoordinates get() {
         try {
+            cancellation.throwIfCancelled();
             logger.info("{} {} Processing snapshot request", projectId, userId);
             var existingCoordinates = getSnapshotCoordinates();
+            if(!revisionNumber.isHead()) {
+                metrics.recordExistingSnapshotLookup(existingCoordinates.isPresent());
+            }
             if(existingCoordinates.isPresent()) {
                 logger.info("{} {} Requested snapshot already exists.  Not recreating it.",
                             projectId,
@@ -94,71 +155,208 @@ class CreateSnapshotTask implements Supplier<SnapshotStorageCoordinates> {
                 return existingCoordinates.get();
             }
             logger.info("{} {} Creating project snapshot", projectId, userId);
-            var revisionManager = revisionManagerFactory.createRevisionManager(projectId);
+            var totalSample = metrics.start();
+            // Fetch the prefixes while the revision history is being loaded
+            var prefixDeclarations = prefixDeclarationsCache.getPrefixDeclarations(projectId, executionContext);
+            progress.loadingRevisions();
+            var loadSample = metrics.start();
+            var revisionManager = revisionManagerCache.getRevisionManager(projectId, revisionNumber);
+            metrics.stop(loadSample, SnapshotMetrics.Phase.LOAD_REVISIONS, format);
+            cancellation.throwIfCancelled();
             var resolvedRevisionNumber = resolveRevisionNumber(revisionManager);
             var minio = new SnapshotLocation(projectId, resolvedRevisionNumber, format);
-            var downloader = snapshotSerializerFactory.create(projectId,
-                                                              projectDisplayName,
-                                                              resolvedRevisionNumber,
-                                                              format,
-                                                              revisionManager);
-
-            var tmpFile = getTempFile();
-            logger.info("{} {} Writing snapshot to temp file ({})", projectId, userId, tmpFile);
-            try (BufferedOutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
-                downloader.writeProject(outputStream, executionContext);
+            return createSnapshot(revisionManager, resolvedRevisionNumber, minio, prefixDeclarations, totalSample);
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
-            double sizeInMB = Files.size(tmpFile) / (1024.0 * 1024);
-            logger.info("{} {} Finished creating snapshot ({} MB)", projectId, userId, String.format("%.4f", sizeInMB));
-            logger.info("{} {} Storing snapshot at {}", projectId, userId, minio.getLocation());
+            throw e;
+        }
+    }
+
+    private SnapshotStorageCoordinates createSnapshot(RevisionManager revisionManager,
+                                                      RevisionNumber resolvedRevisionNumber,
+                                                      SnapshotLocation minio,
+                                                      CompletableFuture<List<PrefixDeclaration>> prefixDeclarations,
+                                                      Timer.Sample totalSample) {
+        // Other replicas of the service may be creating the same snapshot.  The heap is waited for
+        // before the snapshot is claimed, so that other replicas are not kept waiting on the lease
+        // while this replica waits for heap.
+        while(true) {
+            try (var admission = heapAdmissionController.admit(projectId, revisionManager, resolvedRevisionNumber, cancellation)) {
+                var claim = leaseCoordinator.tryClaim(minio);
+                if(claim.isPresent()) {
+                    try (var heldClaim = claim.get()) {
+                        if(heldClaim.isLeased()) {
+                            var storedCoordinates = findSnapshotStoredBeforeClaim(minio);
+                            if(storedCoordinates.isPresent()) {
+                                return storedCoordinates.get();
+                            }
+                        }
+                        return createAdmittedSnapshot(revisionManager, resolvedRevisionNumber, minio, prefixDeclarations, totalSample);
+                    }
+                }
+            }
+            // Another replica holds the lease, which is waited for without holding any heap.  A
+            // claim that is made while waiting is released again, because claims are only held
+            // once the heap has been admitted.
+            leaseCoordinator.claim(minio, cancellation).ifPresent(SnapshotLeaseCoordinator.Claim::close);
+            snapshotExistenceCache.invalidate(minio.getLocation());
+            var storedCoordinates = findStoredSnapshot(minio);
+            if(storedCoordinates.isPresent()) {
+                logger.info("{} {} Snapshot was created by another replica", projectId, userId);
+                return storedCoordinates.get();
+            }
+            logger.info("{} {} Snapshot was not stored by the replica that claimed it.  Claiming it again.", projectId, userId);
+        }
+    }
 
+    /**
+     * Creates a snapshot that this replica has claimed.  The caller holds the heap admission for
+     * building and rendering the ontologies until the snapshot has been uploaded, so that rendered
+     * documents that are still held in memory are accounted for.
+     */
+    @Nonnull
+    SnapshotStorageCoordinates createAdmittedSnapshot(RevisionManager revisionManager,
+                                                      RevisionNumber resolvedRevisionNumber,
+                                                      SnapshotLocation minio,
+                                                      CompletableFuture<List<PrefixDeclaration>> prefixDeclarations,
+                                                      Timer.Sample totalSample) {
+        var downloader = createSerializer(revisionManager, resolvedRevisionNumber, prefixDeclarations);
+        return storeSnapshot(downloader, downloader.buildRevision(), revisionManager, resolvedRevisionNumber, minio, totalSample);
+    }
 
-            createBucketIfNotExists();
+    @Nonnull
+    SnapshotSerializer createSerializer(RevisionManager revisionManager,
+                                        RevisionNumber resolvedRevisionNumber,
+                                        CompletableFuture<List<PrefixDeclaration>> prefixDeclarations) {
+        return snapshotSerializerFactory.create(projectId,
+                                                projectDisplayName,
+                                                resolvedRevisionNumber,
+                                                format,
+                                                revisionManager,
+                                                prefixDeclarations,
+                                                cancellation,
+                                                progress);
+    }
 
-            var uploadObjectArgs = UploadObjectArgs.builder()
-                                                   .bucket(BUCKET_NAME)
-                                                   .object(minio.getLocation())
-                                                   .filename(tmpFile.toString())
-                                                   .contentType("application/zip")
-                                                   .build();
-            var minioResponse = minioClient.uploadObject(uploadObjectArgs);
-            logger.info("{} {} Stored snapshot (Bucket: {}, Name: {}, Region: {})", projectId, userId, minioResponse.bucket(), minio.getLocation(), minioResponse.region());
-            logger.info("{} {} Removing temp file {}", projectId, userId, tmpFile);
-            return new SnapshotStorageCoordinates(BUCKET_NAME,
-                                          minio.getLocation());
+    /**
+     * Writes and stores a snapshot of a revision that has already been built.  The caller holds
+     * the heap admission for the snapshot.
+     */
+    @Nonnull
+    SnapshotStorageCoordinates storeSnapshot(SnapshotSerializer downloader,
+                                             OWLOntologyManager manager,
+                                             RevisionManager revisionManager,
+                                             RevisionNumber resolvedRevisionNumber,
+                                             SnapshotLocation minio,
+                                             Timer.Sample totalSample) {
+        try {
+            logger.info("{} {} Storing snapshot at {}", projectId, userId, minio.getLocation());
+            // Later revisions can be built from the snapshot once it has been checked against its metadata
+            var userMetadata = deltaExporter.getSnapshotMetadata(format, manager);
+            var uploaded = snapshotUploader.upload(minio, downloader.getArchiveCodec(), userMetadata, cancellation, progress, outputStream -> downloader.writeRevision(manager, outputStream));
+            metrics.recordSnapshotSize(format, uploaded.size());
+            // The index lets clients download a single ontology document from the archive
+            var archiveIndex = downloader.getArchiveIndex();
+            if(archiveIndex.isPresent()) {
+                archiveIndexStore.store(uploaded.objectName(), archiveIndex.get());
+            }
+            else if(uploaded.objectName().equals(minio.getLocation())) {
+                // A snapshot that was stored with another codec may have left an index behind
+                archiveIndexStore.remove(uploaded.objectName());
+            }
+            metrics.stop(totalSample, SnapshotMetrics.Phase.TOTAL, format);
+            var coordinates = new SnapshotStorageCoordinates(BUCKET_NAME, uploaded.objectName());
+            snapshotExistenceCache.putStored(minio.getLocation(), coordinates);
+            deltaExporter.publishChangeSet(projectId, revisionManager, format, resolvedRevisionNumber);
+            return coordinates;
         } catch (IOException e) {
+            // Failures that were caused by cancelling the task are reported as cancellations
+            cancellation.throwIfCancelled();
             throw new UncheckedIOException(e);
         } catch (MinioException | NoSuchAlgorithmException | InvalidKeyException e) {
+            cancellation.throwIfCancelled();
             logger.error("MinIO Error", e);
             throw new RuntimeException(e);
         }
     }
 
-    private void createBucketIfNotExists() throws ErrorResponseException, InsufficientDataException, InternalException, InvalidKeyException, InvalidResponseException, IOException, NoSuchAlgorithmException, ServerException, XmlParserException {
-        if(!minioClient.bucketExists(BucketExistsArgs.builder()
-                                         .bucket(BUCKET_NAME)
-                                                 .build())) {
-            minioClient.makeBucket(MakeBucketArgs.builder().bucket(BUCKET_NAME).build());
+    /**
+     * Loads the revision history and works out the revision that a request for the head revision
+     * should be exported at.  The revision history stays cached for the export.
+     */
+    @Nonnull
+    RevisionNumber resolveHeadRevision() {
+        cancellation.throwIfCancelled();
+        progress.loadingRevisions();
+        var loadSample = metrics.start();
+        var revisionManager = revisionManagerCache.getRevisionManager(projectId, revisionNumber);
+        metrics.stop(loadSample, SnapshotMetrics.Phase.LOAD_REVISIONS, format);
+        return resolveRevisionNumber(revisionManager);
+    }
+
+    /**
+     * Gets the coordinates of the requested snapshot if it has already been stored
+     */
+    Optional<SnapshotStorageCoordinates> getSnapshotCoordinates() {
+        if(revisionNumber.isHead()) {
+            return Optional.empty();
         }
+        return findStoredSnapshot(new SnapshotLocation(projectId, revisionNumber, format));
+    }
+
+    /**
+     * Gets the coordinates of a snapshot that another replica stored just before this replica
+     * claimed it.  The existence cache is bypassed, because it may not have seen the snapshot yet.
+     */
+    Optional<SnapshotStorageCoordinates> findSnapshotStoredBeforeClaim(SnapshotLocation minio) {
+        snapshotExistenceCache.invalidate(minio.getLocation());
+        return findStoredSnapshot(minio);
     }
 
-    private Optional<SnapshotStorageCoordinates> getSnapshotCoordinates() {
+    /**
+     * Gets the coordinates of a snapshot if it has been stored
+     */
+    private Optional<SnapshotStorageCoordinates> findStoredSnapshot(SnapshotLocation minio) {
+        var revision = minio.getRevisionNumber().getValue();
         try {
-            if (!revisionNumber.isHead()) {
-                var minio = new SnapshotLocation(projectId, revisionNumber, format);
-                var name = minio.getLocation();
+            var name = minio.getLocation();
+            // Repeated requests for the same snapshot are answered without asking the object store
+            var cachedCoordinates = snapshotExistenceCache.getStored(name);
+            if(cachedCoordinates.isPresent()) {
+                snapshotAccessRecorder.recordAccess(minio);
+                return cachedCoordinates;
+            }
+            if(snapshotExistenceCache.isKnownMissing(name)) {
+                logger.info("{} {} No existing snapshot for revision {}", projectId, userId, revision);
+                return Optional.empty();
+            }
 
-                var stats = minioClient.statObject(StatObjectArgs.builder().bucket(BUCKET_NAME).object(name).build());
-                if(stats.size() != 0) {
-                    return Optional.of(new SnapshotStorageCoordinates(BUCKET_NAME, name));
-                }
+            var stats = minioClient.statObject(StatObjectArgs.builder().bucket(BUCKET_NAME).object(name).build());
+            var storedCodec = SnapshotUploader.getArchiveCodec(stats.userMetadata());
+            var codec = snapshotSerializerFactory.getArchiveCodec(minio.getFormat());
+            if(storedCodec.isEmpty() || storedCodec.get() != codec) {
+                // The snapshot is stored again with the codec that clients now expect
+                logger.info("{} {} Existing snapshot for revision {} was not packaged as {}.  Recreating it.",
+                            projectId, userId, revision, codec);
+                return Optional.empty();
+            }
+            if(stats.size() != 0) {
+                snapshotAccessRecorder.recordAccess(minio);
+                // Content addressed snapshots are downloaded from the archive that they point to
+                var objectName = SnapshotUploader.getContentLocation(stats.userMetadata()).orElse(name);
+                var coordinates = new SnapshotStorageCoordinates(BUCKET_NAME, objectName);
+                snapshotExistenceCache.putStored(name, coordinates);
+                return Optional.of(coordinates);
             }
             return Optional.empty();
         } catch (ErrorResponseException e) {
             var code = e.errorResponse().code();
             if("NoSuchKey".equals(code) || "NoSuchBucket".equals(code)) {
                 // Expected cache miss: the snapshot has not been created before
-                logger.info("{} {} No existing snapshot for revision {}", projectId, userId, revisionNumber.getValue());
+                logger.info("{} {} No existing snapshot for revision {}", projectId, userId, revision);
+                snapshotExistenceCache.putMissing(minio.getLocation());
             }
             else {
                 logger.error("{} {} An error occurred while checking for an existing snapshot", projectId, userId, e);
@@ -171,21 +369,20 @@ class CreateSnapshotTask implements Supplier<SnapshotStorageCoordinates> {
     }
 
     @Nonnull
-    private RevisionNumber resolveRevisionNumber(RevisionManager revisionManager) {
+    RevisionNumber resolveRevisionNumber(RevisionManager revisionManager) {
+        var currentRevision = revisionManager.getCurrentRevision();
         if(revisionNumber.isHead()) {
-            return revisionManager.getCurrentRevision();
+            return currentRevision;
+        }
+        else if(revisionNumber.compareTo(currentRevision) > 0) {
+            // The head revision reported by the backend may be ahead of the revision history that we
+            // can see.  Never store an older state of the project under a newer revision number.
+            logger.warn("{} {} Requested revision {} is not in the revision history yet.  Using revision {}.",
+                        projectId, userId, revisionNumber.getValue(), currentRevision.getValue());
+            return currentRevision;
         }
         else {
             return revisionNumber;
         }
     }
-
-    @Nonnull
-    private Path getTempFile() throws UncheckedIOException {
-        try {
-            return Files.createTempFile(BUCKET_NAME, null);
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-    }
 }
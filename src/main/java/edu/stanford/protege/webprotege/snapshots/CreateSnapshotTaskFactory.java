@@ -3,28 +3,78 @@ package edu.stanford.protege.webprotege.snapshots;
 import edu.stanford.protege.webprotege.common.DocumentFormat;
 import edu.stanford.protege.webprotege.common.ProjectId;
 import edu.stanford.protege.webprotege.ipc.ExecutionContext;
-import edu.stanford.protege.webprotege.revision.RevisionManagerFactory;
 import edu.stanford.protege.webprotege.revision.RevisionNumber;
 import edu.stanford.protege.webprotege.common.UserId;
 import io.minio.MinioClient;
 
 import javax.annotation.Nonnull;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 final class CreateSnapshotTaskFactory {
 
-  private final RevisionManagerFactory revisionManagerFactory;
+  private final RevisionManagerCache revisionManagerCache;
 
   private final SnapshotSerializerFactory snapshotSerializerFactory;
 
   private final MinioClient minioClient;
 
-  public CreateSnapshotTaskFactory(RevisionManagerFactory revisionManagerFactory,
+  private final InFlightSnapshotRegistry inFlightSnapshotRegistry;
+
+  private final SnapshotUploader snapshotUploader;
+
+  private final PrefixDeclarationsCache prefixDeclarationsCache;
+
+  private final DeltaExporter deltaExporter;
+
+  private final HeapAdmissionController heapAdmissionController;
+
+  private final SnapshotAccessRecorder snapshotAccessRecorder;
+
+  private final SnapshotExistenceCache snapshotExistenceCache;
+
+  private final SnapshotArchiveIndexStore archiveIndexStore;
+
+  private final SnapshotLeaseCoordinator leaseCoordinator;
+
+  private final SnapshotMetrics metrics;
+
+  /**
+   * Writes the additional formats of multi-format snapshots.  The CPU-heavy part of each write
+   * runs on the serializer's compute pool.
+   */
+  private final ExecutorService formatExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                          .name("snapshot-format-", 1)
+                                                                                          .factory());
+
+  public CreateSnapshotTaskFactory(RevisionManagerCache revisionManagerCache,
                                    SnapshotSerializerFactory snapshotSerializerFactory,
-                                   MinioClient minioClient) {
-    this.revisionManagerFactory = revisionManagerFactory;
+                                   MinioClient minioClient,
+                                   InFlightSnapshotRegistry inFlightSnapshotRegistry,
+                                   SnapshotUploader snapshotUploader,
+                                   PrefixDeclarationsCache prefixDeclarationsCache,
+                                   DeltaExporter deltaExporter,
+                                   HeapAdmissionController heapAdmissionController,
+                                   SnapshotAccessRecorder snapshotAccessRecorder,
+                                   SnapshotExistenceCache snapshotExistenceCache,
+                                   SnapshotArchiveIndexStore archiveIndexStore,
+                                   SnapshotLeaseCoordinator leaseCoordinator,
+                                   SnapshotMetrics metrics) {
+    this.revisionManagerCache = revisionManagerCache;
     this.snapshotSerializerFactory = snapshotSerializerFactory;
     this.minioClient = minioClient;
+    this.inFlightSnapshotRegistry = inFlightSnapshotRegistry;
+    this.snapshotUploader = snapshotUploader;
+    this.prefixDeclarationsCache = prefixDeclarationsCache;
+    this.deltaExporter = deltaExporter;
+    this.heapAdmissionController = heapAdmissionController;
+    this.snapshotAccessRecorder = snapshotAccessRecorder;
+    this.snapshotExistenceCache = snapshotExistenceCache;
+    this.archiveIndexStore = archiveIndexStore;
+    this.leaseCoordinator = leaseCoordinator;
+    this.metrics = metrics;
   }
 
   @Nonnull
@@ -33,15 +83,58 @@ final class CreateSnapshotTaskFactory {
                             UserId userId,
                             String projectDisplayName,
                             RevisionNumber revisionNumber,
-                            DocumentFormat format) {
+                            DocumentFormat format,
+                            CancellationToken cancellation,
+                            SnapshotProgress progress) {
     return new CreateSnapshotTask(
-            revisionManagerFactory,
+            revisionManagerCache,
             Objects.requireNonNull(projectId),
             Objects.requireNonNull(userId),
             Objects.requireNonNull(projectDisplayName),
             Objects.requireNonNull(revisionNumber),
             Objects.requireNonNull(format), snapshotSerializerFactory,
             executionContext,
-            minioClient);
+            minioClient,
+            snapshotUploader,
+            prefixDeclarationsCache,
+            deltaExporter,
+            heapAdmissionController,
+            snapshotAccessRecorder,
+            snapshotExistenceCache,
+            archiveIndexStore,
+            leaseCoordinator,
+            Objects.requireNonNull(cancellation),
+            Objects.requireNonNull(progress),
+            metrics);
+  }
+
+  @Nonnull
+  CreateMultiFormatSnapshotTask createMultiFormat(ExecutionContext executionContext,
+                                                  ProjectId projectId,
+                                                  UserId userId,
+                                                  String projectDisplayName,
+                                                  RevisionNumber revisionNumber,
+                                                  List<DocumentFormat> formats,
+                                                  CancellationToken cancellation) {
+    return new CreateMultiFormatSnapshotTask(
+            this,
+            revisionManagerCache,
+            prefixDeclarationsCache,
+            inFlightSnapshotRegistry,
+            heapAdmissionController,
+            leaseCoordinator,
+            formatExecutor,
+            Objects.requireNonNull(executionContext),
+            Objects.requireNonNull(projectId),
+            Objects.requireNonNull(userId),
+            Objects.requireNonNull(projectDisplayName),
+            Objects.requireNonNull(revisionNumber),
+            Objects.requireNonNull(formats),
+            Objects.requireNonNull(cancellation),
+            metrics);
+  }
+
+  public void shutdown() {
+    formatExecutor.shutdownNow();
   }
 }
@@ -0,0 +1,99 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.authorization.BasicCapability;
+import edu.stanford.protege.webprotege.authorization.Capability;
+import edu.stanford.protege.webprotege.authorization.ProjectResource;
+import edu.stanford.protege.webprotege.authorization.Resource;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.ipc.AuthorizedCommandHandler;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.ipc.WebProtegeHandler;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates snapshots of a revision in several formats from a single build of the revision
+ */
+@WebProtegeHandler
+public class CreateSnapshotsCommandHandler implements AuthorizedCommandHandler<CreateSnapshotsRequest, CreateSnapshotsResponse> {
+
+    private static final Capability DOWNLOAD_PROJECT = new BasicCapability("DownloadProject");
+
+    @Nonnull
+    private final SnapshotRequestSubmitter snapshotRequestSubmitter;
+
+    @Nonnull
+    private final Duration taskDeadline;
+
+    @Nonnull
+    private final SnapshotArchiveProperties archiveProperties;
+
+    public CreateSnapshotsCommandHandler(@Nonnull SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                         @Nonnull SnapshotSchedulerProperties schedulerProperties,
+                                         @Nonnull SnapshotArchiveProperties archiveProperties) {
+        this.snapshotRequestSubmitter = snapshotRequestSubmitter;
+        this.taskDeadline = schedulerProperties.getTaskDeadline();
+        this.archiveProperties = archiveProperties;
+    }
+
+    @Nonnull
+    @Override
+    public String getChannelName() {
+        return CreateSnapshotsRequest.CHANNEL;
+    }
+
+    @Override
+    public Class<CreateSnapshotsRequest> getRequestClass() {
+        return CreateSnapshotsRequest.class;
+    }
+
+    @Nonnull
+    @Override
+    public Resource getTargetResource(CreateSnapshotsRequest request) {
+        return ProjectResource.forProject(request.projectId());
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Capability> getRequiredCapabilities() {
+        return Set.of(DOWNLOAD_PROJECT);
+    }
+
+    @Override
+    public Mono<CreateSnapshotsResponse> handleRequest(CreateSnapshotsRequest request,
+                                                       ExecutionContext executionContext) {
+        if(request.documentFormats() == null || request.documentFormats().isEmpty()) {
+            return Mono.error(CommandExecutionException.of(HttpStatus.BAD_REQUEST, "At least one document format is required"));
+        }
+        // The work stops when the caller goes away or the deadline passes, whichever comes first
+        var cancellation = CancellationToken.withDeadline(taskDeadline);
+        var response = snapshotRequestSubmitter.submit(request.projectId(),
+                                                       request.revisionNumber(),
+                                                       request.documentFormats(),
+                                                       request.fileName(),
+                                                       executionContext,
+                                                       cancellation)
+                .thenApply(snapshots -> new CreateSnapshotsResponse(snapshots, getContentTypes(snapshots.keySet())))
+                .whenComplete((snapshots, error) -> cancellation.complete());
+        return Mono.fromFuture(response)
+                   .doOnCancel(() -> cancellation.cancel("The snapshot request was cancelled"));
+    }
+
+    /**
+     * Stored snapshots are recreated when they were packaged with another codec, so every
+     * snapshot has the content type of the codec that is configured for its format
+     */
+    private Map<DocumentFormat, String> getContentTypes(Set<DocumentFormat> formats) {
+        var contentTypes = new EnumMap<DocumentFormat, String>(DocumentFormat.class);
+        formats.forEach(format -> contentTypes.put(format, archiveProperties.getCodec(format).getContentType()));
+        return contentTypes;
+    }
+}
@@ -0,0 +1,28 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.common.ProjectRequest;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+
+import java.util.List;
+
+/**
+ * Requests snapshots of a revision in several formats.  The revision is only built once for all
+ * of the formats.  Each format is stored as its own snapshot.
+ */
+@JsonTypeName(CreateSnapshotsRequest.CHANNEL)
+public record CreateSnapshotsRequest(@JsonProperty("projectId") ProjectId projectId,
+                                     @JsonProperty("revisionNumber") RevisionNumber revisionNumber,
+                                     @JsonProperty("documentFormats") List<DocumentFormat> documentFormats,
+                                     @JsonProperty("fileName") String fileName) implements ProjectRequest<CreateSnapshotsResponse> {
+
+    public static final String CHANNEL = "webprotege.snapshots.CreateSnapshots";
+
+    @Override
+    public String getChannel() {
+        return CHANNEL;
+    }
+}
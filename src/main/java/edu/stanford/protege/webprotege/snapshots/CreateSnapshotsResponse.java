@@ -0,0 +1,19 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.Response;
+
+import java.util.Map;
+
+/**
+ * The snapshots of a revision in several formats
+ * @param snapshots The location of the snapshot in each format
+ * @param contentTypes The content type of the snapshot archive in each format
+ */
+@JsonTypeName(CreateSnapshotsRequest.CHANNEL)
+public record CreateSnapshotsResponse(@JsonProperty("snapshots") Map<DocumentFormat, SnapshotStorageCoordinates> snapshots,
+                                      @JsonProperty("contentTypes") Map<DocumentFormat, String> contentTypes) implements Response {
+
+}
@@ -0,0 +1,45 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for building snapshots from earlier stored snapshots of the same project
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.delta")
+public class DeltaExportProperties {
+
+    private boolean enabled = true;
+
+    private boolean publishChangeSets = false;
+
+    private int searchDepth = 20;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isPublishChangeSets() {
+        return publishChangeSets;
+    }
+
+    public void setPublishChangeSets(boolean publishChangeSets) {
+        this.publishChangeSets = publishChangeSets;
+    }
+
+    /**
+     * The number of revisions before a requested revision whose stored snapshots are looked up
+     */
+    public int getSearchDepth() {
+        return searchDepth;
+    }
+
+    public void setSearchDepth(int searchDepth) {
+        this.searchDepth = searchDepth;
+    }
+}
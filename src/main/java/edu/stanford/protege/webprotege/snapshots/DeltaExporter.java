@@ -0,0 +1,391 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.change.OntologyChange;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.UploadObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.io.StreamDocumentSource;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.MissingImportHandlingStrategy;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyLoaderConfiguration;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.ChangeApplied;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Builds a revision from a stored snapshot of an earlier revision in the same format, replaying
+ * only the revisions after it, and optionally publishes the changes between the two revisions
+ * next to the new snapshot.
+ * <p>
+ * A stored snapshot is only used if reading it back gives the same ontologies that it was
+ * written from, so revisions are only built from OWL/XML and functional syntax snapshots, which
+ * record axioms as they are.  Parsing RDF can change the axioms that it reads, and Manchester
+ * syntax cannot represent every ontology, so revisions in those formats are built from
+ * checkpoints or from the full revision history instead.  Snapshots that contain anonymous
+ * ontologies, and replays that touch axioms with anonymous individuals, are rejected because
+ * their identities are not preserved by the ontology documents.
+ * <p>
+ * A stored snapshot is also checked before it is used.  The number of axioms in each ontology
+ * that a snapshot was written from is recorded in the {@value #AXIOM_COUNTS_METADATA_KEY} metadata
+ * of the snapshot, and the ontologies read from the snapshot must have exactly those numbers of
+ * axioms (renderers may, for example, add declarations for entities that are not declared).
+ * Snapshots that were stored without the axiom counts are not used.  Every change in the revisions
+ * that are replayed must then apply to the ontologies.  A change that adds an axiom that is already
+ * there, or removes one that is not, shows that the snapshot does not match its revision, and the
+ * snapshot is then not used.
+ * <p>
+ * Stored snapshots are found by looking up the snapshots of the {@code searchDepth} revisions
+ * before the requested revision, latest first, through the {@link SnapshotExistenceCache}.
+ */
+public class DeltaExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeltaExporter.class);
+
+    /**
+     * Imports are mapped to a document that cannot be fetched, so that loading a stored snapshot
+     * never goes out to the web.  All of the ontologies in a project are in its snapshots anyway.
+     */
+    private static final IRI UNRESOLVED_IMPORT = IRI.create("urn:webprotege:unresolved-import");
+
+    private static final String CHANGE_SET_CONTENT_TYPE = "text/plain; charset=utf-8";
+
+    /**
+     * The user metadata key under which the axiom counts of the ontologies in a snapshot are
+     * stored.  Object metadata is limited in size, so the value is a digest of the counts rather
+     * than the counts themselves.
+     */
+    public static final String AXIOM_COUNTS_METADATA_KEY = "snapshot-axiom-counts";
+
+    private static final Set<DocumentFormat> LOSSLESS_FORMATS = EnumSet.of(DocumentFormat.OWL_XML,
+                                                                           DocumentFormat.FUNCTIONAL_SYNTAX);
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    @Nonnull
+    private final SnapshotExistenceCache existenceCache;
+
+    @Nonnull
+    private final SnapshotScratchSpace scratchSpace;
+
+    private final boolean enabled;
+
+    private final boolean publishChangeSets;
+
+    private final int searchDepth;
+
+    public DeltaExporter(@Nonnull MinioClient minioClient,
+                         @Nonnull SnapshotExistenceCache existenceCache,
+                         @Nonnull SnapshotScratchSpace scratchSpace,
+                         boolean enabled,
+                         boolean publishChangeSets,
+                         int searchDepth) {
+        this.minioClient = checkNotNull(minioClient);
+        this.existenceCache = checkNotNull(existenceCache);
+        this.scratchSpace = checkNotNull(scratchSpace);
+        this.enabled = enabled;
+        this.publishChangeSets = publishChangeSets;
+        this.searchDepth = Math.max(0, searchDepth);
+    }
+
+    /**
+     * Determines whether revisions can be built from stored snapshots in the specified format
+     */
+    public boolean canBuildFromStoredSnapshot(@Nonnull DocumentFormat format) {
+        return enabled && LOSSLESS_FORMATS.contains(format);
+    }
+
+    /**
+     * Gets the user metadata that is stored with a snapshot in the specified format, so that
+     * later revisions can be built from the snapshot
+     * @param format The format of the snapshot
+     * @param manager The ontologies that the snapshot is written from
+     */
+    @Nonnull
+    public Map<String, String> getSnapshotMetadata(@Nonnull DocumentFormat format,
+                                                   @Nonnull OWLOntologyManager manager) {
+        if(!canBuildFromStoredSnapshot(format)) {
+            return Map.of();
+        }
+        return Map.of(AXIOM_COUNTS_METADATA_KEY, getAxiomCounts(manager));
+    }
+
+    /**
+     * Finds the latest stored snapshot, in the specified format, of a revision that is earlier
+     * than the specified revision and later than another revision.  At most {@code searchDepth}
+     * revisions are looked up.
+     * @param after The revision that the stored snapshot must be later than
+     * @return The revision of the stored snapshot, if any
+     */
+    @Nonnull
+    public Optional<Long> findNearestStoredSnapshot(@Nonnull ProjectId projectId,
+                                                    @Nonnull DocumentFormat format,
+                                                    @Nonnull RevisionNumber revisionNumber,
+                                                    long after) {
+        if(!enabled || format == DocumentFormat.MANCHESTER_SYNTAX || revisionNumber.isHead()) {
+            return Optional.empty();
+        }
+        var earliest = Math.max(after + 1, revisionNumber.getValue() - searchDepth);
+        for(long revision = revisionNumber.getValue() - 1; revision >= earliest; revision--) {
+            if(isStored(new SnapshotLocation(projectId, RevisionNumber.getRevisionNumber(revision), format))) {
+                return Optional.of(revision);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean isStored(SnapshotLocation location) {
+        var name = location.getLocation();
+        if(existenceCache.getStored(name).isPresent()) {
+            return true;
+        }
+        if(existenceCache.isKnownMissing(name)) {
+            return false;
+        }
+        try {
+            var stat = minioClient.statObject(StatObjectArgs.builder().bucket(CreateSnapshotTask.BUCKET_NAME).object(name).build());
+            if(stat.size() == 0) {
+                return false;
+            }
+            var objectName = SnapshotUploader.getContentLocation(stat.userMetadata()).orElse(name);
+            existenceCache.putStored(name, new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, objectName));
+            return true;
+        } catch (ErrorResponseException e) {
+            var code = e.errorResponse().code();
+            if("NoSuchKey".equals(code) || "NoSuchBucket".equals(code)) {
+                existenceCache.putMissing(name);
+            }
+            else {
+                logger.warn("{} Could not look up stored snapshot", location, e);
+            }
+            return false;
+        } catch (Exception e) {
+            logger.warn("{} Could not look up stored snapshot", location, e);
+            return false;
+        }
+    }
+
+    /**
+     * Builds a revision from a stored snapshot of an earlier revision
+     * @param projectId The project
+     * @param revisionManager The revision manager for the project
+     * @param format The format of the stored snapshot
+     * @param storedRevision The revision of the stored snapshot
+     * @param revisionNumber The revision to build
+     * @return An ontology manager containing the ontologies at the specified revision, or empty if
+     * the stored snapshot could not be used or does not match its revision
+     */
+    @Nonnull
+    public Optional<OWLOntologyManager> buildFromStoredSnapshot(@Nonnull ProjectId projectId,
+                                                                @Nonnull RevisionManager revisionManager,
+                                                                @Nonnull DocumentFormat format,
+                                                                long storedRevision,
+                                                                @Nonnull RevisionNumber revisionNumber) {
+        if(!canBuildFromStoredSnapshot(format)) {
+            return Optional.empty();
+        }
+        var storedLocation = new SnapshotLocation(projectId, RevisionNumber.getRevisionNumber(storedRevision), format);
+        try {
+            var stat = minioClient.statObject(StatObjectArgs.builder()
+                                                            .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                            .object(storedLocation.getLocation())
+                                                            .build());
+            var storedAxiomCounts = getMetadata(stat.userMetadata(), AXIOM_COUNTS_METADATA_KEY);
+            if(storedAxiomCounts.isEmpty()) {
+                logger.info("{} Stored snapshot {} was stored without axiom counts.  Not using it.", projectId, storedLocation);
+                return Optional.empty();
+            }
+            var manager = loadStoredSnapshot(storedLocation, stat, format);
+            if(manager.getOntologies().stream().anyMatch(ontology -> ontology.getOntologyID().isAnonymous())) {
+                logger.info("{} Stored snapshot {} contains an anonymous ontology.  Not using it.", projectId, storedLocation);
+                return Optional.empty();
+            }
+            if(!storedAxiomCounts.get().equals(getAxiomCounts(manager))) {
+                logger.warn("{} Stored snapshot {} does not have the axioms of its revision.  Not using it.", projectId, storedLocation);
+                return Optional.empty();
+            }
+            for(long r = storedRevision + 1; r <= revisionNumber.getValue(); r++) {
+                var revision = revisionManager.getRevision(RevisionNumber.getRevisionNumber(r));
+                if(revision.isEmpty()) {
+                    logger.warn("{} Revision {} is missing from the revision history.  Not using stored snapshot {}.",
+                                projectId, r, storedLocation);
+                    return Optional.empty();
+                }
+                var changes = revision.get().getChanges();
+                var touchesAnonymousIndividuals = changes.stream()
+                                                         .filter(change -> change.isAxiomChange())
+                                                         .anyMatch(change -> !change.getAxiomOrThrow().getAnonymousIndividuals().isEmpty());
+                if(touchesAnonymousIndividuals) {
+                    logger.info("{} Revision {} changes axioms with anonymous individuals.  Not using stored snapshot {}.",
+                                projectId, r, storedLocation);
+                    return Optional.empty();
+                }
+                if(!applyEveryChange(manager, changes)) {
+                    logger.warn("{} Revision {} does not apply to stored snapshot {}.  Not using it.",
+                                projectId, r, storedLocation);
+                    return Optional.empty();
+                }
+            }
+            logger.info("{} Built revision {} from stored snapshot {} ({} revisions replayed)",
+                        projectId, revisionNumber.getValue(), storedLocation, revisionNumber.getValue() - storedRevision);
+            return Optional.of(manager);
+        } catch (Exception e) {
+            logger.warn("{} Could not build revision {} from stored snapshot {}",
+                        projectId, revisionNumber.getValue(), storedLocation, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Publishes the changes between the latest earlier stored snapshot in the specified format and
+     * the specified revision.  The change set is stored next to the snapshot of the revision, as
+     * {@code <ext>.changes-since-<revision>}.  Failures are logged and otherwise ignored.
+     */
+    public void publishChangeSet(@Nonnull ProjectId projectId,
+                                 @Nonnull RevisionManager revisionManager,
+                                 @Nonnull DocumentFormat format,
+                                 @Nonnull RevisionNumber revisionNumber) {
+        if(!publishChangeSets || revisionNumber.isHead()) {
+            return;
+        }
+        var storedRevision = findNearestStoredSnapshot(projectId, format, revisionNumber, 0);
+        if(storedRevision.isEmpty()) {
+            return;
+        }
+        var location = new SnapshotLocation(projectId, revisionNumber, format).getLocation()
+                + ".changes-since-" + storedRevision.get();
+        try (var scratchFile = scratchSpace.createScratchFile()) {
+            try (var writer = new BufferedWriter(new OutputStreamWriter(scratchFile.newOutputStream(), StandardCharsets.UTF_8))) {
+                writer.write("# Changes to project %s from revision %d to revision %d%n".formatted(projectId.id(), storedRevision.get(), revisionNumber.getValue()));
+                for(long r = storedRevision.get() + 1; r <= revisionNumber.getValue(); r++) {
+                    var revision = revisionManager.getRevision(RevisionNumber.getRevisionNumber(r));
+                    if(revision.isEmpty()) {
+                        logger.warn("{} Revision {} is missing from the revision history.  Not publishing change set.", projectId, r);
+                        return;
+                    }
+                    writer.write("# Revision %d%n".formatted(r));
+                    for(var change : revision.get().getChanges()) {
+                        var record = change.toOwlOntologyChangeRecord();
+                        writer.write(record.getOntologyID() + "\t" + record.getData());
+                        writer.newLine();
+                    }
+                }
+            }
+            minioClient.uploadObject(UploadObjectArgs.builder()
+                                                     .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                     .object(location)
+                                                     .filename(scratchFile.getPath().toString())
+                                                     .contentType(CHANGE_SET_CONTENT_TYPE)
+                                                     .build());
+            logger.info("{} Published change set {}", projectId, location);
+        } catch (Exception e) {
+            logger.warn("{} Could not publish change set {}", projectId, location, e);
+        }
+    }
+
+    /**
+     * Gets a digest of the number of axioms in each non-empty ontology in the specified manager
+     */
+    static String getAxiomCounts(OWLOntologyManager manager) {
+        var counts = new TreeMap<String, Integer>();
+        for(var ontology : manager.getOntologies()) {
+            if(ontology.getAxiomCount() != 0) {
+                counts.put(ontology.getOntologyID().toString(), ontology.getAxiomCount());
+            }
+        }
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            counts.forEach((ontologyId, count) -> digest.update((ontologyId + "\t" + count + "\n").getBytes(StandardCharsets.UTF_8)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Optional<String> getMetadata(Map<String, String> userMetadata, String key) {
+        // Metadata keys are case-insensitive
+        return userMetadata.entrySet()
+                           .stream()
+                           .filter(entry -> entry.getKey().toLowerCase(Locale.ROOT).endsWith(key))
+                           .map(Map.Entry::getValue)
+                           .findFirst();
+    }
+
+    /**
+     * Applies changes one at a time, stopping at the first change that does not change the
+     * ontologies.  Ontologies that are referred to by the changes, but do not exist yet, are
+     * created.
+     * @return true if every change was applied
+     */
+    private static boolean applyEveryChange(OWLOntologyManager manager,
+                                            List<OntologyChange> changes) throws OWLOntologyCreationException {
+        for(var change : changes) {
+            var record = change.toOwlOntologyChangeRecord();
+            if(!manager.contains(record.getOntologyID())) {
+                manager.createOntology(record.getOntologyID());
+            }
+            if(manager.applyChange(record.createOntologyChange(manager)) != ChangeApplied.SUCCESSFULLY) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private OWLOntologyManager loadStoredSnapshot(SnapshotLocation location,
+                                                  StatObjectResponse stat,
+                                                  DocumentFormat format) throws Exception {
+        var name = location.getLocation();
+        var codec = SnapshotUploader.getArchiveCodec(stat.userMetadata())
+                                    .orElseThrow(() -> new IOException("Unknown snapshot codec"));
+        var archiveName = SnapshotUploader.getContentLocation(stat.userMetadata()).orElse(name);
+        var manager = OWLManager.createConcurrentOWLOntologyManager();
+        manager.getIRIMappers().add(ontologyIri -> UNRESOLVED_IMPORT);
+        var loaderConfiguration = new OWLOntologyLoaderConfiguration()
+                .setMissingImportHandlingStrategy(MissingImportHandlingStrategy.SILENT);
+        var getObjectArgs = GetObjectArgs.builder().bucket(CreateSnapshotTask.BUCKET_NAME).object(archiveName).build();
+        try (var archive = codec.openArchive(new BufferedInputStream(minioClient.getObject(getObjectArgs)))) {
+            for(var entry = archive.getNextEntry(); entry != null; entry = archive.getNextEntry()) {
+                if(entry.isDirectory()) {
+                    continue;
+                }
+                // The document source reads the entry up front, so the archive stream is not closed
+                var documentSource = new StreamDocumentSource(archive,
+                                                              IRI.create("urn:webprotege:snapshot:" + entry.getName()),
+                                                              format.getDocumentFormat(),
+                                                              format.getMimeType());
+                manager.loadOntologyFromOntologyDocument(documentSource, loaderConfiguration);
+            }
+        }
+        return manager;
+    }
+}
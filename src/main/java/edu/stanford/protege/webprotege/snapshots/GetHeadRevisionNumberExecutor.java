@@ -0,0 +1,21 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.ipc.CommandExecutor;
+import edu.stanford.protege.webprotege.ipc.impl.CommandExecutorImpl;
+import edu.stanford.protege.webprotege.revision.GetHeadRevisionNumberAction;
+import edu.stanford.protege.webprotege.revision.GetHeadRevisionNumberResult;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration that provides a CommandExecutor bean for getting the head
+ * revision number of a project from the backend service via RabbitMQ.
+ */
+@Configuration
+public class GetHeadRevisionNumberExecutor {
+
+    @Bean
+    public CommandExecutor<GetHeadRevisionNumberAction, GetHeadRevisionNumberResult> headRevisionNumberExecutor() {
+        return new CommandExecutorImpl<>(GetHeadRevisionNumberResult.class);
+    }
+}
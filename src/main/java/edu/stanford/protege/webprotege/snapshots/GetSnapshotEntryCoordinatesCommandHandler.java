@@ -0,0 +1,106 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.authorization.BasicCapability;
+import edu.stanford.protege.webprotege.authorization.Capability;
+import edu.stanford.protege.webprotege.authorization.ProjectResource;
+import edu.stanford.protege.webprotege.authorization.Resource;
+import edu.stanford.protege.webprotege.ipc.AuthorizedCommandHandler;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.ipc.WebProtegeHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Looks up a single ontology document in the index of a zip snapshot, so that large
+ * multi-ontology projects can be downloaded piecemeal
+ */
+@WebProtegeHandler
+public class GetSnapshotEntryCoordinatesCommandHandler implements AuthorizedCommandHandler<GetSnapshotEntryCoordinatesRequest, GetSnapshotEntryCoordinatesResponse> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GetSnapshotEntryCoordinatesCommandHandler.class);
+
+    private static final Capability DOWNLOAD_PROJECT = new BasicCapability("DownloadProject");
+
+    @Nonnull
+    private final SnapshotRequestSubmitter snapshotRequestSubmitter;
+
+    @Nonnull
+    private final SnapshotArchiveIndexStore archiveIndexStore;
+
+    @Nonnull
+    private final Duration taskDeadline;
+
+    public GetSnapshotEntryCoordinatesCommandHandler(@Nonnull SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                                     @Nonnull SnapshotArchiveIndexStore archiveIndexStore,
+                                                     @Nonnull SnapshotSchedulerProperties schedulerProperties) {
+        this.snapshotRequestSubmitter = snapshotRequestSubmitter;
+        this.archiveIndexStore = archiveIndexStore;
+        this.taskDeadline = schedulerProperties.getTaskDeadline();
+    }
+
+    @Nonnull
+    @Override
+    public String getChannelName() {
+        return GetSnapshotEntryCoordinatesRequest.CHANNEL;
+    }
+
+    @Override
+    public Class<GetSnapshotEntryCoordinatesRequest> getRequestClass() {
+        return GetSnapshotEntryCoordinatesRequest.class;
+    }
+
+    @Nonnull
+    @Override
+    public Resource getTargetResource(GetSnapshotEntryCoordinatesRequest request) {
+        return ProjectResource.forProject(request.projectId());
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Capability> getRequiredCapabilities() {
+        return Set.of(DOWNLOAD_PROJECT);
+    }
+
+    @Override
+    public Mono<GetSnapshotEntryCoordinatesResponse> handleRequest(GetSnapshotEntryCoordinatesRequest request,
+                                                                   ExecutionContext executionContext) {
+        // The work stops when the caller goes away or the deadline passes, whichever comes first
+        var cancellation = CancellationToken.withDeadline(taskDeadline);
+        var response = snapshotRequestSubmitter.submit(request.projectId(),
+                                                       request.revisionNumber(),
+                                                       request.documentFormat(),
+                                                       request.fileName(),
+                                                       executionContext,
+                                                       cancellation,
+                                                       new SnapshotProgress())
+                .thenApply(coordinates -> new GetSnapshotEntryCoordinatesResponse(coordinates, getEntry(request, coordinates)))
+                .whenComplete((entry, error) -> cancellation.complete());
+        return Mono.fromFuture(response)
+                   .doOnCancel(() -> cancellation.cancel("The snapshot request was cancelled"));
+    }
+
+    private SnapshotArchiveIndex.Entry getEntry(GetSnapshotEntryCoordinatesRequest request,
+                                                SnapshotStorageCoordinates coordinates) {
+        try {
+            var index = archiveIndexStore.load(coordinates.name())
+                                         .orElseThrow(() -> CommandExecutionException.of(HttpStatus.NOT_FOUND,
+                                                                                         "Only zip snapshots can be read an entry at a time"));
+            return index.getEntry(request.entryName())
+                        .orElseThrow(() -> CommandExecutionException.of(HttpStatus.NOT_FOUND,
+                                                                        "The snapshot does not contain " + request.entryName()));
+        } catch (CommandExecutionException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("{} Could not load the index of {}", request.projectId(), coordinates.name(), e);
+            throw CommandExecutionException.of(HttpStatus.INTERNAL_SERVER_ERROR, "The index of the snapshot could not be loaded");
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.common.ProjectRequest;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+
+/**
+ * Gets the position of a single ontology document in a zip snapshot, so that the document can be
+ * downloaded with a ranged GET on the stored archive.  The snapshot is created if it has not been
+ * stored yet.
+ * @param entryName The name of the ontology document.  This may be the full entry name or the
+ *                  name of the document within the folder of the archive.
+ */
+@JsonTypeName(GetSnapshotEntryCoordinatesRequest.CHANNEL)
+public record GetSnapshotEntryCoordinatesRequest(@JsonProperty("projectId") ProjectId projectId,
+                                                 @JsonProperty("revisionNumber") RevisionNumber revisionNumber,
+                                                 @JsonProperty("documentFormat") DocumentFormat documentFormat,
+                                                 @JsonProperty("fileName") String fileName,
+                                                 @JsonProperty("entryName") String entryName) implements ProjectRequest<GetSnapshotEntryCoordinatesResponse> {
+
+    public static final String CHANNEL = "webprotege.snapshots.GetSnapshotEntryCoordinates";
+
+    @Override
+    public String getChannel() {
+        return CHANNEL;
+    }
+}
@@ -0,0 +1,17 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.Response;
+
+/**
+ * The position of an ontology document in a stored zip snapshot
+ * @param snapshotStorageCoordinates The location of the archive
+ * @param entry The entry.  The document is read by requesting the range of bytes from the data
+ *              offset, for the compressed size, and inflating them if they are DEFLATE compressed.
+ */
+@JsonTypeName(GetSnapshotEntryCoordinatesRequest.CHANNEL)
+public record GetSnapshotEntryCoordinatesResponse(@JsonProperty("snapshotStorageCoordinates") SnapshotStorageCoordinates snapshotStorageCoordinates,
+                                                  @JsonProperty("entry") SnapshotArchiveIndex.Entry entry) implements Response {
+
+}
@@ -0,0 +1,118 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.authorization.BasicCapability;
+import edu.stanford.protege.webprotege.authorization.Capability;
+import edu.stanford.protege.webprotege.authorization.ProjectResource;
+import edu.stanford.protege.webprotege.authorization.Resource;
+import edu.stanford.protege.webprotege.ipc.AuthorizedCommandHandler;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.ipc.WebProtegeHandler;
+import org.springframework.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * Reports the phase and progress of a snapshot job, and the location of the snapshot once the job
+ * is complete.  This is cheap, so callers can poll it.
+ * <p>
+ * Jobs that were submitted to another replica, or to a replica that has since restarted, are
+ * reported from their stored record.  Their progress is only known once they have finished.  A job
+ * whose record has not been finished within the task deadline can no longer be running, so it is
+ * reported as failed.
+ */
+@WebProtegeHandler
+public class GetSnapshotJobStatusCommandHandler implements AuthorizedCommandHandler<GetSnapshotJobStatusRequest, GetSnapshotJobStatusResponse> {
+
+    private static final Logger logger = LoggerFactory.getLogger(GetSnapshotJobStatusCommandHandler.class);
+
+    private static final Capability DOWNLOAD_PROJECT = new BasicCapability("DownloadProject");
+
+    @Nonnull
+    private final SnapshotJobRegistry snapshotJobRegistry;
+
+    @Nonnull
+    private final SnapshotJobStore snapshotJobStore;
+
+    @Nonnull
+    private final Duration taskDeadline;
+
+    public GetSnapshotJobStatusCommandHandler(@Nonnull SnapshotJobRegistry snapshotJobRegistry,
+                                              @Nonnull SnapshotJobStore snapshotJobStore,
+                                              @Nonnull SnapshotSchedulerProperties schedulerProperties) {
+        this.snapshotJobRegistry = snapshotJobRegistry;
+        this.snapshotJobStore = snapshotJobStore;
+        this.taskDeadline = schedulerProperties.getTaskDeadline();
+    }
+
+    @Nonnull
+    @Override
+    public String getChannelName() {
+        return GetSnapshotJobStatusRequest.CHANNEL;
+    }
+
+    @Override
+    public Class<GetSnapshotJobStatusRequest> getRequestClass() {
+        return GetSnapshotJobStatusRequest.class;
+    }
+
+    @Nonnull
+    @Override
+    public Resource getTargetResource(GetSnapshotJobStatusRequest request) {
+        return ProjectResource.forProject(request.projectId());
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Capability> getRequiredCapabilities() {
+        return Set.of(DOWNLOAD_PROJECT);
+    }
+
+    @Override
+    public Mono<GetSnapshotJobStatusResponse> handleRequest(GetSnapshotJobStatusRequest request,
+                                                            ExecutionContext executionContext) {
+        // The permission check is for the project in the request, so jobs of other projects are
+        // reported as not found
+        var job = snapshotJobRegistry.getJob(request.jobId())
+                                     .filter(j -> j.getProjectId().equals(request.projectId()));
+        if(job.isPresent()) {
+            return Mono.just(job.get().getStatus());
+        }
+        try {
+            return snapshotJobStore.load(request.jobId())
+                                   .filter(record -> record.projectId().equals(request.projectId()))
+                                   .map(record -> Mono.just(getStatus(record)))
+                                   .orElseGet(() -> Mono.error(CommandExecutionException.of(HttpStatus.NOT_FOUND,
+                                                                                            "Unknown snapshot job: " + request.jobId())));
+        } catch (Exception e) {
+            logger.error("{} Could not load the status of snapshot job {}", request.projectId(), request.jobId(), e);
+            return Mono.error(CommandExecutionException.of(HttpStatus.INTERNAL_SERVER_ERROR,
+                                                           "The status of the snapshot job could not be loaded"));
+        }
+    }
+
+    private GetSnapshotJobStatusResponse getStatus(SnapshotJobRecord record) {
+        var status = record.status();
+        var deadline = Instant.ofEpochMilli(record.submittedAt()).plus(taskDeadline);
+        if(status.phase().isFinished() || Instant.now().isBefore(deadline)) {
+            return status;
+        }
+        // The replica that ran the job stopped before it could record the outcome
+        return new GetSnapshotJobStatusResponse(status.jobId(), SnapshotJobPhase.FAILED,
+                                                status.ontologiesSerialized(),
+                                                status.ontologyCount(),
+                                                status.bytesWritten(),
+                                                status.uploadPart(),
+                                                null,
+                                                null,
+                                                null,
+                                                "The snapshot job did not finish before its deadline");
+    }
+}
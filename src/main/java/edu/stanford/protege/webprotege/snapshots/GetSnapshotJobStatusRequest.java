@@ -0,0 +1,21 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.common.ProjectRequest;
+
+/**
+ * Gets the status of a job that was started with a {@link SubmitSnapshotJobRequest}
+ */
+@JsonTypeName(GetSnapshotJobStatusRequest.CHANNEL)
+public record GetSnapshotJobStatusRequest(@JsonProperty("projectId") ProjectId projectId,
+                                          @JsonProperty("jobId") String jobId) implements ProjectRequest<GetSnapshotJobStatusResponse> {
+
+    public static final String CHANNEL = "webprotege.snapshots.GetSnapshotJobStatus";
+
+    @Override
+    public String getChannel() {
+        return CHANNEL;
+    }
+}
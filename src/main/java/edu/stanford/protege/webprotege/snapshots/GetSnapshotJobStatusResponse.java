@@ -0,0 +1,35 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.Response;
+
+import javax.annotation.Nullable;
+
+/**
+ * The status of a snapshot job
+ * @param jobId The id of the job
+ * @param phase The phase that the job is in
+ * @param ontologiesSerialized The number of ontologies that have been serialized
+ * @param ontologyCount The number of ontologies in the snapshot, or zero if this is not known yet
+ * @param bytesWritten The size of the snapshot archive written so far
+ * @param uploadPart The part of the snapshot archive that is being uploaded, or zero if not known
+ * @param estimatedSecondsRemaining An estimate of the time until the ontologies have been
+ *                                  serialized, if there is enough information to make one
+ * @param snapshotStorageCoordinates The location of the snapshot once the job is complete
+ * @param contentType The content type of the snapshot archive once the job is complete
+ * @param errorMessage The reason the job failed or was cancelled
+ */
+@JsonTypeName(GetSnapshotJobStatusRequest.CHANNEL)
+public record GetSnapshotJobStatusResponse(@JsonProperty("jobId") String jobId,
+                                           @JsonProperty("phase") SnapshotJobPhase phase,
+                                           @JsonProperty("ontologiesSerialized") int ontologiesSerialized,
+                                           @JsonProperty("ontologyCount") int ontologyCount,
+                                           @JsonProperty("bytesWritten") long bytesWritten,
+                                           @JsonProperty("uploadPart") int uploadPart,
+                                           @JsonProperty("estimatedSecondsRemaining") @Nullable Long estimatedSecondsRemaining,
+                                           @JsonProperty("snapshotStorageCoordinates") @Nullable SnapshotStorageCoordinates snapshotStorageCoordinates,
+                                           @JsonProperty("contentType") @Nullable String contentType,
+                                           @JsonProperty("errorMessage") @Nullable String errorMessage) implements Response {
+
+}
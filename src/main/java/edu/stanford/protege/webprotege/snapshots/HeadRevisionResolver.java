@@ -0,0 +1,64 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutor;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.revision.GetHeadRevisionNumberAction;
+import edu.stanford.protege.webprotege.revision.GetHeadRevisionNumberResult;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Resolves requests for the HEAD revision of a project to a concrete revision number by asking the
+ * backend for the head revision number.  This is much cheaper than loading the project's revision
+ * history, and it means that HEAD requests can be looked up in the same storage key space as
+ * requests for specific revisions.
+ */
+public class HeadRevisionResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeadRevisionResolver.class);
+
+    private final CommandExecutor<GetHeadRevisionNumberAction, GetHeadRevisionNumberResult> headRevisionNumberExecutor;
+
+    public HeadRevisionResolver(@Nonnull CommandExecutor<GetHeadRevisionNumberAction, GetHeadRevisionNumberResult> headRevisionNumberExecutor) {
+        this.headRevisionNumberExecutor = requireNonNull(headRevisionNumberExecutor);
+    }
+
+    /**
+     * Resolves the specified revision number.
+     * @param projectId The project
+     * @param revisionNumber The requested revision number
+     * @param executionContext The context of the request
+     * @return A future for the concrete revision number.  If {@code revisionNumber} is not the HEAD
+     * revision then it is returned as is.  If the head revision cannot be obtained from the backend
+     * then the future completes with the HEAD revision number, which is resolved later on, when the
+     * revision history is loaded.
+     */
+    @Nonnull
+    public CompletableFuture<RevisionNumber> resolve(@Nonnull ProjectId projectId,
+                                                     @Nonnull RevisionNumber revisionNumber,
+                                                     @Nonnull ExecutionContext executionContext) {
+        if(!revisionNumber.isHead()) {
+            return CompletableFuture.completedFuture(revisionNumber);
+        }
+        try {
+            return headRevisionNumberExecutor.execute(new GetHeadRevisionNumberAction(projectId), executionContext)
+                                             .thenApply(GetHeadRevisionNumberResult::revisionNumber)
+                                             .exceptionally(e -> {
+                                                 logger.warn("{} Could not get the head revision number from the backend ({}).  The head revision will be resolved from the revision history.",
+                                                             projectId, e.getMessage());
+                                                 return revisionNumber;
+                                             });
+        } catch (RuntimeException e) {
+            logger.warn("{} Could not request the head revision number from the backend ({}).  The head revision will be resolved from the revision history.",
+                        projectId, e.getMessage());
+            return CompletableFuture.completedFuture(revisionNumber);
+        }
+    }
+}
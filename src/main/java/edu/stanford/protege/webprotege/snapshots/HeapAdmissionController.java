@@ -0,0 +1,314 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+import javax.annotation.Nonnull;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Limits the heap that concurrent exports may use.
+ * <p>
+ * Before an export builds and renders its ontologies it estimates the heap that it needs and
+ * reserves that much of a global heap budget.  Exports that do not fit wait, in arrival order,
+ * until enough of the budget has been released.  An export that waits for longer than the maximum
+ * wait is rejected with {@link HttpStatus#SERVICE_UNAVAILABLE}.  An export whose estimate is larger
+ * than the whole budget is admitted when nothing else is running, so that it runs on its own.
+ * <p>
+ * New exports are also held back while the heap that was still in use after the last garbage
+ * collection is above the pressure threshold, unless nothing else is running.
+ */
+public class HeapAdmissionController {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapAdmissionController.class);
+
+    /**
+     * How often waiting exports check whether the heap pressure has gone down
+     */
+    private static final long PRESSURE_POLL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final boolean enabled;
+
+    private final long budget;
+
+    private final long baseEstimate;
+
+    private final long bytesPerChange;
+
+    private final Duration maxWait;
+
+    private final long pressureLimit;
+
+    private final LongSupplier heapUsedAfterGc;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    private final ArrayDeque<Object> waiting = new ArrayDeque<>();
+
+    private long reserved = 0;
+
+    private final Counter rejectedCounter;
+
+    public HeapAdmissionController(boolean enabled,
+                                   long budget,
+                                   long baseEstimate,
+                                   long bytesPerChange,
+                                   @Nonnull Duration maxWait,
+                                   double pressureThreshold,
+                                   @Nonnull MeterRegistry meterRegistry) {
+        this(enabled, budget, baseEstimate, bytesPerChange, maxWait,
+             (long) (Runtime.getRuntime().maxMemory() * pressureThreshold),
+             HeapAdmissionController::getHeapUsedAfterLastGc,
+             meterRegistry);
+    }
+
+    HeapAdmissionController(boolean enabled,
+                            long budget,
+                            long baseEstimate,
+                            long bytesPerChange,
+                            @Nonnull Duration maxWait,
+                            long pressureLimit,
+                            @Nonnull LongSupplier heapUsedAfterGc,
+                            @Nonnull MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.budget = budget;
+        this.baseEstimate = baseEstimate;
+        this.bytesPerChange = bytesPerChange;
+        this.maxWait = checkNotNull(maxWait);
+        this.pressureLimit = pressureLimit;
+        this.heapUsedAfterGc = checkNotNull(heapUsedAfterGc);
+        Gauge.builder("webprotege.snapshots.admission.reserved", this, HeapAdmissionController::getReserved)
+             .description("The heap that is reserved by running exports")
+             .baseUnit("bytes")
+             .register(meterRegistry);
+        Gauge.builder("webprotege.snapshots.admission.waiting", this, HeapAdmissionController::getWaitingCount)
+             .description("The number of exports waiting for heap")
+             .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("webprotege.snapshots.admission.rejected")
+                                      .description("The number of exports rejected because heap did not become available")
+                                      .register(meterRegistry);
+        if(enabled) {
+            logger.info("Heap admission control is enabled (budget: {} MB, pressure limit: {} MB)",
+                        budget / (1024 * 1024), pressureLimit / (1024 * 1024));
+        }
+    }
+
+    /**
+     * Waits until there is enough heap for exporting the specified revision
+     * @param projectId The project
+     * @param revisionManager The revision manager for the project, which is used to estimate the
+     *                        size of the revision
+     * @param revisionNumber The revision that will be exported
+     * @param cancellation Stops the wait
+     * @return The admission, which must be closed when the export has finished with the heap
+     * @throws CommandExecutionException if the heap did not become available within the maximum wait
+     * @throws SnapshotCancelledException if the export was cancelled while it was waiting
+     */
+    @Nonnull
+    public Admission admit(@Nonnull ProjectId projectId,
+                           @Nonnull RevisionManager revisionManager,
+                           @Nonnull RevisionNumber revisionNumber,
+                           @Nonnull CancellationToken cancellation) {
+        if(!enabled) {
+            return () -> {};
+        }
+        return acquire(projectId, estimate(revisionManager, revisionNumber), cancellation);
+    }
+
+    /**
+     * Reserves heap for writing another format of a revision that has already been admitted and
+     * built, if it is available straight away.  Only the rendering needs more heap, so the base
+     * estimate is reserved.  Nothing is reserved while other exports are waiting for heap.
+     * @param projectId The project
+     * @return The admission, or empty if the format should wait for the formats that are already
+     * being written
+     */
+    @Nonnull
+    public Optional<Admission> tryAdmitAdditionalFormat(@Nonnull ProjectId projectId) {
+        if(!enabled) {
+            return Optional.of(() -> {});
+        }
+        var required = Math.min(baseEstimate, budget);
+        lock.lock();
+        try {
+            if(!waiting.isEmpty() || !canAdmit(required)) {
+                return Optional.empty();
+            }
+            reserved += required;
+            logger.info("{} Admitted additional format (estimated heap: {} MB, reserved: {} MB)",
+                        projectId, required / (1024 * 1024), reserved / (1024 * 1024));
+            var released = new AtomicBoolean();
+            return Optional.of(() -> {
+                if(released.compareAndSet(false, true)) {
+                    release(required);
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Estimates the heap needed to export a revision.  Every change in the revision history up to
+     * the revision is counted, which overestimates projects that have removed a lot of axioms.
+     */
+    long estimate(@Nonnull RevisionManager revisionManager,
+                  @Nonnull RevisionNumber revisionNumber) {
+        var changeCount = revisionManager.getRevisionSummaries()
+                                         .stream()
+                                         .filter(summary -> revisionNumber.isHead() || summary.getRevisionNumber().compareTo(revisionNumber) <= 0)
+                                         .mapToLong(summary -> summary.getChangeCount())
+                                         .sum();
+        return baseEstimate + changeCount * bytesPerChange;
+    }
+
+    @Nonnull
+    Admission acquire(@Nonnull ProjectId projectId,
+                      long estimate,
+                      @Nonnull CancellationToken cancellation) {
+        // An export that is bigger than the budget can only run on its own
+        var required = Math.min(estimate, budget);
+        var ticket = new Object();
+        var registration = cancellation.onCancel(this::signalChanged);
+        lock.lock();
+        try {
+            waiting.addLast(ticket);
+            var deadline = System.nanoTime() + maxWait.toNanos();
+            var loggedWait = false;
+            while(waiting.peekFirst() != ticket || !canAdmit(required)) {
+                cancellation.throwIfCancelled();
+                var remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    rejectedCounter.increment();
+                    logger.warn("{} Rejecting export.  Heap did not become available within {} seconds (required: {} MB, reserved: {} MB).",
+                                projectId, maxWait.toSeconds(), required / (1024 * 1024), reserved / (1024 * 1024));
+                    throw CommandExecutionException.of(HttpStatus.SERVICE_UNAVAILABLE,
+                                                       "The snapshot service does not have enough memory available.  Please try again later.");
+                }
+                if(!loggedWait) {
+                    logger.info("{} Waiting for heap (required: {} MB, reserved: {} MB, queued: {})",
+                                projectId, required / (1024 * 1024), reserved / (1024 * 1024), waiting.size() - 1);
+                    loggedWait = true;
+                }
+                changed.awaitNanos(Math.min(remaining, PRESSURE_POLL_NANOS));
+            }
+            reserved += required;
+            logger.info("{} Admitted export (estimated heap: {} MB, reserved: {} MB)",
+                        projectId, estimate / (1024 * 1024), reserved / (1024 * 1024));
+            var released = new AtomicBoolean();
+            return () -> {
+                if(released.compareAndSet(false, true)) {
+                    release(required);
+                }
+            };
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SnapshotCancelledException("Interrupted while waiting for heap");
+        } finally {
+            waiting.remove(ticket);
+            changed.signalAll();
+            lock.unlock();
+            registration.close();
+        }
+    }
+
+    /**
+     * Gets the heap, in bytes, that is reserved by running exports
+     */
+    public long getReserved() {
+        lock.lock();
+        try {
+            return reserved;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of exports that are waiting for heap
+     */
+    public int getWaitingCount() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean canAdmit(long required) {
+        if(reserved == 0) {
+            return true;
+        }
+        return reserved + required <= budget && heapUsedAfterGc.getAsLong() <= pressureLimit;
+    }
+
+    private void release(long required) {
+        lock.lock();
+        try {
+            reserved -= required;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void signalChanged() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the heap that was still in use after the most recent garbage collection of each heap pool
+     */
+    private static long getHeapUsedAfterLastGc() {
+        return ManagementFactory.getMemoryPoolMXBeans()
+                                .stream()
+                                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported())
+                                .map(MemoryPoolMXBean::getCollectionUsage)
+                                .filter(Objects::nonNull)
+                                .mapToLong(MemoryUsage::getUsed)
+                                .sum();
+    }
+
+    /**
+     * Heap that has been reserved by an export
+     */
+    @FunctionalInterface
+    public interface Admission extends AutoCloseable {
+
+        /**
+         * Releases the reserved heap
+         */
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,89 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the {@link HeapAdmissionController}.
+ * <p>
+ * The heap that an export needs is estimated from the number of changes in the project's revision
+ * history, which is an upper bound on the number of axioms in the exported revision.  A heap budget
+ * of zero means three quarters of the maximum heap size.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.admission")
+public class HeapAdmissionProperties {
+
+    private boolean enabled = true;
+
+    private DataSize heapBudget = DataSize.ofBytes(0);
+
+    private DataSize baseEstimate = DataSize.ofMegabytes(64);
+
+    private DataSize bytesPerChange = DataSize.ofKilobytes(2);
+
+    private Duration maxWait = Duration.ofMinutes(5);
+
+    private double pressureThreshold = 0.85;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public DataSize getHeapBudget() {
+        return heapBudget;
+    }
+
+    public void setHeapBudget(DataSize heapBudget) {
+        this.heapBudget = heapBudget;
+    }
+
+    public DataSize getBaseEstimate() {
+        return baseEstimate;
+    }
+
+    public void setBaseEstimate(DataSize baseEstimate) {
+        this.baseEstimate = baseEstimate;
+    }
+
+    public DataSize getBytesPerChange() {
+        return bytesPerChange;
+    }
+
+    public void setBytesPerChange(DataSize bytesPerChange) {
+        this.bytesPerChange = bytesPerChange;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public double getPressureThreshold() {
+        return pressureThreshold;
+    }
+
+    public void setPressureThreshold(double pressureThreshold) {
+        this.pressureThreshold = pressureThreshold;
+    }
+
+    /**
+     * Gets the heap budget in bytes, working it out from the maximum heap size if it is not set
+     */
+    public long getEffectiveHeapBudget() {
+        if(heapBudget.toBytes() > 0) {
+            return heapBudget.toBytes();
+        }
+        return Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+}
@@ -0,0 +1,137 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Keeps track of the snapshots that are currently being generated, keyed by their
+ * {@link SnapshotLocation}.  A request for a snapshot that is already being generated attaches to
+ * the running export instead of starting another one, so N identical requests cost one export.
+ * <p>
+ * Each export has its own {@link CancellationToken}, which is cancelled once every request that
+ * is attached to the export has been cancelled.  Requests that attach to a running export follow
+ * its {@link SnapshotProgress}.
+ */
+public class InFlightSnapshotRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(InFlightSnapshotRegistry.class);
+
+    private final ConcurrentMap<SnapshotLocation, InFlightExport> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Gets the result of the export for the specified location, starting the export if it is not
+     * already running.
+     * @param location The location of the snapshot
+     * @param cancellation The cancellation token of the request.  If this is cancelled then the
+     *                     returned future fails, and the export is cancelled if no other requests
+     *                     are attached to it.
+     * @param progress The progress of the request.  If the export is started then this is the
+     *                 progress that the export reports to, otherwise it follows the progress of the
+     *                 running export.
+     * @param export Starts the export with the cancellation token of the export.  This is only
+     *               called if there is no export running for the location.
+     * @return A future that completes when the export completes.  Each caller receives its own
+     * future, so cancelling it does not affect other callers.
+     */
+    @Nonnull
+    public CompletableFuture<SnapshotStorageCoordinates> attachOrStart(@Nonnull SnapshotLocation location,
+                                                                       @Nonnull CancellationToken cancellation,
+                                                                       @Nonnull SnapshotProgress progress,
+                                                                       @Nonnull Function<CancellationToken, CompletableFuture<SnapshotStorageCoordinates>> export) {
+        var started = new InFlightExport(progress);
+        var attached = inFlight.compute(location, (loc, running) -> {
+            var inFlightExport = running != null ? running : started;
+            inFlightExport.attach();
+            return inFlightExport;
+        });
+        var result = attached.result.copy();
+        var registration = cancellation.onCancel(() -> {
+            result.completeExceptionally(new SnapshotCancelledException("The snapshot request was cancelled"));
+            // Detaching and removing the export happen together, so that no request can attach to
+            // an export that is about to be cancelled
+            var lastRequest = new AtomicBoolean();
+            inFlight.compute(location, (loc, running) -> {
+                if(attached.detach()) {
+                    lastRequest.set(true);
+                    return running == attached ? null : running;
+                }
+                return running;
+            });
+            if(lastRequest.get()) {
+                logger.info("All requests for snapshot {} were cancelled.  Cancelling the export.", location);
+                attached.cancellation.cancel("All requests for the snapshot were cancelled");
+            }
+        });
+        result.whenComplete((coordinates, error) -> registration.close());
+        if(attached != started) {
+            progress.follow(attached.progress);
+            logger.info("Snapshot {} is already being generated.  Waiting for the existing export.", location);
+            return result;
+        }
+        try {
+            export.apply(started.cancellation).whenComplete((coordinates, error) -> {
+                inFlight.remove(location, started);
+                if(error != null) {
+                    started.result.completeExceptionally(unwrap(error));
+                }
+                else {
+                    started.result.complete(coordinates);
+                }
+            });
+        } catch (Throwable t) {
+            inFlight.remove(location, started);
+            started.result.completeExceptionally(t);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of exports that are currently running
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        if(error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    private static final class InFlightExport {
+
+        private final CompletableFuture<SnapshotStorageCoordinates> result = new CompletableFuture<>();
+
+        private final CancellationToken cancellation = CancellationToken.create();
+
+        private final SnapshotProgress progress;
+
+        private int attachedRequests = 0;
+
+        private InFlightExport(SnapshotProgress progress) {
+            this.progress = progress;
+        }
+
+        private synchronized void attach() {
+            attachedRequests++;
+        }
+
+        /**
+         * Detaches a request
+         * @return true if no requests are attached any more
+         */
+        private synchronized boolean detach() {
+            attachedRequests--;
+            return attachedRequests == 0;
+        }
+    }
+}
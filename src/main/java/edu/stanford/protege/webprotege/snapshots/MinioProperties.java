@@ -18,6 +18,8 @@ public class MinioProperties {
 
     private String endPoint;
 
+    private String region;
+
     public void setAccessKey(String accessKey) {
         this.accessKey = accessKey;
     }
@@ -41,4 +43,12 @@ public class MinioProperties {
     public String getEndPoint() {
         return endPoint;
     }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
 }
@@ -0,0 +1,33 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for ontology checkpoints.  A checkpoint is written when a revision is exported
+ * that is at least {@code interval} revisions past the nearest earlier checkpoint.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.checkpoints")
+public class OntologyCheckpointProperties {
+
+    private boolean enabled = true;
+
+    private long interval = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+}
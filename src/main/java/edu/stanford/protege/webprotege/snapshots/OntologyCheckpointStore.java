@@ -0,0 +1,238 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Builds the ontologies for a revision from the nearest earlier checkpoint, replaying only the
+ * revisions after the checkpoint instead of the whole revision history.
+ * <p>
+ * Checkpoints are stored in the snapshots bucket so that they survive restarts and are shared by
+ * all instances of the service.  A checkpoint is written after a revision has been built, whenever
+ * the revision is far enough past the nearest earlier checkpoint.  The checkpoint is written to a
+ * scratch file by the export, while it still holds the heap admission for the revision and before
+ * the revision is rendered, and is uploaded in the background.  The uploads do not hold on to
+ * the ontologies.  Checkpoints are skipped while the scratch space quota is used up.  All but the
+ * latest checkpoints of each project are removed by the {@link SnapshotRetentionSweeper}.
+ * <p>
+ * If the requested format can be read back losslessly, and there is a stored snapshot in that
+ * format that is closer to the requested revision than the nearest checkpoint, then the revision
+ * is built from that snapshot instead (see {@link DeltaExporter}).  If neither can be used for any reason the revision is built from the
+ * full revision history.
+ */
+public class OntologyCheckpointStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OntologyCheckpointStore.class);
+
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    @Nonnull
+    private final SnapshotBucket snapshotBucket;
+
+    @Nonnull
+    private final SnapshotScratchSpace scratchSpace;
+
+    @Nonnull
+    private final DeltaExporter deltaExporter;
+
+    private final boolean enabled;
+
+    private final long interval;
+
+    private final Set<ProjectId> checkpointsInProgress = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService checkpointWriter = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "snapshot-checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OntologyCheckpointStore(@Nonnull MinioClient minioClient,
+                                   @Nonnull SnapshotBucket snapshotBucket,
+                                   @Nonnull SnapshotScratchSpace scratchSpace,
+                                   @Nonnull DeltaExporter deltaExporter,
+                                   boolean enabled,
+                                   long interval) {
+        this.minioClient = checkNotNull(minioClient);
+        this.snapshotBucket = checkNotNull(snapshotBucket);
+        this.scratchSpace = checkNotNull(scratchSpace);
+        this.deltaExporter = checkNotNull(deltaExporter);
+        this.enabled = enabled;
+        this.interval = Math.max(1, interval);
+    }
+
+    /**
+     * Gets an ontology manager that contains the ontologies of a project at the specified revision
+     * @param projectId The project
+     * @param revisionManager The revision manager for the project
+     * @param format The format that the revision is being exported in
+     * @param revisionNumber The revision
+     */
+    @Nonnull
+    public OWLOntologyManager getOntologyManagerForRevision(@Nonnull ProjectId projectId,
+                                                           @Nonnull RevisionManager revisionManager,
+                                                           @Nonnull DocumentFormat format,
+                                                           @Nonnull RevisionNumber revisionNumber) {
+        if(revisionNumber.isHead()) {
+            return revisionManager.getOntologyManagerForRevision(revisionNumber);
+        }
+        var checkpointRevision = enabled ? findNearestCheckpoint(projectId, revisionNumber) : Optional.<Long>empty();
+        var storedSnapshotRevision = deltaExporter.canBuildFromStoredSnapshot(format)
+                ? deltaExporter.findNearestStoredSnapshot(projectId, format, revisionNumber, checkpointRevision.orElse(0L))
+                : Optional.<Long>empty();
+        var fromStoredSnapshot = storedSnapshotRevision.flatMap(stored -> deltaExporter.buildFromStoredSnapshot(projectId, revisionManager, format, stored, revisionNumber));
+        if(fromStoredSnapshot.isPresent()) {
+            // Checkpoints are only written from revisions that were built from the revision history
+            return fromStoredSnapshot.get();
+        }
+        var manager = checkpointRevision.flatMap(checkpoint -> buildFromCheckpoint(projectId, revisionManager, checkpoint, revisionNumber))
+                                        .orElseGet(() -> revisionManager.getOntologyManagerForRevision(revisionNumber));
+        if(enabled && revisionNumber.getValue() - checkpointRevision.orElse(0L) >= interval) {
+            writeCheckpoint(projectId, revisionNumber, manager);
+        }
+        return manager;
+    }
+
+    public void shutdown() {
+        checkpointWriter.shutdownNow();
+    }
+
+    private static String getCheckpointPrefix(ProjectId projectId) {
+        return "/projects/%s/checkpoints/".formatted(projectId.id());
+    }
+
+    private static String getCheckpointLocation(ProjectId projectId, long revision) {
+        return getCheckpointPrefix(projectId) + revision;
+    }
+
+    private Optional<Long> findNearestCheckpoint(ProjectId projectId, RevisionNumber revisionNumber) {
+        var prefix = getCheckpointPrefix(projectId);
+        try {
+            var nearest = Optional.<Long>empty();
+            var objects = minioClient.listObjects(ListObjectsArgs.builder()
+                                                                 .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                                 .prefix(prefix)
+                                                                 .build());
+            for(var result : objects) {
+                var name = result.get().objectName();
+                try {
+                    var revision = Long.parseLong(name.substring(prefix.length()));
+                    if(revision <= revisionNumber.getValue() && nearest.map(n -> revision > n).orElse(true)) {
+                        nearest = Optional.of(revision);
+                    }
+                } catch (NumberFormatException e) {
+                    logger.warn("{} Ignoring unexpected object in checkpoints: {}", projectId, name);
+                }
+            }
+            return nearest;
+        } catch (ErrorResponseException e) {
+            if(!"NoSuchBucket".equals(e.errorResponse().code())) {
+                logger.warn("{} Could not list checkpoints", projectId, e);
+            }
+            return Optional.empty();
+        } catch (Exception e) {
+            logger.warn("{} Could not list checkpoints", projectId, e);
+            return Optional.empty();
+        }
+    }
+
+    private Optional<OWLOntologyManager> buildFromCheckpoint(ProjectId projectId,
+                                                             RevisionManager revisionManager,
+                                                             long checkpointRevision,
+                                                             RevisionNumber revisionNumber) {
+        var getObjectArgs = GetObjectArgs.builder()
+                                         .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                         .object(getCheckpointLocation(projectId, checkpointRevision))
+                                         .build();
+        try (var inputStream = new BufferedInputStream(minioClient.getObject(getObjectArgs))) {
+            var manager = OntologyCheckpoints.read(inputStream);
+            for(long r = checkpointRevision + 1; r <= revisionNumber.getValue(); r++) {
+                var revision = revisionManager.getRevision(RevisionNumber.getRevisionNumber(r));
+                if(revision.isEmpty()) {
+                    logger.warn("{} Revision {} is missing from the revision history.  Not using checkpoint {}.",
+                                projectId, r, checkpointRevision);
+                    return Optional.empty();
+                }
+                OntologyCheckpoints.applyChanges(manager, revision.get().getChanges());
+            }
+            logger.info("{} Built revision {} from checkpoint at revision {} ({} revisions replayed)",
+                        projectId, revisionNumber.getValue(), checkpointRevision, revisionNumber.getValue() - checkpointRevision);
+            return Optional.of(manager);
+        } catch (Exception e) {
+            logger.warn("{} Could not build revision {} from checkpoint at revision {}",
+                        projectId, revisionNumber.getValue(), checkpointRevision, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeCheckpoint(ProjectId projectId,
+                                 RevisionNumber revisionNumber,
+                                 OWLOntologyManager manager) {
+        if(!checkpointsInProgress.add(projectId)) {
+            return;
+        }
+        SnapshotScratchSpace.ScratchFile scratchFile = null;
+        try {
+            var createdFile = scratchSpace.tryCreateScratchFile();
+            if(createdFile.isEmpty()) {
+                logger.info("{} Scratch space quota is used up.  Not writing checkpoint for revision {}.",
+                            projectId, revisionNumber.getValue());
+                checkpointsInProgress.remove(projectId);
+                return;
+            }
+            scratchFile = createdFile.get();
+            try (var outputStream = scratchFile.newOutputStream()) {
+                OntologyCheckpoints.write(manager, outputStream);
+            }
+            var checkpointFile = scratchFile;
+            checkpointWriter.execute(() -> {
+                try (checkpointFile) {
+                    uploadCheckpoint(projectId, revisionNumber, checkpointFile);
+                } catch (Exception e) {
+                    logger.warn("{} Could not upload checkpoint for revision {}", projectId, revisionNumber.getValue(), e);
+                } finally {
+                    checkpointsInProgress.remove(projectId);
+                }
+            });
+        } catch (Exception e) {
+            logger.warn("{} Could not write checkpoint for revision {}", projectId, revisionNumber.getValue(), e);
+            if(scratchFile != null) {
+                scratchFile.close();
+            }
+            checkpointsInProgress.remove(projectId);
+        }
+    }
+
+    private void uploadCheckpoint(ProjectId projectId,
+                                  RevisionNumber revisionNumber,
+                                  SnapshotScratchSpace.ScratchFile scratchFile) throws Exception {
+        snapshotBucket.ensureExists();
+        minioClient.uploadObject(UploadObjectArgs.builder()
+                                                 .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                 .object(getCheckpointLocation(projectId, revisionNumber.getValue()))
+                                                 .filename(scratchFile.getPath().toString())
+                                                 .contentType(CONTENT_TYPE)
+                                                 .build());
+        logger.info("{} Wrote checkpoint for revision {}", projectId, revisionNumber.getValue());
+    }
+}
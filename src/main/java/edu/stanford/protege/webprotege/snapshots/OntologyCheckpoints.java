@@ -0,0 +1,143 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.change.OntologyChange;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.change.AddAxiomData;
+import org.semanticweb.owlapi.change.AddImportData;
+import org.semanticweb.owlapi.change.AddOntologyAnnotationData;
+import org.semanticweb.owlapi.change.OWLOntologyChangeRecord;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Reads and writes ontology checkpoints.  A checkpoint records the state of all of the ontologies
+ * in a project as the change records that recreate them, so that a checkpoint can be loaded
+ * without parsing ontology documents or resolving imports.
+ */
+final class OntologyCheckpoints {
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The number of records after which the object stream is reset, so that it does not hold on
+     * to every object that has been written
+     */
+    private static final int RESET_INTERVAL = 10_000;
+
+    private static final int APPLY_BATCH_SIZE = 10_000;
+
+    private static final ObjectInputFilter CHECKPOINT_FILTER = ObjectInputFilter.Config.createFilter(
+            "org.semanticweb.owlapi.**;uk.ac.manchester.cs.owl.owlapi.**;com.google.common.base.*;com.google.common.collect.**;java.lang.*;java.util.*;!*");
+
+    private OntologyCheckpoints() {
+    }
+
+    /**
+     * Writes a checkpoint of the ontologies in the specified manager
+     */
+    static void write(@Nonnull OWLOntologyManager manager,
+                      @Nonnull OutputStream outputStream) throws IOException {
+        var gzipOutputStream = new GZIPOutputStream(outputStream, 64 * 1024);
+        var objectOutputStream = new ObjectOutputStream(gzipOutputStream);
+        objectOutputStream.writeInt(FORMAT_VERSION);
+        var ontologies = List.copyOf(manager.getOntologies());
+        objectOutputStream.writeInt(ontologies.size());
+        for(var ontology : ontologies) {
+            objectOutputStream.writeObject(ontology.getOntologyID());
+        }
+        var written = 0;
+        for(var ontology : ontologies) {
+            var ontologyId = ontology.getOntologyID();
+            for(var importsDeclaration : ontology.getImportsDeclarations()) {
+                objectOutputStream.writeObject(new OWLOntologyChangeRecord(ontologyId, new AddImportData(importsDeclaration)));
+                written = resetIfNecessary(objectOutputStream, written);
+            }
+            for(var annotation : ontology.getAnnotations()) {
+                objectOutputStream.writeObject(new OWLOntologyChangeRecord(ontologyId, new AddOntologyAnnotationData(annotation)));
+                written = resetIfNecessary(objectOutputStream, written);
+            }
+            for(var axiom : ontology.getAxioms()) {
+                objectOutputStream.writeObject(new OWLOntologyChangeRecord(ontologyId, new AddAxiomData(axiom)));
+                written = resetIfNecessary(objectOutputStream, written);
+            }
+        }
+        objectOutputStream.writeObject(null);
+        objectOutputStream.flush();
+        gzipOutputStream.finish();
+    }
+
+    /**
+     * Reads a checkpoint into a new ontology manager
+     */
+    @Nonnull
+    static OWLOntologyManager read(@Nonnull InputStream inputStream) throws IOException {
+        var objectInputStream = new ObjectInputStream(new GZIPInputStream(inputStream, 64 * 1024));
+        objectInputStream.setObjectInputFilter(CHECKPOINT_FILTER);
+        try {
+            var formatVersion = objectInputStream.readInt();
+            if(formatVersion != FORMAT_VERSION) {
+                throw new InvalidObjectException("Unsupported checkpoint format version: " + formatVersion);
+            }
+            var manager = OWLManager.createConcurrentOWLOntologyManager();
+            var ontologyCount = objectInputStream.readInt();
+            for(int i = 0; i < ontologyCount; i++) {
+                manager.createOntology((OWLOntologyID) objectInputStream.readObject());
+            }
+            var changes = new ArrayList<OWLOntologyChange>(APPLY_BATCH_SIZE);
+            OWLOntologyChangeRecord record;
+            while ((record = (OWLOntologyChangeRecord) objectInputStream.readObject()) != null) {
+                changes.add(record.createOntologyChange(manager));
+                if(changes.size() == APPLY_BATCH_SIZE) {
+                    manager.applyChanges(changes);
+                    changes.clear();
+                }
+            }
+            manager.applyChanges(changes);
+            return manager;
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new InvalidObjectException("Malformed checkpoint: " + e.getMessage());
+        } catch (OWLOntologyCreationException e) {
+            throw new IOException("Could not recreate an ontology from a checkpoint", e);
+        }
+    }
+
+    /**
+     * Applies the changes in a revision to the ontologies in the specified manager.  Ontologies
+     * that are referred to by the changes, but do not exist yet, are created.
+     */
+    static void applyChanges(@Nonnull OWLOntologyManager manager,
+                             @Nonnull List<OntologyChange> changes) throws OWLOntologyCreationException {
+        var owlChanges = new ArrayList<OWLOntologyChange>(changes.size());
+        for(var change : changes) {
+            var record = change.toOwlOntologyChangeRecord();
+            if(!manager.contains(record.getOntologyID())) {
+                manager.createOntology(record.getOntologyID());
+            }
+            owlChanges.add(record.createOntologyChange(manager));
+        }
+        manager.applyChanges(owlChanges);
+    }
+
+    private static int resetIfNecessary(ObjectOutputStream objectOutputStream, int written) throws IOException {
+        written++;
+        if(written % RESET_INTERVAL == 0) {
+            objectOutputStream.reset();
+        }
+        return written;
+    }
+}
@@ -0,0 +1,202 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Holds a rendered ontology document until it is added to a snapshot archive.
+ * <p>
+ * The document is kept in memory, in chunks taken from the scratch space's
+ * {@link SnapshotBufferPool}, until it grows beyond the spill threshold, at which point it is
+ * moved to a scratch file.  Closing the buffer finishes writing; {@link #discard()} must be called
+ * once the document is no longer needed so that the chunks are returned to the pool and any
+ * scratch file is deleted.
+ */
+final class OntologyDocumentBuffer extends OutputStream {
+
+    @Nonnull
+    private final SnapshotScratchSpace scratchSpace;
+
+    @Nonnull
+    private final SnapshotBufferPool bufferPool;
+
+    private final long spillThreshold;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+
+    /**
+     * The number of bytes used in the last chunk
+     */
+    private int chunkPosition = 0;
+
+    private SnapshotScratchSpace.ScratchFile spillFile = null;
+
+    private OutputStream spillOutputStream = null;
+
+    private final CRC32 crc = new CRC32();
+
+    private long size = 0;
+
+    OntologyDocumentBuffer(@Nonnull SnapshotScratchSpace scratchSpace, long spillThreshold) {
+        this.scratchSpace = checkNotNull(scratchSpace);
+        this.bufferPool = scratchSpace.getBufferPool();
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(spillOutputStream == null && size + 1 > spillThreshold) {
+            spill();
+        }
+        if(spillOutputStream != null) {
+            spillOutputStream.write(b);
+        }
+        else {
+            nextChunk()[chunkPosition++] = (byte) b;
+        }
+        crc.update(b);
+        size++;
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        if(spillOutputStream == null && size + len > spillThreshold) {
+            spill();
+        }
+        if(spillOutputStream != null) {
+            spillOutputStream.write(b, off, len);
+        }
+        else {
+            var remaining = len;
+            var position = off;
+            while (remaining > 0) {
+                var chunk = nextChunk();
+                var n = Math.min(remaining, chunk.length - chunkPosition);
+                System.arraycopy(b, position, chunk, chunkPosition, n);
+                chunkPosition += n;
+                position += n;
+                remaining -= n;
+            }
+        }
+        crc.update(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if(spillOutputStream != null) {
+            spillOutputStream.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(spillOutputStream != null) {
+            spillOutputStream.close();
+        }
+    }
+
+    /**
+     * Gets the size of the document in bytes
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Gets the CRC-32 checksum of the document
+     */
+    long getCrc() {
+        return crc.getValue();
+    }
+
+    /**
+     * Copies the buffered document to the specified output stream
+     */
+    void writeTo(@Nonnull OutputStream outputStream) throws IOException {
+        if(spillFile != null) {
+            copySpillFile(outputStream);
+        }
+        else {
+            writeChunksTo(outputStream);
+        }
+    }
+
+    /**
+     * Releases the memory or the scratch file that holds the document
+     */
+    void discard() {
+        releaseChunks();
+        if(spillOutputStream != null) {
+            try {
+                spillOutputStream.close();
+            } catch (IOException e) {
+                // The file is deleted anyway
+            }
+        }
+        if(spillFile != null) {
+            spillFile.close();
+        }
+    }
+
+    /**
+     * Gets the chunk that the next byte is written to, taking a new one from the pool when the
+     * last chunk is full
+     */
+    private byte[] nextChunk() {
+        if(chunks.isEmpty() || chunkPosition == chunks.get(chunks.size() - 1).length) {
+            chunks.add(bufferPool.acquireChunk());
+            chunkPosition = 0;
+        }
+        return chunks.get(chunks.size() - 1);
+    }
+
+    private void writeChunksTo(OutputStream outputStream) throws IOException {
+        for(int i = 0; i < chunks.size(); i++) {
+            var chunk = chunks.get(i);
+            var length = i == chunks.size() - 1 ? chunkPosition : chunk.length;
+            outputStream.write(chunk, 0, length);
+        }
+    }
+
+    private void copySpillFile(OutputStream outputStream) throws IOException {
+        // Reads into a direct buffer, which the channel would otherwise allocate for a heap buffer
+        var directBuffer = bufferPool.acquireSinkBuffer();
+        var chunk = bufferPool.acquireChunk();
+        try (var channel = FileChannel.open(spillFile.getPath())) {
+            while (channel.read(directBuffer) != -1) {
+                directBuffer.flip();
+                while (directBuffer.hasRemaining()) {
+                    var n = Math.min(chunk.length, directBuffer.remaining());
+                    directBuffer.get(chunk, 0, n);
+                    outputStream.write(chunk, 0, n);
+                }
+                directBuffer.clear();
+            }
+        } finally {
+            bufferPool.releaseChunk(chunk);
+            bufferPool.releaseSinkBuffer(directBuffer);
+        }
+    }
+
+    private void releaseChunks() {
+        chunks.forEach(bufferPool::releaseChunk);
+        chunks.clear();
+        chunkPosition = 0;
+    }
+
+    private void spill() throws IOException {
+        // The export is already running, so it must not wait for space that its own archive may hold
+        spillFile = scratchSpace.createSpillFile();
+        spillOutputStream = spillFile.newOutputStream();
+        writeChunksTo(spillOutputStream);
+        releaseChunks();
+    }
+}
@@ -0,0 +1,52 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutor;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsRequest;
+import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsResponse;
+import edu.stanford.protege.webprotege.project.PrefixDeclaration;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A short-lived, per-project cache of prefix declarations that is shared by all snapshot tasks.
+ * Concurrent requests for the same project share a single call to the backend, and failed calls
+ * are not cached.
+ */
+public class PrefixDeclarationsCache {
+
+    private final CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor;
+
+    private final AsyncCache<ProjectId, List<PrefixDeclaration>> cache;
+
+    public PrefixDeclarationsCache(@Nonnull CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor,
+                                   @Nonnull Duration ttl) {
+        this.prefixDeclarationsExecutor = requireNonNull(prefixDeclarationsExecutor);
+        this.cache = Caffeine.newBuilder()
+                             .expireAfterWrite(requireNonNull(ttl))
+                             .buildAsync();
+    }
+
+    /**
+     * Gets the prefix declarations for the specified project.  This does not block.
+     * @param projectId The project
+     * @param executionContext The context that is used if the prefix declarations have to be
+     *                         fetched from the backend
+     * @return A future for the prefix declarations
+     */
+    @Nonnull
+    public CompletableFuture<List<PrefixDeclaration>> getPrefixDeclarations(@Nonnull ProjectId projectId,
+                                                                           @Nonnull ExecutionContext executionContext) {
+        return cache.get(projectId, (id, executor) ->
+                prefixDeclarationsExecutor.execute(new GetProjectPrefixDeclarationsRequest(id), executionContext)
+                                          .thenApply(response -> List.copyOf(response.prefixDeclarations())));
+    }
+}
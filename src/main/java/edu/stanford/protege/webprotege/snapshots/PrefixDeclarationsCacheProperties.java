@@ -0,0 +1,24 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the cache of project prefix declarations
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.prefixes")
+public class PrefixDeclarationsCacheProperties {
+
+    private Duration cacheTtl = Duration.ofSeconds(60);
+
+    public Duration getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(Duration cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+}
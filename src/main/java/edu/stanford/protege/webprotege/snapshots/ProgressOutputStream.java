@@ -0,0 +1,45 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Counts the bytes that are written to a stream and reports the running total after each write
+ */
+final class ProgressOutputStream extends FilterOutputStream {
+
+    private final LongConsumer bytesWrittenConsumer;
+
+    private long count = 0;
+
+    ProgressOutputStream(@Nonnull OutputStream out, @Nonnull LongConsumer bytesWrittenConsumer) {
+        super(checkNotNull(out));
+        this.bytesWrittenConsumer = checkNotNull(bytesWrittenConsumer);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        count++;
+        bytesWrittenConsumer.accept(count);
+    }
+
+    @Override
+    public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        count += len;
+        bytesWrittenConsumer.accept(count);
+    }
+
+    /**
+     * Gets the number of bytes that have been written
+     */
+    long getCount() {
+        return count;
+    }
+}
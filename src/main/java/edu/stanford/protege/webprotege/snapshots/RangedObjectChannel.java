@@ -0,0 +1,128 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A read-only channel over a stored object that reads the object with ranged GETs, so that the
+ * central directory of a zip snapshot can be read without downloading the whole archive.  Each
+ * GET reads the whole block that holds the position, so that the many small reads of a zip
+ * reader, which move backwards as well as forwards, do not each become a request.
+ */
+final class RangedObjectChannel implements SeekableByteChannel {
+
+    private static final int READ_AHEAD = 64 * 1024;
+
+    /**
+     * Reads a range of an object
+     */
+    @FunctionalInterface
+    interface RangeReader {
+
+        @Nonnull
+        InputStream read(long offset, long length) throws IOException;
+    }
+
+    @Nonnull
+    private final RangeReader rangeReader;
+
+    private final long size;
+
+    private long position = 0;
+
+    private byte[] window = new byte[0];
+
+    private long windowStart = 0;
+
+    private boolean open = true;
+
+    RangedObjectChannel(@Nonnull RangeReader rangeReader, long size) {
+        checkArgument(size >= 0, "size must not be negative");
+        this.rangeReader = checkNotNull(rangeReader);
+        this.size = size;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if(position >= size) {
+            return -1;
+        }
+        if(position < windowStart || position >= windowStart + window.length) {
+            fill();
+        }
+        var offset = (int) (position - windowStart);
+        var n = Math.min(dst.remaining(), window.length - offset);
+        dst.put(window, offset, n);
+        position += n;
+        return n;
+    }
+
+    private void fill() throws IOException {
+        var start = position - position % READ_AHEAD;
+        var length = (int) Math.min(READ_AHEAD, size - start);
+        try (var inputStream = rangeReader.read(start, length)) {
+            var bytes = inputStream.readNBytes(length);
+            if(start + bytes.length <= position) {
+                throw new EOFException("Unexpected end of object at " + position);
+            }
+            window = bytes;
+            windowStart = start;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        checkArgument(newPosition >= 0, "position must not be negative");
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    private void ensureOpen() throws IOException {
+        if(!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
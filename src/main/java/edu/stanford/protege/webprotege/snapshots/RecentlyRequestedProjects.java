@@ -0,0 +1,44 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.stanford.protege.webprotege.common.ProjectId;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Remembers the projects that snapshots have recently been requested for, along with the file name
+ * that was requested most recently, so that snapshots of these projects can be generated ahead of
+ * the next request.
+ */
+public class RecentlyRequestedProjects {
+
+    private final Cache<ProjectId, String> fileNames;
+
+    public RecentlyRequestedProjects(@Nonnull Duration window, long maxProjects) {
+        this.fileNames = Caffeine.newBuilder()
+                                 .expireAfterWrite(checkNotNull(window))
+                                 .maximumSize(maxProjects)
+                                 .build();
+    }
+
+    /**
+     * Records a snapshot request for a project
+     */
+    public void recordRequest(@Nonnull ProjectId projectId, @Nonnull String fileName) {
+        fileNames.put(checkNotNull(projectId), checkNotNull(fileName));
+    }
+
+    /**
+     * Gets the file name of the most recent snapshot request for the specified project
+     * @return The file name, or empty if no snapshot has been requested for the project recently
+     */
+    @Nonnull
+    public Optional<String> getFileName(@Nonnull ProjectId projectId) {
+        return Optional.ofNullable(fileNames.getIfPresent(projectId));
+    }
+}
@@ -0,0 +1,126 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionManagerFactory;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps the revision histories of recently exported projects loaded, so that back-to-back
+ * snapshots of a project do not re-read its change log.
+ * <p>
+ * Entries are weighed by their number of revisions and evicted in LRU order once the total weight
+ * is exceeded.  Entries that have not been used for a while are dropped.  A loaded revision
+ * history does not see revisions that were added after it was loaded, so a cached entry that is
+ * behind the requested revision is reloaded.  Concurrent requests for the same project share a
+ * single load.
+ * <p>
+ * Revision histories are loaded on virtual threads that the cache owns, outside of any lock that
+ * the cache holds, so that a long load never pins the carrier thread of a virtual worker.
+ */
+public class RevisionManagerCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevisionManagerCache.class);
+
+    @Nonnull
+    private final RevisionManagerFactory revisionManagerFactory;
+
+    private final AsyncCache<ProjectId, RevisionManager> cache;
+
+    private final ExecutorService loadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                          .name("snapshot-revision-history-loader-", 1)
+                                                                                          .factory());
+
+    public RevisionManagerCache(@Nonnull RevisionManagerFactory revisionManagerFactory,
+                                long maxRevisions,
+                                @Nonnull Duration expireAfterAccess,
+                                @Nonnull MeterRegistry meterRegistry) {
+        this.revisionManagerFactory = checkNotNull(revisionManagerFactory);
+        this.cache = Caffeine.newBuilder()
+                             .maximumWeight(maxRevisions)
+                             .weigher(RevisionManagerCache::weigh)
+                             .expireAfterAccess(checkNotNull(expireAfterAccess))
+                             .recordStats()
+                             .executor(loadExecutor)
+                             .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "webprotege.snapshots.revision-managers");
+    }
+
+    /**
+     * Gets the revision manager for the specified project
+     * @param projectId The project
+     * @param requiredRevision The revision that is going to be exported.  If the cached revision
+     *                         manager does not contain this revision then the revision history is
+     *                         reloaded.  The head revision is always reloaded.
+     */
+    @Nonnull
+    public RevisionManager getRevisionManager(@Nonnull ProjectId projectId,
+                                              @Nonnull RevisionNumber requiredRevision) {
+        var cachedFuture = cache.getIfPresent(projectId);
+        if(cachedFuture != null) {
+            var cached = join(cachedFuture);
+            if(!isBehind(cached, requiredRevision)) {
+                return cached;
+            }
+            logger.info("{} Cached revision history is at revision {}.  Reloading it for revision {}.",
+                        projectId, cached.getCurrentRevision().getValue(), requiredRevision.isHead() ? "HEAD" : requiredRevision.getValue());
+            // Only remove the entry that we found, so that a reload by a concurrent request is kept
+            cache.asMap().remove(projectId, cachedFuture);
+        }
+        // The mapping function only starts the load, so the cache's lock is not held while loading
+        return join(cache.get(projectId, (id, executor) -> CompletableFuture.supplyAsync(() -> load(id), executor)));
+    }
+
+    /**
+     * Stops the threads that load revision histories
+     */
+    public void shutdown() {
+        loadExecutor.shutdownNow();
+    }
+
+    private static RevisionManager join(CompletableFuture<RevisionManager> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of projects whose revision histories are loaded
+     */
+    public long getSize() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    private RevisionManager load(ProjectId projectId) {
+        logger.info("{} Loading revision history", projectId);
+        return revisionManagerFactory.createRevisionManager(projectId);
+    }
+
+    private static boolean isBehind(RevisionManager revisionManager, RevisionNumber requiredRevision) {
+        return requiredRevision.isHead() || revisionManager.getCurrentRevision().compareTo(requiredRevision) < 0;
+    }
+
+    private static int weigh(ProjectId projectId, RevisionManager revisionManager) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, revisionManager.getCurrentRevision().getValue()));
+    }
+}
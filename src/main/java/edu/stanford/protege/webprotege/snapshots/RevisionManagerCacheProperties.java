@@ -0,0 +1,55 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the cache of loaded project revision histories.
+ * <p>
+ * The heap that is used by a revision history cannot be measured directly, so it is estimated
+ * from the number of revisions in the project.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.revision-managers")
+public class RevisionManagerCacheProperties {
+
+    private DataSize maxHeap = DataSize.ofGigabytes(2);
+
+    private DataSize estimatedRevisionSize = DataSize.ofKilobytes(64);
+
+    private Duration expireAfterAccess = Duration.ofMinutes(30);
+
+    public DataSize getMaxHeap() {
+        return maxHeap;
+    }
+
+    public void setMaxHeap(DataSize maxHeap) {
+        this.maxHeap = maxHeap;
+    }
+
+    public DataSize getEstimatedRevisionSize() {
+        return estimatedRevisionSize;
+    }
+
+    public void setEstimatedRevisionSize(DataSize estimatedRevisionSize) {
+        this.estimatedRevisionSize = estimatedRevisionSize;
+    }
+
+    public Duration getExpireAfterAccess() {
+        return expireAfterAccess;
+    }
+
+    public void setExpireAfterAccess(Duration expireAfterAccess) {
+        this.expireAfterAccess = expireAfterAccess;
+    }
+
+    /**
+     * Gets the maximum number of revisions, over all cached projects, that fit into the maximum heap
+     */
+    public long getMaxRevisions() {
+        return Math.max(1, maxHeap.toBytes() / Math.max(1, estimatedRevisionSize.toBytes()));
+    }
+}
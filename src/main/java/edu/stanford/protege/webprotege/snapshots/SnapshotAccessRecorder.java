@@ -0,0 +1,94 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.minio.MinioClient;
+import io.minio.SetObjectTagsArgs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records when stored snapshots are reused, as a {@value #LAST_ACCESSED_TAG} tag on the snapshot
+ * object, so that the {@link SnapshotRetentionSweeper} keeps snapshots that are still being
+ * downloaded.  The tag holds the time of access in epoch seconds.
+ * <p>
+ * Tags are written in the background, and at most once per access record interval for each
+ * snapshot.
+ */
+public class SnapshotAccessRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotAccessRecorder.class);
+
+    public static final String LAST_ACCESSED_TAG = "last-accessed";
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    private final Cache<String, Boolean> recentlyRecorded;
+
+    private final ExecutorService tagWriter = Executors.newSingleThreadExecutor(r -> {
+        var thread = new Thread(r, "snapshot-access-recorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotAccessRecorder(@Nonnull MinioClient minioClient,
+                                  @Nonnull Duration recordInterval) {
+        this.minioClient = checkNotNull(minioClient);
+        this.recentlyRecorded = Caffeine.newBuilder()
+                                        .expireAfterWrite(checkNotNull(recordInterval))
+                                        .build();
+    }
+
+    /**
+     * Records that the snapshot at the specified location has been reused
+     */
+    public void recordAccess(@Nonnull SnapshotLocation location) {
+        var name = location.getLocation();
+        if(recentlyRecorded.asMap().putIfAbsent(name, Boolean.TRUE) != null) {
+            return;
+        }
+        var accessedAt = Instant.now();
+        tagWriter.execute(() -> {
+            try {
+                minioClient.setObjectTags(SetObjectTagsArgs.builder()
+                                                           .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                           .object(name)
+                                                           .tags(Map.of(LAST_ACCESSED_TAG, Long.toString(accessedAt.getEpochSecond())))
+                                                           .build());
+            } catch (Exception e) {
+                logger.warn("Could not record access to snapshot {}", name, e);
+            }
+        });
+    }
+
+    public void shutdown() {
+        tagWriter.shutdownNow();
+    }
+
+    /**
+     * Gets the last access time that was recorded in the specified object tags
+     */
+    @Nonnull
+    public static Optional<Instant> getLastAccessed(@Nonnull Map<String, String> tags) {
+        var value = tags.get(LAST_ACCESSED_TAG);
+        if(value == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Instant.ofEpochSecond(Long.parseLong(value)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+}
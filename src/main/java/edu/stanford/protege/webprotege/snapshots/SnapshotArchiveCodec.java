@@ -0,0 +1,72 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The ways in which the ontology documents in a snapshot can be packaged and compressed
+ */
+public enum SnapshotArchiveCodec {
+
+    /**
+     * A zip archive with DEFLATE compressed entries
+     */
+    ZIP("application/zip"),
+
+    /**
+     * A zip archive with uncompressed entries.  This is the fastest to produce but the largest.
+     */
+    ZIP_STORED("application/zip"),
+
+    /**
+     * A gzip compressed tar archive
+     */
+    TAR_GZ("application/gzip");
+
+    private final String contentType;
+
+    SnapshotArchiveCodec(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Gets the content type of archives that are produced with this codec
+     */
+    @Nonnull
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Creates a writer that writes an archive to the specified output stream
+     * @param outputStream The output stream
+     * @param compressionLevel The compression level, from 0 to 9, or -1 for the default level.
+     *                         This is ignored for codecs that do not compress.
+     */
+    @Nonnull
+    SnapshotArchiveWriter createWriter(@Nonnull OutputStream outputStream, int compressionLevel) throws IOException {
+        return switch (this) {
+            case ZIP -> new ZipSnapshotArchiveWriter(outputStream, false, compressionLevel);
+            case ZIP_STORED -> new ZipSnapshotArchiveWriter(outputStream, true, compressionLevel);
+            case TAR_GZ -> new TarGzSnapshotArchiveWriter(outputStream, compressionLevel);
+        };
+    }
+
+    /**
+     * Opens an archive that was produced with this codec for reading
+     */
+    @Nonnull
+    ArchiveInputStream<?> openArchive(@Nonnull InputStream inputStream) throws IOException {
+        return switch (this) {
+            case ZIP, ZIP_STORED -> new ZipArchiveInputStream(inputStream);
+            case TAR_GZ -> new TarArchiveInputStream(new GzipCompressorInputStream(inputStream));
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The position of each ontology document in a stored zip snapshot, so that a single document can
+ * be read from the archive with a ranged GET instead of downloading the whole archive.  Offsets
+ * are from the start of the archive.
+ * @param entries The entries, in the order that they appear in the archive
+ */
+public record SnapshotArchiveIndex(@JsonProperty("entries") List<Entry> entries) {
+
+    /**
+     * Gets an entry by its name.  The name may be the full entry name or the name of the document
+     * within the folder of the archive.
+     */
+    @Nonnull
+    public Optional<Entry> getEntry(@Nonnull String name) {
+        return entries.stream()
+                      .filter(entry -> entry.name().equals(name) || entry.name().endsWith("/" + name))
+                      .findFirst();
+    }
+
+    /**
+     * An entry in a zip snapshot
+     * @param name The name of the entry
+     * @param headerOffset The offset of the local file header of the entry
+     * @param dataOffset The offset of the entry data, which follows the local file header
+     * @param compressedSize The size of the entry data.  The data occupies the range from
+     *                       dataOffset to dataOffset + compressedSize - 1.
+     * @param size The size of the ontology document
+     * @param crc The CRC-32 of the ontology document
+     * @param compressionMethod STORED, or DEFLATED for raw DEFLATE compressed data
+     */
+    public record Entry(@JsonProperty("name") String name,
+                        @JsonProperty("headerOffset") long headerOffset,
+                        @JsonProperty("dataOffset") long dataOffset,
+                        @JsonProperty("compressedSize") long compressedSize,
+                        @JsonProperty("size") long size,
+                        @JsonProperty("crc") long crc,
+                        @JsonProperty("compressionMethod") String compressionMethod) {
+
+    }
+}
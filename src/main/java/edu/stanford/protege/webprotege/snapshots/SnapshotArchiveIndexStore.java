@@ -0,0 +1,192 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.MinioException;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores the {@link SnapshotArchiveIndex} of a snapshot archive in a sidecar object that is named
+ * after the archive, followed by {@link #INDEX_SUFFIX}.  For snapshots that are stored under their
+ * revision the sidecar is removed along with the snapshot.  The sidecars of content addressed
+ * archives are kept for as long as the archive is.
+ * <p>
+ * Zip snapshots that were stored before indexes were written have no sidecar.  Their index is
+ * built from the central directory of the archive, which is read with ranged GETs, the first time
+ * that it is needed and is then stored like any other index.
+ */
+public class SnapshotArchiveIndexStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotArchiveIndexStore.class);
+
+    public static final String INDEX_SUFFIX = ".index";
+
+    private static final String INDEX_CONTENT_TYPE = "application/json";
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    @Nonnull
+    private final ObjectMapper objectMapper;
+
+    public SnapshotArchiveIndexStore(@Nonnull MinioClient minioClient,
+                                     @Nonnull ObjectMapper objectMapper) {
+        this.minioClient = checkNotNull(minioClient);
+        this.objectMapper = checkNotNull(objectMapper);
+    }
+
+    /**
+     * Gets the name of the object that holds the index of the specified archive
+     * @param archiveObjectName The name of the object that holds the archive
+     */
+    @Nonnull
+    public static String getIndexLocation(@Nonnull String archiveObjectName) {
+        return archiveObjectName + INDEX_SUFFIX;
+    }
+
+    /**
+     * Stores the index of an archive.  The index is optional, so failures are logged and
+     * otherwise ignored.
+     * @param archiveObjectName The name of the object that holds the archive
+     * @param index The index of the archive
+     */
+    public void store(@Nonnull String archiveObjectName, @Nonnull SnapshotArchiveIndex index) {
+        try {
+            var bytes = objectMapper.writeValueAsBytes(index);
+            minioClient.putObject(PutObjectArgs.builder()
+                                               .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                               .object(getIndexLocation(archiveObjectName))
+                                               .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                                               .contentType(INDEX_CONTENT_TYPE)
+                                               .build());
+            logger.info("{} Stored index of {} entries", archiveObjectName, index.entries().size());
+        } catch (Exception e) {
+            logger.warn("{} Could not store the archive index", archiveObjectName, e);
+        }
+    }
+
+    /**
+     * Removes the index of an archive, if there is one.  Failures are logged and otherwise ignored.
+     * @param archiveObjectName The name of the object that holds the archive
+     */
+    public void remove(@Nonnull String archiveObjectName) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                                                     .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                     .object(getIndexLocation(archiveObjectName))
+                                                     .build());
+        } catch (Exception e) {
+            logger.warn("{} Could not remove the archive index", archiveObjectName, e);
+        }
+    }
+
+    /**
+     * Loads the index of an archive, building it from the archive if it has not been stored
+     * @param archiveObjectName The name of the object that holds the archive
+     * @return The index, or empty if the archive does not exist or is not a zip archive
+     */
+    @Nonnull
+    public Optional<SnapshotArchiveIndex> load(@Nonnull String archiveObjectName) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        var getObjectArgs = GetObjectArgs.builder()
+                                         .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                         .object(getIndexLocation(archiveObjectName))
+                                         .build();
+        try (var inputStream = minioClient.getObject(getObjectArgs)) {
+            return Optional.of(objectMapper.readValue(inputStream, SnapshotArchiveIndex.class));
+        } catch (ErrorResponseException e) {
+            if("NoSuchKey".equals(e.errorResponse().code())) {
+                return buildFromArchive(archiveObjectName);
+            }
+            throw e;
+        }
+    }
+
+    private Optional<SnapshotArchiveIndex> buildFromArchive(String archiveObjectName) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        long size;
+        try {
+            var stat = minioClient.statObject(StatObjectArgs.builder()
+                                                            .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                            .object(archiveObjectName)
+                                                            .build());
+            if(SnapshotArchiveCodec.TAR_GZ.getContentType().equals(stat.contentType())) {
+                return Optional.empty();
+            }
+            size = stat.size();
+        } catch (ErrorResponseException e) {
+            if("NoSuchKey".equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+        logger.info("{} Archive has no index.  Building it from the central directory.", archiveObjectName);
+        var index = buildIndex(new RangedObjectChannel((offset, length) -> getRange(archiveObjectName, offset, length), size));
+        store(archiveObjectName, index);
+        return Optional.of(index);
+    }
+
+    private InputStream getRange(String archiveObjectName, long offset, long length) throws IOException {
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                                                      .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                      .object(archiveObjectName)
+                                                      .offset(offset)
+                                                      .length(length)
+                                                      .build());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not read " + archiveObjectName, e);
+        }
+    }
+
+    /**
+     * Builds the index of a zip archive from its central directory and local file headers
+     * @param channel The archive.  This is closed when the index has been built.
+     */
+    @Nonnull
+    static SnapshotArchiveIndex buildIndex(@Nonnull SeekableByteChannel channel) throws IOException {
+        try (var zipFile = ZipFile.builder().setSeekableByteChannel(channel).get()) {
+            var entries = new ArrayList<SnapshotArchiveIndex.Entry>();
+            for(var entry : Collections.list(zipFile.getEntriesInPhysicalOrder())) {
+                if(entry.isDirectory()) {
+                    continue;
+                }
+                var compressionMethod = switch (entry.getMethod()) {
+                    case ZipEntry.STORED -> "STORED";
+                    case ZipEntry.DEFLATED -> "DEFLATED";
+                    default -> throw new IOException("Unsupported compression method for " + entry.getName());
+                };
+                entries.add(new SnapshotArchiveIndex.Entry(entry.getName(),
+                                                           entry.getLocalHeaderOffset(),
+                                                           entry.getDataOffset(),
+                                                           entry.getCompressedSize(),
+                                                           entry.getSize(),
+                                                           entry.getCrc(),
+                                                           compressionMethod));
+            }
+            return new SnapshotArchiveIndex(List.copyOf(entries));
+        }
+    }
+}
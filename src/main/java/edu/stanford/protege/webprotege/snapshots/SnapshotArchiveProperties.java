@@ -0,0 +1,55 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Configuration for how snapshots are packaged.  A codec can be set for all snapshots and
+ * overridden for specific document formats.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.archive")
+public class SnapshotArchiveProperties {
+
+    private SnapshotArchiveCodec codec = SnapshotArchiveCodec.ZIP;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    private Map<DocumentFormat, SnapshotArchiveCodec> formatCodecs = new EnumMap<>(DocumentFormat.class);
+
+    public SnapshotArchiveCodec getCodec() {
+        return codec;
+    }
+
+    public void setCodec(SnapshotArchiveCodec codec) {
+        this.codec = codec;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public Map<DocumentFormat, SnapshotArchiveCodec> getFormatCodecs() {
+        return formatCodecs;
+    }
+
+    public void setFormatCodecs(Map<DocumentFormat, SnapshotArchiveCodec> formatCodecs) {
+        this.formatCodecs = formatCodecs;
+    }
+
+    /**
+     * Gets the codec for snapshots in the specified format
+     */
+    public SnapshotArchiveCodec getCodec(DocumentFormat format) {
+        return formatCodecs.getOrDefault(format, codec);
+    }
+}
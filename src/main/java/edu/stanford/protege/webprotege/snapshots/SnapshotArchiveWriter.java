@@ -0,0 +1,55 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Writes ontology documents into a snapshot archive.  Entries are written with a fixed timestamp
+ * so that an archive is byte-for-byte the same each time a revision is exported.
+ */
+interface SnapshotArchiveWriter extends Closeable {
+
+    LocalDateTime ENTRY_TIMESTAMP = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    /**
+     * Determines whether entries can be written without knowing their size and checksum in
+     * advance, using {@link #beginEntry(String)} and {@link #endEntry()}
+     */
+    boolean isStreamingEntrySupported();
+
+    /**
+     * Begins an entry whose content is written to the returned stream.  The returned stream must
+     * not be closed.
+     * @throws UnsupportedOperationException if streaming entries are not supported
+     */
+    @Nonnull
+    OutputStream beginEntry(@Nonnull String name) throws IOException;
+
+    /**
+     * Ends the entry that was begun with {@link #beginEntry(String)}
+     */
+    void endEntry() throws IOException;
+
+    /**
+     * Adds an entry whose content has already been rendered
+     */
+    void addEntry(@Nonnull String name, @Nonnull OntologyDocumentBuffer content) throws IOException;
+
+    /**
+     * Finishes writing the archive and flushes it to the underlying output stream
+     */
+    void finish() throws IOException;
+
+    /**
+     * Gets the index of the entries that have been written, for archives whose entries can be
+     * read on their own
+     */
+    @Nonnull
+    default Optional<SnapshotArchiveIndex> getIndex() {
+        return Optional.empty();
+    }
+}
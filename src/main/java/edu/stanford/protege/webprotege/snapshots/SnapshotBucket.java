@@ -0,0 +1,94 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import io.minio.BucketExistsArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.MinioException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Makes sure that the bucket that snapshots are stored in exists.
+ * <p>
+ * The bucket is provisioned when the service starts.  After that, writers do not check for the
+ * bucket again unless provisioning failed, or a write found that the bucket had been removed.
+ */
+public class SnapshotBucket {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotBucket.class);
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile boolean ready = false;
+
+    public SnapshotBucket(@Nonnull MinioClient minioClient) {
+        this.minioClient = checkNotNull(minioClient);
+    }
+
+    /**
+     * Provisions the bucket.  Failures are logged, and provisioning is tried again when the bucket
+     * is first needed.
+     */
+    public void provision() {
+        try {
+            ensureExists();
+        } catch (Exception e) {
+            logger.warn("Could not provision the {} bucket.  It will be provisioned when it is first needed.",
+                        CreateSnapshotTask.BUCKET_NAME, e);
+        }
+    }
+
+    /**
+     * Creates the bucket if it has not been provisioned yet
+     */
+    public void ensureExists() throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        if(ready) {
+            return;
+        }
+        // Checking the bucket blocks on the object store, and a lock does not pin a virtual thread
+        // to its carrier while it waits
+        lock.lock();
+        try {
+            if(ready) {
+                return;
+            }
+            if(!minioClient.bucketExists(BucketExistsArgs.builder().bucket(CreateSnapshotTask.BUCKET_NAME).build())) {
+                try {
+                    minioClient.makeBucket(MakeBucketArgs.builder().bucket(CreateSnapshotTask.BUCKET_NAME).build());
+                    logger.info("Created the {} bucket", CreateSnapshotTask.BUCKET_NAME);
+                } catch (ErrorResponseException e) {
+                    // Another instance of the service may have created it in the meantime
+                    if(!"BucketAlreadyOwnedByYou".equals(e.errorResponse().code())) {
+                        throw e;
+                    }
+                }
+            }
+            ready = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether a failed request failed because the bucket no longer exists, in which case the
+     * bucket is provisioned again before the next write
+     */
+    public void checkForMissingBucket(@Nonnull ErrorResponseException e) {
+        if("NoSuchBucket".equals(e.errorResponse().code())) {
+            logger.warn("The {} bucket no longer exists", CreateSnapshotTask.BUCKET_NAME);
+            ready = false;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reuses the large buffers that rendered ontology documents and scratch files are written through.
+ * <p>
+ * Documents are held in heap chunks, because the archive writers consume byte arrays.  Scratch
+ * files are written through direct buffers, so that file channels do not copy each write into a
+ * temporary direct buffer of their own.  Released buffers are kept up to the pool size and are
+ * otherwise left to the garbage collector, so a burst of exports never blocks on the pool.
+ */
+public class SnapshotBufferPool {
+
+    private final int chunkSize;
+
+    private final int sinkBufferSize;
+
+    private final BlockingQueue<byte[]> chunks;
+
+    private final BlockingQueue<ByteBuffer> sinkBuffers;
+
+    /**
+     * @param chunkSize The size of each heap chunk that holds part of a document
+     * @param sinkBufferSize The size of each direct buffer that scratch files are written through
+     * @param poolSize The total size of the chunks, and separately of the direct buffers, that are
+     *                 kept for reuse
+     */
+    public SnapshotBufferPool(int chunkSize, int sinkBufferSize, long poolSize) {
+        checkArgument(chunkSize > 0, "chunkSize must be greater than zero");
+        checkArgument(sinkBufferSize > 0, "sinkBufferSize must be greater than zero");
+        this.chunkSize = chunkSize;
+        this.sinkBufferSize = sinkBufferSize;
+        this.chunks = new ArrayBlockingQueue<>(getCapacity(poolSize, chunkSize));
+        this.sinkBuffers = new ArrayBlockingQueue<>(getCapacity(poolSize, sinkBufferSize));
+    }
+
+    private static int getCapacity(long poolSize, int bufferSize) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, poolSize / bufferSize));
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Takes a heap chunk from the pool, or allocates one if the pool is empty
+     */
+    @Nonnull
+    byte[] acquireChunk() {
+        var chunk = chunks.poll();
+        return chunk != null ? chunk : new byte[chunkSize];
+    }
+
+    /**
+     * Returns a chunk to the pool.  The chunk must not be used afterwards.
+     */
+    void releaseChunk(@Nonnull byte[] chunk) {
+        if(chunk.length == chunkSize) {
+            chunks.offer(chunk);
+        }
+    }
+
+    /**
+     * Takes a cleared direct buffer from the pool, or allocates one if the pool is empty
+     */
+    @Nonnull
+    ByteBuffer acquireSinkBuffer() {
+        var buffer = sinkBuffers.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(sinkBufferSize);
+    }
+
+    /**
+     * Returns a direct buffer to the pool.  The buffer must not be used afterwards.
+     */
+    void releaseSinkBuffer(@Nonnull ByteBuffer buffer) {
+        checkNotNull(buffer);
+        if(buffer.isDirect() && buffer.capacity() == sinkBufferSize) {
+            sinkBuffers.offer(buffer);
+        }
+    }
+}
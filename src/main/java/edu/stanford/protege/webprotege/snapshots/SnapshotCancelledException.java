@@ -0,0 +1,11 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+/**
+ * Thrown when the work for a snapshot is stopped because its {@link CancellationToken} was cancelled
+ */
+public class SnapshotCancelledException extends RuntimeException {
+
+    public SnapshotCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,70 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A short-lived cache of whether snapshots are stored, keyed by the name of the stored snapshot
+ * object.  Stored snapshots are cached along with the coordinates that they are downloaded from.
+ * Entries are replaced when this service stores or removes a snapshot.
+ */
+public class SnapshotExistenceCache {
+
+    private final Cache<String, SnapshotStorageCoordinates> storedSnapshots;
+
+    private final Cache<String, Boolean> missingSnapshots;
+
+    public SnapshotExistenceCache(@Nonnull Duration storedTtl,
+                                  @Nonnull Duration missingTtl,
+                                  long maximumSize) {
+        this.storedSnapshots = Caffeine.newBuilder()
+                                       .expireAfterWrite(checkNotNull(storedTtl))
+                                       .maximumSize(maximumSize)
+                                       .build();
+        this.missingSnapshots = Caffeine.newBuilder()
+                                        .expireAfterWrite(checkNotNull(missingTtl))
+                                        .maximumSize(maximumSize)
+                                        .build();
+    }
+
+    /**
+     * Gets the coordinates of a snapshot that is known to be stored
+     * @param objectName The name of the stored snapshot object
+     */
+    @Nonnull
+    public Optional<SnapshotStorageCoordinates> getStored(@Nonnull String objectName) {
+        return Optional.ofNullable(storedSnapshots.getIfPresent(objectName));
+    }
+
+    /**
+     * Determines whether a snapshot is known not to be stored
+     * @param objectName The name of the snapshot object
+     */
+    public boolean isKnownMissing(@Nonnull String objectName) {
+        return missingSnapshots.getIfPresent(objectName) != null;
+    }
+
+    public void putStored(@Nonnull String objectName, @Nonnull SnapshotStorageCoordinates coordinates) {
+        missingSnapshots.invalidate(objectName);
+        storedSnapshots.put(objectName, checkNotNull(coordinates));
+    }
+
+    public void putMissing(@Nonnull String objectName) {
+        storedSnapshots.invalidate(objectName);
+        missingSnapshots.put(objectName, Boolean.TRUE);
+    }
+
+    /**
+     * Forgets whether a snapshot is stored
+     */
+    public void invalidate(@Nonnull String objectName) {
+        storedSnapshots.invalidate(objectName);
+        missingSnapshots.invalidate(objectName);
+    }
+}
@@ -0,0 +1,48 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the {@link SnapshotExistenceCache}.
+ * <p>
+ * Other instances of the service may store or remove snapshots, so both the stored and missing
+ * entries are only kept for a short time.  Missing entries are kept for less time because a
+ * stale missing entry causes a snapshot to be created again.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.existence-cache")
+public class SnapshotExistenceCacheProperties {
+
+    private Duration storedTtl = Duration.ofSeconds(60);
+
+    private Duration missingTtl = Duration.ofSeconds(10);
+
+    private long maximumSize = 10_000;
+
+    public Duration getStoredTtl() {
+        return storedTtl;
+    }
+
+    public void setStoredTtl(Duration storedTtl) {
+        this.storedTtl = storedTtl;
+    }
+
+    public Duration getMissingTtl() {
+        return missingTtl;
+    }
+
+    public void setMissingTtl(Duration missingTtl) {
+        this.missingTtl = missingTtl;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+}
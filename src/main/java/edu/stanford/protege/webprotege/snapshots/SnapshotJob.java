@@ -0,0 +1,106 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A snapshot request that runs in the background.  The caller gets the id of the job straight away
+ * and polls for its status.
+ */
+public final class SnapshotJob {
+
+    @Nonnull
+    private final String jobId;
+
+    @Nonnull
+    private final ProjectId projectId;
+
+    @Nonnull
+    private final SnapshotProgress progress;
+
+    @Nonnull
+    private final CompletableFuture<SnapshotStorageCoordinates> result;
+
+    @Nonnull
+    private final String contentType;
+
+    /**
+     * @param contentType The content type of the snapshot archive that the job stores
+     */
+    public SnapshotJob(@Nonnull String jobId,
+                       @Nonnull ProjectId projectId,
+                       @Nonnull SnapshotProgress progress,
+                       @Nonnull CompletableFuture<SnapshotStorageCoordinates> result,
+                       @Nonnull String contentType) {
+        this.jobId = checkNotNull(jobId);
+        this.projectId = checkNotNull(projectId);
+        this.progress = checkNotNull(progress);
+        this.result = checkNotNull(result);
+        this.contentType = checkNotNull(contentType);
+    }
+
+    @Nonnull
+    public String getJobId() {
+        return jobId;
+    }
+
+    @Nonnull
+    public ProjectId getProjectId() {
+        return projectId;
+    }
+
+    /**
+     * Runs an action once this job has finished, whether or not it succeeded
+     */
+    public void whenFinished(@Nonnull Runnable action) {
+        checkNotNull(action);
+        result.whenComplete((coordinates, error) -> action.run());
+    }
+
+    /**
+     * Gets the current status of this job
+     */
+    @Nonnull
+    public GetSnapshotJobStatusResponse getStatus() {
+        if(result.isDone()) {
+            try {
+                var coordinates = result.join();
+                return new GetSnapshotJobStatusResponse(jobId, SnapshotJobPhase.COMPLETE,
+                                                        progress.getOntologiesSerialized(),
+                                                        progress.getOntologyCount(),
+                                                        progress.getBytesWritten(),
+                                                        progress.getUploadPart(),
+                                                        null,
+                                                        coordinates,
+                                                        contentType,
+                                                        null);
+            } catch (CompletionException e) {
+                var cause = e.getCause() != null ? e.getCause() : e;
+                var phase = cause instanceof SnapshotCancelledException ? SnapshotJobPhase.CANCELLED : SnapshotJobPhase.FAILED;
+                return new GetSnapshotJobStatusResponse(jobId, phase,
+                                                        progress.getOntologiesSerialized(),
+                                                        progress.getOntologyCount(),
+                                                        progress.getBytesWritten(),
+                                                        progress.getUploadPart(),
+                                                        null,
+                                                        null,
+                                                        null,
+                                                        cause.getMessage());
+            }
+        }
+        return new GetSnapshotJobStatusResponse(jobId, progress.getPhase(),
+                                                progress.getOntologiesSerialized(),
+                                                progress.getOntologyCount(),
+                                                progress.getBytesWritten(),
+                                                progress.getUploadPart(),
+                                                progress.getEstimatedSecondsRemaining(),
+                                                null,
+                                                null,
+                                                null);
+    }
+}
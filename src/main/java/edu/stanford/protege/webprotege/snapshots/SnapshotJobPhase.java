@@ -0,0 +1,49 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+/**
+ * The phases that a snapshot job goes through
+ */
+public enum SnapshotJobPhase {
+
+    /**
+     * The job is waiting for a worker
+     */
+    QUEUED,
+
+    /**
+     * The revision history of the project is being loaded and the ontologies are being built
+     */
+    LOADING_REVISIONS,
+
+    /**
+     * The ontologies are being rendered into the snapshot archive
+     */
+    SERIALIZING,
+
+    /**
+     * The snapshot archive is being sent to storage
+     */
+    UPLOADING,
+
+    /**
+     * The snapshot has been stored
+     */
+    COMPLETE,
+
+    /**
+     * The snapshot could not be created
+     */
+    FAILED,
+
+    /**
+     * The job was cancelled, either explicitly or because it ran past its deadline
+     */
+    CANCELLED;
+
+    /**
+     * Determines whether a job in this phase has finished
+     */
+    public boolean isFinished() {
+        return this == COMPLETE || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,41 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for snapshot jobs that are submitted with a {@link SubmitSnapshotJobRequest}.
+ * <p>
+ * Running jobs are always kept by the replica that runs them.  The status of a finished job is
+ * kept in memory until it has not been asked for within the retention period, or until there are
+ * more than the maximum number of finished jobs.  The stored record of a job, which any replica can
+ * report, is removed once it has not been written within the retention period.  The retention
+ * period should be longer than the snapshot task deadline so that the records of running jobs are
+ * not removed.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.jobs")
+public class SnapshotJobProperties {
+
+    private Duration retention = Duration.ofHours(1);
+
+    private int maxJobs = 10_000;
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    public void setRetention(Duration retention) {
+        this.retention = retention;
+    }
+
+    public int getMaxJobs() {
+        return maxJobs;
+    }
+
+    public void setMaxJobs(int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+}
@@ -0,0 +1,17 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import edu.stanford.protege.webprotege.common.ProjectId;
+
+/**
+ * The status of a snapshot job as it is stored in the snapshots bucket, so that any replica can
+ * report it
+ * @param projectId The project that the snapshot is of
+ * @param submittedAt The time, in milliseconds since the epoch, that the job was submitted
+ * @param status The status of the job when it was last stored
+ */
+public record SnapshotJobRecord(@JsonProperty("projectId") ProjectId projectId,
+                                @JsonProperty("submittedAt") long submittedAt,
+                                @JsonProperty("status") GetSnapshotJobStatusResponse status) {
+
+}
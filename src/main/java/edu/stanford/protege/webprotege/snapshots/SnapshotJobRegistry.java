@@ -0,0 +1,57 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps track of the snapshot jobs that were submitted to this replica, keyed by their job ids.
+ * Running jobs are always kept.  Finished jobs are forgotten once their status has not been asked
+ * for within the retention period, or when there are too many of them; their status can still be
+ * read from the {@link SnapshotJobStore}.
+ */
+public class SnapshotJobRegistry {
+
+    private final Map<String, SnapshotJob> runningJobs = new ConcurrentHashMap<>();
+
+    private final Cache<String, SnapshotJob> finishedJobs;
+
+    public SnapshotJobRegistry(@Nonnull Duration retention, int maxJobs) {
+        this.finishedJobs = Caffeine.newBuilder()
+                                    .expireAfterAccess(checkNotNull(retention))
+                                    .maximumSize(maxJobs)
+                                    .build();
+    }
+
+    public void register(@Nonnull SnapshotJob job) {
+        runningJobs.put(job.getJobId(), job);
+        job.whenFinished(() -> {
+            // Added to the finished jobs first so that the job can always be found
+            finishedJobs.put(job.getJobId(), job);
+            runningJobs.remove(job.getJobId());
+        });
+    }
+
+    @Nonnull
+    public Optional<SnapshotJob> getJob(@Nonnull String jobId) {
+        var runningJob = runningJobs.get(jobId);
+        if(runningJob != null) {
+            return Optional.of(runningJob);
+        }
+        return Optional.ofNullable(finishedJobs.getIfPresent(jobId));
+    }
+
+    /**
+     * Gets the number of jobs that have not finished
+     */
+    public int getRunningCount() {
+        return runningJobs.size();
+    }
+}
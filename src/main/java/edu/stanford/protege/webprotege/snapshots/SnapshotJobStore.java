@@ -0,0 +1,155 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.minio.GetObjectArgs;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.MinioException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores the status of snapshot jobs in the snapshots bucket, under {@link #JOBS_PREFIX} followed
+ * by the job id, so that a job's status can be reported by any replica and after the replica that
+ * ran the job has restarted.  A job's status is stored when the job is submitted and again when it
+ * finishes.  Records that have not been written within the retention period are removed in the
+ * background.
+ */
+public class SnapshotJobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotJobStore.class);
+
+    public static final String JOBS_PREFIX = "/jobs/";
+
+    private static final String RECORD_CONTENT_TYPE = "application/json";
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    @Nonnull
+    private final ObjectMapper objectMapper;
+
+    @Nonnull
+    private final Duration retention;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "snapshot-job-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotJobStore(@Nonnull MinioClient minioClient,
+                            @Nonnull ObjectMapper objectMapper,
+                            @Nonnull Duration retention) {
+        this.minioClient = checkNotNull(minioClient);
+        this.objectMapper = checkNotNull(objectMapper);
+        this.retention = checkNotNull(retention);
+    }
+
+    @Nonnull
+    public static String getJobLocation(@Nonnull String jobId) {
+        return JOBS_PREFIX + jobId;
+    }
+
+    /**
+     * Removes expired job records at the specified interval
+     */
+    public void start(@Nonnull Duration interval) {
+        executor.scheduleWithFixedDelay(this::removeExpiredSafely, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Stores the status of a job.  Failures are logged, and the status is then only known to the
+     * replica that runs the job.
+     */
+    public void store(@Nonnull String jobId, @Nonnull SnapshotJobRecord record) {
+        try {
+            var bytes = objectMapper.writeValueAsBytes(record);
+            minioClient.putObject(PutObjectArgs.builder()
+                                               .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                               .object(getJobLocation(jobId))
+                                               .stream(new ByteArrayInputStream(bytes), bytes.length, -1)
+                                               .contentType(RECORD_CONTENT_TYPE)
+                                               .build());
+        } catch (Exception e) {
+            logger.warn("{} Could not store the status of snapshot job {}", record.projectId(), jobId, e);
+        }
+    }
+
+    /**
+     * Loads the status of a job
+     * @return The record of the job, or empty if the job is not known
+     */
+    @Nonnull
+    public Optional<SnapshotJobRecord> load(@Nonnull String jobId) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        var getObjectArgs = GetObjectArgs.builder()
+                                         .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                         .object(getJobLocation(jobId))
+                                         .build();
+        try (var inputStream = minioClient.getObject(getObjectArgs)) {
+            return Optional.of(objectMapper.readValue(inputStream, SnapshotJobRecord.class));
+        } catch (ErrorResponseException e) {
+            if("NoSuchKey".equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes the records of jobs that have not been written within the retention period
+     * @return The number of records that were removed
+     */
+    public int removeExpired() throws Exception {
+        var cutoff = Instant.now().minus(retention);
+        var removed = 0;
+        var objects = minioClient.listObjects(ListObjectsArgs.builder()
+                                                             .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                             .prefix(JOBS_PREFIX)
+                                                             .recursive(true)
+                                                             .build());
+        for(var result : objects) {
+            var item = result.get();
+            if(item.lastModified() != null && item.lastModified().toInstant().isBefore(cutoff)) {
+                minioClient.removeObject(RemoveObjectArgs.builder()
+                                                         .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                         .object(item.objectName())
+                                                         .build());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void removeExpiredSafely() {
+        try {
+            var removed = removeExpired();
+            if(removed > 0) {
+                logger.info("Removed {} expired snapshot job records", removed);
+            }
+        } catch (Exception e) {
+            logger.warn("Could not remove expired snapshot job records", e);
+        }
+    }
+}
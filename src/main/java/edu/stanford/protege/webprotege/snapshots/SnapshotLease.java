@@ -0,0 +1,39 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.time.Instant;
+
+/**
+ * A lease on a snapshot key that is held by one replica of the service
+ * @param objectName The name of the object that holds the lease
+ * @param state Whether the snapshot is being created, or is waiting for a replica to create it
+ * @param holder The id of the replica that holds the lease
+ * @param expiresAt When the lease expires unless it is renewed
+ * @param fileName The display name of the project, which wanted snapshots are created with
+ * @param etag The entity tag of the lease object, which conditional replacements are made against
+ */
+public record SnapshotLease(@Nonnull String objectName,
+                            @Nonnull State state,
+                            @Nonnull String holder,
+                            @Nonnull Instant expiresAt,
+                            @Nullable String fileName,
+                            @Nonnull String etag) {
+
+    public boolean isExpired(@Nonnull Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+
+    public enum State {
+
+        /**
+         * A busy replica would like another replica to create the snapshot
+         */
+        WANTED,
+
+        /**
+         * The holder is creating the snapshot
+         */
+        CLAIMED
+    }
+}
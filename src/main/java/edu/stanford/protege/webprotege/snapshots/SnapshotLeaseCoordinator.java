@@ -0,0 +1,376 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Makes sure that each snapshot is created by one replica of the service at a time.
+ * <p>
+ * A replica claims a snapshot by holding a lease on it in the {@link SnapshotLeaseStore} while it
+ * creates the snapshot.  The lease is renewed every heartbeat interval and released when the
+ * snapshot has been stored.  Replicas that want a snapshot that is leased by another replica wait
+ * until the lease is released, and then use the stored snapshot.  A lease that has not been
+ * renewed before it expires is taken over, so that a replica that stops does not block a snapshot.
+ * <p>
+ * A replica whose workers are all busy advertises the snapshots that it has queued with a
+ * {@link SnapshotLease.State#WANTED} lease.  Idle replicas pick these up with the
+ * {@link SnapshotWorkStealer}.
+ * <p>
+ * When leasing is disabled every claim succeeds straight away and nothing is stored.  Errors from
+ * the object store also give a claim that is not backed by a lease, so that snapshots are still
+ * created when leases cannot be stored.  These claims are logged and counted, because other
+ * replicas may then create the same snapshot.
+ */
+public class SnapshotLeaseCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotLeaseCoordinator.class);
+
+    private static final Claim UNLEASED_CLAIM = new Claim(null, null);
+
+    @Nonnull
+    private final SnapshotLeaseStore leaseStore;
+
+    private final boolean enabled;
+
+    @Nonnull
+    private final String replicaId;
+
+    @Nonnull
+    private final Duration leaseDuration;
+
+    @Nonnull
+    private final Duration heartbeatInterval;
+
+    @Nonnull
+    private final Duration pollInterval;
+
+    @Nonnull
+    private final SnapshotTaskScheduler snapshotTaskScheduler;
+
+    @Nonnull
+    private final Clock clock;
+
+    private final Counter takeoverCounter;
+
+    private final Counter waitCounter;
+
+    private final Counter unleasedCounter;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "snapshot-lease-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotLeaseCoordinator(@Nonnull SnapshotLeaseStore leaseStore,
+                                    boolean enabled,
+                                    @Nonnull String replicaId,
+                                    @Nonnull Duration leaseDuration,
+                                    @Nonnull Duration heartbeatInterval,
+                                    @Nonnull Duration pollInterval,
+                                    @Nonnull SnapshotTaskScheduler snapshotTaskScheduler,
+                                    @Nonnull MeterRegistry meterRegistry) {
+        this(leaseStore, enabled, replicaId, leaseDuration, heartbeatInterval, pollInterval,
+             snapshotTaskScheduler, Clock.systemUTC(), meterRegistry);
+    }
+
+    SnapshotLeaseCoordinator(@Nonnull SnapshotLeaseStore leaseStore,
+                             boolean enabled,
+                             @Nonnull String replicaId,
+                             @Nonnull Duration leaseDuration,
+                             @Nonnull Duration heartbeatInterval,
+                             @Nonnull Duration pollInterval,
+                             @Nonnull SnapshotTaskScheduler snapshotTaskScheduler,
+                             @Nonnull Clock clock,
+                             @Nonnull MeterRegistry meterRegistry) {
+        this.leaseStore = checkNotNull(leaseStore);
+        this.enabled = enabled;
+        this.replicaId = checkNotNull(replicaId);
+        this.leaseDuration = checkNotNull(leaseDuration);
+        this.heartbeatInterval = checkNotNull(heartbeatInterval);
+        this.pollInterval = checkNotNull(pollInterval);
+        this.snapshotTaskScheduler = checkNotNull(snapshotTaskScheduler);
+        this.clock = checkNotNull(clock);
+        this.takeoverCounter = Counter.builder("webprotege.snapshots.leases.takeovers")
+                                      .description("The number of expired snapshot leases that were taken over from other replicas")
+                                      .register(meterRegistry);
+        this.waitCounter = Counter.builder("webprotege.snapshots.leases.waits")
+                                  .description("The number of snapshots that waited for another replica to create them")
+                                  .register(meterRegistry);
+        this.unleasedCounter = Counter.builder("webprotege.snapshots.leases.unleased")
+                                      .description("The number of snapshots that were claimed without a lease because the lease store failed")
+                                      .register(meterRegistry);
+        if(enabled) {
+            logger.info("Snapshot leases are enabled (replica: {}, lease duration: {})", replicaId, leaseDuration);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Nonnull
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    /**
+     * Claims a snapshot for this replica, waiting while another replica holds a lease on it
+     * @param location The snapshot
+     * @param cancellation Stops the wait
+     * @return The claim, which must be closed once the snapshot has been stored, or empty if the
+     * snapshot was leased by another replica that has since released its lease.  The snapshot
+     * has then normally been stored by the other replica.
+     * @throws SnapshotCancelledException if the snapshot was cancelled while it was waiting
+     */
+    @Nonnull
+    public Optional<Claim> claim(@Nonnull SnapshotLocation location,
+                                 @Nonnull CancellationToken cancellation) {
+        if(!enabled) {
+            return Optional.of(UNLEASED_CLAIM);
+        }
+        var waited = false;
+        while(true) {
+            cancellation.throwIfCancelled();
+            // Once the lease that was waited for has been released the snapshot is not claimed again
+            var attempt = tryClaim(location, !waited);
+            if(attempt.claim() != null) {
+                return Optional.of(attempt.claim());
+            }
+            if(attempt.holder() == null) {
+                if(waited) {
+                    // The other replica has finished with the snapshot, or another replica
+                    // claimed it first
+                    return Optional.empty();
+                }
+                // The lease was released between reading and replacing it
+                continue;
+            }
+            if(!waited) {
+                logger.info("{} Waiting for replica {} to create the snapshot", location, attempt.holder());
+                waitCounter.increment();
+                waited = true;
+            }
+            await(cancellation);
+        }
+    }
+
+    /**
+     * Claims a snapshot for this replica if no other replica holds a lease on it
+     * @param location The snapshot
+     * @return The claim, which must be closed once the snapshot has been stored, or empty if
+     * another replica holds a lease on the snapshot
+     */
+    @Nonnull
+    public Optional<Claim> tryClaim(@Nonnull SnapshotLocation location) {
+        if(!enabled) {
+            return Optional.of(UNLEASED_CLAIM);
+        }
+        return Optional.ofNullable(tryClaim(location, true).claim());
+    }
+
+    /**
+     * Asks other replicas to create a snapshot that this replica has queued, if this replica's
+     * workers are all busy.  The request is written in the background and is ignored if any
+     * replica already holds a lease on the snapshot.
+     * @param location The snapshot
+     * @param fileName The display name of the project, which the snapshot is created with
+     */
+    public void advertise(@Nonnull SnapshotLocation location, @Nonnull String fileName) {
+        if(!enabled || !isSaturated()) {
+            return;
+        }
+        var leaseObjectName = SnapshotLeaseStore.getLeaseLocation(location);
+        executor.execute(() -> {
+            try {
+                var lease = leaseStore.create(leaseObjectName, SnapshotLease.State.WANTED, replicaId,
+                                              clock.instant().plus(leaseDuration), fileName);
+                if(lease.isPresent()) {
+                    logger.info("{} Asked other replicas to create the snapshot", location);
+                }
+            } catch (Exception e) {
+                logger.warn("{} Could not ask other replicas to create the snapshot: {}", location, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Determines whether this replica has more snapshot work than workers to run it on
+     */
+    public boolean isSaturated() {
+        return snapshotTaskScheduler.getQueueDepth() > 0
+                || snapshotTaskScheduler.getRunningCount() >= snapshotTaskScheduler.getWorkerCount();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ClaimAttempt tryClaim(SnapshotLocation location, boolean claimIfUnleased) {
+        var leaseObjectName = SnapshotLeaseStore.getLeaseLocation(location);
+        try {
+            var now = clock.instant();
+            var expiresAt = now.plus(leaseDuration);
+            var existing = leaseStore.read(leaseObjectName);
+            if(existing.isEmpty()) {
+                if(!claimIfUnleased) {
+                    return ClaimAttempt.heldBy(null);
+                }
+                return leaseStore.create(leaseObjectName, SnapshotLease.State.CLAIMED, replicaId, expiresAt, null)
+                                 .map(this::startClaim)
+                                 .orElseGet(() -> ClaimAttempt.heldBy(null));
+            }
+            var lease = existing.get();
+            var heldElsewhere = lease.state() == SnapshotLease.State.CLAIMED && !lease.holder().equals(replicaId);
+            if(heldElsewhere && !lease.isExpired(now)) {
+                return ClaimAttempt.heldBy(lease.holder());
+            }
+            var replaced = leaseStore.replace(lease, SnapshotLease.State.CLAIMED, replicaId, expiresAt);
+            if(replaced.isEmpty()) {
+                return ClaimAttempt.heldBy(null);
+            }
+            if(heldElsewhere) {
+                logger.warn("{} Took over the expired lease of replica {}", location, lease.holder());
+                takeoverCounter.increment();
+            }
+            return startClaim(replaced.get());
+        } catch (Exception e) {
+            // Snapshots are still created when leases cannot be stored, at the cost of duplicated work
+            logger.warn("{} Could not claim the snapshot lease.  Creating the snapshot without a lease, so other replicas may create it too: {}",
+                        location, e.getMessage());
+            unleasedCounter.increment();
+            return new ClaimAttempt(UNLEASED_CLAIM, null);
+        }
+    }
+
+    private ClaimAttempt startClaim(SnapshotLease lease) {
+        var claim = new Claim(this, lease);
+        claim.heartbeat = executor.scheduleWithFixedDelay(claim::renew,
+                                                          heartbeatInterval.toMillis(),
+                                                          heartbeatInterval.toMillis(),
+                                                          TimeUnit.MILLISECONDS);
+        return new ClaimAttempt(claim, null);
+    }
+
+    private void await(CancellationToken cancellation) {
+        var cancelled = new CountDownLatch(1);
+        try (var registration = cancellation.onCancel(cancelled::countDown)) {
+            cancelled.await(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SnapshotCancelledException("Interrupted while waiting for a snapshot lease");
+        }
+        cancellation.throwIfCancelled();
+    }
+
+    /**
+     * The result of one attempt to claim a snapshot: either a claim, or the replica that holds
+     * the lease (null if the lease changed while it was being claimed)
+     */
+    private record ClaimAttempt(Claim claim, String holder) {
+
+        private static ClaimAttempt heldBy(String holder) {
+            return new ClaimAttempt(null, holder);
+        }
+    }
+
+    /**
+     * A snapshot that this replica has claimed.  The lease on the snapshot is renewed until the
+     * claim is closed.
+     */
+    public static final class Claim implements AutoCloseable {
+
+        private final SnapshotLeaseCoordinator coordinator;
+
+        /**
+         * Guards the lease.  Releasing the lease may block on the object store, and a lock does not
+         * pin the virtual thread that closes the claim to its carrier.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private volatile SnapshotLease lease;
+
+        private ScheduledFuture<?> heartbeat;
+
+        private boolean closed = false;
+
+        private Claim(SnapshotLeaseCoordinator coordinator, SnapshotLease lease) {
+            this.coordinator = coordinator;
+            this.lease = lease;
+        }
+
+        /**
+         * Determines whether the claim is backed by a lease.  Claims are not leased when leasing
+         * is disabled or the lease could not be stored.
+         */
+        public boolean isLeased() {
+            return lease != null;
+        }
+
+        private void renew() {
+            lock.lock();
+            try {
+                if(closed || lease == null) {
+                    return;
+                }
+                renewLease();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void renewLease() {
+            try {
+                var renewed = coordinator.leaseStore.replace(lease, SnapshotLease.State.CLAIMED, coordinator.replicaId,
+                                                             coordinator.clock.instant().plus(coordinator.leaseDuration));
+                if(renewed.isPresent()) {
+                    lease = renewed.get();
+                }
+                else {
+                    // Another replica took the lease over, so this one cannot be renewed or released
+                    logger.warn("{} Lost the snapshot lease", lease.objectName());
+                    lease = null;
+                    heartbeat.cancel(false);
+                }
+            } catch (Exception e) {
+                // The next heartbeat tries again, and the lease is only lost once it expires
+                logger.warn("{} Could not renew the snapshot lease: {}", lease.objectName(), e.getMessage());
+            }
+        }
+
+        /**
+         * Releases the lease
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                if(closed || lease == null) {
+                    return;
+                }
+                closed = true;
+                heartbeat.cancel(false);
+                coordinator.leaseStore.release(lease);
+            } catch (Exception e) {
+                logger.warn("{} Could not release the snapshot lease: {}", lease.objectName(), e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Configuration for the {@link SnapshotLeaseCoordinator}, which coordinates the replicas of the
+ * service that share a snapshots bucket.
+ * <p>
+ * A lease is renewed every heartbeat interval and is taken over by another replica once it has not
+ * been renewed for the lease duration.  The heartbeat interval should be a small fraction of the
+ * lease duration, so that slow renewals do not lose the lease.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.leases")
+public class SnapshotLeaseProperties {
+
+    private boolean enabled = false;
+
+    private Duration leaseDuration = Duration.ofSeconds(60);
+
+    private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+    private Duration pollInterval = Duration.ofSeconds(5);
+
+    private String replicaId = "";
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Duration getLeaseDuration() {
+        return leaseDuration;
+    }
+
+    public void setLeaseDuration(Duration leaseDuration) {
+        this.leaseDuration = leaseDuration;
+    }
+
+    public Duration getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    public void setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    public String getReplicaId() {
+        return replicaId;
+    }
+
+    public void setReplicaId(String replicaId) {
+        this.replicaId = replicaId;
+    }
+
+    /**
+     * Gets the replica id, which defaults to the host name with a random suffix so that a
+     * restarted replica does not renew the leases of its previous run
+     */
+    public String getEffectiveReplicaId() {
+        if(replicaId != null && !replicaId.isBlank()) {
+            return replicaId;
+        }
+        var suffix = UUID.randomUUID().toString().substring(0, 8);
+        try {
+            return InetAddress.getLocalHost().getHostName() + "-" + suffix;
+        } catch (UnknownHostException e) {
+            return "replica-" + suffix;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import io.minio.errors.MinioException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stores leases on snapshot keys as empty objects in the snapshots bucket, so that replicas of the
+ * service can coordinate without another service.  The lease is held in the object metadata.
+ * Leases are created with If-None-Match and replaced with If-Match conditional writes, so only one
+ * replica wins each change to a lease.
+ */
+public class SnapshotLeaseStore {
+
+    public static final String LEASES_PREFIX = "/leases";
+
+    private static final String HOLDER_METADATA_KEY = "lease-holder";
+
+    private static final String STATE_METADATA_KEY = "lease-state";
+
+    private static final String EXPIRES_METADATA_KEY = "lease-expires";
+
+    private static final String FILE_NAME_METADATA_KEY = "lease-file-name";
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    public SnapshotLeaseStore(@Nonnull MinioClient minioClient) {
+        this.minioClient = checkNotNull(minioClient);
+    }
+
+    /**
+     * Gets the name of the object that holds the lease on a snapshot.  Lease objects are kept
+     * apart from the projects, so that they can be listed on their own.
+     */
+    @Nonnull
+    public static String getLeaseLocation(@Nonnull SnapshotLocation location) {
+        return LEASES_PREFIX + location.getLocation();
+    }
+
+    /**
+     * Gets the name of the snapshot that a lease object is for
+     */
+    @Nonnull
+    public static Optional<String> getSnapshotLocation(@Nonnull String leaseObjectName) {
+        if(!leaseObjectName.startsWith(LEASES_PREFIX + "/")) {
+            return Optional.empty();
+        }
+        return Optional.of(leaseObjectName.substring(LEASES_PREFIX.length()));
+    }
+
+    /**
+     * Reads a lease
+     * @return The lease, or empty if nobody holds a lease on the snapshot
+     */
+    @Nonnull
+    public Optional<SnapshotLease> read(@Nonnull String leaseObjectName) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        try {
+            var stat = minioClient.statObject(StatObjectArgs.builder()
+                                                            .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                            .object(leaseObjectName)
+                                                            .build());
+            return parseLease(leaseObjectName, stat.userMetadata(), stat.etag());
+        } catch (ErrorResponseException e) {
+            if("NoSuchKey".equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Lists the leases on all snapshots.  MinIO returns the lease metadata in the listing.  Other
+     * object stores do not, so leases whose metadata is not in the listing are read one at a time.
+     */
+    @Nonnull
+    public List<SnapshotLease> list() throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        var leases = new ArrayList<SnapshotLease>();
+        var objects = minioClient.listObjects(ListObjectsArgs.builder()
+                                                             .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                             .prefix(LEASES_PREFIX + "/")
+                                                             .recursive(true)
+                                                             .includeUserMetadata(true)
+                                                             .build());
+        for(var result : objects) {
+            var item = result.get();
+            if(item.isDir()) {
+                continue;
+            }
+            var listedLease = item.userMetadata() != null
+                    ? parseLease(item.objectName(), item.userMetadata(), item.etag())
+                    : Optional.<SnapshotLease>empty();
+            if(listedLease.isPresent()) {
+                leases.add(listedLease.get());
+            }
+            else {
+                read(item.objectName()).ifPresent(leases::add);
+            }
+        }
+        return leases;
+    }
+
+    /**
+     * Creates a lease if nobody holds a lease on the snapshot
+     * @return The lease, or empty if another lease was created first
+     */
+    @Nonnull
+    public Optional<SnapshotLease> create(@Nonnull String leaseObjectName,
+                                          @Nonnull SnapshotLease.State state,
+                                          @Nonnull String holder,
+                                          @Nonnull Instant expiresAt,
+                                          @Nullable String fileName) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        return write(leaseObjectName, state, holder, expiresAt, fileName, Map.of("If-None-Match", "*"));
+    }
+
+    /**
+     * Replaces a lease, provided that it has not changed since it was read
+     * @return The new lease, or empty if the lease was changed by another replica
+     */
+    @Nonnull
+    public Optional<SnapshotLease> replace(@Nonnull SnapshotLease lease,
+                                           @Nonnull SnapshotLease.State state,
+                                           @Nonnull String holder,
+                                           @Nonnull Instant expiresAt) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        return write(lease.objectName(), state, holder, expiresAt, lease.fileName(), Map.of("If-Match", quote(lease.etag())));
+    }
+
+    /**
+     * Removes a lease, provided that it has not changed since it was read
+     */
+    public void release(@Nonnull SnapshotLease lease) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                                                     .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                     .object(lease.objectName())
+                                                     .extraHeaders(Map.of("If-Match", quote(lease.etag())))
+                                                     .build());
+        } catch (ErrorResponseException e) {
+            if(!isPreconditionFailure(e)) {
+                throw e;
+            }
+        }
+    }
+
+    private Optional<SnapshotLease> write(String leaseObjectName,
+                                          SnapshotLease.State state,
+                                          String holder,
+                                          Instant expiresAt,
+                                          String fileName,
+                                          Map<String, String> conditions) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        var userMetadata = new HashMap<String, String>();
+        userMetadata.put(STATE_METADATA_KEY, state.name());
+        userMetadata.put(HOLDER_METADATA_KEY, holder);
+        userMetadata.put(EXPIRES_METADATA_KEY, Long.toString(expiresAt.toEpochMilli()));
+        if(fileName != null) {
+            userMetadata.put(FILE_NAME_METADATA_KEY, fileName);
+        }
+        try {
+            var response = minioClient.putObject(PutObjectArgs.builder()
+                                                              .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                              .object(leaseObjectName)
+                                                              .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
+                                                              .userMetadata(userMetadata)
+                                                              .extraHeaders(conditions)
+                                                              .build());
+            return Optional.of(new SnapshotLease(leaseObjectName, state, holder, expiresAt, fileName, unquote(response.etag())));
+        } catch (ErrorResponseException e) {
+            if(isPreconditionFailure(e)) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    private static boolean isPreconditionFailure(ErrorResponseException e) {
+        // Another replica changed the lease first
+        var code = e.errorResponse().code();
+        return "PreconditionFailed".equals(code) || "ConditionalRequestConflict".equals(code);
+    }
+
+    static Optional<SnapshotLease> parseLease(String leaseObjectName, Map<String, String> userMetadata, String etag) {
+        var state = getMetadata(userMetadata, STATE_METADATA_KEY);
+        var holder = getMetadata(userMetadata, HOLDER_METADATA_KEY);
+        var expires = getMetadata(userMetadata, EXPIRES_METADATA_KEY);
+        if(state == null || holder == null || expires == null || etag == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new SnapshotLease(leaseObjectName,
+                                                 SnapshotLease.State.valueOf(state),
+                                                 holder,
+                                                 Instant.ofEpochMilli(Long.parseLong(expires)),
+                                                 getMetadata(userMetadata, FILE_NAME_METADATA_KEY),
+                                                 unquote(etag)));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String getMetadata(Map<String, String> userMetadata, String key) {
+        // Metadata keys are case-insensitive, and listings may return them with their header prefix
+        return userMetadata.entrySet()
+                           .stream()
+                           .filter(entry -> entry.getKey().toLowerCase(Locale.ROOT).endsWith(key))
+                           .map(Map.Entry::getValue)
+                           .findFirst()
+                           .orElse(null);
+    }
+
+    private static String quote(String etag) {
+        return "\"" + etag + "\"";
+    }
+
+    private static String unquote(String etag) {
+        if(etag != null && etag.length() >= 2 && etag.startsWith("\"") && etag.endsWith("\"")) {
+            return etag.substring(1, etag.length() - 1);
+        }
+        return etag;
+    }
+}
@@ -4,6 +4,8 @@ import edu.stanford.protege.webprotege.common.DocumentFormat;
 import edu.stanford.protege.webprotege.common.ProjectId;
 import edu.stanford.protege.webprotege.revision.RevisionNumber;
 
+import java.util.Objects;
+
 /**
  * Matthew Horridge
  * Stanford Center for Biomedical Informatics Research
@@ -23,13 +25,71 @@ public class SnapshotLocation {
         this.format = format;
     }
 
+    public ProjectId getProjectId() {
+        return projectId;
+    }
+
+    public RevisionNumber getRevisionNumber() {
+        return revisionNumber;
+    }
+
+    public DocumentFormat getFormat() {
+        return format;
+    }
+
     /**
      * Gets the location/name for the stored snapshot
      * @return A location/name for the stored snapshot that will be used in a (e.g. S3) storage service
      */
     public String getLocation() {
-        return "/projects/%s/revisions/%d/%s".formatted(projectId.id(),
-                                                        revisionNumber.getValue(),
-                                                        format.getExtension());
+        return getRevisionsPrefix(projectId) + "%d/%s".formatted(revisionNumber.getValue(),
+                                                                 format.getExtension());
+    }
+
+    /**
+     * Gets the prefix of the locations of all stored snapshots of the specified project
+     */
+    public static String getRevisionsPrefix(ProjectId projectId) {
+        return "/projects/%s/revisions/".formatted(projectId.id());
+    }
+
+    /**
+     * Gets the prefix of the locations of the content addressed snapshot archives of the specified project
+     */
+    public static String getContentPrefix(ProjectId projectId) {
+        return "/projects/%s/content/".formatted(projectId.id());
+    }
+
+    /**
+     * Gets the location of a snapshot archive that is stored under its content hash.  The stored
+     * snapshot of a revision then points to this location.
+     * @param projectId The project
+     * @param contentHash The hex encoded SHA-256 hash of the archive
+     */
+    public static String getContentLocation(ProjectId projectId, String contentHash) {
+        return getContentPrefix(projectId) + contentHash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SnapshotLocation other)) {
+            return false;
+        }
+        return projectId.equals(other.projectId)
+                && revisionNumber.equals(other.revisionNumber)
+                && format == other.format;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(projectId, revisionNumber, format);
+    }
+
+    @Override
+    public String toString() {
+        return getLocation();
     }
 }
@@ -0,0 +1,156 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Records where the time goes when a snapshot is created.
+ * <p>
+ * Each phase of an export has a timer, tagged with the phase and the document format, so that
+ * latency can be attributed to loading the revision history, building the revision, waiting for
+ * the project prefixes, rendering ontologies, packaging the archive or uploading it.  Snapshot
+ * sizes are recorded per format, and lookups for snapshots that already exist are counted as hits
+ * or misses.
+ */
+public class SnapshotMetrics {
+
+    /**
+     * The timed phases of an export
+     */
+    public enum Phase {
+
+        /**
+         * Loading (or reloading) the revision history of the project
+         */
+        LOAD_REVISIONS("load-revisions"),
+
+        /**
+         * Building the ontologies for the revision, from a checkpoint, an earlier snapshot or by
+         * replaying the revision history
+         */
+        BUILD_REVISION("build-revision"),
+
+        /**
+         * Waiting for the prefix declarations of the project
+         */
+        PREFIXES("prefixes"),
+
+        /**
+         * Rendering a single ontology document
+         */
+        RENDER("render"),
+
+        /**
+         * Adding rendered documents to the archive, which includes compressing them
+         */
+        ARCHIVE("archive"),
+
+        /**
+         * Sending the snapshot to storage.  When the snapshot is streamed this is the time spent
+         * waiting for the upload once the snapshot has been written.
+         */
+        UPLOAD("upload"),
+
+        /**
+         * The whole export
+         */
+        TOTAL("total");
+
+        private final String tagValue;
+
+        Phase(String tagValue) {
+            this.tagValue = tagValue;
+        }
+    }
+
+    private static final String PHASE_TIMER = "webprotege.snapshots.phase";
+
+    private static final String SIZE_SUMMARY = "webprotege.snapshots.size";
+
+    private static final String LOOKUP_COUNTER = "webprotege.snapshots.lookups";
+
+    @Nonnull
+    private final MeterRegistry meterRegistry;
+
+    private final Counter lookupHits;
+
+    private final Counter lookupMisses;
+
+    public SnapshotMetrics(@Nonnull MeterRegistry meterRegistry) {
+        this.meterRegistry = checkNotNull(meterRegistry);
+        this.lookupHits = lookupCounter("hit");
+        this.lookupMisses = lookupCounter("miss");
+    }
+
+    /**
+     * Starts timing a phase.  Pass the sample to {@link #stop(Timer.Sample, Phase, DocumentFormat)}
+     * when the phase is over.
+     */
+    @Nonnull
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * Stops timing a phase
+     * @return The duration of the phase in nanoseconds
+     */
+    public long stop(@Nonnull Timer.Sample sample,
+                     @Nonnull Phase phase,
+                     @Nonnull DocumentFormat format) {
+        return sample.stop(getPhaseTimer(phase, format));
+    }
+
+    /**
+     * Records time spent in a phase that was measured in several parts
+     */
+    public void record(@Nonnull Phase phase,
+                       @Nonnull DocumentFormat format,
+                       long nanos) {
+        getPhaseTimer(phase, format).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records the size of a stored snapshot
+     */
+    public void recordSnapshotSize(@Nonnull DocumentFormat format, long bytes) {
+        DistributionSummary.builder(SIZE_SUMMARY)
+                           .description("The size of stored snapshots")
+                           .baseUnit("bytes")
+                           .tag("format", format.name())
+                           .publishPercentileHistogram()
+                           .register(meterRegistry)
+                           .record(bytes);
+    }
+
+    /**
+     * Records whether a requested snapshot was already in storage
+     */
+    public void recordExistingSnapshotLookup(boolean hit) {
+        (hit ? lookupHits : lookupMisses).increment();
+    }
+
+    private Timer getPhaseTimer(Phase phase, DocumentFormat format) {
+        return Timer.builder(PHASE_TIMER)
+                    .description("The time spent in each phase of creating a snapshot")
+                    .tag("phase", phase.tagValue)
+                    .tag("format", format.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+    }
+
+    private Counter lookupCounter(String result) {
+        return Counter.builder(LOOKUP_COUNTER)
+                      .description("Lookups for snapshots that have already been stored")
+                      .tag("result", result)
+                      .register(meterRegistry);
+    }
+}
@@ -0,0 +1,202 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A bounded ring buffer that connects a thread that writes a snapshot to a thread that uploads it.
+ * <p>
+ * Unlike {@link java.io.PipedInputStream}, either side can abort the pipe.  Aborting wakes up the
+ * other side, which then fails with an {@link IOException}.  This means that a failed upload stops
+ * serialization straight away, and a failed serialization makes the upload fail rather than
+ * complete with a truncated object.
+ */
+final class SnapshotPipe {
+
+    private final byte[] buffer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private int readPosition = 0;
+
+    private int count = 0;
+
+    private boolean writerClosed = false;
+
+    private Throwable abortCause = null;
+
+    private final InputStream inputStream = new PipeInputStream();
+
+    private final OutputStream outputStream = new PipeOutputStream();
+
+    SnapshotPipe(int bufferSize) {
+        checkArgument(bufferSize > 0, "bufferSize must be greater than zero");
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Gets the reading end of the pipe
+     */
+    @Nonnull
+    InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Gets the writing end of the pipe.  Closing it signals the end of the stream to the reader.
+     */
+    @Nonnull
+    OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Aborts the pipe.  Any blocked or subsequent reads and writes fail.
+     * @param cause The reason the pipe was aborted
+     */
+    void abort(@Nonnull Throwable cause) {
+        lock.lock();
+        try {
+            if(abortCause == null) {
+                abortCause = cause;
+            }
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkNotAborted() throws IOException {
+        if(abortCause != null) {
+            throw new IOException("Snapshot pipe was aborted", abortCause);
+        }
+    }
+
+    private static InterruptedIOException interrupted() {
+        Thread.currentThread().interrupt();
+        return new InterruptedIOException("Interrupted while waiting on the snapshot pipe");
+    }
+
+    private class PipeInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            var single = new byte[1];
+            var read = read(single, 0, 1);
+            return read == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(@Nonnull byte[] b, int off, int len) throws IOException {
+            if(len == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                while (count == 0 && !writerClosed && abortCause == null) {
+                    notEmpty.await();
+                }
+                checkNotAborted();
+                if(count == 0) {
+                    return -1;
+                }
+                var contiguous = Math.min(count, buffer.length - readPosition);
+                var n = Math.min(len, contiguous);
+                System.arraycopy(buffer, readPosition, b, off, n);
+                readPosition = (readPosition + n) % buffer.length;
+                count -= n;
+                notFull.signalAll();
+                return n;
+            } catch (InterruptedException e) {
+                throw interrupted();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            lock.lock();
+            try {
+                while (count == buffer.length && abortCause == null) {
+                    notFull.await();
+                }
+                checkNotAborted();
+                if(writerClosed) {
+                    throw new IOException("Snapshot pipe is closed");
+                }
+                buffer[(readPosition + count) % buffer.length] = (byte) b;
+                count++;
+                notEmpty.signalAll();
+            } catch (InterruptedException e) {
+                throw interrupted();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                while (len > 0) {
+                    while (count == buffer.length && abortCause == null) {
+                        notFull.await();
+                    }
+                    checkNotAborted();
+                    if(writerClosed) {
+                        throw new IOException("Snapshot pipe is closed");
+                    }
+                    var writePosition = (readPosition + count) % buffer.length;
+                    var contiguous = Math.min(buffer.length - count, buffer.length - writePosition);
+                    var n = Math.min(len, contiguous);
+                    System.arraycopy(b, off, buffer, writePosition, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                    notEmpty.signalAll();
+                }
+            } catch (InterruptedException e) {
+                throw interrupted();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                writerClosed = true;
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
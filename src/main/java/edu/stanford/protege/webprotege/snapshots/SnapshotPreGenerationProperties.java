@@ -0,0 +1,80 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration for generating snapshots when projects change.
+ * <p>
+ * Snapshots are only generated for projects that snapshots have been requested for within the
+ * active project window.  A snapshot is generated once a project has not changed for the quiet
+ * period, or once the max delay has passed since the first change that has not been exported.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.pregeneration")
+public class SnapshotPreGenerationProperties {
+
+    private boolean enabled = false;
+
+    private List<DocumentFormat> formats = List.of(DocumentFormat.RDF_XML);
+
+    private Duration quietPeriod = Duration.ofMinutes(2);
+
+    private Duration maxDelay = Duration.ofMinutes(30);
+
+    private Duration activeProjectWindow = Duration.ofDays(7);
+
+    private long maxActiveProjects = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public List<DocumentFormat> getFormats() {
+        return formats;
+    }
+
+    public void setFormats(List<DocumentFormat> formats) {
+        this.formats = formats;
+    }
+
+    public Duration getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    public void setQuietPeriod(Duration quietPeriod) {
+        this.quietPeriod = quietPeriod;
+    }
+
+    public Duration getMaxDelay() {
+        return maxDelay;
+    }
+
+    public void setMaxDelay(Duration maxDelay) {
+        this.maxDelay = maxDelay;
+    }
+
+    public Duration getActiveProjectWindow() {
+        return activeProjectWindow;
+    }
+
+    public void setActiveProjectWindow(Duration activeProjectWindow) {
+        this.activeProjectWindow = activeProjectWindow;
+    }
+
+    public long getMaxActiveProjects() {
+        return maxActiveProjects;
+    }
+
+    public void setMaxActiveProjects(long maxActiveProjects) {
+        this.maxActiveProjects = maxActiveProjects;
+    }
+}
@@ -0,0 +1,194 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.event.ProjectChangedEvent;
+import edu.stanford.protege.webprotege.ipc.EventHandler;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Generates snapshots of recently requested projects when they change, so that later requests for
+ * the latest revision find a stored snapshot.
+ * <p>
+ * Changes are debounced per project so that a burst of edits produces one export of the last
+ * revision.  The exports run as background tasks on the {@link SnapshotTaskScheduler} and are
+ * stored at the same {@link SnapshotLocation} that a request for the revision would use.
+ */
+public class SnapshotPreGenerator implements EventHandler<ProjectChangedEvent> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotPreGenerator.class);
+
+    @Nonnull
+    private final SnapshotRequestSubmitter snapshotRequestSubmitter;
+
+    @Nonnull
+    private final RecentlyRequestedProjects recentlyRequestedProjects;
+
+    @Nonnull
+    private final List<DocumentFormat> formats;
+
+    @Nonnull
+    private final Duration quietPeriod;
+
+    @Nonnull
+    private final Duration maxDelay;
+
+    @Nonnull
+    private final Duration taskDeadline;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "snapshot-pregeneration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<ProjectId, PendingExport> pendingExports = new HashMap<>();
+
+    public SnapshotPreGenerator(@Nonnull SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                @Nonnull RecentlyRequestedProjects recentlyRequestedProjects,
+                                @Nonnull List<DocumentFormat> formats,
+                                @Nonnull Duration quietPeriod,
+                                @Nonnull Duration maxDelay,
+                                @Nonnull Duration taskDeadline) {
+        this.snapshotRequestSubmitter = checkNotNull(snapshotRequestSubmitter);
+        this.recentlyRequestedProjects = checkNotNull(recentlyRequestedProjects);
+        this.formats = List.copyOf(formats);
+        this.quietPeriod = checkNotNull(quietPeriod);
+        this.maxDelay = checkNotNull(maxDelay);
+        this.taskDeadline = checkNotNull(taskDeadline);
+        logger.info("Snapshot pre-generation is enabled (formats: {}, quiet period: {})", this.formats, quietPeriod);
+    }
+
+    @Nonnull
+    @Override
+    public String getChannelName() {
+        return ProjectChangedEvent.CHANNEL;
+    }
+
+    @Nonnull
+    @Override
+    public String getHandlerName() {
+        return SnapshotPreGenerator.class.getName();
+    }
+
+    @Override
+    public Class<ProjectChangedEvent> getEventClass() {
+        return ProjectChangedEvent.class;
+    }
+
+    @Override
+    public void handleEvent(ProjectChangedEvent event) {
+        handleEvent(event, new ExecutionContext());
+    }
+
+    @Override
+    public void handleEvent(ProjectChangedEvent event, ExecutionContext executionContext) {
+        var projectId = event.projectId();
+        var fileName = recentlyRequestedProjects.getFileName(projectId);
+        if(fileName.isEmpty()) {
+            logger.debug("{} No recent snapshot requests.  Not pre-generating a snapshot.", projectId);
+            return;
+        }
+        schedule(projectId, event.revisionSummary().getRevisionNumber(), fileName.get(), executionContext);
+    }
+
+    /**
+     * Gets the number of projects that are waiting for their changes to settle before they are exported
+     */
+    public synchronized int getPendingCount() {
+        return pendingExports.size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private synchronized void schedule(ProjectId projectId,
+                                       RevisionNumber revisionNumber,
+                                       String fileName,
+                                       ExecutionContext executionContext) {
+        var now = System.nanoTime();
+        var previous = pendingExports.get(projectId);
+        var firstChangeAt = now;
+        if(previous != null) {
+            previous.future.cancel(false);
+            firstChangeAt = previous.firstChangeAt;
+            // Change events are not guaranteed to arrive in order
+            if(previous.revisionNumber.compareTo(revisionNumber) > 0) {
+                revisionNumber = previous.revisionNumber;
+            }
+        }
+        var delay = Math.min(quietPeriod.toNanos(), Math.max(0, firstChangeAt + maxDelay.toNanos() - now));
+        var pending = new PendingExport(revisionNumber, fileName, executionContext, firstChangeAt);
+        pending.future = executor.schedule(() -> generate(projectId, pending), delay, TimeUnit.NANOSECONDS);
+        pendingExports.put(projectId, pending);
+    }
+
+    private void generate(ProjectId projectId, PendingExport pending) {
+        synchronized (this) {
+            if(!pendingExports.remove(projectId, pending)) {
+                // Superseded by a later change
+                return;
+            }
+        }
+        logger.info("{} Pre-generating snapshots of revision {}", projectId, pending.revisionNumber.getValue());
+        for(var format : formats) {
+            var cancellation = CancellationToken.withDeadline(taskDeadline);
+            snapshotRequestSubmitter.submitInBackground(projectId,
+                                                        pending.revisionNumber,
+                                                        format,
+                                                        pending.fileName,
+                                                        pending.executionContext,
+                                                        cancellation)
+                    .whenComplete((coordinates, error) -> {
+                        cancellation.complete();
+                        if(error != null) {
+                            logger.info("{} Could not pre-generate {} snapshot of revision {}: {}",
+                                        projectId, format, pending.revisionNumber.getValue(), error.getMessage());
+                        }
+                        else {
+                            logger.info("{} Pre-generated {} snapshot of revision {}",
+                                        projectId, format, pending.revisionNumber.getValue());
+                        }
+                    });
+        }
+    }
+
+    private static final class PendingExport {
+
+        private final RevisionNumber revisionNumber;
+
+        private final String fileName;
+
+        private final ExecutionContext executionContext;
+
+        private final long firstChangeAt;
+
+        private ScheduledFuture<?> future;
+
+        private PendingExport(RevisionNumber revisionNumber,
+                              String fileName,
+                              ExecutionContext executionContext,
+                              long firstChangeAt) {
+            this.revisionNumber = revisionNumber;
+            this.fileName = fileName;
+            this.executionContext = executionContext;
+            this.firstChangeAt = firstChangeAt;
+        }
+    }
+}
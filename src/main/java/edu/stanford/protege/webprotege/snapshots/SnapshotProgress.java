@@ -0,0 +1,129 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tracks how far the export of a snapshot has got.  The export updates the progress from its worker
+ * threads and the job status handler reads it.
+ * <p>
+ * A request that attaches to an export that is already running follows the progress of that export
+ * (see {@link #follow(SnapshotProgress)}), so that it reports the phase of the work that it is
+ * actually waiting for.
+ */
+public final class SnapshotProgress {
+
+    private final LongSupplier nanoTime;
+
+    private volatile SnapshotProgress followed = null;
+
+    private volatile SnapshotJobPhase phase = SnapshotJobPhase.QUEUED;
+
+    private volatile int ontologiesSerialized = 0;
+
+    private volatile int ontologyCount = 0;
+
+    private volatile long bytesWritten = 0;
+
+    private volatile int uploadPart = 0;
+
+    private volatile long serializationStartNanos = 0;
+
+    public SnapshotProgress() {
+        this(System::nanoTime);
+    }
+
+    SnapshotProgress(@Nonnull LongSupplier nanoTime) {
+        this.nanoTime = checkNotNull(nanoTime);
+    }
+
+    /**
+     * Reports the progress of the specified export instead of this one
+     */
+    void follow(@Nonnull SnapshotProgress other) {
+        if(other != this) {
+            followed = checkNotNull(other);
+        }
+    }
+
+    void loadingRevisions() {
+        phase = SnapshotJobPhase.LOADING_REVISIONS;
+    }
+
+    void serializing(int ontologyCount) {
+        this.ontologyCount = ontologyCount;
+        this.ontologiesSerialized = 0;
+        this.serializationStartNanos = nanoTime.getAsLong();
+        phase = SnapshotJobPhase.SERIALIZING;
+    }
+
+    void ontologySerialized(int ontologiesSerialized) {
+        this.ontologiesSerialized = ontologiesSerialized;
+    }
+
+    void bytesWritten(long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
+
+    void uploading() {
+        phase = SnapshotJobPhase.UPLOADING;
+    }
+
+    void uploadingPart(int uploadPart) {
+        this.uploadPart = uploadPart;
+    }
+
+    @Nonnull
+    public SnapshotJobPhase getPhase() {
+        var other = followed;
+        return other != null ? other.getPhase() : phase;
+    }
+
+    public int getOntologiesSerialized() {
+        var other = followed;
+        return other != null ? other.getOntologiesSerialized() : ontologiesSerialized;
+    }
+
+    public int getOntologyCount() {
+        var other = followed;
+        return other != null ? other.getOntologyCount() : ontologyCount;
+    }
+
+    public long getBytesWritten() {
+        var other = followed;
+        return other != null ? other.getBytesWritten() : bytesWritten;
+    }
+
+    /**
+     * Gets the number of the part that is being uploaded, or zero if the snapshot is not uploaded
+     * in parts that can be observed
+     */
+    public int getUploadPart() {
+        var other = followed;
+        return other != null ? other.getUploadPart() : uploadPart;
+    }
+
+    /**
+     * Estimates the number of seconds until the ontologies have been serialized, from the rate
+     * at which they have been serialized so far
+     * @return The estimate, or null if there is nothing to base an estimate on yet
+     */
+    @Nullable
+    public Long getEstimatedSecondsRemaining() {
+        var other = followed;
+        if(other != null) {
+            return other.getEstimatedSecondsRemaining();
+        }
+        var serialized = ontologiesSerialized;
+        var count = ontologyCount;
+        if(phase != SnapshotJobPhase.SERIALIZING || serialized == 0 || count == 0) {
+            return null;
+        }
+        var elapsedNanos = nanoTime.getAsLong() - serializationStartNanos;
+        var remainingNanos = elapsedNanos / serialized * (count - serialized);
+        return Math.max(0, remainingNanos / 1_000_000_000L);
+    }
+}
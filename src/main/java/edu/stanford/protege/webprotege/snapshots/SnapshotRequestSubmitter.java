@@ -0,0 +1,194 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Submits snapshot requests for execution.  The requested revision is resolved, requests for a
+ * snapshot that is already being created are attached to the running export and everything else
+ * is scheduled on the {@link SnapshotTaskScheduler}.  Snapshots can also be generated in the
+ * background, ahead of any requests for them.  Snapshots that have to wait for a worker are
+ * offered to other replicas of the service, see {@link SnapshotLeaseCoordinator}.
+ */
+public class SnapshotRequestSubmitter {
+
+    @Nonnull
+    private final CreateSnapshotTaskFactory createSnapshotTaskFactory;
+
+    @Nonnull
+    private final SnapshotTaskScheduler snapshotTaskScheduler;
+
+    @Nonnull
+    private final InFlightSnapshotRegistry inFlightSnapshotRegistry;
+
+    @Nonnull
+    private final HeadRevisionResolver headRevisionResolver;
+
+    @Nonnull
+    private final RecentlyRequestedProjects recentlyRequestedProjects;
+
+    @Nonnull
+    private final SnapshotLeaseCoordinator leaseCoordinator;
+
+    public SnapshotRequestSubmitter(@Nonnull CreateSnapshotTaskFactory createSnapshotTaskFactory,
+                                    @Nonnull SnapshotTaskScheduler snapshotTaskScheduler,
+                                    @Nonnull InFlightSnapshotRegistry inFlightSnapshotRegistry,
+                                    @Nonnull HeadRevisionResolver headRevisionResolver,
+                                    @Nonnull RecentlyRequestedProjects recentlyRequestedProjects,
+                                    @Nonnull SnapshotLeaseCoordinator leaseCoordinator) {
+        this.createSnapshotTaskFactory = requireNonNull(createSnapshotTaskFactory);
+        this.snapshotTaskScheduler = requireNonNull(snapshotTaskScheduler);
+        this.inFlightSnapshotRegistry = requireNonNull(inFlightSnapshotRegistry);
+        this.headRevisionResolver = requireNonNull(headRevisionResolver);
+        this.recentlyRequestedProjects = requireNonNull(recentlyRequestedProjects);
+        this.leaseCoordinator = requireNonNull(leaseCoordinator);
+    }
+
+    /**
+     * Submits a request for a snapshot
+     * @param projectId The project
+     * @param revisionNumber The requested revision, which may be the HEAD revision
+     * @param format The format of the ontology documents in the snapshot
+     * @param fileName The display name of the project, which is used to name the archive folder
+     * @param executionContext The context of the request
+     * @param cancellation Stops the work for the request
+     * @param progress Receives the progress of the export that the request waits for
+     * @return A future that completes with the location of the stored snapshot
+     */
+    @Nonnull
+    public CompletableFuture<SnapshotStorageCoordinates> submit(@Nonnull ProjectId projectId,
+                                                                @Nonnull RevisionNumber revisionNumber,
+                                                                @Nonnull DocumentFormat format,
+                                                                @Nonnull String fileName,
+                                                                @Nonnull ExecutionContext executionContext,
+                                                                @Nonnull CancellationToken cancellation,
+                                                                @Nonnull SnapshotProgress progress) {
+        recentlyRequestedProjects.recordRequest(projectId, fileName);
+        return headRevisionResolver.resolve(projectId, revisionNumber, executionContext)
+                                   .thenCompose(resolvedRevisionNumber -> submitResolved(projectId,
+                                                                                         resolvedRevisionNumber,
+                                                                                         format,
+                                                                                         fileName,
+                                                                                         executionContext,
+                                                                                         cancellation,
+                                                                                         progress));
+    }
+
+    /**
+     * Submits a request for snapshots of a revision in several formats.  The revision is built
+     * once and written in each of the formats.
+     * @param projectId The project
+     * @param revisionNumber The requested revision, which may be the HEAD revision
+     * @param formats The formats of the ontology documents.  Each format is stored as its own snapshot.
+     * @param fileName The display name of the project, which is used to name the archive folders
+     * @param executionContext The context of the request
+     * @param cancellation Stops the work for the request
+     * @return A future that completes with the location of the stored snapshot for each format
+     */
+    @Nonnull
+    public CompletableFuture<Map<DocumentFormat, SnapshotStorageCoordinates>> submit(@Nonnull ProjectId projectId,
+                                                                                     @Nonnull RevisionNumber revisionNumber,
+                                                                                     @Nonnull List<DocumentFormat> formats,
+                                                                                     @Nonnull String fileName,
+                                                                                     @Nonnull ExecutionContext executionContext,
+                                                                                     @Nonnull CancellationToken cancellation) {
+        checkArgument(!formats.isEmpty(), "At least one format is required");
+        var distinctFormats = formats.stream().distinct().toList();
+        if(distinctFormats.size() == 1) {
+            var format = distinctFormats.get(0);
+            return submit(projectId, revisionNumber, format, fileName, executionContext, cancellation, new SnapshotProgress())
+                    .thenApply(coordinates -> Map.of(format, coordinates));
+        }
+        recentlyRequestedProjects.recordRequest(projectId, fileName);
+        return headRevisionResolver.resolve(projectId, revisionNumber, executionContext)
+                                   .thenCompose(resolvedRevisionNumber -> {
+                                       // Formats are de-duplicated against other requests once the
+                                       // revision has been loaded
+                                       var task = createSnapshotTaskFactory.createMultiFormat(executionContext, projectId, executionContext.userId(),
+                                                                                              fileName, resolvedRevisionNumber, distinctFormats, cancellation);
+                                       return snapshotTaskScheduler.submit(projectId, task, cancellation);
+                                   });
+    }
+
+    /**
+     * Submits a snapshot to be generated in the background.  The snapshot is only de-duplicated
+     * against other requests once a worker picks it up, so requests for the same snapshot never
+     * wait for a background task to leave the queue.
+     * @param projectId The project
+     * @param revisionNumber The revision.  This must not be the HEAD revision.
+     * @param format The format of the ontology documents in the snapshot
+     * @param fileName The display name of the project, which is used to name the archive folder
+     * @param executionContext The context that the snapshot is generated in
+     * @param cancellation Stops the work for the snapshot
+     * @return A future that completes with the location of the stored snapshot
+     */
+    @Nonnull
+    public CompletableFuture<SnapshotStorageCoordinates> submitInBackground(@Nonnull ProjectId projectId,
+                                                                            @Nonnull RevisionNumber revisionNumber,
+                                                                            @Nonnull DocumentFormat format,
+                                                                            @Nonnull String fileName,
+                                                                            @Nonnull ExecutionContext executionContext,
+                                                                            @Nonnull CancellationToken cancellation) {
+        checkArgument(!revisionNumber.isHead(), "Background snapshots must be for a specific revision");
+        var location = new SnapshotLocation(projectId, revisionNumber, format);
+        var progress = new SnapshotProgress();
+        // The export runs on the worker that picks up the task, so it is stopped by the task's token
+        var task = createSnapshotTaskFactory.create(executionContext, projectId, executionContext.userId(),
+                                                    fileName, revisionNumber, format, cancellation, progress);
+        return snapshotTaskScheduler.submitInBackground(projectId, () -> {
+            try {
+                return inFlightSnapshotRegistry.attachOrStart(location, cancellation, progress,
+                                                              exportCancellation -> CompletableFuture.completedFuture(task.get()))
+                                               .join();
+            } catch (CompletionException e) {
+                if(e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw e;
+            }
+        }, cancellation);
+    }
+
+    private CompletableFuture<SnapshotStorageCoordinates> submitResolved(ProjectId projectId,
+                                                                         RevisionNumber revisionNumber,
+                                                                         DocumentFormat format,
+                                                                         String fileName,
+                                                                         ExecutionContext executionContext,
+                                                                         CancellationToken cancellation,
+                                                                         SnapshotProgress progress) {
+        if(revisionNumber.isHead()) {
+            // The head revision could not be resolved up front.  A worker loads the revision
+            // history to resolve it and the resolved revision is then submitted like any other,
+            // so that the request is de-duplicated without a worker waiting on another export.
+            var task = createSnapshotTaskFactory.create(executionContext, projectId, executionContext.userId(),
+                                                        fileName, revisionNumber, format, cancellation, progress);
+            return snapshotTaskScheduler.submit(projectId, task::resolveHeadRevision, cancellation)
+                                        .thenCompose(resolvedRevisionNumber -> submitResolved(projectId,
+                                                                                              resolvedRevisionNumber,
+                                                                                              format,
+                                                                                              fileName,
+                                                                                              executionContext,
+                                                                                              cancellation,
+                                                                                              progress));
+        }
+        var location = new SnapshotLocation(projectId, revisionNumber, format);
+        return inFlightSnapshotRegistry.attachOrStart(location, cancellation, progress, exportCancellation -> {
+            var task = createSnapshotTaskFactory.create(executionContext, projectId, executionContext.userId(),
+                                                        fileName, revisionNumber, format, exportCancellation, progress);
+            // An idle replica may create the snapshot before a worker here is free
+            leaseCoordinator.advertise(location, fileName);
+            return snapshotTaskScheduler.submit(projectId, task, exportCancellation);
+        });
+    }
+}
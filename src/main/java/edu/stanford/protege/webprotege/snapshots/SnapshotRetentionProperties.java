@@ -0,0 +1,88 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the {@link SnapshotRetentionSweeper}.
+ * <p>
+ * The latest {@code keepLatestRevisions} stored revisions of each project are kept in every
+ * format.  Older snapshots are kept while they have been created or downloaded within the access
+ * window, and are removed by the next sweep after that.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.retention")
+public class SnapshotRetentionProperties {
+
+    private boolean enabled = false;
+
+    private int keepLatestRevisions = 3;
+
+    private int keepLatestCheckpoints = 2;
+
+    private Duration accessWindow = Duration.ofDays(30);
+
+    private Duration sweepInterval = Duration.ofHours(6);
+
+    private double operationsPerSecond = 20;
+
+    private Duration accessRecordInterval = Duration.ofHours(1);
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getKeepLatestRevisions() {
+        return keepLatestRevisions;
+    }
+
+    public void setKeepLatestRevisions(int keepLatestRevisions) {
+        this.keepLatestRevisions = keepLatestRevisions;
+    }
+
+    public int getKeepLatestCheckpoints() {
+        return keepLatestCheckpoints;
+    }
+
+    public void setKeepLatestCheckpoints(int keepLatestCheckpoints) {
+        this.keepLatestCheckpoints = keepLatestCheckpoints;
+    }
+
+    public Duration getAccessWindow() {
+        return accessWindow;
+    }
+
+    public void setAccessWindow(Duration accessWindow) {
+        this.accessWindow = accessWindow;
+    }
+
+    public Duration getSweepInterval() {
+        return sweepInterval;
+    }
+
+    public void setSweepInterval(Duration sweepInterval) {
+        this.sweepInterval = sweepInterval;
+    }
+
+    public double getOperationsPerSecond() {
+        return operationsPerSecond;
+    }
+
+    public void setOperationsPerSecond(double operationsPerSecond) {
+        this.operationsPerSecond = operationsPerSecond;
+    }
+
+    public Duration getAccessRecordInterval() {
+        return accessRecordInterval;
+    }
+
+    public void setAccessRecordInterval(Duration accessRecordInterval) {
+        this.accessRecordInterval = accessRecordInterval;
+    }
+}
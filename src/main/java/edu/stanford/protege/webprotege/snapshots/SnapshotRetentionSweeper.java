@@ -0,0 +1,443 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.google.common.util.concurrent.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.GetObjectTagsArgs;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.errors.ErrorResponseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Removes stored snapshots that are no longer needed.
+ * <p>
+ * For each project and format, the snapshots of the latest few revisions are always kept.  Older
+ * snapshots are kept while they were created, or last reused (see {@link SnapshotAccessRecorder}),
+ * within the access window.  Everything else that is stored with a snapshot (for example, change
+ * sets) is removed along with it.  Content addressed archives that are no longer pointed to by any
+ * stored snapshot are removed once they are older than the access window.  Only the latest few
+ * ontology checkpoints (see {@link OntologyCheckpointStore}) of each project are kept.
+ * <p>
+ * The bucket is swept in the background at a fixed interval.  Requests to the object store are
+ * rate limited so that a sweep does not compete with uploads and downloads.
+ */
+public class SnapshotRetentionSweeper {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotRetentionSweeper.class);
+
+    private static final String PROJECTS_PREFIX = "/projects/";
+
+    private static final String REVISIONS_FOLDER = "/revisions/";
+
+    private static final String CONTENT_FOLDER = "/content/";
+
+    private static final String CHECKPOINTS_FOLDER = "/checkpoints/";
+
+    /**
+     * The number of objects that the object store returns for one listing request
+     */
+    private static final int LISTING_PAGE_SIZE = 1000;
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    @Nonnull
+    private final SnapshotExistenceCache snapshotExistenceCache;
+
+    private final int keepLatestRevisions;
+
+    private final int keepLatestCheckpoints;
+
+    @Nonnull
+    private final Duration accessWindow;
+
+    private final RateLimiter rateLimiter;
+
+    private final Counter evictedCounter;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "snapshot-retention-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotRetentionSweeper(@Nonnull MinioClient minioClient,
+                                    @Nonnull SnapshotExistenceCache snapshotExistenceCache,
+                                    int keepLatestRevisions,
+                                    int keepLatestCheckpoints,
+                                    @Nonnull Duration accessWindow,
+                                    double operationsPerSecond,
+                                    @Nonnull MeterRegistry meterRegistry) {
+        checkArgument(keepLatestRevisions > 0, "keepLatestRevisions must be greater than zero");
+        checkArgument(keepLatestCheckpoints > 0, "keepLatestCheckpoints must be greater than zero");
+        this.minioClient = checkNotNull(minioClient);
+        this.snapshotExistenceCache = checkNotNull(snapshotExistenceCache);
+        this.keepLatestRevisions = keepLatestRevisions;
+        this.keepLatestCheckpoints = keepLatestCheckpoints;
+        this.accessWindow = checkNotNull(accessWindow);
+        this.rateLimiter = RateLimiter.create(operationsPerSecond);
+        this.evictedCounter = Counter.builder("webprotege.snapshots.retention.evicted")
+                                     .description("The number of stored snapshots removed by the retention sweeper")
+                                     .register(meterRegistry);
+    }
+
+    /**
+     * Starts sweeping the bucket at the specified interval
+     */
+    public void start(@Nonnull Duration interval) {
+        logger.info("Sweeping stored snapshots every {} (keeping the latest {} revisions, snapshots accessed within {} and the latest {} checkpoints)",
+                    interval, keepLatestRevisions, accessWindow, keepLatestCheckpoints);
+        executor.scheduleWithFixedDelay(this::sweepSafely, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sweeps the bucket once
+     * @return The number of snapshots that were removed
+     */
+    public int sweep() throws Exception {
+        var cutoff = Instant.now().minus(accessWindow);
+        var removed = 0;
+        try {
+            var objects = minioClient.listObjects(ListObjectsArgs.builder()
+                                                                 .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                                 .prefix(PROJECTS_PREFIX)
+                                                                 .recursive(true)
+                                                                 .includeUserMetadata(true)
+                                                                 .build());
+            // Objects are listed in key order, so the objects of a project are listed together
+            String currentProject = null;
+            var snapshotsByFormat = new HashMap<String, NavigableMap<Long, StoredSnapshot>>();
+            var contentObjects = new HashMap<String, Instant>();
+            var checkpoints = new TreeMap<Long, String>();
+            var listed = 0;
+            for(var result : objects) {
+                if(++listed % LISTING_PAGE_SIZE == 0) {
+                    rateLimiter.acquire();
+                }
+                var item = result.get();
+                var name = item.objectName();
+                var projectId = getProjectId(name);
+                if(projectId.isEmpty()) {
+                    continue;
+                }
+                if(!projectId.get().equals(currentProject)) {
+                    removed += sweepProject(currentProject, snapshotsByFormat, contentObjects, checkpoints, cutoff);
+                    snapshotsByFormat.clear();
+                    contentObjects.clear();
+                    checkpoints.clear();
+                    currentProject = projectId.get();
+                }
+                if(name.startsWith(CONTENT_FOLDER, PROJECTS_PREFIX.length() + currentProject.length())) {
+                    contentObjects.put(name, item.lastModified().toInstant());
+                    continue;
+                }
+                var checkpointRevision = parseCheckpointRevision(name);
+                if(checkpointRevision.isPresent()) {
+                    checkpoints.put(checkpointRevision.get(), name);
+                    continue;
+                }
+                var parsed = parseSnapshotObjectName(name);
+                if(parsed.isEmpty()) {
+                    continue;
+                }
+                var objectName = parsed.get();
+                var userMetadata = item.userMetadata();
+                var contentLocation = userMetadata != null ? SnapshotUploader.getContentLocation(userMetadata) : Optional.<String>empty();
+                snapshotsByFormat.computeIfAbsent(objectName.extension(), ext -> new TreeMap<>())
+                                 .computeIfAbsent(objectName.revision(), StoredSnapshot::new)
+                                 .add(name, objectName.isSnapshot(), item.lastModified().toInstant(), contentLocation.orElse(null));
+            }
+            removed += sweepProject(currentProject, snapshotsByFormat, contentObjects, checkpoints, cutoff);
+        } catch (ErrorResponseException e) {
+            if(!"NoSuchBucket".equals(e.errorResponse().code())) {
+                throw e;
+            }
+        }
+        return removed;
+    }
+
+    private void sweepSafely() {
+        try {
+            var start = System.nanoTime();
+            var removed = sweep();
+            logger.info("Snapshot retention sweep removed {} snapshots in {} ms",
+                        removed, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            logger.error("Snapshot retention sweep failed", e);
+        }
+    }
+
+    private int sweepProject(String projectId,
+                             Map<String, NavigableMap<Long, StoredSnapshot>> snapshotsByFormat,
+                             Map<String, Instant> contentObjects,
+                             NavigableMap<Long, String> checkpoints,
+                             Instant cutoff) throws Exception {
+        var removed = 0;
+        var referencedContent = new HashSet<String>();
+        for(var snapshots : snapshotsByFormat.values()) {
+            var evictions = selectForEviction(snapshots, keepLatestRevisions, cutoff,
+                                              snapshot -> getLastAccessed(snapshot.getSnapshotObjectName()));
+            for(var snapshot : evictions) {
+                for(var name : snapshot.getObjectNames()) {
+                    removeObject(name);
+                }
+                logger.info("{} Removed stored snapshot of revision {} ({} objects)",
+                            projectId, snapshot.getRevision(), snapshot.getObjectNames().size());
+                evictedCounter.increment();
+                removed++;
+            }
+            snapshots.values()
+                     .stream()
+                     .filter(snapshot -> !evictions.contains(snapshot))
+                     .map(StoredSnapshot::getContentLocation)
+                     .filter(Objects::nonNull)
+                     .forEach(referencedContent::add);
+        }
+        for(var contentObject : contentObjects.entrySet()) {
+            var name = contentObject.getKey();
+            if(name.endsWith(SnapshotArchiveIndexStore.INDEX_SUFFIX)) {
+                // Index sidecars are removed along with their archive, unless the archive has gone
+                var archiveName = name.substring(0, name.length() - SnapshotArchiveIndexStore.INDEX_SUFFIX.length());
+                if(!contentObjects.containsKey(archiveName) && contentObject.getValue().isBefore(cutoff)) {
+                    removeObject(name);
+                }
+                continue;
+            }
+            // Recently stored or reused archives may be about to be pointed to
+            if(referencedContent.contains(name)
+                    || contentObject.getValue().isAfter(cutoff)
+                    || getLastAccessed(name).map(accessed -> accessed.isAfter(cutoff)).orElse(false)) {
+                continue;
+            }
+            removeObject(name);
+            var indexName = SnapshotArchiveIndexStore.getIndexLocation(name);
+            if(contentObjects.containsKey(indexName)) {
+                removeObject(indexName);
+            }
+            logger.info("{} Removed unreferenced snapshot archive {}", projectId, name);
+        }
+        for(var checkpoint : selectCheckpointsForEviction(checkpoints, keepLatestCheckpoints)) {
+            removeObject(checkpoint);
+            logger.info("{} Removed checkpoint {}", projectId, checkpoint);
+        }
+        return removed;
+    }
+
+    private void removeObject(String name) throws Exception {
+        rateLimiter.acquire();
+        minioClient.removeObject(RemoveObjectArgs.builder()
+                                                 .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                 .object(name)
+                                                 .build());
+        snapshotExistenceCache.invalidate(name);
+    }
+
+    private Optional<Instant> getLastAccessed(String objectName) {
+        if(objectName == null) {
+            return Optional.empty();
+        }
+        try {
+            rateLimiter.acquire();
+            var tags = minioClient.getObjectTags(GetObjectTagsArgs.builder()
+                                                                  .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                                  .object(objectName)
+                                                                  .build());
+            return SnapshotAccessRecorder.getLastAccessed(tags.get());
+        } catch (Exception e) {
+            // Keep the object until its access time can be read
+            logger.warn("Could not read the last access time of {}", objectName, e);
+            return Optional.of(Instant.MAX);
+        }
+    }
+
+    private static Optional<String> getProjectId(String name) {
+        if(!name.startsWith(PROJECTS_PREFIX)) {
+            return Optional.empty();
+        }
+        var projectEnd = name.indexOf('/', PROJECTS_PREFIX.length());
+        if(projectEnd == -1) {
+            return Optional.empty();
+        }
+        return Optional.of(name.substring(PROJECTS_PREFIX.length(), projectEnd));
+    }
+
+    /**
+     * Selects the snapshots of one project and format that should be removed
+     * @param snapshots The stored snapshots, keyed by revision
+     * @param keepLatestRevisions The number of latest revisions to keep
+     * @param cutoff Snapshots that were created or accessed after this time are kept
+     * @param lastAccessed Gets the last recorded access time of a snapshot.  This is only called
+     *                     for snapshots that would otherwise be removed.
+     */
+    static List<StoredSnapshot> selectForEviction(NavigableMap<Long, StoredSnapshot> snapshots,
+                                                  int keepLatestRevisions,
+                                                  Instant cutoff,
+                                                  Function<StoredSnapshot, Optional<Instant>> lastAccessed) {
+        var evictions = new ArrayList<StoredSnapshot>();
+        var kept = 0;
+        for(var snapshot : snapshots.descendingMap().values()) {
+            if(kept < keepLatestRevisions) {
+                kept++;
+                continue;
+            }
+            if(snapshot.getLastModified().isAfter(cutoff)) {
+                continue;
+            }
+            if(lastAccessed.apply(snapshot).map(accessed -> accessed.isAfter(cutoff)).orElse(false)) {
+                continue;
+            }
+            evictions.add(snapshot);
+        }
+        return evictions;
+    }
+
+    /**
+     * Selects the checkpoints of one project that should be removed
+     * @param checkpoints The names of the checkpoint objects, keyed by revision
+     * @param keepLatestCheckpoints The number of latest checkpoints to keep
+     */
+    static List<String> selectCheckpointsForEviction(NavigableMap<Long, String> checkpoints,
+                                                     int keepLatestCheckpoints) {
+        return checkpoints.descendingMap()
+                          .values()
+                          .stream()
+                          .skip(keepLatestCheckpoints)
+                          .toList();
+    }
+
+    /**
+     * Parses the revision of a checkpoint from the name of the checkpoint object
+     */
+    static Optional<Long> parseCheckpointRevision(String name) {
+        var projectId = getProjectId(name);
+        if(projectId.isEmpty()) {
+            return Optional.empty();
+        }
+        var folderStart = PROJECTS_PREFIX.length() + projectId.get().length();
+        if(!name.startsWith(CHECKPOINTS_FOLDER, folderStart)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Long.parseLong(name.substring(folderStart + CHECKPOINTS_FOLDER.length())));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Parses the name of an object that is stored under the revisions of a project.  Objects that
+     * are stored alongside a snapshot are named after the snapshot, followed by a dot and a suffix.
+     */
+    static Optional<SnapshotObjectName> parseSnapshotObjectName(String name) {
+        if(!name.startsWith(PROJECTS_PREFIX)) {
+            return Optional.empty();
+        }
+        var projectEnd = name.indexOf('/', PROJECTS_PREFIX.length());
+        if(projectEnd == -1 || !name.startsWith(REVISIONS_FOLDER, projectEnd)) {
+            return Optional.empty();
+        }
+        var revisionStart = projectEnd + REVISIONS_FOLDER.length();
+        var revisionEnd = name.indexOf('/', revisionStart);
+        if(revisionEnd == -1) {
+            return Optional.empty();
+        }
+        try {
+            var revision = Long.parseLong(name.substring(revisionStart, revisionEnd));
+            var fileName = name.substring(revisionEnd + 1);
+            var dot = fileName.indexOf('.');
+            var extension = dot == -1 ? fileName : fileName.substring(0, dot);
+            return Optional.of(new SnapshotObjectName(name.substring(PROJECTS_PREFIX.length(), projectEnd),
+                                                      revision,
+                                                      extension,
+                                                      dot == -1));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    record SnapshotObjectName(String projectId, long revision, String extension, boolean isSnapshot) {
+
+    }
+
+    /**
+     * The objects that are stored for the snapshot of one revision in one format
+     */
+    static final class StoredSnapshot {
+
+        private final long revision;
+
+        private final List<String> objectNames = new ArrayList<>();
+
+        private String snapshotObjectName = null;
+
+        private String contentLocation = null;
+
+        private Instant lastModified = Instant.MIN;
+
+        StoredSnapshot(long revision) {
+            this.revision = revision;
+        }
+
+        void add(String objectName, boolean isSnapshot, Instant objectLastModified, String objectContentLocation) {
+            objectNames.add(objectName);
+            if(isSnapshot) {
+                snapshotObjectName = objectName;
+                contentLocation = objectContentLocation;
+                lastModified = objectLastModified;
+            }
+            else if(snapshotObjectName == null && objectLastModified.isAfter(lastModified)) {
+                lastModified = objectLastModified;
+            }
+        }
+
+        long getRevision() {
+            return revision;
+        }
+
+        List<String> getObjectNames() {
+            return objectNames;
+        }
+
+        String getSnapshotObjectName() {
+            return snapshotObjectName;
+        }
+
+        /**
+         * Gets the location of the content addressed archive that the snapshot points to, if any
+         */
+        String getContentLocation() {
+            return contentLocation;
+        }
+
+        Instant getLastModified() {
+            return lastModified;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the {@link SnapshotTaskScheduler}.
+ * <p>
+ * A value of zero for {@code workerThreads} or {@code maxRunningPerProject} means "work it out from
+ * the number of available processors and the maximum heap size".  Virtual worker threads are not
+ * limited by the number of processors, because their CPU-heavy work is limited by the compute pool.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.scheduler")
+public class SnapshotSchedulerProperties {
+
+    private int workerThreads = 0;
+
+    private DataSize heapPerWorker = DataSize.ofGigabytes(1);
+
+    private int queueCapacity = 100;
+
+    private int maxQueuedPerProject = 20;
+
+    private int maxRunningPerProject = 0;
+
+    private Duration taskDeadline = Duration.ofMinutes(10);
+
+    private int backgroundQueueCapacity = 50;
+
+    private boolean virtualThreads = true;
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public DataSize getHeapPerWorker() {
+        return heapPerWorker;
+    }
+
+    public void setHeapPerWorker(DataSize heapPerWorker) {
+        this.heapPerWorker = heapPerWorker;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxQueuedPerProject() {
+        return maxQueuedPerProject;
+    }
+
+    public void setMaxQueuedPerProject(int maxQueuedPerProject) {
+        this.maxQueuedPerProject = maxQueuedPerProject;
+    }
+
+    public int getMaxRunningPerProject() {
+        return maxRunningPerProject;
+    }
+
+    public void setMaxRunningPerProject(int maxRunningPerProject) {
+        this.maxRunningPerProject = maxRunningPerProject;
+    }
+
+    public Duration getTaskDeadline() {
+        return taskDeadline;
+    }
+
+    public void setTaskDeadline(Duration taskDeadline) {
+        this.taskDeadline = taskDeadline;
+    }
+
+    public int getBackgroundQueueCapacity() {
+        return backgroundQueueCapacity;
+    }
+
+    public void setBackgroundQueueCapacity(int backgroundQueueCapacity) {
+        this.backgroundQueueCapacity = backgroundQueueCapacity;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Gets the number of worker threads to use.  If this has not been explicitly configured then the
+     * number of workers is capped so that each worker can have {@code heapPerWorker} bytes of the
+     * maximum heap.  Platform workers are also capped at the number of available processors.
+     */
+    public int getEffectiveWorkerThreads() {
+        if(workerThreads > 0) {
+            return workerThreads;
+        }
+        var maxHeap = Runtime.getRuntime().maxMemory();
+        var heapBoundedWorkers = maxHeap / Math.max(1, heapPerWorker.toBytes());
+        if(virtualThreads) {
+            return (int) Math.max(1, heapBoundedWorkers);
+        }
+        var processors = Runtime.getRuntime().availableProcessors();
+        return (int) Math.max(1, Math.min(processors, heapBoundedWorkers));
+    }
+
+    /**
+     * Gets the number of tasks for a single project that may run at the same time.  By default,
+     * a project may occupy at most half of the workers.
+     */
+    public int getEffectiveMaxRunningPerProject() {
+        if(maxRunningPerProject > 0) {
+            return maxRunningPerProject;
+        }
+        return Math.max(1, getEffectiveWorkerThreads() / 2);
+    }
+}
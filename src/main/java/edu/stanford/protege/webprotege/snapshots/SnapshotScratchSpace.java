@@ -0,0 +1,276 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Owns the temp files that are used while generating snapshots.
+ * <p>
+ * All scratch files live in a single directory and are deleted when they are closed, whether the
+ * snapshot succeeded, failed or was cancelled.  Files that were left behind by a previous run of
+ * the service (e.g. because the process was killed) are deleted at startup.
+ * <p>
+ * The bytes written to scratch files count against a global quota.  When the quota is used up,
+ * new scratch files are not handed out until enough space has been released, so new tasks wait
+ * instead of filling up the disk.  Files that have already been handed out may grow beyond the
+ * quota, and tasks that are already running create files with {@link #createSpillFile()}, which
+ * does not wait, so that running tasks are never blocked part way through.
+ * <p>
+ * Scratch files are written through the direct buffers of a {@link SnapshotBufferPool}, which is
+ * shared with the documents that may later be spilled to scratch files.
+ */
+public class SnapshotScratchSpace {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotScratchSpace.class);
+
+    static final String FILE_PREFIX = "webprotege-snapshots";
+
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final int DEFAULT_SINK_BUFFER_SIZE = 1024 * 1024;
+
+    static final long DEFAULT_BUFFER_POOL_SIZE = 64L * 1024 * 1024;
+
+    @Nonnull
+    private final Path directory;
+
+    private final long quota;
+
+    @Nonnull
+    private final Duration maxWait;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition spaceReleased = lock.newCondition();
+
+    @Nonnull
+    private final SnapshotBufferPool bufferPool;
+
+    private long usedBytes = 0;
+
+    public SnapshotScratchSpace(@Nonnull Path directory,
+                                long quota,
+                                @Nonnull Duration maxWait) {
+        this(directory, quota, maxWait, new SnapshotBufferPool(DEFAULT_CHUNK_SIZE, DEFAULT_SINK_BUFFER_SIZE, DEFAULT_BUFFER_POOL_SIZE));
+    }
+
+    public SnapshotScratchSpace(@Nonnull Path directory,
+                                long quota,
+                                @Nonnull Duration maxWait,
+                                @Nonnull SnapshotBufferPool bufferPool) {
+        this.directory = checkNotNull(directory);
+        this.quota = quota;
+        this.maxWait = checkNotNull(maxWait);
+        this.bufferPool = checkNotNull(bufferPool);
+    }
+
+    /**
+     * Creates the scratch directory if necessary and deletes any scratch files that were left
+     * behind by a previous run.
+     */
+    public void initialize() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        var deleted = 0;
+        try (DirectoryStream<Path> orphans = Files.newDirectoryStream(directory, FILE_PREFIX + "*")) {
+            for(var orphan : orphans) {
+                if(Files.isRegularFile(orphan) && Files.deleteIfExists(orphan)) {
+                    deleted++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean up orphaned scratch files in {}", directory, e);
+        }
+        logger.info("Snapshot scratch space is at {} (quota: {} MB).  Deleted {} orphaned scratch files.",
+                    directory, quota / (1024 * 1024), deleted);
+    }
+
+    /**
+     * Creates a new scratch file, waiting for space to be released if the quota has been used up.
+     * @return The scratch file.  This must be closed to delete the file and release its space.
+     * @throws IOException if the file could not be created, or if space did not become available
+     * within the configured maximum wait time
+     */
+    @Nonnull
+    public ScratchFile createScratchFile() throws IOException {
+        awaitSpace();
+        var path = Files.createTempFile(directory, FILE_PREFIX, null);
+        return new ScratchFile(path);
+    }
+
+    /**
+     * Creates a new scratch file if the quota has not been used up, without waiting for space.
+     * This is for optional work that should be skipped rather than hold up the task that does it.
+     * @return The scratch file, or empty if the quota has been used up.  The file must be closed
+     * to delete it and release its space.
+     * @throws IOException if the file could not be created
+     */
+    @Nonnull
+    public Optional<ScratchFile> tryCreateScratchFile() throws IOException {
+        if(getUsedBytes() >= quota) {
+            return Optional.empty();
+        }
+        return Optional.of(createSpillFile());
+    }
+
+    /**
+     * Creates a new scratch file for a task that is already running, without waiting for space.
+     * The file still counts against the quota, so it holds back new tasks until it is closed.
+     * @return The scratch file.  This must be closed to delete the file and release its space.
+     * @throws IOException if the file could not be created
+     */
+    @Nonnull
+    public ScratchFile createSpillFile() throws IOException {
+        var path = Files.createTempFile(directory, FILE_PREFIX, null);
+        return new ScratchFile(path);
+    }
+
+    /**
+     * Gets the pool of buffers that scratch files and in-memory documents are written through
+     */
+    @Nonnull
+    public SnapshotBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Gets the number of bytes currently held in scratch files
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void awaitSpace() throws IOException {
+        lock.lock();
+        try {
+            var remainingNanos = maxWait.toNanos();
+            var waited = false;
+            while (usedBytes >= quota) {
+                if(!waited) {
+                    logger.info("Scratch space quota is used up ({} MB).  Waiting for space to be released.",
+                                usedBytes / (1024 * 1024));
+                    waited = true;
+                }
+                if(remainingNanos <= 0) {
+                    throw new IOException("Timed out waiting for snapshot scratch space to become available");
+                }
+                remainingNanos = spaceReleased.awaitNanos(remainingNanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for snapshot scratch space");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void allocate(long bytes) {
+        lock.lock();
+        try {
+            usedBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            usedBytes -= bytes;
+            spaceReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A temp file in the scratch space.  Closing it deletes the file.
+     */
+    public class ScratchFile implements AutoCloseable {
+
+        private final Path path;
+
+        private long size = 0;
+
+        private boolean closed = false;
+
+        private ScratchFile(Path path) {
+            this.path = path;
+        }
+
+        @Nonnull
+        public Path getPath() {
+            return path;
+        }
+
+        /**
+         * Opens an output stream that writes to this file.  The bytes that are written count
+         * against the scratch space quota.  The stream is buffered, so it should not be wrapped in
+         * another buffer.
+         */
+        @Nonnull
+        public OutputStream newOutputStream() throws IOException {
+            var channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            return new FilterOutputStream(new ChannelOutputStream(channel, bufferPool)) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    recordWrite(1);
+                }
+
+                @Override
+                public void write(@Nonnull byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    recordWrite(len);
+                }
+            };
+        }
+
+        private synchronized void recordWrite(long bytes) {
+            if(!closed) {
+                size += bytes;
+                allocate(bytes);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Could not delete scratch file {}", path, e);
+            }
+            release(size);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration for the local disk space that is used while snapshots are being generated.
+ * <p>
+ * The directory should not be shared with other service instances, because files left in it by a
+ * previous run are deleted when the service starts.
+ * <p>
+ * Rendered documents are held in pooled heap chunks and scratch files are written through pooled
+ * direct buffers.  Up to the buffer pool size of each kind is kept for reuse.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.scratch")
+public class SnapshotScratchSpaceProperties {
+
+    private Path directory = Path.of(System.getProperty("java.io.tmpdir"));
+
+    private DataSize quota = DataSize.ofGigabytes(10);
+
+    private Duration maxWait = Duration.ofMinutes(5);
+
+    private DataSize bufferChunkSize = DataSize.ofKilobytes(64);
+
+    private DataSize sinkBufferSize = DataSize.ofMegabytes(1);
+
+    private DataSize bufferPoolSize = DataSize.ofMegabytes(64);
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public DataSize getQuota() {
+        return quota;
+    }
+
+    public void setQuota(DataSize quota) {
+        this.quota = quota;
+    }
+
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    public void setMaxWait(Duration maxWait) {
+        this.maxWait = maxWait;
+    }
+
+    public DataSize getBufferChunkSize() {
+        return bufferChunkSize;
+    }
+
+    public void setBufferChunkSize(DataSize bufferChunkSize) {
+        this.bufferChunkSize = bufferChunkSize;
+    }
+
+    public DataSize getSinkBufferSize() {
+        return sinkBufferSize;
+    }
+
+    public void setSinkBufferSize(DataSize sinkBufferSize) {
+        this.sinkBufferSize = sinkBufferSize;
+    }
+
+    public DataSize getBufferPoolSize() {
+        return bufferPoolSize;
+    }
+
+    public void setBufferPoolSize(DataSize bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+    }
+}
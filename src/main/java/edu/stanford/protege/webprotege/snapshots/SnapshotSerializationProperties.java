@@ -0,0 +1,72 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration for rendering the ontologies in a snapshot.
+ * <p>
+ * The ontologies in a project are rendered concurrently on a shared pool.  Each rendered
+ * ontology document is held in memory until it reaches the spill threshold, after which it is
+ * moved to a scratch file.
+ * <p>
+ * Snapshots that run on virtual threads build their revision and write their archive on a separate
+ * pool of compute threads, so that CPU-heavy work is limited to that many snapshots at a time.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.serialization")
+public class SnapshotSerializationProperties {
+
+    private int parallelism = 0;
+
+    private DataSize spillThreshold = DataSize.ofMegabytes(16);
+
+    private int computeThreads = 0;
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public DataSize getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    public void setSpillThreshold(DataSize spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    public int getComputeThreads() {
+        return computeThreads;
+    }
+
+    public void setComputeThreads(int computeThreads) {
+        this.computeThreads = computeThreads;
+    }
+
+    /**
+     * Gets the number of threads that build revisions and write archives.  Zero (or less) means one
+     * thread per available processor.
+     */
+    public int getEffectiveComputeThreads() {
+        if(computeThreads > 0) {
+            return computeThreads;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Gets the number of threads that render ontologies.  A configured parallelism of zero (or
+     * less) means one thread per available processor.
+     */
+    public int getEffectiveParallelism() {
+        if(parallelism > 0) {
+            return parallelism;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
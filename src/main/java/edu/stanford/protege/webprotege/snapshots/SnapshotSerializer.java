@@ -3,14 +3,10 @@ package edu.stanford.protege.webprotege.snapshots;
 
 
 import edu.stanford.protege.webprotege.common.DocumentFormat;
-import edu.stanford.protege.webprotege.ipc.CommandExecutor;
-import edu.stanford.protege.webprotege.ipc.ExecutionContext;
-import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsRequest;
-import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsResponse;
 import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.project.PrefixDeclaration;
 import edu.stanford.protege.webprotege.revision.RevisionManager;
 import edu.stanford.protege.webprotege.revision.RevisionNumber;
-import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.semanticweb.owlapi.io.OWLOntologyStorageIOException;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
@@ -21,13 +17,19 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -37,7 +39,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Bio-Medical Informatics Research Group<br>
  * Date: 06/06/2012
  *
- * Stores a snapshot (revision) of the ontologies in a project as a zip file.
+ * Stores a snapshot (revision) of the ontologies in a project as an archive (a zip file by default).
  */
 public class SnapshotSerializer {
 
@@ -52,6 +54,8 @@ public class SnapshotSerializer {
     @Nonnull
     private final String fileName;
 
+    private final boolean revisionInFolderName;
+
     @Nonnull
     private final RevisionManager revisionManager;
 
@@ -59,14 +63,62 @@ public class SnapshotSerializer {
     private final ProjectId projectId;
 
     @Nonnull
-    private final CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarations;
+    private final CompletableFuture<List<PrefixDeclaration>> prefixDeclarations;
+
+    @Nonnull
+    private final Executor renderExecutor;
+
+    @Nonnull
+    private final Executor computeExecutor;
+
+    @Nonnull
+    private final SnapshotScratchSpace scratchSpace;
+
+    private final long spillThreshold;
+
+    @Nonnull
+    private final SnapshotArchiveCodec archiveCodec;
+
+    private final int compressionLevel;
+
+    @Nonnull
+    private final OntologyCheckpointStore checkpointStore;
+
+    @Nonnull
+    private final CancellationToken cancellation;
+
+    @Nonnull
+    private final SnapshotProgress progress;
+
+    @Nonnull
+    private final SnapshotMetrics metrics;
+
+    private volatile SnapshotArchiveIndex archiveIndex = null;
 
     /**
      * Creates a project downloader that downloads the specified revision of the specified project.
      *  @param revision                The revision of the project to be downloaded.
      * @param format                  The format which the project should be downloaded in.
      * @param revisionManager         The revision manager of project to be downloaded.  Not <code>null</code>.
-     * @param prefixDeclarationsExecutor An executor for getting project prefix declarations
+     * @param prefixDeclarations      The prefix declarations for the project.  These are only waited
+     *                                for when the first ontology is saved, so they can be fetched
+     *                                while the revision is being loaded.
+     * @param renderExecutor          The executor that renders the ontologies in the project.
+     * @param computeExecutor         The executor that builds the revision and writes the archive
+     *                                when the serializer is called from a virtual thread.
+     * @param scratchSpace            The scratch space for rendered ontologies that are too big to
+     *                                be held in memory.
+     * @param spillThreshold          The size, in bytes, at which a rendered ontology is moved
+     *                                from memory to the scratch space.
+     * @param archiveCodec            The codec used to package the ontology documents.
+     * @param compressionLevel        The compression level used by the codec.
+     * @param revisionInFolderName    Whether the revision number is part of the name of the folder
+     *                                that holds the ontology documents.  Without it, exports of
+     *                                revisions that have the same content are identical.
+     * @param checkpointStore         The checkpoint store that is used to build the revision.
+     * @param cancellation            The token that stops the export when the request is cancelled.
+     * @param progress                The progress that the export reports to.
+     * @param metrics                 Records the time spent in each phase of the export.
      */
 
     @Inject
@@ -75,85 +127,296 @@ public class SnapshotSerializer {
                               @Nonnull RevisionNumber revision,
                               @Nonnull DocumentFormat format,
                               @Nonnull RevisionManager revisionManager,
-                              @Nonnull CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor) {
+                              @Nonnull CompletableFuture<List<PrefixDeclaration>> prefixDeclarations,
+                              @Nonnull Executor renderExecutor,
+                              @Nonnull Executor computeExecutor,
+                              @Nonnull SnapshotScratchSpace scratchSpace,
+                              long spillThreshold,
+                              @Nonnull SnapshotArchiveCodec archiveCodec,
+                              int compressionLevel,
+                              boolean revisionInFolderName,
+                              @Nonnull OntologyCheckpointStore checkpointStore,
+                              @Nonnull CancellationToken cancellation,
+                              @Nonnull SnapshotProgress progress,
+                              @Nonnull SnapshotMetrics metrics) {
         this.projectId = checkNotNull(projectId);
         this.revision = checkNotNull(revision);
         this.revisionManager = checkNotNull(revisionManager);
         this.format = checkNotNull(format);
         this.fileName = checkNotNull(fileName);
-        this.prefixDeclarations = prefixDeclarationsExecutor;
+        this.revisionInFolderName = revisionInFolderName;
+        this.prefixDeclarations = checkNotNull(prefixDeclarations);
+        this.renderExecutor = checkNotNull(renderExecutor);
+        this.computeExecutor = checkNotNull(computeExecutor);
+        this.scratchSpace = checkNotNull(scratchSpace);
+        this.spillThreshold = spillThreshold;
+        this.archiveCodec = checkNotNull(archiveCodec);
+        this.compressionLevel = compressionLevel;
+        this.checkpointStore = checkNotNull(checkpointStore);
+        this.cancellation = checkNotNull(cancellation);
+        this.progress = checkNotNull(progress);
+        this.metrics = checkNotNull(metrics);
     }
 
-    public void writeProject(OutputStream outputStream,
-                             ExecutionContext executionContext) throws UncheckedIOException {
-            exportProjectRevision(executionContext, fileName, revision, outputStream, format);
+    /**
+     * Gets the codec that is used to package the snapshot
+     */
+    @Nonnull
+    public SnapshotArchiveCodec getArchiveCodec() {
+        return archiveCodec;
+    }
+
+    /**
+     * Gets the index of the entries in the archive that was last written, if the codec supports
+     * reading entries on their own
+     */
+    @Nonnull
+    public Optional<SnapshotArchiveIndex> getArchiveIndex() {
+        return Optional.ofNullable(archiveIndex);
     }
 
-    private void exportProjectRevision(@Nonnull ExecutionContext executionContext,
-                                       @Nonnull String projectDisplayName,
-                                       @Nonnull RevisionNumber revisionNumber,
-                                       @Nonnull OutputStream outputStream,
-                                       @Nonnull DocumentFormat format) throws UncheckedIOException {
-        OWLOntologyManager manager = revisionManager.getOntologyManagerForRevision(revisionNumber);
-        saveOntologiesToStream(executionContext, projectDisplayName, manager, format, outputStream, revisionNumber);
+    public void writeProject(OutputStream outputStream) throws UncheckedIOException {
+        writeRevision(buildRevision(), outputStream);
+    }
+
+    /**
+     * Builds the ontologies of the revision.  The ontology manager can be written in several
+     * formats, so that each format does not have to build the revision again.
+     */
+    @Nonnull
+    public OWLOntologyManager buildRevision() {
+        cancellation.throwIfCancelled();
+        return compute(() -> {
+            var buildSample = metrics.start();
+            OWLOntologyManager manager = checkpointStore.getOntologyManagerForRevision(projectId, revisionManager, format, revision);
+            metrics.stop(buildSample, SnapshotMetrics.Phase.BUILD_REVISION, format);
+            return manager;
+        });
+    }
+
+    /**
+     * Writes the ontologies of a revision that has already been built
+     * @param manager The ontology manager that holds the ontologies of the revision
+     * @param outputStream The stream that the archive is written to
+     */
+    public void writeRevision(@Nonnull OWLOntologyManager manager,
+                              @Nonnull OutputStream outputStream) throws UncheckedIOException {
+        cancellation.throwIfCancelled();
+        compute(() -> {
+            saveOntologiesToStream(fileName, manager, format, outputStream, revision);
+            return null;
+        });
+    }
+
+    /**
+     * Runs CPU-heavy work on the compute executor when this is called from a virtual thread, so
+     * that the work does not hold on to the carrier threads that virtual threads share.  The
+     * caller waits for the work without holding a carrier thread.
+     */
+    private <T> T compute(Supplier<T> work) {
+        if(!Thread.currentThread().isVirtual()) {
+            return work.get();
+        }
+        try {
+            // Waiting is not interruptible, so the revision is not released while it is being written
+            return CompletableFuture.supplyAsync(work, computeExecutor).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if(e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
     }
 
-    private void saveOntologiesToStream(@Nonnull ExecutionContext executionContext,
-                                        @Nonnull String projectDisplayName,
+    private void saveOntologiesToStream(@Nonnull String projectDisplayName,
                                         @Nonnull OWLOntologyManager manager,
                                         @Nonnull DocumentFormat format,
                                         @Nonnull OutputStream outputStream,
                                         @Nonnull RevisionNumber revisionNumber) throws UncheckedIOException {
-
-
-        // TODO: Separate object
-        try(ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(outputStream))) {
+        try(var archiveWriter = archiveCodec.createWriter(outputStream, compressionLevel)) {
             String baseFolder = projectDisplayName.replace(" ", "-") + "-ontologies-" + format.getExtension();
             baseFolder = baseFolder.toLowerCase();
-            baseFolder = baseFolder + "-REVISION-" + (revisionNumber.isHead() ? "HEAD" : revisionNumber.getValue());
-            for(var ontology : manager.getOntologies()) {
-                var documentFormat = format.getDocumentFormat();
-                if(documentFormat.isPrefixOWLOntologyFormat()) {
-                    var prefixDocumentFormat = documentFormat.asPrefixOWLOntologyFormat();
-                    copyPrefixes(executionContext, prefixDocumentFormat);
-                }
-                var ontologyShortForm = getOntologyShortForm(ontology);
-                var ontologyDocumentFileName = ontologyShortForm.replace(":", "_");
-                ZipEntry zipEntry = new ZipEntry(baseFolder + "/" + ontologyDocumentFileName + "." + format.getExtension());
-                zipOutputStream.putNextEntry(zipEntry);
-                ontology.getOWLOntologyManager().saveOntology(ontology, documentFormat, zipOutputStream);
-                zipOutputStream.closeEntry();
+            if(revisionInFolderName) {
+                baseFolder = baseFolder + "-REVISION-" + (revisionNumber.isHead() ? "HEAD" : revisionNumber.getValue());
             }
-            zipOutputStream.finish();
-            zipOutputStream.flush();
+            var ontologyDocuments = getOntologyDocuments(manager, baseFolder, format);
+            var prefixes = format.getDocumentFormat().isPrefixOWLOntologyFormat() ? getPrefixDeclarations() : List.<PrefixDeclaration>of();
+            progress.serializing(ontologyDocuments.size());
+            if(ontologyDocuments.size() < 2 && archiveWriter.isStreamingEntrySupported()) {
+                writeOntologyDocumentsSequentially(ontologyDocuments, prefixes, archiveWriter);
+            }
+            else {
+                writeOntologyDocumentsConcurrently(ontologyDocuments, prefixes, archiveWriter);
+            }
+            archiveWriter.finish();
+            archiveIndex = archiveWriter.getIndex().orElse(null);
         }
         catch (IOException ioException) {
+            // The renderers may wrap the failure that cancellation causes
+            cancellation.throwIfCancelled();
             throw new UncheckedIOException(ioException);
         }
         catch (OWLOntologyStorageIOException e) {
+            cancellation.throwIfCancelled();
             throw new UncheckedIOException(e.getIOException());
         }
         catch (OWLOntologyStorageException e) {
+            cancellation.throwIfCancelled();
             throw new RuntimeException(e);
         }
+        catch (RuntimeException e) {
+            cancellation.throwIfCancelled();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the ontologies to be saved along with their entry names, sorted by entry name so that
+     * the archive is the same each time a revision is exported
+     */
+    private List<OntologyDocument> getOntologyDocuments(@Nonnull OWLOntologyManager manager,
+                                                        @Nonnull String baseFolder,
+                                                        @Nonnull DocumentFormat format) {
+        return manager.getOntologies()
+                      .stream()
+                      .map(ontology -> {
+                          var ontologyShortForm = getOntologyShortForm(ontology);
+                          var ontologyDocumentFileName = ontologyShortForm.replace(":", "_");
+                          var entryName = baseFolder + "/" + ontologyDocumentFileName + "." + format.getExtension();
+                          return new OntologyDocument(entryName, ontology);
+                      })
+                      .sorted(Comparator.comparing(OntologyDocument::entryName))
+                      .toList();
+    }
+
+    private void writeOntologyDocumentsSequentially(@Nonnull List<OntologyDocument> ontologyDocuments,
+                                                    @Nonnull List<PrefixDeclaration> prefixes,
+                                                    @Nonnull SnapshotArchiveWriter archiveWriter) throws IOException, OWLOntologyStorageException {
+        for(int i = 0; i < ontologyDocuments.size(); i++) {
+            cancellation.throwIfCancelled();
+            var ontologyDocument = ontologyDocuments.get(i);
+            // Rendering and compressing cannot be told apart here, so the entry is timed as rendering
+            var renderSample = metrics.start();
+            var entryOutputStream = archiveWriter.beginEntry(ontologyDocument.entryName());
+            saveOntology(ontologyDocument.ontology(), prefixes, new CancellableOutputStream(entryOutputStream, cancellation));
+            archiveWriter.endEntry();
+            metrics.stop(renderSample, SnapshotMetrics.Phase.RENDER, format);
+            progress.ontologySerialized(i + 1);
+        }
     }
 
-    private void copyPrefixes(ExecutionContext executionContext,
-                           PrefixDocumentFormat prefixDocumentFormat) {
+    /**
+     * Renders each ontology into its own buffer on the render executor and then appends the
+     * buffers to the archive in entry name order.  Entries are appended as soon as they and all
+     * of the entries before them have been rendered.
+     */
+    private void writeOntologyDocumentsConcurrently(@Nonnull List<OntologyDocument> ontologyDocuments,
+                                                    @Nonnull List<PrefixDeclaration> prefixes,
+                                                    @Nonnull SnapshotArchiveWriter archiveWriter) throws IOException, OWLOntologyStorageException {
+        var aborted = new AtomicBoolean();
+        var renderedDocuments = ontologyDocuments.stream()
+                                                 .map(ontologyDocument -> CompletableFuture.supplyAsync(() -> render(ontologyDocument, prefixes, aborted), renderExecutor))
+                                                 .toList();
+        long archiveNanos = 0;
+        try {
+            for(int i = 0; i < ontologyDocuments.size(); i++) {
+                var buffer = awaitRendered(renderedDocuments.get(i));
+                var archiveStart = System.nanoTime();
+                try {
+                    archiveWriter.addEntry(ontologyDocuments.get(i).entryName(), buffer);
+                } finally {
+                    buffer.discard();
+                }
+                archiveNanos += System.nanoTime() - archiveStart;
+                progress.ontologySerialized(i + 1);
+            }
+            metrics.record(SnapshotMetrics.Phase.ARCHIVE, format, archiveNanos);
+        } finally {
+            // Stop rendering if we failed part way through and release anything that was rendered
+            aborted.set(true);
+            renderedDocuments.forEach(renderedDocument -> renderedDocument.thenAccept(OntologyDocumentBuffer::discard));
+        }
+    }
+
+    private OntologyDocumentBuffer render(@Nonnull OntologyDocument ontologyDocument,
+                                          @Nonnull List<PrefixDeclaration> prefixes,
+                                          @Nonnull AtomicBoolean aborted) {
+        if(aborted.get()) {
+            throw new CancellationException("Snapshot serialization was aborted");
+        }
+        cancellation.throwIfCancelled();
+        var renderSample = metrics.start();
+        var buffer = new OntologyDocumentBuffer(scratchSpace, spillThreshold);
+        try (buffer) {
+            saveOntology(ontologyDocument.ontology(), prefixes, new CancellableOutputStream(buffer, cancellation));
+            metrics.stop(renderSample, SnapshotMetrics.Phase.RENDER, format);
+        } catch (IOException | OWLOntologyStorageException e) {
+            buffer.discard();
+            throw new CompletionException(e);
+        } catch (RuntimeException e) {
+            buffer.discard();
+            throw e;
+        }
+        return buffer;
+    }
+
+    private static OntologyDocumentBuffer awaitRendered(@Nonnull CompletableFuture<OntologyDocumentBuffer> renderedDocument) throws IOException, OWLOntologyStorageException {
+        try {
+            return renderedDocument.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if(cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if(cause instanceof OWLOntologyStorageException storageException) {
+                throw storageException;
+            }
+            if(cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Saves an ontology using a fresh document format, so that ontologies can be saved concurrently
+     */
+    private void saveOntology(@Nonnull OWLOntology ontology,
+                              @Nonnull List<PrefixDeclaration> prefixes,
+                              @Nonnull OutputStream outputStream) throws OWLOntologyStorageException {
+        var documentFormat = format.getDocumentFormat();
+        if(documentFormat.isPrefixOWLOntologyFormat()) {
+            var prefixDocumentFormat = documentFormat.asPrefixOWLOntologyFormat();
+            prefixes.forEach(prefix -> prefixDocumentFormat.setPrefix(prefix.prefixName(), prefix.prefix()));
+        }
+        ontology.getOWLOntologyManager().saveOntology(ontology, documentFormat, outputStream);
+    }
+
+    private List<PrefixDeclaration> getPrefixDeclarations() {
         try {
             // If there's an error then it's not the end of the world.  The resulting document may
             // not look pretty but it will still be valid
-            var prefixes = prefixDeclarations.execute(new GetProjectPrefixDeclarationsRequest(projectId), executionContext).get();
-            prefixes.prefixDeclarations()
-                    .forEach(prefix -> prefixDocumentFormat.setPrefix(prefix.prefixName(), prefix.prefix()));
+            var prefixesSample = metrics.start();
+            var prefixes = prefixDeclarations.get();
+            metrics.stop(prefixesSample, SnapshotMetrics.Phase.PREFIXES, format);
+            return prefixes;
         } catch (InterruptedException e) {
             logger.error("An interruption occurred while waiting for the prefixes for {}", projectId);
+            Thread.currentThread().interrupt();
         } catch (ExecutionException e) {
             logger.error("An error occurred while retrieving the prefixes for {} ({})", projectId, e.getCause().getMessage());
         }
+        return List.of();
     }
 
     private String getOntologyShortForm(OWLOntology ontology) {
         return new OntologyIRIShortFormProvider().getShortForm(ontology);
     }
+
+    private record OntologyDocument(@Nonnull String entryName, @Nonnull OWLOntology ontology) {
+
+    }
 }
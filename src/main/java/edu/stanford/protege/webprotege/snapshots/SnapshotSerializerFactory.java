@@ -2,34 +2,106 @@ package edu.stanford.protege.webprotege.snapshots;
 
 import edu.stanford.protege.webprotege.common.DocumentFormat;
 import edu.stanford.protege.webprotege.common.ProjectId;
-import edu.stanford.protege.webprotege.ipc.CommandExecutor;
-import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsRequest;
-import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsResponse;
+import edu.stanford.protege.webprotege.project.PrefixDeclaration;
 import edu.stanford.protege.webprotege.revision.RevisionManager;
 import edu.stanford.protege.webprotege.revision.RevisionNumber;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static java.util.Objects.requireNonNull;
 
 public final class SnapshotSerializerFactory {
 
-    private final CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor;
+    private final SnapshotScratchSpace scratchSpace;
 
-    public SnapshotSerializerFactory(
-            CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor) {
-        this.prefixDeclarationsExecutor = requireNonNull(prefixDeclarationsExecutor);
-    }
+    private final long spillThreshold;
+
+    private final SnapshotArchiveProperties archiveProperties;
+
+    private final OntologyCheckpointStore checkpointStore;
+
+    private final boolean revisionInFolderName;
+
+    private final SnapshotMetrics metrics;
+
+    /**
+     * Renders ontologies for all snapshots that are being generated
+     */
+    private final ForkJoinPool renderPool;
 
+    /**
+     * Builds revisions and writes archives for snapshots that run on virtual threads
+     */
+    private final ExecutorService computePool;
+
+    public SnapshotSerializerFactory(SnapshotScratchSpace scratchSpace,
+                                     int parallelism,
+                                     int computeThreads,
+                                     long spillThreshold,
+                                     SnapshotArchiveProperties archiveProperties,
+                                     OntologyCheckpointStore checkpointStore,
+                                     boolean revisionInFolderName,
+                                     SnapshotMetrics metrics) {
+        this.scratchSpace = requireNonNull(scratchSpace);
+        this.spillThreshold = spillThreshold;
+        this.archiveProperties = requireNonNull(archiveProperties);
+        this.checkpointStore = requireNonNull(checkpointStore);
+        this.revisionInFolderName = revisionInFolderName;
+        this.metrics = requireNonNull(metrics);
+        this.renderPool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("snapshot-render-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        var computeThreadCounter = new AtomicInteger();
+        this.computePool = Executors.newFixedThreadPool(Math.max(1, computeThreads), r -> {
+            var thread = new Thread(r, "snapshot-compute-" + computeThreadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
     public SnapshotSerializer create(ProjectId projectId,
                                      String fileName,
                                      RevisionNumber revision,
                                      DocumentFormat format,
-                                     RevisionManager revisionManager) {
+                                     RevisionManager revisionManager,
+                                     CompletableFuture<List<PrefixDeclaration>> prefixDeclarations,
+                                     CancellationToken cancellation,
+                                     SnapshotProgress progress) {
         return new SnapshotSerializer(requireNonNull(projectId),
                                       requireNonNull(fileName),
                                       requireNonNull(revision),
                                       requireNonNull(format),
                                       requireNonNull(revisionManager),
-                                      prefixDeclarationsExecutor);
+                                      requireNonNull(prefixDeclarations),
+                                      renderPool,
+                                      computePool,
+                                      scratchSpace,
+                                      spillThreshold,
+                                      archiveProperties.getCodec(format),
+                                      archiveProperties.getCompressionLevel(),
+                                      revisionInFolderName,
+                                      checkpointStore,
+                                      requireNonNull(cancellation),
+                                      requireNonNull(progress),
+                                      metrics);
+    }
+
+    /**
+     * Gets the codec that snapshots in the specified format are packaged with
+     */
+    public SnapshotArchiveCodec getArchiveCodec(DocumentFormat format) {
+        return archiveProperties.getCodec(format);
+    }
+
+    public void shutdown() {
+        renderPool.shutdownNow();
+        computePool.shutdownNow();
     }
 }
@@ -0,0 +1,458 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs snapshot tasks on a bounded number of workers.
+ * <p>
+ * Workers are either platform threads or virtual threads.  Snapshot tasks spend much of their time
+ * waiting for the backend, the object store and the heap and scratch space limits, which costs
+ * almost nothing on a virtual thread.  The CPU-heavy part of a task runs on the
+ * {@link SnapshotSerializer}'s compute pool, so the number of workers only limits how many
+ * snapshots are in progress at once.
+ * <p>
+ * Tasks that cannot be started straight away are held in per-project queues.  Workers take tasks
+ * from these queues in round-robin order, and a project may only occupy a limited number of
+ * workers at once, so a project with many outstanding requests cannot starve the other projects.
+ * When the total number of queued tasks (or the number queued for a single project) reaches its
+ * limit, new submissions are rejected straight away so that callers can back off rather than
+ * timing out in the queue.  Tasks that are cancelled while they are queued are removed from the
+ * queue without being run.
+ * <p>
+ * Background tasks, which nobody is waiting for, are held in a separate queue.  They are only
+ * started when no other tasks are queued, and they never occupy the last worker, so they do not
+ * delay snapshot requests.  With a single worker there is no spare worker, so background tasks
+ * are rejected.
+ */
+public class SnapshotTaskScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotTaskScheduler.class);
+
+    private final ExecutorService workers;
+
+    private final int workerCount;
+
+    private final int queueCapacity;
+
+    private final int maxQueuedPerProject;
+
+    private final int maxRunningPerProject;
+
+    private final int backgroundQueueCapacity;
+
+    private final int maxRunningBackground;
+
+    private final Map<ProjectId, ArrayDeque<QueuedTask<?>>> queuedByProject = new HashMap<>();
+
+    private final ArrayDeque<ProjectId> projectRotation = new ArrayDeque<>();
+
+    private final ArrayDeque<QueuedTask<?>> backgroundQueue = new ArrayDeque<>();
+
+    private final Map<ProjectId, Integer> runningByProject = new HashMap<>();
+
+    private int queued = 0;
+
+    private int running = 0;
+
+    private int runningBackground = 0;
+
+    private final Timer queueWaitTimer;
+
+    private final Counter rejectedCounter;
+
+    public SnapshotTaskScheduler(int workerCount,
+                                 int queueCapacity,
+                                 int maxQueuedPerProject,
+                                 int maxRunningPerProject,
+                                 @Nonnull MeterRegistry meterRegistry) {
+        this(workerCount, queueCapacity, maxQueuedPerProject, maxRunningPerProject, 0, meterRegistry);
+    }
+
+    public SnapshotTaskScheduler(int workerCount,
+                                 int queueCapacity,
+                                 int maxQueuedPerProject,
+                                 int maxRunningPerProject,
+                                 int backgroundQueueCapacity,
+                                 @Nonnull MeterRegistry meterRegistry) {
+        this(workerCount, queueCapacity, maxQueuedPerProject, maxRunningPerProject, backgroundQueueCapacity, false, meterRegistry);
+    }
+
+    public SnapshotTaskScheduler(int workerCount,
+                                 int queueCapacity,
+                                 int maxQueuedPerProject,
+                                 int maxRunningPerProject,
+                                 int backgroundQueueCapacity,
+                                 boolean virtualThreads,
+                                 @Nonnull MeterRegistry meterRegistry) {
+        checkArgument(workerCount > 0, "workerCount must be greater than zero");
+        checkArgument(queueCapacity >= 0, "queueCapacity must not be negative");
+        checkArgument(maxQueuedPerProject > 0, "maxQueuedPerProject must be greater than zero");
+        checkArgument(maxRunningPerProject > 0, "maxRunningPerProject must be greater than zero");
+        checkArgument(backgroundQueueCapacity >= 0, "backgroundQueueCapacity must not be negative");
+        this.workerCount = workerCount;
+        this.queueCapacity = queueCapacity;
+        this.maxQueuedPerProject = maxQueuedPerProject;
+        this.maxRunningPerProject = maxRunningPerProject;
+        this.backgroundQueueCapacity = backgroundQueueCapacity;
+        // Keep one worker free for snapshot requests
+        this.maxRunningBackground = workerCount - 1;
+        if(maxRunningBackground == 0) {
+            logger.info("Background snapshot tasks are disabled because there is only one snapshot worker");
+        }
+        if(virtualThreads) {
+            // The scheduler limits the number of running tasks, so each task gets its own thread
+            this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("snapshot-worker-", 1).factory());
+        }
+        else {
+            this.workers = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory());
+        }
+        Gauge.builder("webprotege.snapshots.queue.depth", this, SnapshotTaskScheduler::getQueueDepth)
+             .description("The number of snapshot tasks waiting for a worker")
+             .register(meterRegistry);
+        Gauge.builder("webprotege.snapshots.queue.background.depth", this, SnapshotTaskScheduler::getBackgroundQueueDepth)
+             .description("The number of background snapshot tasks waiting for a worker")
+             .register(meterRegistry);
+        Gauge.builder("webprotege.snapshots.workers.active", this, SnapshotTaskScheduler::getRunningCount)
+             .description("The number of snapshot tasks that are currently running")
+             .register(meterRegistry);
+        this.queueWaitTimer = Timer.builder("webprotege.snapshots.queue.wait")
+                                   .description("The time snapshot tasks spend waiting for a worker")
+                                   .publishPercentileHistogram()
+                                   .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("webprotege.snapshots.rejected")
+                                      .description("The number of snapshot tasks rejected because the queue was full")
+                                      .register(meterRegistry);
+        logger.info("Snapshot scheduler started with {} {} workers (queue capacity: {}, max queued per project: {}, max running per project: {})",
+                    workerCount, virtualThreads ? "virtual" : "platform", queueCapacity, maxQueuedPerProject, maxRunningPerProject);
+    }
+
+    /**
+     * Submits a task for execution.
+     * @param projectId The project that the task belongs to.  This is used to share workers fairly
+     *                  between projects.
+     * @param task The task to run.
+     * @return A future that completes with the result of the task.  If the task cannot be accepted
+     * then the future is completed exceptionally with a {@link CommandExecutionException} that has
+     * a status of {@link HttpStatus#SERVICE_UNAVAILABLE} (the service is saturated) or
+     * {@link HttpStatus#TOO_MANY_REQUESTS} (the project has too many queued tasks).
+     */
+    public <T> CompletableFuture<T> submit(@Nonnull ProjectId projectId,
+                                           @Nonnull Supplier<T> task) {
+        return submit(projectId, task, CancellationToken.create());
+    }
+
+    /**
+     * Submits a task for execution.
+     * @param projectId The project that the task belongs to.  This is used to share workers fairly
+     *                  between projects.
+     * @param task The task to run.
+     * @param cancellation The cancellation token for the task.  If this is cancelled while the
+     *                     task is queued then the task is removed from the queue and the returned
+     *                     future fails with a {@link SnapshotCancelledException}.  Running tasks
+     *                     are expected to check the token themselves.
+     * @return A future that completes with the result of the task.  See {@link #submit(ProjectId, Supplier)}.
+     */
+    public <T> CompletableFuture<T> submit(@Nonnull ProjectId projectId,
+                                           @Nonnull Supplier<T> task,
+                                           @Nonnull CancellationToken cancellation) {
+        requireNonNull(projectId);
+        requireNonNull(task);
+        requireNonNull(cancellation);
+        var queuedTask = new QueuedTask<>(projectId, task, cancellation, false, System.nanoTime());
+        synchronized (this) {
+            if(workers.isShutdown()) {
+                return reject(projectId, HttpStatus.SERVICE_UNAVAILABLE, "The snapshot service is shutting down");
+            }
+            var projectQueue = queuedByProject.get(projectId);
+            var projectQueueSize = projectQueue == null ? 0 : projectQueue.size();
+            if(projectQueueSize >= maxQueuedPerProject) {
+                return reject(projectId, HttpStatus.TOO_MANY_REQUESTS,
+                              "Too many snapshot requests are pending for this project.  Please try again later.");
+            }
+            if(queued >= queueCapacity && !hasIdleWorkerFor(projectId)) {
+                return reject(projectId, HttpStatus.SERVICE_UNAVAILABLE,
+                              "The snapshot service is busy.  Please try again later.");
+            }
+            if(projectQueue == null) {
+                projectQueue = new ArrayDeque<>();
+                queuedByProject.put(projectId, projectQueue);
+                projectRotation.addLast(projectId);
+            }
+            projectQueue.addLast(queuedTask);
+            queued++;
+            dispatch();
+        }
+        queuedTask.cancellationRegistration = cancellation.onCancel(() -> removeQueued(queuedTask));
+        return queuedTask.future;
+    }
+
+    /**
+     * Submits a task that runs in the background, when workers are not needed for other tasks.
+     * @param projectId The project that the task belongs to
+     * @param task The task to run
+     * @param cancellation The cancellation token for the task.  See {@link #submit(ProjectId, Supplier, CancellationToken)}.
+     * @return A future that completes with the result of the task.  If the background queue is full,
+     * or there is no spare worker to run background tasks on, then the future is completed
+     * exceptionally with a {@link CommandExecutionException} that has a status of
+     * {@link HttpStatus#SERVICE_UNAVAILABLE}.
+     */
+    public <T> CompletableFuture<T> submitInBackground(@Nonnull ProjectId projectId,
+                                                       @Nonnull Supplier<T> task,
+                                                       @Nonnull CancellationToken cancellation) {
+        requireNonNull(projectId);
+        requireNonNull(task);
+        requireNonNull(cancellation);
+        var queuedTask = new QueuedTask<>(projectId, task, cancellation, true, System.nanoTime());
+        synchronized (this) {
+            if(workers.isShutdown()) {
+                return CompletableFuture.failedFuture(CommandExecutionException.of(HttpStatus.SERVICE_UNAVAILABLE, "The snapshot service is shutting down"));
+            }
+            if(maxRunningBackground == 0) {
+                return CompletableFuture.failedFuture(CommandExecutionException.of(HttpStatus.SERVICE_UNAVAILABLE, "There is no spare snapshot worker for background tasks"));
+            }
+            if(backgroundQueue.size() >= backgroundQueueCapacity) {
+                logger.info("{} Background snapshot queue is full.  Not queuing background task.", projectId);
+                return CompletableFuture.failedFuture(CommandExecutionException.of(HttpStatus.SERVICE_UNAVAILABLE, "The background snapshot queue is full"));
+            }
+            backgroundQueue.addLast(queuedTask);
+            dispatch();
+        }
+        queuedTask.cancellationRegistration = cancellation.onCancel(() -> removeQueued(queuedTask));
+        return queuedTask.future;
+    }
+
+    /**
+     * Gets the number of tasks that are waiting for a worker
+     */
+    public synchronized int getQueueDepth() {
+        return queued;
+    }
+
+    /**
+     * Gets the number of background tasks that are waiting for a worker
+     */
+    public synchronized int getBackgroundQueueDepth() {
+        return backgroundQueue.size();
+    }
+
+    /**
+     * Gets the number of tasks that are currently running
+     */
+    public synchronized int getRunningCount() {
+        return running;
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * Gets the number of workers that background tasks may occupy at once
+     */
+    public int getMaxRunningBackground() {
+        return maxRunningBackground;
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            workers.shutdown();
+            queuedByProject.values().forEach(queue -> queue.forEach(task -> task.future.completeExceptionally(
+                    CommandExecutionException.of(HttpStatus.SERVICE_UNAVAILABLE, "The snapshot service is shutting down"))));
+            backgroundQueue.forEach(task -> task.future.completeExceptionally(
+                    CommandExecutionException.of(HttpStatus.SERVICE_UNAVAILABLE, "The snapshot service is shutting down")));
+            queuedByProject.clear();
+            projectRotation.clear();
+            backgroundQueue.clear();
+            queued = 0;
+        }
+        try {
+            if(!workers.awaitTermination(30, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void removeQueued(QueuedTask<?> task) {
+        synchronized (this) {
+            if(task.background) {
+                if(!backgroundQueue.remove(task)) {
+                    return;
+                }
+                logger.info("{} Removed cancelled background snapshot task from the queue", task.projectId);
+                task.future.completeExceptionally(new SnapshotCancelledException(task.cancellation.getReason()));
+                return;
+            }
+            var projectQueue = queuedByProject.get(task.projectId);
+            if(projectQueue == null || !projectQueue.remove(task)) {
+                // Already running or finished
+                return;
+            }
+            queued--;
+            if(projectQueue.isEmpty()) {
+                queuedByProject.remove(task.projectId);
+                projectRotation.remove(task.projectId);
+            }
+        }
+        logger.info("{} Removed cancelled snapshot task from the queue", task.projectId);
+        task.future.completeExceptionally(new SnapshotCancelledException(task.cancellation.getReason()));
+    }
+
+    private <T> CompletableFuture<T> reject(ProjectId projectId, HttpStatus status, String message) {
+        logger.warn("{} Rejecting snapshot request: {} (queued: {}, running: {})", projectId, message, queued, running);
+        rejectedCounter.increment();
+        return CompletableFuture.failedFuture(CommandExecutionException.of(status, message));
+    }
+
+    private boolean hasIdleWorkerFor(ProjectId projectId) {
+        return running < workerCount && runningByProject.getOrDefault(projectId, 0) < maxRunningPerProject;
+    }
+
+    /**
+     * Hands queued tasks to idle workers.  Must be called while holding the lock on this scheduler.
+     */
+    private void dispatch() {
+        while (running < workerCount) {
+            var next = pollNextRunnableTask();
+            if(next == null) {
+                return;
+            }
+            running++;
+            if(next.background) {
+                runningBackground++;
+            }
+            runningByProject.merge(next.projectId, 1, Integer::sum);
+            workers.execute(() -> run(next));
+        }
+    }
+
+    /**
+     * Takes the next task in round-robin order from the first project that has not already used up
+     * its share of the workers.  Background tasks are only taken when no other tasks are queued.
+     */
+    private QueuedTask<?> pollNextRunnableTask() {
+        for(int i = 0, projectCount = projectRotation.size(); i < projectCount; i++) {
+            var projectId = projectRotation.pollFirst();
+            if(runningByProject.getOrDefault(projectId, 0) >= maxRunningPerProject) {
+                projectRotation.addLast(projectId);
+                continue;
+            }
+            var projectQueue = queuedByProject.get(projectId);
+            var task = projectQueue.pollFirst();
+            if(projectQueue.isEmpty()) {
+                queuedByProject.remove(projectId);
+            }
+            else {
+                projectRotation.addLast(projectId);
+            }
+            queued--;
+            return task;
+        }
+        if(queued == 0 && runningBackground < maxRunningBackground) {
+            return pollNextBackgroundTask();
+        }
+        return null;
+    }
+
+    /**
+     * Takes the first background task whose project has not already used up its share of the workers
+     */
+    private QueuedTask<?> pollNextBackgroundTask() {
+        for(var iterator = backgroundQueue.iterator(); iterator.hasNext(); ) {
+            var task = iterator.next();
+            if(runningByProject.getOrDefault(task.projectId, 0) < maxRunningPerProject) {
+                iterator.remove();
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private <T> void run(QueuedTask<T> task) {
+        if(!task.background) {
+            queueWaitTimer.record(System.nanoTime() - task.submittedAt, TimeUnit.NANOSECONDS);
+        }
+        try {
+            task.cancellation.throwIfCancelled();
+            task.future.complete(task.task.get());
+        } catch (Throwable t) {
+            task.future.completeExceptionally(t);
+        } finally {
+            if(task.cancellationRegistration != null) {
+                task.cancellationRegistration.close();
+            }
+            // A cancelled task may have interrupted this worker to unblock it
+            Thread.interrupted();
+            synchronized (this) {
+                running--;
+                if(task.background) {
+                    runningBackground--;
+                }
+                runningByProject.computeIfPresent(task.projectId, (projectId, count) -> count == 1 ? null : count - 1);
+                dispatch();
+            }
+        }
+    }
+
+    private static final class QueuedTask<T> {
+
+        private final ProjectId projectId;
+
+        private final Supplier<T> task;
+
+        private final CancellationToken cancellation;
+
+        private final boolean background;
+
+        private final long submittedAt;
+
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private volatile CancellationToken.Registration cancellationRegistration;
+
+        private QueuedTask(ProjectId projectId, Supplier<T> task, CancellationToken cancellation, boolean background, long submittedAt) {
+            this.projectId = projectId;
+            this.task = task;
+            this.cancellation = cancellation;
+            this.background = background;
+            this.submittedAt = submittedAt;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            var thread = new Thread(r, "snapshot-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+/**
+ * Specifies how a serialized snapshot gets to storage.
+ */
+public enum SnapshotUploadMode {
+
+    /**
+     * The snapshot is written to a temp file on local disk, which is then uploaded.  This needs
+     * scratch space as large as the snapshot, but the upload can be retried by the storage client.
+     */
+    TEMP_FILE,
+
+    /**
+     * The snapshot is piped straight into a multipart upload while it is being serialized, so that
+     * serialization and network transfer overlap and no scratch space is needed.
+     */
+    STREAMING
+}
@@ -0,0 +1,61 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Configuration for how snapshots are uploaded to storage.
+ */
+@Configuration
+@ConfigurationProperties(prefix = "webprotege.snapshots.upload")
+public class SnapshotUploadProperties {
+
+    private SnapshotUploadMode mode = SnapshotUploadMode.TEMP_FILE;
+
+    private DataSize partSize = DataSize.ofMegabytes(16);
+
+    private DataSize pipeBufferSize = DataSize.ofMegabytes(4);
+
+    private boolean contentAddressed = false;
+
+    public SnapshotUploadMode getMode() {
+        return mode;
+    }
+
+    public void setMode(SnapshotUploadMode mode) {
+        this.mode = mode;
+    }
+
+    public DataSize getPartSize() {
+        return partSize;
+    }
+
+    public void setPartSize(DataSize partSize) {
+        this.partSize = partSize;
+    }
+
+    public DataSize getPipeBufferSize() {
+        return pipeBufferSize;
+    }
+
+    public void setPipeBufferSize(DataSize pipeBufferSize) {
+        this.pipeBufferSize = pipeBufferSize;
+    }
+
+    public boolean isContentAddressed() {
+        return contentAddressed;
+    }
+
+    public void setContentAddressed(boolean contentAddressed) {
+        this.contentAddressed = contentAddressed;
+    }
+
+    /**
+     * Determines whether snapshots are stored under their content hash.  This needs the snapshot to
+     * be written to a temp file first, so streaming uploads are never content addressed.
+     */
+    public boolean isEffectivelyContentAddressed() {
+        return contentAddressed && mode == SnapshotUploadMode.TEMP_FILE;
+    }
+}
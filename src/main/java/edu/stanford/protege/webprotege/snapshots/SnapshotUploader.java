@@ -0,0 +1,388 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import io.minio.*;
+import io.minio.errors.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestOutputStream;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes snapshots to storage.  Depending on the configured {@link SnapshotUploadMode} the
+ * snapshot is either written to a temp file and then uploaded, or it is piped into a multipart
+ * upload as it is being written.
+ * <p>
+ * Snapshots that are written to a temp file may be stored under the hash of their content.  The
+ * archive is then only uploaded if an identical archive has not been stored before, and the
+ * snapshot location holds a small pointer object whose {@value #CONTENT_METADATA_KEY} metadata is
+ * the location of the archive.
+ */
+public class SnapshotUploader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotUploader.class);
+
+    /**
+     * The user metadata key under which the {@link SnapshotArchiveCodec} of a snapshot is stored
+     */
+    public static final String CODEC_METADATA_KEY = "snapshot-codec";
+
+    /**
+     * The user metadata key under which a pointer object stores the location of the content
+     * addressed archive that it points to
+     */
+    public static final String CONTENT_METADATA_KEY = "snapshot-content";
+
+    private static final String POINTER_CONTENT_TYPE = "text/plain";
+
+    @Nonnull
+    private final MinioClient minioClient;
+
+    @Nonnull
+    private final SnapshotBucket snapshotBucket;
+
+    @Nonnull
+    private final SnapshotScratchSpace scratchSpace;
+
+    @Nonnull
+    private final SnapshotUploadMode mode;
+
+    private final long partSize;
+
+    private final int pipeBufferSize;
+
+    private final boolean contentAddressed;
+
+    @Nonnull
+    private final SnapshotMetrics metrics;
+
+    private final ExecutorService streamingUploadExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                                      .name("snapshot-upload-", 1)
+                                                                                                      .factory());
+
+    public SnapshotUploader(@Nonnull MinioClient minioClient,
+                            @Nonnull SnapshotBucket snapshotBucket,
+                            @Nonnull SnapshotScratchSpace scratchSpace,
+                            @Nonnull SnapshotUploadProperties properties,
+                            @Nonnull SnapshotMetrics metrics) {
+        this.minioClient = checkNotNull(minioClient);
+        this.snapshotBucket = checkNotNull(snapshotBucket);
+        this.scratchSpace = checkNotNull(scratchSpace);
+        this.metrics = checkNotNull(metrics);
+        this.mode = checkNotNull(properties.getMode());
+        this.partSize = Math.max(properties.getPartSize().toBytes(), ObjectWriteArgs.MIN_MULTIPART_SIZE);
+        this.pipeBufferSize = (int) Math.min(Integer.MAX_VALUE, Math.max(8192, properties.getPipeBufferSize().toBytes()));
+        this.contentAddressed = properties.isEffectivelyContentAddressed();
+    }
+
+    /**
+     * Writes a snapshot to storage at the specified location
+     * @param location The location of the snapshot
+     * @param codec The codec that the snapshot is packaged with.  This determines the content type
+     *              and is recorded in the object metadata.
+     * @param userMetadata Further user metadata to store with the snapshot
+     * @param cancellation Stops the upload.  A cancelled upload never leaves a partial object in storage.
+     * @param progress Receives the number of bytes written and the phase of the upload
+     * @param writer Writes the content of the snapshot
+     * @return The name of the object that holds the archive, and the size of the archive
+     */
+    public UploadedSnapshot upload(@Nonnull SnapshotLocation location,
+                       @Nonnull SnapshotArchiveCodec codec,
+                       @Nonnull Map<String, String> userMetadata,
+                       @Nonnull CancellationToken cancellation,
+                       @Nonnull SnapshotProgress progress,
+                       @Nonnull SnapshotContentWriter writer) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        snapshotBucket.ensureExists();
+        var metadata = new HashMap<>(userMetadata);
+        metadata.put(CODEC_METADATA_KEY, codec.name());
+        try {
+            if(mode == SnapshotUploadMode.STREAMING) {
+                return uploadStreaming(location, codec, metadata, cancellation, progress, writer);
+            }
+            else {
+                return uploadViaTempFile(location, codec, metadata, cancellation, progress, writer);
+            }
+        } catch (ErrorResponseException e) {
+            snapshotBucket.checkForMissingBucket(e);
+            throw e;
+        }
+    }
+
+    public void shutdown() {
+        streamingUploadExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets the location of the content addressed archive that a stored snapshot points to
+     * @param userMetadata The user metadata of the stored snapshot
+     * @return The location, or empty if the stored snapshot holds the archive itself
+     */
+    @Nonnull
+    public static Optional<String> getContentLocation(@Nonnull Map<String, String> userMetadata) {
+        // Metadata keys are case-insensitive, and listings may return them with their header prefix
+        return userMetadata.entrySet()
+                           .stream()
+                           .filter(entry -> entry.getKey().toLowerCase(Locale.ROOT).endsWith(CONTENT_METADATA_KEY))
+                           .map(Map.Entry::getValue)
+                           .findFirst();
+    }
+
+    /**
+     * Gets the codec that a stored snapshot was packaged with
+     * @param userMetadata The user metadata of the stored snapshot
+     * @return The codec, or empty if the recorded codec is not known.  Snapshots that were stored
+     * before the codec was recorded are zip archives.
+     */
+    @Nonnull
+    public static Optional<SnapshotArchiveCodec> getArchiveCodec(@Nonnull Map<String, String> userMetadata) {
+        var codecName = userMetadata.entrySet()
+                                    .stream()
+                                    .filter(entry -> entry.getKey().toLowerCase(Locale.ROOT).endsWith(CODEC_METADATA_KEY))
+                                    .map(Map.Entry::getValue)
+                                    .findFirst();
+        if(codecName.isEmpty()) {
+            return Optional.of(SnapshotArchiveCodec.ZIP);
+        }
+        try {
+            return Optional.of(SnapshotArchiveCodec.valueOf(codecName.get()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private UploadedSnapshot uploadViaTempFile(SnapshotLocation location,
+                                               SnapshotArchiveCodec codec,
+                                               Map<String, String> userMetadata,
+                                               CancellationToken cancellation,
+                                               SnapshotProgress progress,
+                                               SnapshotContentWriter writer) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        try (var tmpFile = scratchSpace.createScratchFile()) {
+            logger.info("{} Writing snapshot to temp file ({})", location, tmpFile.getPath());
+            var digest = contentAddressed ? MessageDigest.getInstance("SHA-256") : null;
+            var fileOutputStream = tmpFile.newOutputStream();
+            if(digest != null) {
+                fileOutputStream = new DigestOutputStream(fileOutputStream, digest);
+            }
+            // The scratch file stream is the only buffer, and the archive writers write in large blocks
+            try (var outputStream = new ProgressOutputStream(fileOutputStream, progress::bytesWritten)) {
+                writer.write(outputStream);
+            }
+            // The temp file is deleted when the task is cancelled before it is uploaded
+            cancellation.throwIfCancelled();
+            var size = Files.size(tmpFile.getPath());
+            logSize(location, size);
+            progress.uploading();
+            if(digest != null) {
+                var contentLocation = SnapshotLocation.getContentLocation(location.getProjectId(), HexFormat.of().formatHex(digest.digest()));
+                if(contentExists(contentLocation)) {
+                    logger.info("{} An identical snapshot is already stored at {}.  Not uploading it again.", location, contentLocation);
+                    // Stops the retention sweeper from removing the archive before the pointer is stored
+                    minioClient.setObjectTags(SetObjectTagsArgs.builder()
+                                                               .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                               .object(contentLocation)
+                                                               .tags(Map.of(SnapshotAccessRecorder.LAST_ACCESSED_TAG, Long.toString(Instant.now().getEpochSecond())))
+                                                               .build());
+                }
+                else {
+                    uploadFile(location, contentLocation, codec, userMetadata, tmpFile);
+                }
+                storePointer(location, contentLocation, userMetadata);
+                return new UploadedSnapshot(contentLocation, size);
+            }
+            uploadFile(location, location.getLocation(), codec, userMetadata, tmpFile);
+            return new UploadedSnapshot(location.getLocation(), size);
+        }
+    }
+
+    private void uploadFile(SnapshotLocation location,
+                            String objectName,
+                            SnapshotArchiveCodec codec,
+                            Map<String, String> userMetadata,
+                            SnapshotScratchSpace.ScratchFile tmpFile) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        logger.info("{} Storing snapshot", location);
+        var uploadObjectArgs = UploadObjectArgs.builder()
+                                               .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                               .object(objectName)
+                                               .filename(tmpFile.getPath().toString())
+                                               .contentType(codec.getContentType())
+                                               .userMetadata(userMetadata)
+                                               .build();
+        var uploadSample = metrics.start();
+        var minioResponse = minioClient.uploadObject(uploadObjectArgs);
+        metrics.stop(uploadSample, SnapshotMetrics.Phase.UPLOAD, location.getFormat());
+        logger.info("{} Stored snapshot (Bucket: {}, Name: {}, Region: {})", location, minioResponse.bucket(), objectName, minioResponse.region());
+    }
+
+    private void storePointer(SnapshotLocation location,
+                              String contentLocation,
+                              Map<String, String> userMetadata) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        var pointer = contentLocation.getBytes(StandardCharsets.UTF_8);
+        var pointerMetadata = new HashMap<>(userMetadata);
+        pointerMetadata.put(CONTENT_METADATA_KEY, contentLocation);
+        minioClient.putObject(PutObjectArgs.builder()
+                                           .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                           .object(location.getLocation())
+                                           .stream(new ByteArrayInputStream(pointer), pointer.length, -1)
+                                           .contentType(POINTER_CONTENT_TYPE)
+                                           .userMetadata(pointerMetadata)
+                                           .build());
+        logger.info("{} Stored pointer to {}", location, contentLocation);
+    }
+
+    private boolean contentExists(String contentLocation) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        try {
+            minioClient.statObject(StatObjectArgs.builder()
+                                                 .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                 .object(contentLocation)
+                                                 .build());
+            return true;
+        } catch (ErrorResponseException e) {
+            if("NoSuchKey".equals(e.errorResponse().code())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Pipes the snapshot into a multipart upload.  The upload runs on a separate thread and reads
+     * from the pipe a part at a time, so serialization carries on while earlier parts are
+     * being sent.
+     */
+    private UploadedSnapshot uploadStreaming(SnapshotLocation location,
+                                             SnapshotArchiveCodec codec,
+                                             Map<String, String> userMetadata,
+                                             CancellationToken cancellation,
+                                             SnapshotProgress progress,
+                                             SnapshotContentWriter writer) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        logger.info("{} Streaming snapshot to storage (part size: {} MB)", location, partSize / (1024 * 1024));
+        var pipe = new SnapshotPipe(pipeBufferSize);
+        var upload = CompletableFuture.supplyAsync(() -> {
+            try {
+                var putObjectArgs = PutObjectArgs.builder()
+                                                 .bucket(CreateSnapshotTask.BUCKET_NAME)
+                                                 .object(location.getLocation())
+                                                 .stream(pipe.getInputStream(), -1, partSize)
+                                                 .contentType(codec.getContentType())
+                                                 .userMetadata(userMetadata)
+                                                 .build();
+                return minioClient.putObject(putObjectArgs);
+            } catch (Exception e) {
+                // Stop the writer, which would otherwise block on a full pipe
+                pipe.abort(e);
+                throw new StreamingUploadException(e);
+            }
+        }, streamingUploadExecutor);
+        // Cancelling wakes up both ends of the pipe, which fails the writer and the multipart upload
+        var cancellationRegistration = cancellation.onCancel(() -> pipe.abort(new SnapshotCancelledException(cancellation.getReason())));
+        // Parts are uploaded as soon as they have been written, so the part that is being uploaded
+        // follows the number of bytes that have been written
+        var countingOut = new ProgressOutputStream(pipe.getOutputStream(), count -> {
+            progress.bytesWritten(count);
+            progress.uploadingPart((int) (count / partSize) + 1);
+        });
+        try (cancellationRegistration) {
+            try (countingOut) {
+                writer.write(countingOut);
+            } catch (IOException | RuntimeException e) {
+                // Make the upload fail, rather than complete with a truncated object.  The storage
+                // client aborts the multipart upload when it fails to read the stream.
+                pipe.abort(e);
+                awaitQuietly(upload);
+                throw e;
+            }
+            progress.uploading();
+            var uploadSample = metrics.start();
+            var minioResponse = await(upload);
+            metrics.stop(uploadSample, SnapshotMetrics.Phase.UPLOAD, location.getFormat());
+            logSize(location, countingOut.getCount());
+            logger.info("{} Stored snapshot (Bucket: {}, Name: {}, Region: {})", location, minioResponse.bucket(), location.getLocation(), minioResponse.region());
+            return new UploadedSnapshot(location.getLocation(), countingOut.getCount());
+        }
+    }
+
+    private static ObjectWriteResponse await(CompletableFuture<ObjectWriteResponse> upload) throws IOException, MinioException, NoSuchAlgorithmException, InvalidKeyException {
+        try {
+            return upload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the snapshot upload to complete");
+        } catch (ExecutionException e) {
+            var cause = e.getCause() instanceof StreamingUploadException uploadException ? uploadException.getCause() : e.getCause();
+            if(cause instanceof IOException ioException) {
+                throw ioException;
+            }
+            if(cause instanceof MinioException minioException) {
+                throw minioException;
+            }
+            if(cause instanceof NoSuchAlgorithmException noSuchAlgorithmException) {
+                throw noSuchAlgorithmException;
+            }
+            if(cause instanceof InvalidKeyException invalidKeyException) {
+                throw invalidKeyException;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static void awaitQuietly(CompletableFuture<?> upload) {
+        try {
+            upload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.debug("Snapshot upload was aborted", e.getCause());
+        }
+    }
+
+    private static void logSize(SnapshotLocation location, long size) {
+        double sizeInMB = size / (1024.0 * 1024);
+        logger.info("{} Finished creating snapshot ({} MB)", location, String.format("%.4f", sizeInMB));
+    }
+
+    /**
+     * A snapshot that has been stored
+     * @param objectName The name of the object that holds the snapshot archive
+     * @param size The size of the archive in bytes
+     */
+    public record UploadedSnapshot(@Nonnull String objectName, long size) {
+
+    }
+
+    /**
+     * Writes the content of a snapshot to an output stream
+     */
+    @FunctionalInterface
+    public interface SnapshotContentWriter {
+
+        void write(@Nonnull OutputStream outputStream) throws IOException;
+    }
+
+    private static class StreamingUploadException extends RuntimeException {
+
+        public StreamingUploadException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Creates snapshots that busy replicas have asked other replicas to create (see
+ * {@link SnapshotLeaseCoordinator#advertise(SnapshotLocation, String)}).
+ * <p>
+ * While this replica has a worker free for background work, the leases are polled for wanted
+ * snapshots, which are submitted as background tasks.  The task claims the snapshot before it is
+ * created, so the replica that asked for it waits for the snapshot instead of creating it.
+ * Requests that nobody picked up before they expired are removed.
+ * <p>
+ * Listing the leases may read every lease object, so the leases are not listed while this replica
+ * is busy, and polls that pick up nothing back off, up to {@link #MAX_BACKOFF} poll intervals
+ * apart.  Polling returns to the poll interval once a snapshot has been picked up.
+ */
+public class SnapshotWorkStealer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotWorkStealer.class);
+
+    static final int MAX_BACKOFF = 12;
+
+    @Nonnull
+    private final SnapshotLeaseStore leaseStore;
+
+    @Nonnull
+    private final SnapshotLeaseCoordinator leaseCoordinator;
+
+    @Nonnull
+    private final SnapshotRequestSubmitter snapshotRequestSubmitter;
+
+    @Nonnull
+    private final SnapshotTaskScheduler snapshotTaskScheduler;
+
+    @Nonnull
+    private final Duration taskDeadline;
+
+    @Nonnull
+    private final Clock clock;
+
+    /**
+     * The lease objects of the snapshots that this replica is creating for other replicas
+     */
+    private final Set<String> submitted = ConcurrentHashMap.newKeySet();
+
+    private Duration pollInterval = Duration.ZERO;
+
+    /**
+     * The delay before the next poll.  Only used by the polling thread.
+     */
+    private Duration delay = Duration.ZERO;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        var thread = new Thread(r, "snapshot-work-stealer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SnapshotWorkStealer(@Nonnull SnapshotLeaseStore leaseStore,
+                               @Nonnull SnapshotLeaseCoordinator leaseCoordinator,
+                               @Nonnull SnapshotRequestSubmitter snapshotRequestSubmitter,
+                               @Nonnull SnapshotTaskScheduler snapshotTaskScheduler,
+                               @Nonnull Duration taskDeadline) {
+        this.leaseStore = checkNotNull(leaseStore);
+        this.leaseCoordinator = checkNotNull(leaseCoordinator);
+        this.snapshotRequestSubmitter = checkNotNull(snapshotRequestSubmitter);
+        this.snapshotTaskScheduler = checkNotNull(snapshotTaskScheduler);
+        this.taskDeadline = checkNotNull(taskDeadline);
+        this.clock = Clock.systemUTC();
+    }
+
+    /**
+     * Starts polling for wanted snapshots
+     */
+    public void start(@Nonnull Duration pollInterval) {
+        executor.execute(() -> {
+            this.pollInterval = checkNotNull(pollInterval);
+            this.delay = pollInterval;
+            scheduleNextPoll();
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Submits the wanted snapshots that this replica has room for
+     * @return The number of snapshots that were submitted
+     */
+    int poll() throws Exception {
+        if(!hasIdleWorker()) {
+            return 0;
+        }
+        var now = clock.instant();
+        var count = 0;
+        for(var lease : leaseStore.list()) {
+            if(lease.state() != SnapshotLease.State.WANTED) {
+                continue;
+            }
+            if(lease.isExpired(now)) {
+                leaseStore.release(lease);
+                continue;
+            }
+            if(lease.holder().equals(leaseCoordinator.getReplicaId()) || submitted.contains(lease.objectName())) {
+                continue;
+            }
+            var location = toSnapshotLocation(lease.objectName());
+            if(location.isEmpty() || lease.fileName() == null) {
+                continue;
+            }
+            if(!hasIdleWorker()) {
+                break;
+            }
+            submit(lease, location.get());
+            count++;
+        }
+        return count;
+    }
+
+    private void submit(SnapshotLease lease, SnapshotLocation location) {
+        logger.info("{} Creating snapshot for replica {}", location, lease.holder());
+        submitted.add(lease.objectName());
+        var cancellation = CancellationToken.withDeadline(taskDeadline);
+        snapshotRequestSubmitter.submitInBackground(location.getProjectId(),
+                                                    location.getRevisionNumber(),
+                                                    location.getFormat(),
+                                                    lease.fileName(),
+                                                    new ExecutionContext(),
+                                                    cancellation)
+                                .whenComplete((coordinates, error) -> {
+                                    cancellation.complete();
+                                    submitted.remove(lease.objectName());
+                                    if(error != null) {
+                                        logger.info("{} Could not create snapshot for replica {}: {}",
+                                                    location, lease.holder(), error.getMessage());
+                                    }
+                                });
+    }
+
+    /**
+     * Background tasks only run when no requests are queued and never take the last worker
+     */
+    private boolean hasIdleWorker() {
+        return snapshotTaskScheduler.getQueueDepth() == 0
+                && snapshotTaskScheduler.getBackgroundQueueDepth() == 0
+                && snapshotTaskScheduler.getRunningCount() < snapshotTaskScheduler.getMaxRunningBackground();
+    }
+
+    static Optional<SnapshotLocation> toSnapshotLocation(String leaseObjectName) {
+        return SnapshotLeaseStore.getSnapshotLocation(leaseObjectName)
+                                 .flatMap(SnapshotRetentionSweeper::parseSnapshotObjectName)
+                                 .filter(SnapshotRetentionSweeper.SnapshotObjectName::isSnapshot)
+                                 .flatMap(name -> {
+                                     var format = Arrays.stream(DocumentFormat.values())
+                                                        .filter(f -> f.getExtension().equals(name.extension()))
+                                                        .findFirst();
+                                     try {
+                                         var projectId = ProjectId.valueOf(name.projectId());
+                                         var revisionNumber = RevisionNumber.getRevisionNumber(name.revision());
+                                         return format.map(f -> new SnapshotLocation(projectId, revisionNumber, f));
+                                     } catch (IllegalArgumentException e) {
+                                         return Optional.empty();
+                                     }
+                                 });
+    }
+
+    private void scheduleNextPoll() {
+        if(!executor.isShutdown()) {
+            executor.schedule(this::pollSafely, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void pollSafely() {
+        try {
+            if(!hasIdleWorker()) {
+                // Nothing is listed while this replica is busy
+                return;
+            }
+            var count = poll();
+            if(count > 0) {
+                logger.info("Picked up {} snapshots that other replicas asked for", count);
+            }
+            delay = getNextDelay(delay, count, pollInterval);
+        } catch (Exception e) {
+            logger.warn("Could not poll for snapshots that other replicas asked for: {}", e.getMessage());
+            delay = getNextDelay(delay, 0, pollInterval);
+        } finally {
+            scheduleNextPoll();
+        }
+    }
+
+    /**
+     * Gets the delay before the next poll, which doubles after each poll that picks up nothing
+     */
+    static Duration getNextDelay(Duration delay, int pickedUp, Duration pollInterval) {
+        if(pickedUp > 0) {
+            return pollInterval;
+        }
+        var maxDelay = pollInterval.multipliedBy(MAX_BACKOFF);
+        var doubled = delay.multipliedBy(2);
+        return doubled.compareTo(maxDelay) > 0 ? maxDelay : doubled;
+    }
+}
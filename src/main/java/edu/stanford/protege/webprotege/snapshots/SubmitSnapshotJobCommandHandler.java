@@ -0,0 +1,108 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.authorization.BasicCapability;
+import edu.stanford.protege.webprotege.authorization.Capability;
+import edu.stanford.protege.webprotege.authorization.ProjectResource;
+import edu.stanford.protege.webprotege.authorization.Resource;
+import edu.stanford.protege.webprotege.ipc.AuthorizedCommandHandler;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.ipc.WebProtegeHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.Nonnull;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Starts a snapshot job and responds with its id straight away, so that callers do not have to
+ * hold a request open while a large project is exported.
+ */
+@WebProtegeHandler
+public class SubmitSnapshotJobCommandHandler implements AuthorizedCommandHandler<SubmitSnapshotJobRequest, SubmitSnapshotJobResponse> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubmitSnapshotJobCommandHandler.class);
+
+    private static final Capability DOWNLOAD_PROJECT = new BasicCapability("DownloadProject");
+
+    @Nonnull
+    private final SnapshotRequestSubmitter snapshotRequestSubmitter;
+
+    @Nonnull
+    private final SnapshotJobRegistry snapshotJobRegistry;
+
+    @Nonnull
+    private final SnapshotJobStore snapshotJobStore;
+
+    @Nonnull
+    private final Duration taskDeadline;
+
+    @Nonnull
+    private final SnapshotArchiveProperties archiveProperties;
+
+    public SubmitSnapshotJobCommandHandler(@Nonnull SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                           @Nonnull SnapshotJobRegistry snapshotJobRegistry,
+                                           @Nonnull SnapshotJobStore snapshotJobStore,
+                                           @Nonnull SnapshotSchedulerProperties schedulerProperties,
+                                           @Nonnull SnapshotArchiveProperties archiveProperties) {
+        this.snapshotRequestSubmitter = snapshotRequestSubmitter;
+        this.snapshotJobRegistry = snapshotJobRegistry;
+        this.snapshotJobStore = snapshotJobStore;
+        this.taskDeadline = schedulerProperties.getTaskDeadline();
+        this.archiveProperties = archiveProperties;
+    }
+
+    @Nonnull
+    @Override
+    public String getChannelName() {
+        return SubmitSnapshotJobRequest.CHANNEL;
+    }
+
+    @Override
+    public Class<SubmitSnapshotJobRequest> getRequestClass() {
+        return SubmitSnapshotJobRequest.class;
+    }
+
+    @Nonnull
+    @Override
+    public Resource getTargetResource(SubmitSnapshotJobRequest request) {
+        return ProjectResource.forProject(request.projectId());
+    }
+
+    @Nonnull
+    @Override
+    public Collection<Capability> getRequiredCapabilities() {
+        return Set.of(DOWNLOAD_PROJECT);
+    }
+
+    @Override
+    public Mono<SubmitSnapshotJobResponse> handleRequest(SubmitSnapshotJobRequest request,
+                                                         ExecutionContext executionContext) {
+        var jobId = UUID.randomUUID().toString();
+        // Nobody waits on a job, so it is only stopped by its deadline
+        var cancellation = CancellationToken.withDeadline(taskDeadline);
+        var progress = new SnapshotProgress();
+        var result = snapshotRequestSubmitter.submit(request.projectId(),
+                                                     request.revisionNumber(),
+                                                     request.documentFormat(),
+                                                     request.fileName(),
+                                                     executionContext,
+                                                     cancellation,
+                                                     progress);
+        result.whenComplete((coordinates, error) -> cancellation.complete());
+        var contentType = archiveProperties.getCodec(request.documentFormat()).getContentType();
+        var job = new SnapshotJob(jobId, request.projectId(), progress, result, contentType);
+        // The record of the finished job is written after the record of the submitted job, so that
+        // it is never overwritten by it
+        var submittedAt = Instant.now().toEpochMilli();
+        snapshotJobStore.store(jobId, new SnapshotJobRecord(request.projectId(), submittedAt, job.getStatus()));
+        snapshotJobRegistry.register(job);
+        job.whenFinished(() -> snapshotJobStore.store(jobId, new SnapshotJobRecord(request.projectId(), submittedAt, job.getStatus())));
+        logger.info("{} {} Started snapshot job {}", request.projectId(), executionContext.userId(), jobId);
+        return Mono.just(new SubmitSnapshotJobResponse(jobId));
+    }
+}
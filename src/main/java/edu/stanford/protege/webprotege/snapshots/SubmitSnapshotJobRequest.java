@@ -0,0 +1,26 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.common.ProjectRequest;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+
+/**
+ * Requests a snapshot without waiting for it to be created.  The response contains the id of a
+ * job whose progress can be obtained with a {@link GetSnapshotJobStatusRequest}.
+ */
+@JsonTypeName(SubmitSnapshotJobRequest.CHANNEL)
+public record SubmitSnapshotJobRequest(@JsonProperty("projectId") ProjectId projectId,
+                                       @JsonProperty("revisionNumber") RevisionNumber revisionNumber,
+                                       @JsonProperty("documentFormat") DocumentFormat documentFormat,
+                                       @JsonProperty("fileName") String fileName) implements ProjectRequest<SubmitSnapshotJobResponse> {
+
+    public static final String CHANNEL = "webprotege.snapshots.SubmitSnapshotJob";
+
+    @Override
+    public String getChannel() {
+        return CHANNEL;
+    }
+}
@@ -0,0 +1,10 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import edu.stanford.protege.webprotege.common.Response;
+
+@JsonTypeName(SubmitSnapshotJobRequest.CHANNEL)
+public record SubmitSnapshotJobResponse(@JsonProperty("jobId") String jobId) implements Response {
+
+}
@@ -0,0 +1,73 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipParameters;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneOffset;
+
+/**
+ * Writes a snapshot as a gzip compressed tar archive.  Tar entries need their size in advance, so
+ * entries cannot be streamed.
+ */
+final class TarGzSnapshotArchiveWriter implements SnapshotArchiveWriter {
+
+    private static final FileTime ENTRY_MOD_TIME = FileTime.from(ENTRY_TIMESTAMP.toInstant(ZoneOffset.UTC));
+
+    private final TarArchiveOutputStream tarOutputStream;
+
+    TarGzSnapshotArchiveWriter(@Nonnull OutputStream outputStream, int compressionLevel) throws IOException {
+        var gzipParameters = new GzipParameters();
+        gzipParameters.setCompressionLevel(compressionLevel);
+        // Compressed data is written in large blocks because the stream underneath is not buffered
+        gzipParameters.setBufferSize(ZipSnapshotArchiveWriter.DEFLATE_BUFFER_SIZE);
+        this.tarOutputStream = new TarArchiveOutputStream(new GzipCompressorOutputStream(outputStream, gzipParameters));
+        tarOutputStream.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tarOutputStream.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    }
+
+    @Override
+    public boolean isStreamingEntrySupported() {
+        return false;
+    }
+
+    @Nonnull
+    @Override
+    public OutputStream beginEntry(@Nonnull String name) {
+        throw new UnsupportedOperationException("Tar entries cannot be streamed");
+    }
+
+    @Override
+    public void endEntry() {
+        throw new UnsupportedOperationException("Tar entries cannot be streamed");
+    }
+
+    @Override
+    public void addEntry(@Nonnull String name, @Nonnull OntologyDocumentBuffer content) throws IOException {
+        var tarEntry = new TarArchiveEntry(name);
+        tarEntry.setSize(content.getSize());
+        tarEntry.setModTime(ENTRY_MOD_TIME);
+        // Don't record the account that the service runs under
+        tarEntry.setUserName("");
+        tarEntry.setGroupName("");
+        tarOutputStream.putArchiveEntry(tarEntry);
+        content.writeTo(tarOutputStream);
+        tarOutputStream.closeArchiveEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        tarOutputStream.finish();
+        tarOutputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tarOutputStream.close();
+    }
+}
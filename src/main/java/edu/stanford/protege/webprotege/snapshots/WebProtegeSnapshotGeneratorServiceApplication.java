@@ -7,18 +7,20 @@ import edu.stanford.protege.webprotege.ipc.WebProtegeIpcApplication;
 import edu.stanford.protege.webprotege.jackson.WebProtegeJacksonApplication;
 import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsRequest;
 import edu.stanford.protege.webprotege.project.GetProjectPrefixDeclarationsResponse;
+import edu.stanford.protege.webprotege.revision.GetHeadRevisionNumberAction;
+import edu.stanford.protege.webprotege.revision.GetHeadRevisionNumberResult;
 import edu.stanford.protege.webprotege.revision.RevisionManagerFactory;
 import edu.stanford.protege.webprotege.revision.WebProtegeRevisionManagerApplication;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.minio.MinioClient;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
 @SpringBootApplication
 @EnableConfigurationProperties
 @Import({WebProtegeRevisionManagerApplication.class, WebProtegeJacksonApplication.class, WebprotegeProjectManagementApiApplication.class, WebProtegeIpcApplication.class, WebProtegeCommonConfiguration.class})
@@ -29,25 +31,274 @@ public class WebProtegeSnapshotGeneratorServiceApplication {
     }
 
     @Bean
-    SnapshotSerializerFactory projectDownloaderFactory(
-            CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor) {
-        return new SnapshotSerializerFactory(prefixDeclarationsExecutor);
+    SnapshotSerializerFactory projectDownloaderFactory(SnapshotScratchSpace snapshotScratchSpace,
+                                                       SnapshotSerializationProperties serializationProperties,
+                                                       SnapshotArchiveProperties archiveProperties,
+                                                       OntologyCheckpointStore ontologyCheckpointStore,
+                                                       SnapshotUploadProperties uploadProperties,
+                                                       SnapshotMetrics snapshotMetrics) {
+        // Content addressed snapshots only share storage if they do not name their revision
+        return new SnapshotSerializerFactory(snapshotScratchSpace,
+                                             serializationProperties.getEffectiveParallelism(),
+                                             serializationProperties.getEffectiveComputeThreads(),
+                                             serializationProperties.getSpillThreshold().toBytes(),
+                                             archiveProperties,
+                                             ontologyCheckpointStore,
+                                             !uploadProperties.isEffectivelyContentAddressed(),
+                                             snapshotMetrics);
+    }
+
+    @Bean
+    SnapshotMetrics snapshotMetrics(MeterRegistry meterRegistry) {
+        return new SnapshotMetrics(meterRegistry);
+    }
+
+    @Bean
+    DeltaExporter deltaExporter(MinioClient minioClient,
+                                SnapshotExistenceCache snapshotExistenceCache,
+                                SnapshotScratchSpace snapshotScratchSpace,
+                                DeltaExportProperties deltaExportProperties) {
+        return new DeltaExporter(minioClient,
+                                 snapshotExistenceCache,
+                                 snapshotScratchSpace,
+                                 deltaExportProperties.isEnabled(),
+                                 deltaExportProperties.isPublishChangeSets(),
+                                 deltaExportProperties.getSearchDepth());
+    }
+
+    @Bean
+    OntologyCheckpointStore ontologyCheckpointStore(MinioClient minioClient,
+                                                    SnapshotBucket snapshotBucket,
+                                                    SnapshotScratchSpace snapshotScratchSpace,
+                                                    DeltaExporter deltaExporter,
+                                                    OntologyCheckpointProperties checkpointProperties) {
+        return new OntologyCheckpointStore(minioClient,
+                                           snapshotBucket,
+                                           snapshotScratchSpace,
+                                           deltaExporter,
+                                           checkpointProperties.isEnabled(),
+                                           checkpointProperties.getInterval());
+    }
+
+    @Bean
+    PrefixDeclarationsCache prefixDeclarationsCache(
+            CommandExecutor<GetProjectPrefixDeclarationsRequest, GetProjectPrefixDeclarationsResponse> prefixDeclarationsExecutor,
+            PrefixDeclarationsCacheProperties prefixDeclarationsCacheProperties) {
+        return new PrefixDeclarationsCache(prefixDeclarationsExecutor, prefixDeclarationsCacheProperties.getCacheTtl());
     }
 
     @Bean
     MinioClient minioClient(MinioProperties minioProperties) {
-        return MinioClient.builder().credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey()).endpoint(minioProperties.getEndPoint()).build();
+        var builder = MinioClient.builder().credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey()).endpoint(minioProperties.getEndPoint());
+        if(minioProperties.getRegion() != null && !minioProperties.getRegion().isBlank()) {
+            // Saves a bucket location lookup before the first request to each bucket
+            builder.region(minioProperties.getRegion());
+        }
+        return builder.build();
     }
 
     @Bean
-    ExecutorService downloadExecutorService() {
-        return Executors.newSingleThreadExecutor();
+    SnapshotBucket snapshotBucket(MinioClient minioClient) {
+        var snapshotBucket = new SnapshotBucket(minioClient);
+        snapshotBucket.provision();
+        return snapshotBucket;
     }
 
     @Bean
-    CreateSnapshotTaskFactory createDownloadTaskFactory(RevisionManagerFactory revisionManagerFactory,
+    SnapshotExistenceCache snapshotExistenceCache(SnapshotExistenceCacheProperties existenceCacheProperties) {
+        return new SnapshotExistenceCache(existenceCacheProperties.getStoredTtl(),
+                                          existenceCacheProperties.getMissingTtl(),
+                                          existenceCacheProperties.getMaximumSize());
+    }
+
+    @Bean
+    SnapshotTaskScheduler snapshotTaskScheduler(SnapshotSchedulerProperties schedulerProperties,
+                                                MeterRegistry meterRegistry) {
+        return new SnapshotTaskScheduler(schedulerProperties.getEffectiveWorkerThreads(),
+                                         schedulerProperties.getQueueCapacity(),
+                                         schedulerProperties.getMaxQueuedPerProject(),
+                                         schedulerProperties.getEffectiveMaxRunningPerProject(),
+                                         schedulerProperties.getBackgroundQueueCapacity(),
+                                         schedulerProperties.isVirtualThreads(),
+                                         meterRegistry);
+    }
+
+    @Bean
+    HeadRevisionResolver headRevisionResolver(
+            CommandExecutor<GetHeadRevisionNumberAction, GetHeadRevisionNumberResult> headRevisionNumberExecutor) {
+        return new HeadRevisionResolver(headRevisionNumberExecutor);
+    }
+
+    @Bean
+    InFlightSnapshotRegistry inFlightSnapshotRegistry() {
+        return new InFlightSnapshotRegistry();
+    }
+
+    @Bean(initMethod = "initialize")
+    SnapshotScratchSpace snapshotScratchSpace(SnapshotScratchSpaceProperties scratchSpaceProperties) {
+        return new SnapshotScratchSpace(scratchSpaceProperties.getDirectory(),
+                                        scratchSpaceProperties.getQuota().toBytes(),
+                                        scratchSpaceProperties.getMaxWait(),
+                                        new SnapshotBufferPool((int) scratchSpaceProperties.getBufferChunkSize().toBytes(),
+                                                               (int) scratchSpaceProperties.getSinkBufferSize().toBytes(),
+                                                               scratchSpaceProperties.getBufferPoolSize().toBytes()));
+    }
+
+    @Bean
+    SnapshotUploader snapshotUploader(MinioClient minioClient,
+                                      SnapshotBucket snapshotBucket,
+                                      SnapshotScratchSpace snapshotScratchSpace,
+                                      SnapshotUploadProperties uploadProperties,
+                                      SnapshotMetrics snapshotMetrics) {
+        return new SnapshotUploader(minioClient, snapshotBucket, snapshotScratchSpace, uploadProperties, snapshotMetrics);
+    }
+
+    @Bean
+    RevisionManagerCache revisionManagerCache(RevisionManagerFactory revisionManagerFactory,
+                                              RevisionManagerCacheProperties revisionManagerCacheProperties,
+                                              MeterRegistry meterRegistry) {
+        return new RevisionManagerCache(revisionManagerFactory,
+                                        revisionManagerCacheProperties.getMaxRevisions(),
+                                        revisionManagerCacheProperties.getExpireAfterAccess(),
+                                        meterRegistry);
+    }
+
+    @Bean
+    CreateSnapshotTaskFactory createDownloadTaskFactory(RevisionManagerCache revisionManagerCache,
                                                         SnapshotSerializerFactory snapshotSerializerFactory,
-                                                        MinioClient minioClient) {
-        return new CreateSnapshotTaskFactory(revisionManagerFactory, snapshotSerializerFactory, minioClient);
+                                                        MinioClient minioClient,
+                                                        InFlightSnapshotRegistry inFlightSnapshotRegistry,
+                                                        SnapshotUploader snapshotUploader,
+                                                        PrefixDeclarationsCache prefixDeclarationsCache,
+                                                        DeltaExporter deltaExporter,
+                                                        HeapAdmissionController heapAdmissionController,
+                                                        SnapshotAccessRecorder snapshotAccessRecorder,
+                                                        SnapshotExistenceCache snapshotExistenceCache,
+                                                        SnapshotArchiveIndexStore archiveIndexStore,
+                                                        SnapshotLeaseCoordinator snapshotLeaseCoordinator,
+                                                        SnapshotMetrics snapshotMetrics) {
+        return new CreateSnapshotTaskFactory(revisionManagerCache, snapshotSerializerFactory, minioClient, inFlightSnapshotRegistry, snapshotUploader, prefixDeclarationsCache, deltaExporter, heapAdmissionController, snapshotAccessRecorder, snapshotExistenceCache, archiveIndexStore, snapshotLeaseCoordinator, snapshotMetrics);
+    }
+
+    @Bean
+    SnapshotLeaseStore snapshotLeaseStore(MinioClient minioClient) {
+        return new SnapshotLeaseStore(minioClient);
+    }
+
+    @Bean
+    SnapshotLeaseCoordinator snapshotLeaseCoordinator(SnapshotLeaseStore snapshotLeaseStore,
+                                                      SnapshotLeaseProperties leaseProperties,
+                                                      SnapshotTaskScheduler snapshotTaskScheduler,
+                                                      MeterRegistry meterRegistry) {
+        return new SnapshotLeaseCoordinator(snapshotLeaseStore,
+                                            leaseProperties.isEnabled(),
+                                            leaseProperties.getEffectiveReplicaId(),
+                                            leaseProperties.getLeaseDuration(),
+                                            leaseProperties.getHeartbeatInterval(),
+                                            leaseProperties.getPollInterval(),
+                                            snapshotTaskScheduler,
+                                            meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "webprotege.snapshots.leases", name = "enabled", havingValue = "true")
+    SnapshotWorkStealer snapshotWorkStealer(SnapshotLeaseStore snapshotLeaseStore,
+                                            SnapshotLeaseCoordinator snapshotLeaseCoordinator,
+                                            SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                            SnapshotTaskScheduler snapshotTaskScheduler,
+                                            SnapshotLeaseProperties leaseProperties,
+                                            SnapshotSchedulerProperties schedulerProperties) {
+        var workStealer = new SnapshotWorkStealer(snapshotLeaseStore,
+                                                  snapshotLeaseCoordinator,
+                                                  snapshotRequestSubmitter,
+                                                  snapshotTaskScheduler,
+                                                  schedulerProperties.getTaskDeadline());
+        workStealer.start(leaseProperties.getPollInterval());
+        return workStealer;
+    }
+
+    @Bean
+    SnapshotArchiveIndexStore snapshotArchiveIndexStore(MinioClient minioClient,
+                                                        ObjectMapper objectMapper) {
+        return new SnapshotArchiveIndexStore(minioClient, objectMapper);
+    }
+
+    @Bean
+    SnapshotAccessRecorder snapshotAccessRecorder(MinioClient minioClient,
+                                                  SnapshotRetentionProperties retentionProperties) {
+        return new SnapshotAccessRecorder(minioClient, retentionProperties.getAccessRecordInterval());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "webprotege.snapshots.retention", name = "enabled", havingValue = "true")
+    SnapshotRetentionSweeper snapshotRetentionSweeper(MinioClient minioClient,
+                                                      SnapshotExistenceCache snapshotExistenceCache,
+                                                      SnapshotRetentionProperties retentionProperties,
+                                                      MeterRegistry meterRegistry) {
+        var sweeper = new SnapshotRetentionSweeper(minioClient,
+                                                   snapshotExistenceCache,
+                                                   retentionProperties.getKeepLatestRevisions(),
+                                                   retentionProperties.getKeepLatestCheckpoints(),
+                                                   retentionProperties.getAccessWindow(),
+                                                   retentionProperties.getOperationsPerSecond(),
+                                                   meterRegistry);
+        sweeper.start(retentionProperties.getSweepInterval());
+        return sweeper;
+    }
+
+    @Bean
+    HeapAdmissionController heapAdmissionController(HeapAdmissionProperties admissionProperties,
+                                                    MeterRegistry meterRegistry) {
+        return new HeapAdmissionController(admissionProperties.isEnabled(),
+                                           admissionProperties.getEffectiveHeapBudget(),
+                                           admissionProperties.getBaseEstimate().toBytes(),
+                                           admissionProperties.getBytesPerChange().toBytes(),
+                                           admissionProperties.getMaxWait(),
+                                           admissionProperties.getPressureThreshold(),
+                                           meterRegistry);
+    }
+
+    @Bean
+    SnapshotRequestSubmitter snapshotRequestSubmitter(CreateSnapshotTaskFactory createSnapshotTaskFactory,
+                                                      SnapshotTaskScheduler snapshotTaskScheduler,
+                                                      InFlightSnapshotRegistry inFlightSnapshotRegistry,
+                                                      HeadRevisionResolver headRevisionResolver,
+                                                      RecentlyRequestedProjects recentlyRequestedProjects,
+                                                      SnapshotLeaseCoordinator snapshotLeaseCoordinator) {
+        return new SnapshotRequestSubmitter(createSnapshotTaskFactory, snapshotTaskScheduler, inFlightSnapshotRegistry, headRevisionResolver, recentlyRequestedProjects, snapshotLeaseCoordinator);
+    }
+
+    @Bean
+    RecentlyRequestedProjects recentlyRequestedProjects(SnapshotPreGenerationProperties preGenerationProperties) {
+        return new RecentlyRequestedProjects(preGenerationProperties.getActiveProjectWindow(),
+                                             preGenerationProperties.getMaxActiveProjects());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "webprotege.snapshots.pregeneration", name = "enabled", havingValue = "true")
+    SnapshotPreGenerator snapshotPreGenerator(SnapshotRequestSubmitter snapshotRequestSubmitter,
+                                              RecentlyRequestedProjects recentlyRequestedProjects,
+                                              SnapshotPreGenerationProperties preGenerationProperties,
+                                              SnapshotSchedulerProperties schedulerProperties) {
+        return new SnapshotPreGenerator(snapshotRequestSubmitter,
+                                        recentlyRequestedProjects,
+                                        preGenerationProperties.getFormats(),
+                                        preGenerationProperties.getQuietPeriod(),
+                                        preGenerationProperties.getMaxDelay(),
+                                        schedulerProperties.getTaskDeadline());
+    }
+
+    @Bean
+    SnapshotJobRegistry snapshotJobRegistry(SnapshotJobProperties jobProperties) {
+        return new SnapshotJobRegistry(jobProperties.getRetention(), jobProperties.getMaxJobs());
+    }
+
+    @Bean
+    SnapshotJobStore snapshotJobStore(MinioClient minioClient,
+                                      ObjectMapper objectMapper,
+                                      SnapshotJobProperties jobProperties) {
+        var jobStore = new SnapshotJobStore(minioClient, objectMapper, jobProperties.getRetention());
+        jobStore.start(jobProperties.getRetention());
+        return jobStore;
     }
 }
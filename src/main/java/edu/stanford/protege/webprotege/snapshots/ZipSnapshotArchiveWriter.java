@@ -0,0 +1,133 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a snapshot as a zip archive, with either DEFLATE compressed or stored entries.  The
+ * position of each entry in the archive is recorded in an index.
+ */
+final class ZipSnapshotArchiveWriter implements SnapshotArchiveWriter {
+
+    /**
+     * The size of the blocks that compressed data is written in.  The default of 512 bytes means
+     * many small writes to the stream underneath, which is not buffered.
+     */
+    static final int DEFLATE_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Counts the bytes of the archive, which gives the offsets of the entries
+     */
+    private final ProgressOutputStream archiveOutputStream;
+
+    private final ZipOutputStream zipOutputStream;
+
+    private final boolean stored;
+
+    private final List<SnapshotArchiveIndex.Entry> indexEntries = new ArrayList<>();
+
+    private ZipEntry currentEntry = null;
+
+    private long currentHeaderOffset = 0;
+
+    private long currentDataOffset = 0;
+
+    ZipSnapshotArchiveWriter(@Nonnull OutputStream outputStream, boolean stored, int compressionLevel) {
+        this.archiveOutputStream = new ProgressOutputStream(outputStream, count -> {});
+        this.zipOutputStream = new ZipOutputStream(archiveOutputStream) {
+            {
+                buf = new byte[DEFLATE_BUFFER_SIZE];
+            }
+        };
+        this.stored = stored;
+        if(!stored) {
+            zipOutputStream.setLevel(compressionLevel);
+        }
+    }
+
+    @Override
+    public boolean isStreamingEntrySupported() {
+        // Stored entries need their size and CRC before they are written
+        return !stored;
+    }
+
+    @Nonnull
+    @Override
+    public OutputStream beginEntry(@Nonnull String name) throws IOException {
+        if(stored) {
+            throw new UnsupportedOperationException("Stored zip entries cannot be streamed");
+        }
+        putNextEntry(createZipEntry(name));
+        return zipOutputStream;
+    }
+
+    @Override
+    public void endEntry() throws IOException {
+        closeEntry();
+    }
+
+    @Override
+    public void addEntry(@Nonnull String name, @Nonnull OntologyDocumentBuffer content) throws IOException {
+        var zipEntry = createZipEntry(name);
+        if(stored) {
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(content.getSize());
+            zipEntry.setCompressedSize(content.getSize());
+            zipEntry.setCrc(content.getCrc());
+        }
+        putNextEntry(zipEntry);
+        content.writeTo(zipOutputStream);
+        closeEntry();
+    }
+
+    @Override
+    public void finish() throws IOException {
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+
+    @Nonnull
+    @Override
+    public Optional<SnapshotArchiveIndex> getIndex() {
+        return Optional.of(new SnapshotArchiveIndex(List.copyOf(indexEntries)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipOutputStream.close();
+    }
+
+    private void putNextEntry(@Nonnull ZipEntry zipEntry) throws IOException {
+        // The local file header is written straight through to the archive, so the entry data
+        // starts at the current position once the entry has been started
+        currentHeaderOffset = archiveOutputStream.getCount();
+        zipOutputStream.putNextEntry(zipEntry);
+        currentDataOffset = archiveOutputStream.getCount();
+        currentEntry = zipEntry;
+    }
+
+    private void closeEntry() throws IOException {
+        // Closing the entry fills in its sizes and CRC
+        zipOutputStream.closeEntry();
+        indexEntries.add(new SnapshotArchiveIndex.Entry(currentEntry.getName(),
+                                                        currentHeaderOffset,
+                                                        currentDataOffset,
+                                                        currentEntry.getCompressedSize(),
+                                                        currentEntry.getSize(),
+                                                        currentEntry.getCrc(),
+                                                        currentEntry.getMethod() == ZipEntry.STORED ? "STORED" : "DEFLATED"));
+        currentEntry = null;
+    }
+
+    private static ZipEntry createZipEntry(@Nonnull String name) {
+        var zipEntry = new ZipEntry(name);
+        zipEntry.setTimeLocal(ENTRY_TIMESTAMP);
+        return zipEntry;
+    }
+}
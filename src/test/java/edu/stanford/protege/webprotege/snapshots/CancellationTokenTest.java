@@ -0,0 +1,32 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CancellationTokenTest {
+
+	@Test
+	void shouldCancelWhenDeadlinePasses() throws Exception {
+		var token = CancellationToken.withDeadline(Duration.ofMillis(20));
+		var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+		while (!token.isCancelled() && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertThat(token.getReason()).contains("did not complete");
+	}
+
+	@Test
+	void shouldStopDeadlineAndDropListenersWhenCompleted() throws Exception {
+		var token = CancellationToken.withDeadline(Duration.ofMillis(50));
+		var listenerRan = new AtomicBoolean();
+		token.onCancel(() -> listenerRan.set(true));
+		token.complete();
+		Thread.sleep(200);
+		assertThat(token.isCancelled()).isFalse();
+		assertThat(listenerRan).isFalse();
+	}
+}
@@ -0,0 +1,244 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import com.google.common.collect.ImmutableList;
+import edu.stanford.protege.webprotege.change.AddAxiomChange;
+import edu.stanford.protege.webprotege.change.OntologyChange;
+import edu.stanford.protege.webprotege.change.RemoveAxiomChange;
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.common.UserId;
+import edu.stanford.protege.webprotege.revision.Revision;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import edu.stanford.protege.webprotege.revision.RevisionSummary;
+import io.minio.GetObjectArgs;
+import io.minio.GetObjectResponse;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.ErrorResponse;
+import okhttp3.Headers;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DeltaExporterTest {
+
+	private static final ProjectId PROJECT = ProjectId.generate();
+
+	private static final int SEARCH_DEPTH = 5;
+
+	private static final OWLOntologyID ONTOLOGY_ID = new OWLOntologyID(IRI.create("http://example.org/ontology"));
+
+	@TempDir
+	Path directory;
+
+	private final MinioClient minioClient = mock(MinioClient.class);
+
+	private final RevisionManager revisionManager = mock(RevisionManager.class);
+
+	private final List<Revision> revisions = new ArrayList<>();
+
+	@Test
+	void shouldBuildSameOntologiesAsFullReplay() throws Exception {
+		for (var format : new DocumentFormat[]{DocumentFormat.OWL_XML, DocumentFormat.FUNCTIONAL_SYNTAX}) {
+			revisions.clear();
+			addRevision(add(declaration("A")), add(declaration("B")), add(subClassOf("A", "B")), add(label("A", "An \"A\"")));
+			addRevision(add(declaration("C")), add(declaration("D")), add(subClassOf("C", "D")), add(label("C", "C\nwith a new line")));
+			addRevision(remove(subClassOf("A", "B")), add(declaration("E")), add(declaration("F")), add(subClassOf("E", "F")));
+			addRevision(remove(label("C", "C\nwith a new line")), add(subClassOf("A", "F")));
+			storeSnapshot(replay(2), replay(2), format);
+
+			var built = newDeltaExporter().buildFromStoredSnapshot(PROJECT, revisionManager, format, 2, RevisionNumber.getRevisionNumber(4));
+
+			assertThat(built).isPresent();
+			var expected = replay(4).getOntology(ONTOLOGY_ID).getAxioms();
+			assertThat(built.get().getOntology(ONTOLOGY_ID).getAxioms()).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	void shouldNotUseStoredSnapshotThatDoesNotMatchItsRevision() throws Exception {
+		addRevision(add(declaration("A")), add(declaration("B")), add(subClassOf("A", "B")));
+		addRevision(add(declaration("C")), add(declaration("D")), add(subClassOf("C", "D")));
+		addRevision(remove(subClassOf("A", "B")));
+		// The stored snapshot of revision 2 has an axiom that revision 2 does not have, in place
+		// of the axiom that revision 3 removes
+		var snapshot = replay(2);
+		snapshot.removeAxiom(snapshot.getOntology(ONTOLOGY_ID), subClassOf("A", "B"));
+		snapshot.addAxiom(snapshot.getOntology(ONTOLOGY_ID), subClassOf("B", "A"));
+		storeSnapshot(snapshot, replay(2), DocumentFormat.FUNCTIONAL_SYNTAX);
+
+		var built = newDeltaExporter().buildFromStoredSnapshot(PROJECT, revisionManager, DocumentFormat.FUNCTIONAL_SYNTAX, 2, RevisionNumber.getRevisionNumber(3));
+
+		assertThat(built).isEmpty();
+	}
+
+	@Test
+	void shouldNotUseStoredSnapshotWithAxiomsAddedByTheRenderer() throws Exception {
+		// The entities are not declared, so the renderer declares them in the stored snapshot
+		addRevision(add(subClassOf("A", "B")));
+		addRevision(add(subClassOf("C", "D")));
+		addRevision(add(subClassOf("E", "F")));
+		storeSnapshot(replay(2), replay(2), DocumentFormat.FUNCTIONAL_SYNTAX);
+
+		var built = newDeltaExporter().buildFromStoredSnapshot(PROJECT, revisionManager, DocumentFormat.FUNCTIONAL_SYNTAX, 2, RevisionNumber.getRevisionNumber(3));
+
+		assertThat(built).isEmpty();
+	}
+
+	@Test
+	void shouldNotUseStoredSnapshotWithoutAxiomCounts() throws Exception {
+		addRevision(add(declaration("A")), add(declaration("B")), add(subClassOf("A", "B")));
+		addRevision(add(declaration("C")));
+		storeSnapshot(replay(1), Map.of(), DocumentFormat.FUNCTIONAL_SYNTAX);
+
+		var built = newDeltaExporter().buildFromStoredSnapshot(PROJECT, revisionManager, DocumentFormat.FUNCTIONAL_SYNTAX, 1, RevisionNumber.getRevisionNumber(2));
+
+		assertThat(built).isEmpty();
+	}
+
+	@Test
+	void shouldFindNearestStoredSnapshotWithoutListing() throws Exception {
+		var stored = new SnapshotLocation(PROJECT, RevisionNumber.getRevisionNumber(7), DocumentFormat.OWL_XML).getLocation();
+		var stat = mock(StatObjectResponse.class);
+		when(stat.size()).thenReturn(100L);
+		when(stat.userMetadata()).thenReturn(Map.of());
+		when(minioClient.statObject(any(StatObjectArgs.class))).thenAnswer(invocation -> {
+			StatObjectArgs args = invocation.getArgument(0);
+			if (args.object().equals(stored)) {
+				return stat;
+			}
+			throw noSuchKey();
+		});
+		var deltaExporter = newDeltaExporter();
+
+		assertThat(deltaExporter.findNearestStoredSnapshot(PROJECT, DocumentFormat.OWL_XML, RevisionNumber.getRevisionNumber(10), 0)).contains(7L);
+		// Revisions at or before the nearest checkpoint are not looked up
+		assertThat(deltaExporter.findNearestStoredSnapshot(PROJECT, DocumentFormat.OWL_XML, RevisionNumber.getRevisionNumber(10), 7)).isEmpty();
+		// Snapshots more than the search depth before the revision are not looked up
+		assertThat(deltaExporter.findNearestStoredSnapshot(PROJECT, DocumentFormat.OWL_XML, RevisionNumber.getRevisionNumber(7 + SEARCH_DEPTH + 1), 0)).isEmpty();
+		verify(minioClient, never()).listObjects(any(ListObjectsArgs.class));
+		// Revisions that were looked up before are answered from the existence cache
+		verify(minioClient, times(6)).statObject(any(StatObjectArgs.class));
+	}
+
+	@Test
+	void shouldNotBuildFromFormatsThatAreNotReadBackExactly() {
+		var deltaExporter = newDeltaExporter();
+		for (var format : new DocumentFormat[]{DocumentFormat.RDF_XML, DocumentFormat.TURTLE, DocumentFormat.MANCHESTER_SYNTAX}) {
+			assertThat(deltaExporter.canBuildFromStoredSnapshot(format)).isFalse();
+			assertThat(deltaExporter.buildFromStoredSnapshot(PROJECT, revisionManager, format, 1, RevisionNumber.getRevisionNumber(2))).isEmpty();
+		}
+		verifyNoInteractions(minioClient);
+	}
+
+	private DeltaExporter newDeltaExporter() {
+		return new DeltaExporter(minioClient,
+		                         new SnapshotExistenceCache(Duration.ofMinutes(1), Duration.ofMinutes(1), 100),
+		                         new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO),
+		                         true,
+		                         false,
+		                         SEARCH_DEPTH);
+	}
+
+	private void addRevision(OntologyChange... changes) {
+		var revisionNumber = RevisionNumber.getRevisionNumber(revisions.size() + 1);
+		revisions.add(new Revision(UserId.valueOf("user"), revisionNumber, ImmutableList.copyOf(changes), 0, "Revision"));
+		when(revisionManager.getRevision(revisionNumber)).thenReturn(Optional.of(revisions.get(revisions.size() - 1)));
+		when(revisionManager.getRevisionSummaries()).thenReturn(revisions.stream()
+		                                                                 .map(revision -> new RevisionSummary(revision.getRevisionNumber(), revision.getUserId(), 0, revision.getSize(), "Revision"))
+		                                                                 .toList());
+	}
+
+	/**
+	 * Builds a revision by replaying the whole revision history
+	 */
+	private OWLOntologyManager replay(int revision) throws Exception {
+		var manager = OWLManager.createOWLOntologyManager();
+		for (int r = 0; r < revision; r++) {
+			OntologyCheckpoints.applyChanges(manager, revisions.get(r).getChanges());
+		}
+		return manager;
+	}
+
+	/**
+	 * Stores a snapshot with the axiom counts of the ontologies that it should have been written from
+	 */
+	private void storeSnapshot(OWLOntologyManager manager, OWLOntologyManager revision, DocumentFormat format) throws Exception {
+		storeSnapshot(manager, Map.of(DeltaExporter.AXIOM_COUNTS_METADATA_KEY, DeltaExporter.getAxiomCounts(revision)), format);
+	}
+
+	private void storeSnapshot(OWLOntologyManager manager, Map<String, String> userMetadata, DocumentFormat format) throws Exception {
+		var archive = new ByteArrayOutputStream();
+		try (var zipOutputStream = new ZipOutputStream(archive)) {
+			zipOutputStream.putNextEntry(new ZipEntry("ontologies/ontology." + format.getExtension()));
+			manager.saveOntology(manager.getOntology(ONTOLOGY_ID), format.getDocumentFormat(), zipOutputStream);
+			zipOutputStream.closeEntry();
+		}
+		var stat = mock(StatObjectResponse.class);
+		when(stat.userMetadata()).thenReturn(userMetadata);
+		when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(stat);
+		when(minioClient.getObject(any(GetObjectArgs.class))).thenAnswer(invocation -> new GetObjectResponse(Headers.of(),
+		                                                                                                     CreateSnapshotTask.BUCKET_NAME,
+		                                                                                                     "",
+		                                                                                                     "snapshot",
+		                                                                                                     new ByteArrayInputStream(archive.toByteArray())));
+	}
+
+	private static ErrorResponseException noSuchKey() {
+		return new ErrorResponseException(new ErrorResponse("NoSuchKey", "Not found", CreateSnapshotTask.BUCKET_NAME, "", "", "", ""), null, "");
+	}
+
+	private static OntologyChange add(OWLAxiom axiom) {
+		return AddAxiomChange.of(ONTOLOGY_ID, axiom);
+	}
+
+	private static OntologyChange remove(OWLAxiom axiom) {
+		return RemoveAxiomChange.of(ONTOLOGY_ID, axiom);
+	}
+
+	private static OWLAxiom subClassOf(String subClass, String superClass) {
+		var dataFactory = OWLManager.getOWLDataFactory();
+		return dataFactory.getOWLSubClassOfAxiom(dataFactory.getOWLClass(IRI.create("http://example.org/" + subClass)),
+		                                         dataFactory.getOWLClass(IRI.create("http://example.org/" + superClass)));
+	}
+
+	private static OWLAxiom declaration(String entity) {
+		var dataFactory = OWLManager.getOWLDataFactory();
+		return dataFactory.getOWLDeclarationAxiom(dataFactory.getOWLClass(IRI.create("http://example.org/" + entity)));
+	}
+
+	private static OWLAxiom label(String subject, String label) {
+		var dataFactory = OWLManager.getOWLDataFactory();
+		return dataFactory.getOWLAnnotationAssertionAxiom(dataFactory.getRDFSLabel(),
+		                                                  IRI.create("http://example.org/" + subject),
+		                                                  dataFactory.getOWLLiteral(label, "en"));
+	}
+}
@@ -0,0 +1,62 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GetSnapshotJobStatusCommandHandlerTest {
+
+	private static final ProjectId PROJECT = ProjectId.generate();
+
+	private final SnapshotJobStore jobStore = mock(SnapshotJobStore.class);
+
+	private final GetSnapshotJobStatusCommandHandler handler;
+
+	GetSnapshotJobStatusCommandHandlerTest() {
+		var schedulerProperties = new SnapshotSchedulerProperties();
+		schedulerProperties.setTaskDeadline(Duration.ofMinutes(30));
+		handler = new GetSnapshotJobStatusCommandHandler(new SnapshotJobRegistry(Duration.ofHours(1), 10), jobStore, schedulerProperties);
+	}
+
+	@Test
+	void shouldReportJobOfAnotherReplicaFromItsRecord() throws Exception {
+		var coordinates = new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, "/projects/snapshot");
+		var status = new GetSnapshotJobStatusResponse("job", SnapshotJobPhase.COMPLETE, 2, 2, 100, 1, null, coordinates, "application/zip", null);
+		when(jobStore.load("job")).thenReturn(Optional.of(new SnapshotJobRecord(PROJECT, Instant.now().toEpochMilli(), status)));
+
+		var response = handler.handleRequest(new GetSnapshotJobStatusRequest(PROJECT, "job"), new ExecutionContext()).block();
+
+		assertThat(response).isEqualTo(status);
+	}
+
+	@Test
+	void shouldReportUnfinishedJobPastItsDeadlineAsFailed() throws Exception {
+		var status = new GetSnapshotJobStatusResponse("job", SnapshotJobPhase.QUEUED, 0, 0, 0, 0, null, null, null, null);
+		var submittedAt = Instant.now().minus(Duration.ofHours(1)).toEpochMilli();
+		when(jobStore.load("job")).thenReturn(Optional.of(new SnapshotJobRecord(PROJECT, submittedAt, status)));
+
+		var response = handler.handleRequest(new GetSnapshotJobStatusRequest(PROJECT, "job"), new ExecutionContext()).block();
+
+		assertThat(response.phase()).isEqualTo(SnapshotJobPhase.FAILED);
+	}
+
+	@Test
+	void shouldNotReportJobOfAnotherProject() throws Exception {
+		var status = new GetSnapshotJobStatusResponse("job", SnapshotJobPhase.QUEUED, 0, 0, 0, 0, null, null, null, null);
+		when(jobStore.load("job")).thenReturn(Optional.of(new SnapshotJobRecord(ProjectId.generate(), Instant.now().toEpochMilli(), status)));
+
+		var response = handler.handleRequest(new GetSnapshotJobStatusRequest(PROJECT, "job"), new ExecutionContext());
+
+		assertThatThrownBy(response::block).isInstanceOf(CommandExecutionException.class);
+	}
+}
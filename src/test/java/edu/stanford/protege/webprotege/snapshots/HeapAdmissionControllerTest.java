@@ -0,0 +1,55 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HeapAdmissionControllerTest {
+
+	private static final long MB = 1024 * 1024;
+
+	@Test
+	void shouldAdmitWaitingExportWhenHeapIsReleased() throws Exception {
+		var controller = new HeapAdmissionController(true, 100 * MB, 0, 0, Duration.ofSeconds(10), Long.MAX_VALUE, () -> 0, new SimpleMeterRegistry());
+		var first = controller.acquire(ProjectId.generate(), 80 * MB, CancellationToken.create());
+		var second = CompletableFuture.supplyAsync(() -> controller.acquire(ProjectId.generate(), 40 * MB, CancellationToken.create()));
+		Thread.sleep(100);
+		assertThat(second).isNotDone();
+		assertThat(controller.getWaitingCount()).isEqualTo(1);
+		first.close();
+		second.get(5, TimeUnit.SECONDS).close();
+		assertThat(controller.getReserved()).isZero();
+	}
+
+	@Test
+	void shouldRejectExportThatWaitsTooLong() {
+		var controller = new HeapAdmissionController(true, 100 * MB, 0, 0, Duration.ofMillis(50), Long.MAX_VALUE, () -> 0, new SimpleMeterRegistry());
+		// An export that is larger than the budget runs on its own
+		controller.acquire(ProjectId.generate(), 500 * MB, CancellationToken.create());
+		assertThat(controller.getReserved()).isEqualTo(100 * MB);
+		assertThatThrownBy(() -> controller.acquire(ProjectId.generate(), MB, CancellationToken.create()))
+				.isInstanceOf(CommandExecutionException.class);
+		assertThat(controller.getWaitingCount()).isZero();
+	}
+
+	@Test
+	void shouldOnlyAdmitAdditionalFormatWhenHeapIsAvailable() {
+		var controller = new HeapAdmissionController(true, 100 * MB, 30 * MB, 0, Duration.ofSeconds(10), Long.MAX_VALUE, () -> 0, new SimpleMeterRegistry());
+		var export = controller.acquire(ProjectId.generate(), 60 * MB, CancellationToken.create());
+		var additional = controller.tryAdmitAdditionalFormat(ProjectId.generate());
+		assertThat(additional).isPresent();
+		assertThat(controller.getReserved()).isEqualTo(90 * MB);
+		assertThat(controller.tryAdmitAdditionalFormat(ProjectId.generate())).isEmpty();
+		additional.get().close();
+		export.close();
+		assertThat(controller.getReserved()).isZero();
+	}
+}
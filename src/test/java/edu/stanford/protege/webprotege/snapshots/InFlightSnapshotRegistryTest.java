@@ -0,0 +1,108 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InFlightSnapshotRegistryTest {
+
+	private final InFlightSnapshotRegistry registry = new InFlightSnapshotRegistry();
+
+	private final SnapshotLocation location = new SnapshotLocation(ProjectId.generate(), RevisionNumber.getRevisionNumber(3), DocumentFormat.TURTLE);
+
+	private final SnapshotStorageCoordinates coordinates = new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, location.getLocation());
+
+	private final List<CancellationToken> exportTokens = new ArrayList<>();
+
+	private final List<CompletableFuture<SnapshotStorageCoordinates>> exports = new ArrayList<>();
+
+	private final Function<CancellationToken, CompletableFuture<SnapshotStorageCoordinates>> export = exportCancellation -> {
+		var result = new CompletableFuture<SnapshotStorageCoordinates>();
+		exportTokens.add(exportCancellation);
+		exports.add(result);
+		return result;
+	};
+
+	@Test
+	void shouldJoinRequestsForTheSameSnapshot() {
+		var first = registry.attachOrStart(location, CancellationToken.create(), new SnapshotProgress(), export);
+		var second = registry.attachOrStart(location, CancellationToken.create(), new SnapshotProgress(), export);
+		assertThat(exports).hasSize(1);
+		assertThat(registry.getInFlightCount()).isEqualTo(1);
+
+		exports.get(0).complete(coordinates);
+
+		assertThat(first).isCompletedWithValue(coordinates);
+		assertThat(second).isCompletedWithValue(coordinates);
+		assertThat(registry.getInFlightCount()).isZero();
+	}
+
+	@Test
+	void shouldCancelExportOnlyWhenLastRequestIsCancelled() {
+		var firstCancellation = CancellationToken.create();
+		var secondCancellation = CancellationToken.create();
+		var first = registry.attachOrStart(location, firstCancellation, new SnapshotProgress(), export);
+		var second = registry.attachOrStart(location, secondCancellation, new SnapshotProgress(), export);
+
+		firstCancellation.cancel("Test");
+		assertThat(first).isCompletedExceptionally();
+		assertThat(exportTokens.get(0).isCancelled()).isFalse();
+
+		secondCancellation.cancel("Test");
+		assertThat(second).isCompletedExceptionally();
+		assertThat(exportTokens.get(0).isCancelled()).isTrue();
+		assertThat(registry.getInFlightCount()).isZero();
+	}
+
+	@Test
+	void shouldNotAttachToExportThatIsBeingCancelled() throws Exception {
+		var executor = Executors.newFixedThreadPool(2);
+		try {
+			for(int i = 0; i < 200; i++) {
+				var registry = new InFlightSnapshotRegistry();
+				var cancellation = CancellationToken.create();
+				var tokens = new ArrayList<CancellationToken>();
+				Function<CancellationToken, CompletableFuture<SnapshotStorageCoordinates>> export = exportCancellation -> {
+					synchronized (tokens) {
+						tokens.add(exportCancellation);
+					}
+					return new CompletableFuture<>();
+				};
+				registry.attachOrStart(location, cancellation, new SnapshotProgress(), export);
+				var start = new CountDownLatch(1);
+				var cancel = executor.submit(() -> {
+					start.await();
+					cancellation.cancel("Test");
+					return null;
+				});
+				var attach = executor.submit(() -> {
+					start.await();
+					return registry.attachOrStart(location, CancellationToken.create(), new SnapshotProgress(), export);
+				});
+				start.countDown();
+				cancel.get(5, TimeUnit.SECONDS);
+				var attached = attach.get(5, TimeUnit.SECONDS);
+				// The request that was not cancelled either shares the export that is still
+				// running or has started a new one
+				synchronized (tokens) {
+					var exportToken = tokens.get(tokens.size() - 1);
+					assertThat(exportToken.isCancelled()).isFalse();
+				}
+				assertThat(attached).isNotDone();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+}
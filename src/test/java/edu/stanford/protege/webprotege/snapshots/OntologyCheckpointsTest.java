@@ -0,0 +1,48 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntologyID;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OntologyCheckpointsTest {
+
+	@Test
+	void shouldRecreateOntologiesFromCheckpoint() throws Exception {
+		var manager = OWLManager.createOWLOntologyManager();
+		var dataFactory = manager.getOWLDataFactory();
+		var ontologyId = new OWLOntologyID(IRI.create("http://example.org/a"), IRI.create("http://example.org/a/1.0"));
+		var ontology = manager.createOntology(ontologyId);
+		var emptyOntology = manager.createOntology(IRI.create("http://example.org/b"));
+		var subClassOf = dataFactory.getOWLSubClassOfAxiom(dataFactory.getOWLClass(IRI.create("http://example.org/A")),
+		                                                   dataFactory.getOWLClass(IRI.create("http://example.org/B")));
+		var annotation = dataFactory.getOWLAnnotation(dataFactory.getRDFSComment(), dataFactory.getOWLLiteral("An ontology", "en"));
+		var labelAssertion = dataFactory.getOWLAnnotationAssertionAxiom(IRI.create("http://example.org/A"),
+		                                                                dataFactory.getOWLAnnotation(dataFactory.getRDFSLabel(), dataFactory.getOWLLiteral(42)),
+		                                                                Set.of(annotation));
+		manager.applyChange(new AddAxiom(ontology, subClassOf));
+		manager.applyChange(new AddAxiom(ontology, labelAssertion));
+		manager.applyChange(new AddOntologyAnnotation(ontology, annotation));
+		manager.applyChange(new AddImport(ontology, dataFactory.getOWLImportsDeclaration(IRI.create("http://example.org/b"))));
+
+		var checkpoint = new ByteArrayOutputStream();
+		OntologyCheckpoints.write(manager, checkpoint);
+		var restored = OntologyCheckpoints.read(new ByteArrayInputStream(checkpoint.toByteArray()));
+
+		var restoredOntology = restored.getOntology(ontologyId);
+		assertThat(restoredOntology).isNotNull();
+		assertThat(restoredOntology.getAxioms()).containsExactlyInAnyOrder(subClassOf, labelAssertion);
+		assertThat(restoredOntology.getAnnotations()).containsExactly(annotation);
+		assertThat(restoredOntology.getImportsDeclarations()).isEqualTo(ontology.getImportsDeclarations());
+		assertThat(restored.contains(emptyOntology.getOntologyID())).isTrue();
+	}
+}
@@ -0,0 +1,90 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OntologyDocumentBufferTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shouldKeepSmallDocumentInMemory() throws Exception {
+		var scratchSpace = new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO);
+		var buffer = new OntologyDocumentBuffer(scratchSpace, 1024);
+		try (buffer) {
+			buffer.write(new byte[]{1, 2, 3});
+		}
+		var out = new ByteArrayOutputStream();
+		buffer.writeTo(out);
+		assertThat(out.toByteArray()).containsExactly(1, 2, 3);
+		assertThat(scratchSpace.getUsedBytes()).isZero();
+	}
+
+	@Test
+	void shouldSpillLargeDocumentAndReleaseItWhenDiscarded() throws Exception {
+		var data = new byte[10_000];
+		new Random(7).nextBytes(data);
+		var scratchSpace = new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO);
+		var buffer = new OntologyDocumentBuffer(scratchSpace, 1024);
+		try (buffer) {
+			buffer.write(data, 0, 1000);
+			buffer.write(data, 1000, data.length - 1000);
+		}
+		assertThat(scratchSpace.getUsedBytes()).isEqualTo(data.length);
+		var out = new ByteArrayOutputStream();
+		buffer.writeTo(out);
+		assertThat(out.toByteArray()).isEqualTo(data);
+		buffer.discard();
+		assertThat(scratchSpace.getUsedBytes()).isZero();
+		assertThat(directory).isEmptyDirectory();
+	}
+
+	@Test
+	void shouldWriteAcrossPooledChunksAndReuseThemWhenDiscarded() throws Exception {
+		// The pool keeps a single chunk
+		var bufferPool = new SnapshotBufferPool(16, 64, 16);
+		var scratchSpace = new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO, bufferPool);
+		var data = new byte[100];
+		new Random(11).nextBytes(data);
+		var buffer = new OntologyDocumentBuffer(scratchSpace, 1024);
+		try (buffer) {
+			buffer.write(data[0]);
+			buffer.write(data, 1, data.length - 1);
+		}
+		var out = new ByteArrayOutputStream();
+		buffer.writeTo(out);
+		assertThat(out.toByteArray()).isEqualTo(data);
+		assertThat(buffer.getSize()).isEqualTo(data.length);
+		var crc = new CRC32();
+		crc.update(data);
+		assertThat(buffer.getCrc()).isEqualTo(crc.getValue());
+		buffer.discard();
+		assertThat(bufferPool.acquireChunk()).isEqualTo(Arrays.copyOf(data, 16));
+	}
+
+	@Test
+	void shouldSpillWithoutWaitingWhenQuotaIsUsedUp() throws Exception {
+		var scratchSpace = new SnapshotScratchSpace(directory, 100, Duration.ZERO);
+		try (var archiveFile = scratchSpace.createScratchFile();
+		     var archiveOutputStream = archiveFile.newOutputStream()) {
+			archiveOutputStream.write(new byte[200]);
+			var buffer = new OntologyDocumentBuffer(scratchSpace, 10);
+			try (buffer) {
+				buffer.write(new byte[50]);
+			}
+			assertThat(scratchSpace.getUsedBytes()).isEqualTo(250);
+			buffer.discard();
+		}
+		assertThat(scratchSpace.getUsedBytes()).isZero();
+	}
+}
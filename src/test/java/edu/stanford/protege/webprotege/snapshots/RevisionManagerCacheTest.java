@@ -0,0 +1,77 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionManager;
+import edu.stanford.protege.webprotege.revision.RevisionManagerFactory;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RevisionManagerCacheTest {
+
+	private final ProjectId projectId = ProjectId.generate();
+
+	private RevisionManagerFactory revisionManagerFactory;
+
+	private RevisionManagerCache cache;
+
+	@BeforeEach
+	void setUp() {
+		revisionManagerFactory = mock(RevisionManagerFactory.class);
+		cache = new RevisionManagerCache(revisionManagerFactory, 1000, Duration.ofMinutes(1), new SimpleMeterRegistry());
+	}
+
+	@AfterEach
+	void tearDown() {
+		cache.shutdown();
+	}
+
+	@Test
+	void shouldReuseRevisionManagerThatContainsRequestedRevision() {
+		var revisionManager = revisionManagerAt(5);
+		when(revisionManagerFactory.createRevisionManager(projectId)).thenReturn(revisionManager);
+		assertThat(cache.getRevisionManager(projectId, RevisionNumber.getRevisionNumber(5))).isSameAs(revisionManager);
+		assertThat(cache.getRevisionManager(projectId, RevisionNumber.getRevisionNumber(3))).isSameAs(revisionManager);
+		verify(revisionManagerFactory, times(1)).createRevisionManager(projectId);
+	}
+
+	@Test
+	void shouldReloadRevisionManagerThatIsBehindRequestedRevision() {
+		var stale = revisionManagerAt(5);
+		var fresh = revisionManagerAt(6);
+		when(revisionManagerFactory.createRevisionManager(projectId)).thenReturn(stale, fresh);
+		cache.getRevisionManager(projectId, RevisionNumber.getRevisionNumber(5));
+		assertThat(cache.getRevisionManager(projectId, RevisionNumber.getRevisionNumber(6))).isSameAs(fresh);
+		assertThat(cache.getSize()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldLoadRevisionHistoryOnVirtualThread() {
+		var revisionManager = revisionManagerAt(5);
+		var loadingThread = new AtomicReference<Thread>();
+		when(revisionManagerFactory.createRevisionManager(projectId)).thenAnswer(invocation -> {
+			loadingThread.set(Thread.currentThread());
+			return revisionManager;
+		});
+		assertThat(cache.getRevisionManager(projectId, RevisionNumber.getRevisionNumber(5))).isSameAs(revisionManager);
+		assertThat(loadingThread.get()).isNotSameAs(Thread.currentThread());
+		assertThat(loadingThread.get().isVirtual()).isTrue();
+	}
+
+	private static RevisionManager revisionManagerAt(long revision) {
+		var revisionManager = mock(RevisionManager.class);
+		when(revisionManager.getCurrentRevision()).thenReturn(RevisionNumber.getRevisionNumber(revision));
+		return revisionManager;
+	}
+}
@@ -0,0 +1,125 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotArchiveCodecTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shouldWriteStoredZipEntries() throws Exception {
+		var archive = writeArchive(SnapshotArchiveCodec.ZIP_STORED);
+		try (var zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+			var entry = zipInputStream.getNextEntry();
+			assertThat(entry.getName()).isEqualTo("ontologies/a.owl");
+			assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+			assertThat(new String(zipInputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("Ontology(<http://example.org/a>)");
+		}
+	}
+
+	@Test
+	void shouldWriteTarGzEntries() throws Exception {
+		var archive = writeArchive(SnapshotArchiveCodec.TAR_GZ);
+		try (var tarInputStream = new TarArchiveInputStream(new GzipCompressorInputStream(new ByteArrayInputStream(archive)))) {
+			var entry = tarInputStream.getNextEntry();
+			assertThat(entry.getName()).isEqualTo("ontologies/a.owl");
+			assertThat(new String(tarInputStream.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("Ontology(<http://example.org/a>)");
+		}
+	}
+
+	@Test
+	void shouldIndexZipEntries() throws Exception {
+		for (var codec : new SnapshotArchiveCodec[]{SnapshotArchiveCodec.ZIP, SnapshotArchiveCodec.ZIP_STORED}) {
+			var scratchSpace = new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO);
+			var out = new ByteArrayOutputStream();
+			SnapshotArchiveIndex index;
+			try (var archiveWriter = codec.createWriter(out, -1)) {
+				for (var name : new String[]{"a", "b"}) {
+					var buffer = new OntologyDocumentBuffer(scratchSpace, 1024);
+					try (buffer) {
+						buffer.write(("Ontology(<http://example.org/" + name + ">)").getBytes(StandardCharsets.UTF_8));
+					}
+					archiveWriter.addEntry("ontologies/" + name + ".owl", buffer);
+				}
+				archiveWriter.finish();
+				index = archiveWriter.getIndex().orElseThrow();
+			}
+			var archive = out.toByteArray();
+			var entry = index.getEntry("b.owl").orElseThrow();
+			assertThat(entry.name()).isEqualTo("ontologies/b.owl");
+			// The entry can be read from its range of bytes alone
+			var data = Arrays.copyOfRange(archive, (int) entry.dataOffset(), (int) (entry.dataOffset() + entry.compressedSize()));
+			var content = entry.compressionMethod().equals("STORED") ? data : new InflaterInputStream(new ByteArrayInputStream(data), new Inflater(true)).readAllBytes();
+			assertThat(new String(content, StandardCharsets.UTF_8)).isEqualTo("Ontology(<http://example.org/b>)");
+			assertThat(entry.size()).isEqualTo(content.length);
+		}
+	}
+
+	@Test
+	void shouldBuildSameIndexFromCentralDirectory() throws Exception {
+		for (var codec : new SnapshotArchiveCodec[]{SnapshotArchiveCodec.ZIP, SnapshotArchiveCodec.ZIP_STORED}) {
+			var scratchSpace = new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO);
+			var out = new ByteArrayOutputStream();
+			SnapshotArchiveIndex index;
+			try (var archiveWriter = codec.createWriter(out, -1)) {
+				for (var name : new String[]{"a", "b", "c"}) {
+					var buffer = new OntologyDocumentBuffer(scratchSpace, 1024);
+					try (buffer) {
+						buffer.write(("Ontology(<http://example.org/" + name + ">)").getBytes(StandardCharsets.UTF_8));
+					}
+					archiveWriter.addEntry("ontologies/" + name + ".owl", buffer);
+				}
+				archiveWriter.finish();
+				index = archiveWriter.getIndex().orElseThrow();
+			}
+			var archive = out.toByteArray();
+			var reads = new AtomicInteger();
+			var channel = new RangedObjectChannel((offset, length) -> {
+				reads.incrementAndGet();
+				return new ByteArrayInputStream(archive, (int) offset, (int) length);
+			}, archive.length);
+			assertThat(SnapshotArchiveIndexStore.buildIndex(channel)).isEqualTo(index);
+			// The whole archive fits in the read ahead, so only one ranged read is made
+			assertThat(reads).hasValue(1);
+		}
+	}
+
+	@Test
+	void shouldWriteSameBytesEachTime() throws Exception {
+		for (var codec : SnapshotArchiveCodec.values()) {
+			assertThat(writeArchive(codec)).isEqualTo(writeArchive(codec));
+		}
+	}
+
+	private byte[] writeArchive(SnapshotArchiveCodec codec) throws Exception {
+		var scratchSpace = new SnapshotScratchSpace(directory, Long.MAX_VALUE, Duration.ZERO);
+		var buffer = new OntologyDocumentBuffer(scratchSpace, 1024);
+		try (buffer) {
+			buffer.write("Ontology(<http://example.org/a>)".getBytes(StandardCharsets.UTF_8));
+		}
+		var out = new ByteArrayOutputStream();
+		try (var archiveWriter = codec.createWriter(out, -1)) {
+			archiveWriter.addEntry("ontologies/a.owl", buffer);
+			archiveWriter.finish();
+		}
+		return out.toByteArray();
+	}
+}
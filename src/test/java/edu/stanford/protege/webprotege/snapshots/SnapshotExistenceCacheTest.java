@@ -0,0 +1,35 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotExistenceCacheTest {
+
+	private final SnapshotExistenceCache cache = new SnapshotExistenceCache(Duration.ofMinutes(1), Duration.ofMinutes(1), 100);
+
+	@Test
+	void shouldReplaceMissingEntryWhenSnapshotIsStored() {
+		cache.putMissing("/projects/abc/revisions/1/format/owx");
+		assertThat(cache.isKnownMissing("/projects/abc/revisions/1/format/owx")).isTrue();
+
+		var coordinates = new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, "/projects/abc/content/0a1b");
+		cache.putStored("/projects/abc/revisions/1/format/owx", coordinates);
+
+		assertThat(cache.isKnownMissing("/projects/abc/revisions/1/format/owx")).isFalse();
+		assertThat(cache.getStored("/projects/abc/revisions/1/format/owx")).contains(coordinates);
+	}
+
+	@Test
+	void shouldForgetInvalidatedSnapshots() {
+		var coordinates = new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, "/projects/abc/revisions/1/format/owx");
+		cache.putStored("/projects/abc/revisions/1/format/owx", coordinates);
+
+		cache.invalidate("/projects/abc/revisions/1/format/owx");
+
+		assertThat(cache.getStored("/projects/abc/revisions/1/format/owx")).isEmpty();
+		assertThat(cache.isKnownMissing("/projects/abc/revisions/1/format/owx")).isFalse();
+	}
+}
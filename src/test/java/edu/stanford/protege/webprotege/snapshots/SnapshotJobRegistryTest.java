@@ -0,0 +1,42 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotJobRegistryTest {
+
+	private static final ProjectId PROJECT = ProjectId.generate();
+
+	@Test
+	void shouldNotEvictRunningJobs() {
+		var registry = new SnapshotJobRegistry(Duration.ofHours(1), 1);
+		for (int i = 0; i < 3; i++) {
+			registry.register(newJob("job-" + i, new CompletableFuture<>()));
+		}
+		for (int i = 0; i < 3; i++) {
+			assertThat(registry.getJob("job-" + i)).isPresent();
+		}
+		assertThat(registry.getRunningCount()).isEqualTo(3);
+	}
+
+	@Test
+	void shouldKeepFinishedJobs() {
+		var registry = new SnapshotJobRegistry(Duration.ofHours(1), 10);
+		var result = new CompletableFuture<SnapshotStorageCoordinates>();
+		registry.register(newJob("job", result));
+
+		result.complete(new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, "/projects/snapshot"));
+
+		assertThat(registry.getRunningCount()).isZero();
+		assertThat(registry.getJob("job")).hasValueSatisfying(job -> assertThat(job.getStatus().phase()).isEqualTo(SnapshotJobPhase.COMPLETE));
+	}
+
+	private static SnapshotJob newJob(String jobId, CompletableFuture<SnapshotStorageCoordinates> result) {
+		return new SnapshotJob(jobId, PROJECT, new SnapshotProgress(), result, SnapshotArchiveCodec.ZIP.getContentType());
+	}
+}
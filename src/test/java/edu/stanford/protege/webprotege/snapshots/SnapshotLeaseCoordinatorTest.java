@@ -0,0 +1,112 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotLeaseCoordinatorTest {
+
+	private final Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+	private final SnapshotLocation location = new SnapshotLocation(ProjectId.generate(), RevisionNumber.getRevisionNumber(5), DocumentFormat.TURTLE);
+
+	private final String leaseObjectName = SnapshotLeaseStore.getLeaseLocation(location);
+
+	private SnapshotLeaseStore leaseStore;
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private SnapshotLeaseCoordinator coordinator;
+
+	@BeforeEach
+	void setUp() {
+		leaseStore = mock(SnapshotLeaseStore.class);
+		meterRegistry = new SimpleMeterRegistry();
+		coordinator = new SnapshotLeaseCoordinator(leaseStore, true, "this-replica",
+		                                           Duration.ofSeconds(60), Duration.ofSeconds(15), Duration.ofMillis(10),
+		                                           mock(SnapshotTaskScheduler.class),
+		                                           Clock.fixed(now, ZoneOffset.UTC),
+		                                           meterRegistry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		coordinator.shutdown();
+	}
+
+	@Test
+	void shouldTakeOverExpiredLeaseOfAnotherReplica() throws Exception {
+		var expired = lease(SnapshotLease.State.CLAIMED, "other-replica", now.minusSeconds(1), "etag-1");
+		var replaced = lease(SnapshotLease.State.CLAIMED, "this-replica", now.plusSeconds(60), "etag-2");
+		when(leaseStore.read(leaseObjectName)).thenReturn(Optional.of(expired));
+		when(leaseStore.replace(expired, SnapshotLease.State.CLAIMED, "this-replica", now.plusSeconds(60))).thenReturn(Optional.of(replaced));
+
+		var claim = coordinator.claim(location, CancellationToken.create());
+
+		assertThat(claim).hasValueSatisfying(c -> assertThat(c.isLeased()).isTrue());
+		assertThat(meterRegistry.counter("webprotege.snapshots.leases.takeovers").count()).isEqualTo(1);
+		claim.get().close();
+		verify(leaseStore).release(replaced);
+	}
+
+	@Test
+	void shouldWaitForLiveLeaseOfAnotherReplicaUntilItIsReleased() throws Exception {
+		var live = lease(SnapshotLease.State.CLAIMED, "other-replica", now.plusSeconds(30), "etag-1");
+		when(leaseStore.read(leaseObjectName)).thenReturn(Optional.of(live), Optional.of(live), Optional.empty());
+
+		var claim = coordinator.claim(location, CancellationToken.create());
+
+		assertThat(claim).isEmpty();
+		assertThat(meterRegistry.counter("webprotege.snapshots.leases.waits").count()).isEqualTo(1);
+		verify(leaseStore, never()).create(anyString(), any(), anyString(), any(), any());
+		verify(leaseStore, never()).replace(any(), any(), anyString(), any());
+	}
+
+	@Test
+	void shouldReplaceWantedLeaseOfAnotherReplica() throws Exception {
+		var wanted = lease(SnapshotLease.State.WANTED, "other-replica", now.plusSeconds(30), "etag-1");
+		var replaced = lease(SnapshotLease.State.CLAIMED, "this-replica", now.plusSeconds(60), "etag-2");
+		when(leaseStore.read(leaseObjectName)).thenReturn(Optional.of(wanted));
+		when(leaseStore.replace(eq(wanted), eq(SnapshotLease.State.CLAIMED), eq("this-replica"), any())).thenReturn(Optional.of(replaced));
+
+		var claim = coordinator.tryClaim(location);
+
+		assertThat(claim).isPresent();
+		assertThat(meterRegistry.counter("webprotege.snapshots.leases.takeovers").count()).isZero();
+		claim.get().close();
+	}
+
+	@Test
+	void shouldCountClaimsThatAreNotBackedByALease() throws Exception {
+		when(leaseStore.read(leaseObjectName)).thenThrow(new IOException("Connection reset"));
+
+		var claim = coordinator.claim(location, CancellationToken.create());
+
+		assertThat(claim).hasValueSatisfying(c -> assertThat(c.isLeased()).isFalse());
+		assertThat(meterRegistry.counter("webprotege.snapshots.leases.unleased").count()).isEqualTo(1);
+	}
+
+	private SnapshotLease lease(SnapshotLease.State state, String holder, Instant expiresAt, String etag) {
+		return new SnapshotLease(leaseObjectName, state, holder, expiresAt, "project", etag);
+	}
+}
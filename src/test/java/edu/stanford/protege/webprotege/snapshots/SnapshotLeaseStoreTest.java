@@ -0,0 +1,71 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.messages.Item;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotLeaseStoreTest {
+
+	private final MinioClient minioClient = mock(MinioClient.class);
+
+	private final String leaseObjectName = SnapshotLeaseStore.getLeaseLocation(new SnapshotLocation(ProjectId.generate(), RevisionNumber.getRevisionNumber(5), DocumentFormat.TURTLE));
+
+	private final Map<String, String> leaseMetadata = Map.of("X-Amz-Meta-lease-state", "WANTED",
+	                                                         "X-Amz-Meta-lease-holder", "other-replica",
+	                                                         "X-Amz-Meta-lease-expires", "1704067200000",
+	                                                         "X-Amz-Meta-lease-file-name", "snapshot.ttl");
+
+	@Test
+	void shouldUseLeaseMetadataReturnedInListing() throws Exception {
+		listLease(leaseMetadata);
+
+		var leases = new SnapshotLeaseStore(minioClient).list();
+
+		assertThat(leases).singleElement().satisfies(lease -> assertThat(lease.holder()).isEqualTo("other-replica"));
+		verify(minioClient, never()).statObject(any(StatObjectArgs.class));
+	}
+
+	@Test
+	void shouldReadLeaseMetadataThatIsNotReturnedInListing() throws Exception {
+		// Object stores other than MinIO do not return user metadata in listings
+		listLease(null);
+		var stat = mock(StatObjectResponse.class);
+		when(stat.userMetadata()).thenReturn(leaseMetadata);
+		when(stat.etag()).thenReturn("etag");
+		when(minioClient.statObject(any(StatObjectArgs.class))).thenReturn(stat);
+
+		var leases = new SnapshotLeaseStore(minioClient).list();
+
+		assertThat(leases).singleElement().satisfies(lease -> {
+			assertThat(lease.objectName()).isEqualTo(leaseObjectName);
+			assertThat(lease.state()).isEqualTo(SnapshotLease.State.WANTED);
+			assertThat(lease.holder()).isEqualTo("other-replica");
+			assertThat(lease.fileName()).isEqualTo("snapshot.ttl");
+		});
+	}
+
+	private void listLease(Map<String, String> userMetadata) {
+		var item = mock(Item.class);
+		when(item.objectName()).thenReturn(leaseObjectName);
+		when(item.etag()).thenReturn("etag");
+		when(item.userMetadata()).thenReturn(userMetadata);
+		when(minioClient.listObjects(any(ListObjectsArgs.class))).thenReturn(List.of(new Result<>(item)));
+	}
+}
@@ -0,0 +1,58 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotPipeTest {
+
+	@Test
+	void shouldTransferBytesThroughSmallBuffer() throws Exception {
+		var data = new byte[100_000];
+		new Random(7).nextBytes(data);
+		var pipe = new SnapshotPipe(1024);
+		var reader = CompletableFuture.supplyAsync(() -> {
+			try {
+				return pipe.getInputStream().readAllBytes();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		try (var out = pipe.getOutputStream()) {
+			out.write(data, 0, 10);
+			out.write(data, 10, data.length - 10);
+		}
+		assertThat(reader.get(10, TimeUnit.SECONDS)).isEqualTo(data);
+	}
+
+	@Test
+	void shouldFailBlockedWriterWhenAborted() throws Exception {
+		var pipe = new SnapshotPipe(16);
+		var writer = CompletableFuture.runAsync(() -> {
+			try {
+				pipe.getOutputStream().write(new byte[64]);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		Thread.sleep(100);
+		pipe.abort(new IOException("Upload failed"));
+		assertThatThrownBy(() -> writer.get(10, TimeUnit.SECONDS))
+				.hasRootCauseMessage("Upload failed");
+	}
+
+	@Test
+	void shouldFailReaderWhenAborted() {
+		var pipe = new SnapshotPipe(16);
+		pipe.abort(new IOException("Serialization failed"));
+		assertThatThrownBy(() -> pipe.getInputStream().read())
+				.isInstanceOf(IOException.class)
+				.hasRootCauseMessage("Serialization failed");
+	}
+}
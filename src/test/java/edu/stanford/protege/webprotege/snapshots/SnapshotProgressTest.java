@@ -0,0 +1,38 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotProgressTest {
+
+	@Test
+	void shouldEstimateRemainingTimeFromSerializationRate() {
+		var nanoTime = new AtomicLong();
+		var progress = new SnapshotProgress(nanoTime::get);
+		progress.serializing(4);
+		assertThat(progress.getEstimatedSecondsRemaining()).isNull();
+		nanoTime.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		progress.ontologySerialized(1);
+		assertThat(progress.getEstimatedSecondsRemaining()).isEqualTo(30L);
+		progress.uploading();
+		assertThat(progress.getEstimatedSecondsRemaining()).isNull();
+	}
+
+	@Test
+	void shouldReportProgressOfFollowedExport() {
+		var export = new SnapshotProgress();
+		var attached = new SnapshotProgress();
+		attached.follow(export);
+		export.serializing(3);
+		export.ontologySerialized(2);
+		export.bytesWritten(1024);
+		assertThat(attached.getPhase()).isEqualTo(SnapshotJobPhase.SERIALIZING);
+		assertThat(attached.getOntologiesSerialized()).isEqualTo(2);
+		assertThat(attached.getOntologyCount()).isEqualTo(3);
+		assertThat(attached.getBytesWritten()).isEqualTo(1024);
+	}
+}
@@ -0,0 +1,68 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.DocumentFormat;
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.ExecutionContext;
+import edu.stanford.protege.webprotege.revision.RevisionNumber;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotRequestSubmitterTest {
+
+	private static final ProjectId PROJECT = ProjectId.generate();
+
+	private static final RevisionNumber REVISION = RevisionNumber.getRevisionNumber(5);
+
+	private final SnapshotTaskScheduler scheduler = new SnapshotTaskScheduler(2, 10, 10, 1, new SimpleMeterRegistry());
+
+	@AfterEach
+	void tearDown() {
+		scheduler.shutdown();
+	}
+
+	@Test
+	void shouldAttachResolvedHeadRequestToQueuedExportOfTheSameProject() throws Exception {
+		var factory = mock(CreateSnapshotTaskFactory.class);
+		var headRevisionResolver = mock(HeadRevisionResolver.class);
+		when(headRevisionResolver.resolve(any(), any(), any())).thenAnswer(invocation -> CompletableFuture.completedFuture(invocation.getArgument(1)));
+		var resolving = new CountDownLatch(1);
+		var headTask = mock(CreateSnapshotTask.class);
+		when(headTask.resolveHeadRevision()).thenAnswer(invocation -> {
+			resolving.await();
+			return REVISION;
+		});
+		var coordinates = new SnapshotStorageCoordinates(CreateSnapshotTask.BUCKET_NAME, "/projects/snapshot");
+		var exportTask = mock(CreateSnapshotTask.class);
+		when(exportTask.get()).thenReturn(coordinates);
+		when(factory.create(any(), any(), any(), any(), eq(RevisionNumber.getHeadRevisionNumber()), any(), any(), any())).thenReturn(headTask);
+		when(factory.create(any(), any(), any(), any(), eq(REVISION), any(), any(), any())).thenReturn(exportTask);
+		var submitter = new SnapshotRequestSubmitter(factory, scheduler, new InFlightSnapshotRegistry(), headRevisionResolver,
+		                                             new RecentlyRequestedProjects(Duration.ofMinutes(1), 10),
+		                                             mock(SnapshotLeaseCoordinator.class));
+
+		// The head request holds the only running slot of the project while the export is queued
+		var headRequest = submitter.submit(PROJECT, RevisionNumber.getHeadRevisionNumber(), DocumentFormat.TURTLE, "Project",
+		                                   new ExecutionContext(), CancellationToken.create(), new SnapshotProgress());
+		var revisionRequest = submitter.submit(PROJECT, REVISION, DocumentFormat.TURTLE, "Project",
+		                                       new ExecutionContext(), CancellationToken.create(), new SnapshotProgress());
+		resolving.countDown();
+
+		assertThat(headRequest.get(5, TimeUnit.SECONDS)).isEqualTo(coordinates);
+		assertThat(revisionRequest.get(5, TimeUnit.SECONDS)).isEqualTo(coordinates);
+		verify(exportTask, times(1)).get();
+	}
+}
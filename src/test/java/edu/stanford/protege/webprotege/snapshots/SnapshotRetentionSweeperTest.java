@@ -0,0 +1,51 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotRetentionSweeperTest {
+
+	@Test
+	void shouldEvictOldSnapshotsThatHaveNotBeenAccessed() {
+		var now = Instant.now();
+		var cutoff = now.minus(Duration.ofDays(30));
+		var old = now.minus(Duration.ofDays(60));
+		var snapshots = new TreeMap<Long, SnapshotRetentionSweeper.StoredSnapshot>();
+		for(long revision = 1; revision <= 5; revision++) {
+			var snapshot = new SnapshotRetentionSweeper.StoredSnapshot(revision);
+			snapshot.add("/projects/p/revisions/" + revision + "/owl", true, old, null);
+			snapshots.put(revision, snapshot);
+		}
+		// Revision 3 was downloaded recently
+		var evictions = SnapshotRetentionSweeper.selectForEviction(snapshots, 2, cutoff,
+		                                                           snapshot -> snapshot.getRevision() == 3 ? Optional.of(now) : Optional.empty());
+		assertThat(evictions).extracting(SnapshotRetentionSweeper.StoredSnapshot::getRevision)
+		                     .containsExactly(2L, 1L);
+	}
+
+	@Test
+	void shouldParseObjectsStoredWithSnapshots() {
+		var name = SnapshotRetentionSweeper.parseSnapshotObjectName("/projects/abc/revisions/12/ttl.changes-since-10");
+		assertThat(name).contains(new SnapshotRetentionSweeper.SnapshotObjectName("abc", 12, "ttl", false));
+		assertThat(SnapshotRetentionSweeper.parseSnapshotObjectName("/projects/abc/checkpoints/12")).isEmpty();
+	}
+
+	@Test
+	void shouldEvictAllButLatestCheckpoints() {
+		var checkpoints = new TreeMap<Long, String>();
+		for(var name : new String[]{"/projects/abc/checkpoints/1000", "/projects/abc/checkpoints/3000", "/projects/abc/checkpoints/2000"}) {
+			SnapshotRetentionSweeper.parseCheckpointRevision(name).ifPresent(revision -> checkpoints.put(revision, name));
+		}
+		assertThat(SnapshotRetentionSweeper.parseCheckpointRevision("/projects/abc/revisions/12/ttl")).isEmpty();
+
+		var evictions = SnapshotRetentionSweeper.selectCheckpointsForEviction(checkpoints, 2);
+
+		assertThat(evictions).containsExactly("/projects/abc/checkpoints/1000");
+	}
+}
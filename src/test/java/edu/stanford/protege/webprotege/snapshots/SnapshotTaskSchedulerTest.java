@@ -0,0 +1,149 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import edu.stanford.protege.webprotege.common.ProjectId;
+import edu.stanford.protege.webprotege.ipc.CommandExecutionException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnapshotTaskSchedulerTest {
+
+	private static final ProjectId PROJECT_A = ProjectId.generate();
+
+	private static final ProjectId PROJECT_B = ProjectId.generate();
+
+	private SnapshotTaskScheduler scheduler;
+
+	@AfterEach
+	void tearDown() {
+		if(scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Test
+	void shouldInterleaveQueuedTasksFromDifferentProjects() throws Exception {
+		scheduler = new SnapshotTaskScheduler(1, 10, 10, 1, new SimpleMeterRegistry());
+		var gate = new CountDownLatch(1);
+		var order = new CopyOnWriteArrayList<String>();
+		var blocker = scheduler.submit(PROJECT_A, () -> await(gate));
+		var a1 = scheduler.submit(PROJECT_A, () -> order.add("A1"));
+		var a2 = scheduler.submit(PROJECT_A, () -> order.add("A2"));
+		var b1 = scheduler.submit(PROJECT_B, () -> order.add("B1"));
+		gate.countDown();
+		CompletableFuture.allOf(blocker, a1, a2, b1).get(10, TimeUnit.SECONDS);
+		assertThat(order).containsExactly("A1", "B1", "A2");
+	}
+
+	@Test
+	void shouldLimitRunningTasksOnVirtualWorkers() throws Exception {
+		scheduler = new SnapshotTaskScheduler(2, 10, 10, 2, 0, true, new SimpleMeterRegistry());
+		var gate = new CountDownLatch(1);
+		var first = scheduler.submit(PROJECT_A, () -> await(gate));
+		var second = scheduler.submit(PROJECT_A, () -> await(gate));
+		var third = scheduler.submit(PROJECT_B, () -> Thread.currentThread().isVirtual());
+		assertThat(scheduler.getRunningCount()).isEqualTo(2);
+		assertThat(scheduler.getQueueDepth()).isEqualTo(1);
+		gate.countDown();
+		CompletableFuture.allOf(first, second).get(10, TimeUnit.SECONDS);
+		assertThat(third.get(10, TimeUnit.SECONDS)).isTrue();
+	}
+
+	@Test
+	void shouldRejectTasksWhenQueueIsFull() throws Exception {
+		scheduler = new SnapshotTaskScheduler(1, 1, 10, 1, new SimpleMeterRegistry());
+		var gate = new CountDownLatch(1);
+		var blocker = scheduler.submit(PROJECT_A, () -> await(gate));
+		var queued = scheduler.submit(PROJECT_B, () -> true);
+		var rejected = scheduler.submit(PROJECT_B, () -> true);
+		assertThat(scheduler.getQueueDepth()).isEqualTo(1);
+		assertRejectedWith(rejected, HttpStatus.SERVICE_UNAVAILABLE);
+		gate.countDown();
+		assertThat(CompletableFuture.allOf(blocker, queued).get(10, TimeUnit.SECONDS)).isNull();
+	}
+
+	@Test
+	void shouldRejectTasksWhenProjectHasTooManyQueued() throws Exception {
+		scheduler = new SnapshotTaskScheduler(1, 10, 1, 1, new SimpleMeterRegistry());
+		var gate = new CountDownLatch(1);
+		var blocker = scheduler.submit(PROJECT_A, () -> await(gate));
+		var queued = scheduler.submit(PROJECT_A, () -> true);
+		var rejected = scheduler.submit(PROJECT_A, () -> true);
+		var otherProject = scheduler.submit(PROJECT_B, () -> true);
+		assertRejectedWith(rejected, HttpStatus.TOO_MANY_REQUESTS);
+		gate.countDown();
+		assertThat(CompletableFuture.allOf(blocker, queued, otherProject).get(10, TimeUnit.SECONDS)).isNull();
+	}
+
+	@Test
+	void shouldRemoveQueuedTaskWhenCancelled() throws Exception {
+		scheduler = new SnapshotTaskScheduler(1, 10, 10, 1, new SimpleMeterRegistry());
+		var gate = new CountDownLatch(1);
+		var ran = new CopyOnWriteArrayList<String>();
+		var blocker = scheduler.submit(PROJECT_A, () -> await(gate));
+		var cancellation = CancellationToken.create();
+		var cancelled = scheduler.submit(PROJECT_B, () -> ran.add("B1"), cancellation);
+		cancellation.cancel("Cancelled by test");
+		assertThat(scheduler.getQueueDepth()).isZero();
+		assertThatThrownBy(cancelled::get)
+				.isInstanceOf(ExecutionException.class)
+				.cause()
+				.isInstanceOf(SnapshotCancelledException.class);
+		gate.countDown();
+		blocker.get(10, TimeUnit.SECONDS);
+		assertThat(ran).isEmpty();
+	}
+
+	@Test
+	void shouldRunBackgroundTasksAfterQueuedTasks() throws Exception {
+		scheduler = new SnapshotTaskScheduler(2, 10, 10, 2, 10, new SimpleMeterRegistry());
+		var firstGate = new CountDownLatch(1);
+		var secondGate = new CountDownLatch(1);
+		var order = new CopyOnWriteArrayList<String>();
+		var firstBlocker = scheduler.submit(PROJECT_A, () -> await(firstGate));
+		var secondBlocker = scheduler.submit(PROJECT_A, () -> await(secondGate));
+		var background = scheduler.submitInBackground(PROJECT_B, () -> order.add("B1"), CancellationToken.create());
+		var b2 = scheduler.submit(PROJECT_B, () -> order.add("B2"));
+		assertThat(scheduler.getBackgroundQueueDepth()).isEqualTo(1);
+		firstGate.countDown();
+		CompletableFuture.allOf(firstBlocker, background, b2).get(10, TimeUnit.SECONDS);
+		assertThat(order).containsExactly("B2", "B1");
+		secondGate.countDown();
+		secondBlocker.get(10, TimeUnit.SECONDS);
+	}
+
+	@Test
+	void shouldNotRunBackgroundTasksOnOnlyWorker() {
+		scheduler = new SnapshotTaskScheduler(1, 10, 10, 1, 10, new SimpleMeterRegistry());
+		var background = scheduler.submitInBackground(PROJECT_B, () -> true, CancellationToken.create());
+		assertRejectedWith(background, HttpStatus.SERVICE_UNAVAILABLE);
+		assertThat(scheduler.getMaxRunningBackground()).isZero();
+	}
+
+	private static void assertRejectedWith(CompletableFuture<?> future, HttpStatus status) {
+		assertThatThrownBy(future::get)
+				.isInstanceOf(ExecutionException.class)
+				.cause()
+				.isInstanceOfSatisfying(CommandExecutionException.class,
+				                        e -> assertThat(e.getStatus()).isEqualTo(status));
+	}
+
+	private static List<Boolean> await(CountDownLatch latch) {
+		try {
+			return List.of(latch.await(10, TimeUnit.SECONDS));
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
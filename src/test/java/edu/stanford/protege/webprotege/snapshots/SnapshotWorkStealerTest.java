@@ -0,0 +1,29 @@
+package edu.stanford.protege.webprotege.snapshots;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SnapshotWorkStealerTest {
+
+	private final Duration pollInterval = Duration.ofSeconds(5);
+
+	@Test
+	void shouldBackOffWhileNothingIsPickedUp() {
+		var delay = pollInterval;
+		delay = SnapshotWorkStealer.getNextDelay(delay, 0, pollInterval);
+		assertThat(delay).isEqualTo(Duration.ofSeconds(10));
+		for (int i = 0; i < 10; i++) {
+			delay = SnapshotWorkStealer.getNextDelay(delay, 0, pollInterval);
+		}
+		assertThat(delay).isEqualTo(pollInterval.multipliedBy(SnapshotWorkStealer.MAX_BACKOFF));
+	}
+
+	@Test
+	void shouldPollAtPollIntervalAfterPickingUpSnapshots() {
+		var delay = pollInterval.multipliedBy(SnapshotWorkStealer.MAX_BACKOFF);
+		assertThat(SnapshotWorkStealer.getNextDelay(delay, 1, pollInterval)).isEqualTo(pollInterval);
+	}
+}